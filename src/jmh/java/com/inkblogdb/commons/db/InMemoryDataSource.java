@@ -0,0 +1,148 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import javax.sql.DataSource;
+
+/**
+ * ベンチマーク用の検索結果をメモリ上に持つデータソース
+ * どのSQLを実行しても同じ検索結果を返却し、DB通信の時間を含めずに検索結果の変換処理を計測する
+ * カラムは id BIGINT, title VARCHAR, views INTEGER, score DOUBLE
+ * @author ink-0x20
+ */
+final class InMemoryDataSource {
+
+	/** カラム名 */
+	private static final String[] COLUMN_NAMES = { "id", "title", "views", "score" };
+	/** カラムの型 */
+	private static final int[] COLUMN_TYPES = { Types.BIGINT, Types.VARCHAR, Types.INTEGER, Types.DOUBLE };
+	/** titleの値の種類数 */
+	private static final int TITLE_COUNT = 16;
+
+	/** 検索結果 [ 行 ][ カラム ] */
+	private final Object[][] rows;
+
+	/**
+	 * コンストラクタ
+	 * @param rowCount 行数
+	 */
+	InMemoryDataSource(final int rowCount) {
+		this.rows = new Object[rowCount][];
+		for (int i = 0; i < rowCount; i++) {
+			this.rows[i] = new Object[] { Long.valueOf(i + 1L), "title-" + (i % TITLE_COUNT), Integer.valueOf(i % 1000), Double.valueOf(i / 7.0) };
+		}
+	}
+
+	/**
+	 * データソースを作成
+	 * @return データソース
+	 */
+	DataSource proxy() {
+		Connection connection = connection();
+		return (DataSource) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { DataSource.class },
+				(proxy, method, args) -> method.getName().equals("getConnection") ? connection : null);
+	}
+
+	/**
+	 * DB接続を作成
+	 * @return DB接続
+	 */
+	private Connection connection() {
+		return (Connection) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { Connection.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "prepareStatement" -> statement();
+					case "isClosed", "getAutoCommit" -> Boolean.FALSE;
+					default -> null;
+				});
+	}
+
+	/**
+	 * ステートメントを作成
+	 * @return ステートメント
+	 */
+	private PreparedStatement statement() {
+		return (PreparedStatement) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { PreparedStatement.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "executeQuery" -> resultSet();
+					case "isClosed" -> Boolean.FALSE;
+					default -> null;
+				});
+	}
+
+	/**
+	 * 検索結果を作成
+	 * @return 検索結果
+	 */
+	private ResultSet resultSet() {
+		ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { ResultSetMetaData.class },
+				(proxy, method, args) -> switch (method.getName()) {
+					case "getColumnCount" -> Integer.valueOf(COLUMN_NAMES.length);
+					case "getColumnName", "getColumnLabel" -> COLUMN_NAMES[(Integer) args[0] - 1];
+					case "getColumnType" -> Integer.valueOf(COLUMN_TYPES[(Integer) args[0] - 1]);
+					default -> null;
+				});
+		// [ 現在行, 直前の値がnullか否か ]
+		int[] cursor = { -1, 0 };
+		return (ResultSet) Proxy.newProxyInstance(
+				getClass().getClassLoader(),
+				new Class<?>[] { ResultSet.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "next":
+							cursor[0]++;
+							return Boolean.valueOf(cursor[0] < this.rows.length);
+						case "getMetaData":
+							return meta;
+						case "wasNull":
+							return Boolean.valueOf(cursor[1] != 0);
+						case "isClosed":
+							return Boolean.FALSE;
+						case "getObject":
+						case "getString":
+						case "getLong":
+						case "getInt":
+						case "getDouble":
+							Object value = this.rows[cursor[0]][(Integer) args[0] - 1];
+							cursor[1] = value == null ? 1 : 0;
+							return convert(method.getName(), value);
+						default:
+							return null;
+					}
+				});
+	}
+
+	/**
+	 * 取得メソッドに応じて値を変換
+	 * @param getter 取得メソッド名
+	 * @param value 値
+	 * @return 変換後の値
+	 */
+	private static Object convert(final String getter, final Object value) {
+		switch (getter) {
+			case "getString":
+				return value == null ? null : value.toString();
+			case "getLong":
+				return Long.valueOf(value == null ? 0 : ((Number) value).longValue());
+			case "getInt":
+				return Integer.valueOf(value == null ? 0 : ((Number) value).intValue());
+			case "getDouble":
+				return Double.valueOf(value == null ? 0 : ((Number) value).doubleValue());
+			default:
+				return value;
+		}
+	}
+
+}
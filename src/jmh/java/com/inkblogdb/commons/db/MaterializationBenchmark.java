@@ -0,0 +1,114 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 検索結果の変換のベンチマーク
+ * {@link InMemoryDataSource}の検索結果を、取得方法ごとに全行変換する時間を計測する
+ * スタブの呼び出しは動的プロキシのため、絶対値ではなく取得方法の比較と変更前後の比較に使用すること
+ * @author ink-0x20
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaterializationBenchmark {
+
+	/**
+	 * 変換先のレコード
+	 * @param id ID
+	 * @param title タイトル
+	 * @param views 閲覧数
+	 * @param score スコア
+	 */
+	public record Article(long id, String title, int views, double score) {
+	}
+
+	/** 行数 */
+	@Param({ "100", "10000" })
+	public int rows;
+
+	/** データソース */
+	private DataSource dataSource;
+
+	/**
+	 * データソースを作成
+	 */
+	@Setup
+	public void setup() {
+		this.dataSource = new InMemoryDataSource(this.rows).proxy();
+	}
+
+	/**
+	 * 行ごとのMapに変換
+	 * @return 検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@Benchmark
+	public List<Map<String, Object>> get() throws SQLException, NamingException {
+		return new SqlBuilder().db(this.dataSource).table("article").get();
+	}
+
+	/**
+	 * レコードに変換
+	 * @return 検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@Benchmark
+	public List<Article> getRecord() throws SQLException, NamingException {
+		return new SqlBuilder().db(this.dataSource).table("article").get(Article.class);
+	}
+
+	/**
+	 * 1行ずつMapに変換して処理
+	 * @param blackhole 結果の破棄先
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@Benchmark
+	public void forEach(final Blackhole blackhole) throws SQLException, NamingException {
+		new SqlBuilder().db(this.dataSource).table("article").forEach(blackhole::consume);
+	}
+
+	/**
+	 * 列指向の検索結果に変換
+	 * @param blackhole 結果の破棄先
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@Benchmark
+	public void forEachBatch(final Blackhole blackhole) throws SQLException, NamingException {
+		new SqlBuilder().db(this.dataSource).table("article").forEachBatch(1024, batch -> {
+			long sum = 0;
+			long[] ids = batch.longs(0);
+			for (int i = 0; i < batch.size(); i++) {
+				sum += ids[i];
+			}
+			blackhole.consume(sum);
+		});
+	}
+
+}
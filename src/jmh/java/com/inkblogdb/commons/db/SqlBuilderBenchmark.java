@@ -0,0 +1,108 @@
+package com.inkblogdb.commons.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SQL生成のベンチマーク
+ * 条件の付与からSQL文字列の生成までを計測する
+ * 生成済みSQLのキャッシュは有効なまま計測するため、ステークホルダー使用時は2回目以降キャッシュから返却される
+ * @author ink-0x20
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlBuilderBenchmark {
+
+	/** ステークホルダー使用有無 */
+	@Param({ "true", "false" })
+	public boolean stakeHolder;
+
+	/** 挿入行数 */
+	@Param({ "10", "1000" })
+	public int insertRows;
+
+	/** 挿入データ */
+	private List<Map<String, Object>> insertDataList;
+
+	/**
+	 * 挿入データを作成
+	 */
+	@Setup
+	public void setup() {
+		this.insertDataList = new ArrayList<>(this.insertRows);
+		for (int i = 0; i < this.insertRows; i++) {
+			Map<String, Object> dataMap = new LinkedHashMap<>();
+			dataMap.put("id", Long.valueOf(i + 1L));
+			dataMap.put("title", "title-" + i);
+			dataMap.put("views", Integer.valueOf(i % 1000));
+			dataMap.put("score", Double.valueOf(i / 7.0));
+			this.insertDataList.add(dataMap);
+		}
+	}
+
+	/**
+	 * SELECTの生成
+	 * @return SQL
+	 */
+	@Benchmark
+	public String toSelectSQL() {
+		return new SqlBuilder()
+				.stakeHolder(this.stakeHolder)
+				.table("article")
+				.column("id", "title", "views")
+				.where("status", "open")
+				.where("views", ">=", "100")
+				.whereIn("category", "news", "tech", "life")
+				.orderByDesc("id")
+				.limit(20)
+				.toSelectSQL();
+	}
+
+	/**
+	 * 複数行のINSERTの生成
+	 * @return SQL
+	 */
+	@Benchmark
+	public String toInsertSQL() {
+		SqlBuilder builder = new SqlBuilder().stakeHolder(this.stakeHolder).table("article");
+		for (Map<String, Object> dataMap : this.insertDataList) {
+			builder.insertData(dataMap);
+		}
+		return builder.toInsertSQL();
+	}
+
+	/**
+	 * UPDATEの生成
+	 * @return SQL
+	 */
+	@Benchmark
+	public String toUpdateSQL() {
+		return new SqlBuilder()
+				.stakeHolder(this.stakeHolder)
+				.table("article")
+				.updateData("title", "updated")
+				.updateData("views", Integer.valueOf(0))
+				.where("id", Integer.valueOf(1))
+				.toUpdateSQL();
+	}
+
+}
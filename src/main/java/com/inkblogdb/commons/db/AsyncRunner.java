@@ -0,0 +1,155 @@
+package com.inkblogdb.commons.db;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * SQLの非同期実行
+ * 接続先ごとに同時実行数を制限し、コネクションプールを使い切らないようにする
+ * @author ink-0x20
+ */
+final class AsyncRunner {
+
+	/** 接続先ごとの同時実行数の制限 */
+	private static final Map<Object, Limit> LIMITS = new ConcurrentHashMap<>();
+
+	/**
+	 * インスタンス化不可
+	 */
+	private AsyncRunner() {
+	}
+
+	/**
+	 * 非同期に実行する処理
+	 * @author ink-0x20
+	 * @param <T> 実行結果の型
+	 */
+	@FunctionalInterface
+	interface Task<T> {
+
+		/**
+		 * 実行
+		 * @return 実行結果
+		 * @throws Exception
+		 */
+		T call() throws Exception;
+
+	}
+
+	/**
+	 * 同時実行数の制限
+	 * 実行中に同時実行数が変更された場合は、実行中の処理の完了を待たずに以降の取得から変更後の値で制限する
+	 * @author ink-0x20
+	 */
+	private static final class Limit extends Semaphore {
+
+		/** シリアルバージョンUID */
+		private static final long serialVersionUID = 1L;
+
+		/** 現在の同時実行数 */
+		private int permitSize = 0;
+
+		/**
+		 * コンストラクタ
+		 */
+		private Limit() {
+			super(0);
+		}
+
+		/**
+		 * 同時実行数を変更
+		 * @param concurrency 同時実行数
+		 */
+		private synchronized void resize(final int concurrency) {
+			if (this.permitSize < concurrency) {
+				release(concurrency - this.permitSize);
+			} else if (concurrency < this.permitSize) {
+				reducePermits(this.permitSize - concurrency);
+			}
+			this.permitSize = concurrency;
+		}
+
+	}
+
+	/**
+	 * デフォルトの実行環境
+	 * 仮想スレッドが使用できる場合は仮想スレッド、使用できない場合は空いたスレッドを再利用するデーモンスレッドのプールで実行する
+	 * @author ink-0x20
+	 */
+	private static final class DefaultExecutorHolder {
+
+		/** デフォルトの実行環境 */
+		private static final Executor EXECUTOR = create();
+
+		/**
+		 * デフォルトの実行環境を作成
+		 * @return 実行環境
+		 */
+		private static Executor create() {
+			try {
+				return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return Executors.newCachedThreadPool(runnable -> {
+					Thread thread = new Thread(runnable, "SqlBuilder-async");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+
+	}
+
+	/**
+	 * デフォルトの実行環境を取得
+	 * @return 実行環境
+	 */
+	static Executor defaultExecutor() {
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * 非同期に実行
+	 * 同時実行数の制限は実行環境のスレッド上で待機するため、呼び出し元はブロックしない
+	 * @param <T> 実行結果の型
+	 * @param executor 実行環境、nullの場合はデフォルト
+	 * @param limitKey 同時実行数を制限する単位となる接続先
+	 * @param concurrency 接続先ごとの同時実行数、接続先ごとに最後に指定された値で制限する
+	 * @param task 実行する処理
+	 * @return 実行結果
+	 */
+	static <T> CompletableFuture<T> run(final Executor executor, final Object limitKey, final int concurrency, final Task<T> task) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("concurrency must be positive");
+		}
+		Limit limit = LIMITS.computeIfAbsent(limitKey, key -> new Limit());
+		limit.resize(concurrency);
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Runnable runnable = () -> {
+			try {
+				limit.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.completeExceptionally(e);
+				return;
+			}
+			try {
+				future.complete(task.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				limit.release();
+			}
+		};
+		try {
+			(executor == null ? defaultExecutor() : executor).execute(runnable);
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+
+/**
+ * 列指向の検索結果を一定行数ずつ処理
+ * @author ink-0x20
+ */
+@FunctionalInterface
+public interface BatchConsumer {
+
+	/**
+	 * 一定行数分の検索結果を処理
+	 * 引数のインスタンスは次の行数分の格納に再利用される
+	 * @param batch 一定行数分の検索結果
+	 * @throws SQLException
+	 */
+	void accept(ColumnBatch batch) throws SQLException;
+
+}
@@ -0,0 +1,60 @@
+package com.inkblogdb.commons.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * DBごとのバルクロードの方法
+ * {@link SqlBuilder#bulkLoad(BulkLoadDialect)}で使用する
+ * 行はロード用のテキスト形式に変換しながらストリームでDBへ送信し、一時ファイルは作成しない
+ * @author ink-0x20
+ */
+public interface BulkLoadDialect {
+
+	/**
+	 * MySQLのLOAD DATA LOCAL INFILE
+	 * MySQL Connector/Jの接続URLにallowLoadLocalInfile=trueが必要
+	 * LOCALを指定するとIGNOREと同じ動作となり、一意キーが重複する行や変換できない値はエラーにならず、
+	 * 重複する行は警告のみで読み飛ばされる。ロードされなかった行は戻り値の行数で確認すること
+	 */
+	BulkLoadDialect MYSQL = new MySqlBulkLoadDialect();
+
+	/**
+	 * PostgreSQLのCOPY FROM STDIN
+	 * PostgreSQL JDBC DriverのCopyManagerを使用する
+	 * CopyManagerはクエリタイムアウトを設定できないため、トランザクション内のstatement_timeoutで制限する
+	 */
+	BulkLoadDialect POSTGRESQL = new PostgreSqlBulkLoadDialect();
+
+	/**
+	 * ロードのSQLを生成
+	 * @param table バッククォーテーションで囲んだテーブル、スキーマ指定時は`schema`.`table`
+	 * @param columns バッククォーテーションで囲んだカラム
+	 * @return SQL
+	 */
+	String toLoadSql(String table, List<String> columns);
+
+	/**
+	 * 1行分の値をロード用の形式で書き込む
+	 * @param out 書き込み先
+	 * @param values カラム順の値
+	 * @throws IOException
+	 */
+	void writeRow(OutputStream out, List<Object> values) throws IOException;
+
+	/**
+	 * ロードを実行
+	 * @param connection DB接続
+	 * @param sql {@link #toLoadSql(String, List)}で生成したSQL
+	 * @param input {@link #writeRow(OutputStream, List)}で書き込んだ行を読み込むストリーム
+	 * @param queryTimeout クエリタイムアウト（秒）、0の場合はドライバの既定値
+	 * @return ロードした行数
+	 * @throws SQLException
+	 */
+	long load(Connection connection, String sql, InputStream input, int queryTimeout) throws SQLException;
+
+}
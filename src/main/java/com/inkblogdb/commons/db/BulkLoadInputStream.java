@@ -0,0 +1,140 @@
+package com.inkblogdb.commons.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 行をバルクロード用の形式に変換しながら読み込むストリーム
+ * ドライバが読み込んだ分だけ行を変換するため、件数に関わらずメモリ使用量は一定
+ * @author ink-0x20
+ */
+final class BulkLoadInputStream extends InputStream {
+
+	/** 1回に変換する目安のバイト数 */
+	private static final int CHUNK_BYTES = 64 * 1024;
+
+	/**
+	 * 内部の配列を参照できるバッファ
+	 * @author ink-0x20
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+
+		/**
+		 * コンストラクタ
+		 */
+		Buffer() {
+			super(CHUNK_BYTES + 1024);
+		}
+
+		/**
+		 * 内部の配列を取得
+		 * @return 内部の配列
+		 */
+		byte[] array() {
+			return this.buf;
+		}
+
+	}
+
+	/** バルクロードの方法 */
+	private final BulkLoadDialect dialect;
+	/** カラム */
+	private final List<String> columns;
+	/** 1行目 */
+	private Map<String, Object> first;
+	/** 2行目以降 */
+	private final Iterator<? extends Map<String, Object>> rows;
+	/** 変換済みの行 */
+	private final Buffer buffer = new Buffer();
+	/** 読み込み位置 */
+	private int position = 0;
+	/** 変換した行数 */
+	private long rowCount = 0;
+
+	/**
+	 * コンストラクタ
+	 * @param dialect バルクロードの方法
+	 * @param columns カラム
+	 * @param first 1行目
+	 * @param rows 2行目以降
+	 */
+	BulkLoadInputStream(final BulkLoadDialect dialect, final List<String> columns, final Map<String, Object> first,
+			final Iterator<? extends Map<String, Object>> rows) {
+		this.dialect = dialect;
+		this.columns = columns;
+		this.first = first;
+		this.rows = rows;
+	}
+
+	/**
+	 * 未読み込みの変換済みの行がなければ次の行を変換
+	 * @return 読み込めるバイトがあるか否か
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		while (this.buffer.size() <= this.position) {
+			if (this.first == null && !this.rows.hasNext()) {
+				return false;
+			}
+			this.buffer.reset();
+			this.position = 0;
+			while (this.buffer.size() < CHUNK_BYTES) {
+				Map<String, Object> row;
+				if (this.first != null) {
+					row = this.first;
+					this.first = null;
+				} else if (this.rows.hasNext()) {
+					row = this.rows.next();
+				} else {
+					break;
+				}
+				this.dialect.writeRow(this.buffer, SqlBuilder.toInsertValues(this.columns, row));
+				this.rowCount++;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return this.buffer.array()[this.position++] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+		if (len == 0) {
+			return 0;
+		}
+		int total = 0;
+		while (total < len && fill()) {
+			int n = Math.min(len - total, this.buffer.size() - this.position);
+			System.arraycopy(this.buffer.array(), this.position, b, off + total, n);
+			this.position += n;
+			total += n;
+		}
+		return total == 0 ? -1 : total;
+	}
+
+	@Override
+	public int available() {
+		return this.buffer.size() - this.position;
+	}
+
+	/**
+	 * 変換した行数を取得
+	 * @return 行数
+	 */
+	long getRowCount() {
+		return this.rowCount;
+	}
+
+}
@@ -0,0 +1,342 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 検索結果の1行をレコードまたはPOJOに変換
+ * コンストラクタやフィールドのハンドルはクラスごとにキャッシュし、
+ * カラム位置は検索結果ごとに1回だけ解決する
+ * @author ink-0x20
+ * @param <T> 変換後の型
+ */
+final class ClassRowMapper<T> implements RowMapper<T> {
+
+	/** クラスごとの変換定義 */
+	private static final ClassValue<Definition> DEFINITIONS = new ClassValue<>() {
+		@Override
+		protected Definition computeValue(final Class<?> type) {
+			return Definition.of(type);
+		}
+	};
+
+	/** 変換後の型 */
+	private final Class<T> type;
+
+	/**
+	 * コンストラクタ
+	 * @param type 変換後の型
+	 */
+	ClassRowMapper(final Class<T> type) {
+		this.type = type;
+	}
+
+	@Override
+	public T map(final ResultSet resultSet) throws SQLException {
+		return prepare(resultSet.getMetaData()).map(resultSet);
+	}
+
+	@Override
+	public RowMapper<T> prepare(final ResultSetMetaData meta) throws SQLException {
+		Definition definition = DEFINITIONS.get(this.type);
+		// カラム名からカラム位置を解決
+		String[] columnNames = SqlBuilder.getColumnNames(meta);
+		Map<String, Integer> indexMap = new HashMap<>();
+		for (int i = 0; i < columnNames.length; i++) {
+			indexMap.putIfAbsent(normalize(columnNames[i]), i + 1);
+		}
+		int[] indexes = new int[definition.names.length];
+		for (int i = 0; i < indexes.length; i++) {
+			Integer index = indexMap.get(definition.names[i]);
+			indexes[i] = index == null ? 0 : index;
+		}
+		if (definition.isRecord) {
+			return resultSet -> definition.newRecord(resultSet, indexes);
+		}
+		return resultSet -> definition.newBean(resultSet, indexes);
+	}
+
+	/**
+	 * 名前を比較用に正規化
+	 * user_id, USER_ID, userId → userid
+	 * @param name 名前
+	 * @return 正規化した名前
+	 */
+	private static String normalize(final String name) {
+		return name.replace("_", "").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * 型に応じた取得処理
+	 * @author ink-0x20
+	 */
+	@FunctionalInterface
+	private interface ValueReader {
+
+		/**
+		 * 値を取得
+		 * @param resultSet 検索結果
+		 * @param index カラム位置
+		 * @return 値
+		 * @throws SQLException
+		 */
+		Object read(ResultSet resultSet, int index) throws SQLException;
+
+	}
+
+	/**
+	 * 型に応じた取得処理を返却
+	 * プリミティブ型は型指定のgetterで取得し、ラッパー型はNULLを判定する
+	 * charとCharacterは文字列の先頭の文字とし、NULLまたは空文字の場合は初期値またはnullとする
+	 * @param type 型
+	 * @return 取得処理
+	 */
+	@SuppressWarnings("boxing")
+	private static ValueReader readerOf(final Class<?> type) {
+		if (type == long.class) {
+			return ResultSet::getLong;
+		} else if (type == int.class) {
+			return ResultSet::getInt;
+		} else if (type == double.class) {
+			return ResultSet::getDouble;
+		} else if (type == float.class) {
+			return ResultSet::getFloat;
+		} else if (type == short.class) {
+			return ResultSet::getShort;
+		} else if (type == byte.class) {
+			return ResultSet::getByte;
+		} else if (type == boolean.class) {
+			return ResultSet::getBoolean;
+		} else if (type == char.class) {
+			return (resultSet, index) -> {
+				String value = resultSet.getString(index);
+				return value == null || value.isEmpty() ? '\0' : value.charAt(0);
+			};
+		} else if (type == Character.class) {
+			return (resultSet, index) -> {
+				String value = resultSet.getString(index);
+				return value == null || value.isEmpty() ? null : value.charAt(0);
+			};
+		} else if (type == Long.class) {
+			return (resultSet, index) -> {
+				long value = resultSet.getLong(index);
+				return resultSet.wasNull() ? null : value;
+			};
+		} else if (type == Integer.class) {
+			return (resultSet, index) -> {
+				int value = resultSet.getInt(index);
+				return resultSet.wasNull() ? null : value;
+			};
+		} else if (type == Double.class) {
+			return (resultSet, index) -> {
+				double value = resultSet.getDouble(index);
+				return resultSet.wasNull() ? null : value;
+			};
+		} else if (type == Boolean.class) {
+			return (resultSet, index) -> {
+				boolean value = resultSet.getBoolean(index);
+				return resultSet.wasNull() ? null : value;
+			};
+		} else if (type == String.class) {
+			return ResultSet::getString;
+		} else if (type == BigDecimal.class) {
+			return ResultSet::getBigDecimal;
+		} else if (type == Timestamp.class) {
+			return ResultSet::getTimestamp;
+		} else if (type == java.sql.Date.class) {
+			return ResultSet::getDate;
+		} else if (type == byte[].class) {
+			return ResultSet::getBytes;
+		} else if (type == LocalDateTime.class || type == LocalDate.class) {
+			return (resultSet, index) -> resultSet.getObject(index, type);
+		} else if (type == Object.class) {
+			return ResultSet::getObject;
+		} else {
+			return (resultSet, index) -> resultSet.getObject(index, type);
+		}
+	}
+
+	/**
+	 * プリミティブ型の初期値を返却
+	 * @param type 型
+	 * @return 初期値
+	 */
+	@SuppressWarnings("boxing")
+	private static Object defaultValue(final Class<?> type) {
+		if (!type.isPrimitive()) {
+			return null;
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == char.class) {
+			return '\0';
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0D;
+		} else if (type == float.class) {
+			return 0F;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		}
+		return 0;
+	}
+
+	/**
+	 * クラスごとの変換定義
+	 * @author ink-0x20
+	 */
+	private static final class Definition {
+
+		/** レコードか否か */
+		private final boolean isRecord;
+		/** 正規化したフィールド名 */
+		private final String[] names;
+		/** フィールドの取得処理 */
+		private final ValueReader[] readers;
+		/** カラムが存在しない場合の値 */
+		private final Object[] defaults;
+		/** コンストラクタ */
+		private final MethodHandle constructor;
+		/** フィールドのセッター（POJOのみ） */
+		private final MethodHandle[] setters;
+
+		/**
+		 * コンストラクタ
+		 * @param isRecord レコードか否か
+		 * @param names 正規化したフィールド名
+		 * @param types フィールドの型
+		 * @param constructor コンストラクタ
+		 * @param setters フィールドのセッター
+		 */
+		private Definition(final boolean isRecord, final String[] names, final Class<?>[] types, final MethodHandle constructor, final MethodHandle[] setters) {
+			this.isRecord = isRecord;
+			this.names = names;
+			this.readers = new ValueReader[types.length];
+			this.defaults = new Object[types.length];
+			for (int i = 0; i < types.length; i++) {
+				this.readers[i] = readerOf(types[i]);
+				this.defaults[i] = defaultValue(types[i]);
+			}
+			this.constructor = constructor;
+			this.setters = setters;
+		}
+
+		/**
+		 * 変換定義を作成
+		 * @param type 変換後の型
+		 * @return 変換定義
+		 */
+		private static Definition of(final Class<?> type) {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			try {
+				if (type.isRecord()) {
+					RecordComponent[] components = type.getRecordComponents();
+					String[] names = new String[components.length];
+					Class<?>[] types = new Class<?>[components.length];
+					for (int i = 0; i < components.length; i++) {
+						names[i] = normalize(components[i].getName());
+						types[i] = components[i].getType();
+					}
+					Constructor<?> constructor = type.getDeclaredConstructor(types);
+					constructor.setAccessible(true);
+					MethodHandle handle = lookup.unreflectConstructor(constructor)
+							.asSpreader(Object[].class, components.length);
+					return new Definition(true, names, types, handle, null);
+				}
+				List<Field> fields = new ArrayList<>();
+				for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+					for (Field field : c.getDeclaredFields()) {
+						int modifiers = field.getModifiers();
+						if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+							continue;
+						}
+						fields.add(field);
+					}
+				}
+				String[] names = new String[fields.size()];
+				Class<?>[] types = new Class<?>[fields.size()];
+				MethodHandle[] setters = new MethodHandle[fields.size()];
+				for (int i = 0; i < fields.size(); i++) {
+					Field field = fields.get(i);
+					field.setAccessible(true);
+					names[i] = normalize(field.getName());
+					types[i] = field.getType();
+					setters[i] = lookup.unreflectSetter(field);
+				}
+				Constructor<?> constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+				return new Definition(false, names, types, lookup.unreflectConstructor(constructor), setters);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new IllegalArgumentException("unsupported row type: " + type.getName(), e);
+			}
+		}
+
+		/**
+		 * レコードを作成
+		 * @param <T> 変換後の型
+		 * @param resultSet 検索結果
+		 * @param indexes フィールドごとのカラム位置（存在しない場合は0）
+		 * @return レコード
+		 * @throws SQLException
+		 */
+		@SuppressWarnings("unchecked")
+		private <T> T newRecord(final ResultSet resultSet, final int[] indexes) throws SQLException {
+			Object[] args = new Object[indexes.length];
+			for (int i = 0; i < indexes.length; i++) {
+				args[i] = indexes[i] == 0 ? this.defaults[i] : this.readers[i].read(resultSet, indexes[i]);
+			}
+			try {
+				return (T) this.constructor.invoke(args);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("failed to create row", e);
+			}
+		}
+
+		/**
+		 * POJOを作成
+		 * @param <T> 変換後の型
+		 * @param resultSet 検索結果
+		 * @param indexes フィールドごとのカラム位置（存在しない場合は0）
+		 * @return POJO
+		 * @throws SQLException
+		 */
+		@SuppressWarnings("unchecked")
+		private <T> T newBean(final ResultSet resultSet, final int[] indexes) throws SQLException {
+			try {
+				Object bean = this.constructor.invoke();
+				for (int i = 0; i < indexes.length; i++) {
+					if (indexes[i] != 0) {
+						this.setters[i].invoke(bean, this.readers[i].read(resultSet, indexes[i]));
+					}
+				}
+				return (T) bean;
+			} catch (SQLException | RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("failed to create row", e);
+			}
+		}
+
+	}
+
+}
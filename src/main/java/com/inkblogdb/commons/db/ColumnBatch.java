@@ -0,0 +1,368 @@
+package com.inkblogdb.commons.db;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * 列指向の検索結果
+ * 検索結果を一定行数ずつプリミティブ型の配列に格納し、値のボクシングを行わずに集計できるようにする
+ * 整数はlong[]またはint[]、浮動小数点数はdouble[]、それ以外は文字列として辞書と辞書番号のint[]に格納する
+ * DECIMALとNUMERICはdoubleでは精度が落ちるため、BigDecimal[]に格納する
+ * 符号なしのBIGINTはlongの範囲を超えるため、BigDecimal[]に格納する
+ * NULLはビットマップで管理し、NULLの場合の配列の値は0（BigDecimal[]の場合はnull）となる
+ * 同じインスタンスを次の行数分の格納に再利用するため、保持したい値は処理中に取り出すこと
+ * @author ink-0x20
+ */
+public final class ColumnBatch {
+
+	/**
+	 * 列の型
+	 * @author ink-0x20
+	 */
+	public enum ColumnType {
+		/** long[] */
+		LONG,
+		/** int[] */
+		INT,
+		/** double[] */
+		DOUBLE,
+		/** BigDecimal[] */
+		DECIMAL,
+		/** 辞書番号のint[]と辞書 */
+		STRING
+	}
+
+	/** 最大行数 */
+	private final int capacity;
+	/** カラム名 */
+	private final String[] columnNames;
+	/** 列の型 */
+	private final ColumnType[] columnTypes;
+	/** long[]の列 */
+	private final long[][] longColumns;
+	/** int[]の列（文字列の列は辞書番号） */
+	private final int[][] intColumns;
+	/** double[]の列 */
+	private final double[][] doubleColumns;
+	/** BigDecimal[]の列 */
+	private final BigDecimal[][] decimalColumns;
+	/** 文字列の列の辞書 */
+	private final List<List<String>> dictionaries;
+	/** 文字列の列の辞書番号 [ 文字列 => 辞書番号 ] */
+	private final List<Map<String, Integer>> dictionaryIndexes;
+	/** NULLのビットマップ */
+	private final long[][] nulls;
+	/** 格納済みの行数 */
+	private int size = 0;
+
+	/**
+	 * コンストラクタ
+	 * @param meta メタデータ
+	 * @param capacity 最大行数
+	 * @throws SQLException
+	 */
+	ColumnBatch(final ResultSetMetaData meta, final int capacity) throws SQLException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		int columnCount = meta.getColumnCount();
+		this.capacity = capacity;
+		this.columnNames = SqlBuilder.getColumnNames(meta);
+		this.columnTypes = new ColumnType[columnCount];
+		this.longColumns = new long[columnCount][];
+		this.intColumns = new int[columnCount][];
+		this.doubleColumns = new double[columnCount][];
+		this.decimalColumns = new BigDecimal[columnCount][];
+		this.dictionaries = new ArrayList<>(columnCount);
+		this.dictionaryIndexes = new ArrayList<>(columnCount);
+		this.nulls = new long[columnCount][(capacity + 63) >>> 6];
+		for (int i = 0; i < columnCount; i++) {
+			this.columnTypes[i] = toColumnType(meta.getColumnType(i + 1), meta.isSigned(i + 1));
+			switch (this.columnTypes[i]) {
+			case LONG:
+				this.longColumns[i] = new long[capacity];
+				break;
+			case DOUBLE:
+				this.doubleColumns[i] = new double[capacity];
+				break;
+			case DECIMAL:
+				this.decimalColumns[i] = new BigDecimal[capacity];
+				break;
+			default:
+				this.intColumns[i] = new int[capacity];
+				break;
+			}
+			this.dictionaries.add(this.columnTypes[i] == ColumnType.STRING ? new ArrayList<>() : null);
+			this.dictionaryIndexes.add(this.columnTypes[i] == ColumnType.STRING ? new HashMap<>() : null);
+		}
+	}
+
+	/**
+	 * JDBCの型を列の型に変換
+	 * @param sqlType JDBCの型
+	 * @param isSigned 符号付きか否か
+	 * @return 列の型
+	 */
+	private static ColumnType toColumnType(final int sqlType, final boolean isSigned) {
+		switch (sqlType) {
+		case Types.BIGINT:
+			// 符号なしのBIGINTはlongの最大値を超える値を取得できないため、BigDecimalで格納
+			return isSigned ? ColumnType.LONG : ColumnType.DECIMAL;
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return ColumnType.INT;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return ColumnType.DOUBLE;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return ColumnType.DECIMAL;
+		default:
+			return ColumnType.STRING;
+		}
+	}
+
+	/**
+	 * 検索結果を最大行数まで格納
+	 * 前回格納した値は破棄する
+	 * @param resultSet 検索結果
+	 * @return 格納した行数、0の場合は検索結果の終端
+	 * @throws SQLException
+	 */
+	int fill(final ResultSet resultSet) throws SQLException {
+		clear();
+		while (this.size < this.capacity && resultSet.next()) {
+			int row = this.size;
+			for (int i = 0; i < this.columnTypes.length; i++) {
+				int index = i + 1;
+				switch (this.columnTypes[i]) {
+				case LONG:
+					this.longColumns[i][row] = resultSet.getLong(index);
+					break;
+				case INT:
+					this.intColumns[i][row] = resultSet.getInt(index);
+					break;
+				case DOUBLE:
+					this.doubleColumns[i][row] = resultSet.getDouble(index);
+					break;
+				case DECIMAL:
+					this.decimalColumns[i][row] = resultSet.getBigDecimal(index);
+					break;
+				default:
+					String value = resultSet.getString(index);
+					this.intColumns[i][row] = value == null ? 0 : encode(i, value);
+					break;
+				}
+				if (resultSet.wasNull()) {
+					this.nulls[i][row >>> 6] |= 1L << row;
+				}
+			}
+			this.size++;
+		}
+		return this.size;
+	}
+
+	/**
+	 * 文字列を辞書番号に変換
+	 * @param column 列番号
+	 * @param value 文字列
+	 * @return 辞書番号
+	 */
+	@SuppressWarnings("boxing")
+	private int encode(final int column, final String value) {
+		List<String> dictionary = this.dictionaries.get(column);
+		return this.dictionaryIndexes.get(column).computeIfAbsent(value, v -> {
+			dictionary.add(v);
+			return dictionary.size() - 1;
+		});
+	}
+
+	/**
+	 * 格納済みの値を破棄
+	 */
+	private void clear() {
+		for (int i = 0; i < this.columnTypes.length; i++) {
+			Arrays.fill(this.nulls[i], 0L);
+			if (this.columnTypes[i] == ColumnType.STRING) {
+				this.dictionaries.get(i).clear();
+				this.dictionaryIndexes.get(i).clear();
+			} else if (this.columnTypes[i] == ColumnType.DECIMAL) {
+				// 前回の値を参照し続けないよう破棄
+				Arrays.fill(this.decimalColumns[i], null);
+			}
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * 格納済みの行数を取得
+	 * @return 行数
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * 列数を取得
+	 * @return 列数
+	 */
+	public int columnCount() {
+		return this.columnNames.length;
+	}
+
+	/**
+	 * カラム名から列番号を取得
+	 * @param columnName カラム名
+	 * @return 列番号、存在しない場合は-1
+	 */
+	public int columnIndex(final String columnName) {
+		for (int i = 0; i < this.columnNames.length; i++) {
+			if (this.columnNames[i].equalsIgnoreCase(columnName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * カラム名を取得
+	 * @param column 列番号
+	 * @return カラム名
+	 */
+	public String columnName(final int column) {
+		return this.columnNames[column];
+	}
+
+	/**
+	 * 列の型を取得
+	 * @param column 列番号
+	 * @return 列の型
+	 */
+	public ColumnType columnType(final int column) {
+		return this.columnTypes[column];
+	}
+
+	/**
+	 * NULLか否か
+	 * @param column 列番号
+	 * @param row 行番号
+	 * @return NULLか否か
+	 */
+	public boolean isNull(final int column, final int row) {
+		return (this.nulls[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * NULLのビットマップを取得
+	 * 行番号rowのNULLは (bitmap[row &gt;&gt;&gt; 6] &amp; (1L &lt;&lt; row)) != 0
+	 * @param column 列番号
+	 * @return NULLのビットマップ
+	 */
+	public long[] nulls(final int column) {
+		return this.nulls[column];
+	}
+
+	/**
+	 * long[]の列を取得
+	 * 有効な値はsize()までで、NULLの場合は0
+	 * @param column 列番号
+	 * @return 値
+	 */
+	public long[] longs(final int column) {
+		checkType(column, ColumnType.LONG);
+		return this.longColumns[column];
+	}
+
+	/**
+	 * int[]の列を取得
+	 * 有効な値はsize()までで、NULLの場合は0
+	 * @param column 列番号
+	 * @return 値
+	 */
+	public int[] ints(final int column) {
+		checkType(column, ColumnType.INT);
+		return this.intColumns[column];
+	}
+
+	/**
+	 * double[]の列を取得
+	 * 有効な値はsize()までで、NULLの場合は0
+	 * @param column 列番号
+	 * @return 値
+	 */
+	public double[] doubles(final int column) {
+		checkType(column, ColumnType.DOUBLE);
+		return this.doubleColumns[column];
+	}
+
+	/**
+	 * BigDecimal[]の列を取得
+	 * 有効な値はsize()までで、NULLの場合はnull
+	 * @param column 列番号
+	 * @return 値
+	 */
+	public BigDecimal[] decimals(final int column) {
+		checkType(column, ColumnType.DECIMAL);
+		return this.decimalColumns[column];
+	}
+
+	/**
+	 * 文字列の列の辞書番号を取得
+	 * 有効な値はsize()までで、NULLの場合は0
+	 * @param column 列番号
+	 * @return 辞書番号
+	 */
+	public int[] codes(final int column) {
+		checkType(column, ColumnType.STRING);
+		return this.intColumns[column];
+	}
+
+	/**
+	 * 文字列の列の辞書を取得
+	 * @param column 列番号
+	 * @return 辞書、辞書番号の位置に文字列が格納されている
+	 */
+	public List<String> dictionary(final int column) {
+		checkType(column, ColumnType.STRING);
+		return this.dictionaries.get(column);
+	}
+
+	/**
+	 * 文字列を取得
+	 * @param column 列番号
+	 * @param row 行番号
+	 * @return 文字列、NULLの場合はnull
+	 */
+	public String getString(final int column, final int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		return dictionary(column).get(this.intColumns[column][row]);
+	}
+
+	/**
+	 * 列の型を確認
+	 * @param column 列番号
+	 * @param type 列の型
+	 */
+	private void checkType(final int column, final ColumnType type) {
+		if (this.columnTypes[column] != type) {
+			throw new IllegalArgumentException(StringUtils.join(this.columnNames[column], " is ", this.columnTypes[column].name()));
+		}
+	}
+
+}
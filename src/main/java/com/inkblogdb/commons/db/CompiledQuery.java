@@ -0,0 +1,315 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+/**
+ * コンパイル済みのSQL
+ * {@link SqlBuilder#compile()}、{@link SqlBuilder#compileUpdate()}、{@link SqlBuilder#compileDelete()}で作成する
+ * SQLとステークホルダーの数は作成時に確定し、実行ごとに値のみを差し替える
+ * 状態を変更しないため、複数スレッドから同時に実行できる
+ * 実行ごとにDB接続を取得してクローズし、トランザクションと検索結果のキャッシュは使用しない
+ * @author ink-0x20
+ */
+public final class CompiledQuery {
+
+	/** 接続情報 */
+	private final SqlBuilder template;
+	/** SQLの種類 */
+	private final QueryEvent.Kind kind;
+	/** テーブル */
+	private final String table;
+	/** SQL */
+	private final String sql;
+	/** 作成時のステークホルダーの値 */
+	private final List<Object> values;
+	/** 検索用のDB接続を使用するか否か */
+	private final boolean isRead;
+
+	/**
+	 * コンストラクタ
+	 * @param template 接続情報
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 * @param sql SQL
+	 * @param values 作成時のステークホルダーの値
+	 * @param isRead 検索用のDB接続を使用するか否か
+	 */
+	CompiledQuery(final SqlBuilder template, final QueryEvent.Kind kind, final String table, final String sql,
+			final List<Object> values, final boolean isRead) {
+		this.template = template;
+		this.kind = kind;
+		this.table = table;
+		this.sql = sql;
+		this.values = Collections.unmodifiableList(new ArrayList<>(values));
+		this.isRead = isRead;
+	}
+
+	/**
+	 * SQLを取得
+	 * @return SQL
+	 */
+	public String getSql() {
+		return this.sql;
+	}
+
+	/**
+	 * ステークホルダーの数を取得
+	 * @return ステークホルダーの数
+	 */
+	public int getParameterCount() {
+		return this.values.size();
+	}
+
+	/**
+	 * 作成時のステークホルダーの値を取得
+	 * @return 値
+	 */
+	public List<Object> getValues() {
+		return this.values;
+	}
+
+	/**
+	 * 実行に使用する値を返却
+	 * @param values 指定した値
+	 * @return 値、未指定の場合は作成時の値
+	 */
+	private List<Object> bind(final Object[] values) {
+		if (values.length == 0) {
+			return this.values;
+		}
+		if (values.length != this.values.size()) {
+			throw new IllegalArgumentException("parameter count does not match");
+		}
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * SQLの種類を確認
+	 * @param isSelect 検索か否か
+	 */
+	private void checkKind(final boolean isSelect) {
+		if (isSelect != (this.kind == QueryEvent.Kind.SELECT)) {
+			throw new IllegalStateException("query is " + this.kind);
+		}
+	}
+
+	/**
+	 * 複数の検索を実行
+	 * @param values ステークホルダーの値、未指定の場合は作成時の値
+	 * @return 複数の検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public List<Map<String, Object>> get(final Object... values) throws SQLException, NamingException {
+		List<Map<String, Object>> resultList = new ArrayList<>();
+		select(values, resultSet -> {
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
+			while (resultSet.next()) {
+				resultList.add(columns.read(resultSet));
+			}
+			return resultList.size();
+		});
+		return resultList;
+	}
+
+	/**
+	 * 1件のみ検索を実行
+	 * SQLは変更しないため、LIMITは作成時に指定すること
+	 * @param values ステークホルダーの値、未指定の場合は作成時の値
+	 * @return 1件のみの検索結果、該当なしの場合は空
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public Map<String, Object> getFirst(final Object... values) throws SQLException, NamingException {
+		List<Map<String, Object>> resultList = new ArrayList<>(1);
+		select(values, resultSet -> {
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
+			if (resultSet.next()) {
+				resultList.add(columns.read(resultSet));
+			}
+			return resultList.size();
+		});
+		return resultList.isEmpty() ? new LinkedHashMap<>() : resultList.get(0);
+	}
+
+	/**
+	 * 複数の検索を実行し、1行ずつ指定の型に変換
+	 * @param <T> 変換後の型
+	 * @param rowMapper 変換処理
+	 * @param values ステークホルダーの値、未指定の場合は作成時の値
+	 * @return 複数の検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public <T> List<T> get(final RowMapper<T> rowMapper, final Object... values) throws SQLException, NamingException {
+		List<T> resultList = new ArrayList<>();
+		select(values, resultSet -> {
+			RowMapper<T> mapper = rowMapper.prepare(resultSet.getMetaData());
+			while (resultSet.next()) {
+				resultList.add(mapper.map(resultSet));
+			}
+			return resultList.size();
+		});
+		return resultList;
+	}
+
+	/**
+	 * 検索を実行し、1行ずつ処理
+	 * @param consumer 1行ごとの処理
+	 * @param values ステークホルダーの値、未指定の場合は作成時の値
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public void forEach(final RowConsumer consumer, final Object... values) throws SQLException, NamingException {
+		select(values, resultSet -> {
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
+			long rowCount = 0;
+			while (resultSet.next()) {
+				consumer.accept(columns.read(resultSet));
+				rowCount++;
+			}
+			return rowCount;
+		});
+	}
+
+	/**
+	 * 更新または削除を実行してコミット
+	 * 失敗した場合はロールバックし、作成元の{@link SqlBuilder#retry(RetryPolicy)}の方針で再実行する
+	 * @param values ステークホルダーの値、未指定の場合は作成時の値
+	 * @return 更新行数
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public int execute(final Object... values) throws SQLException, NamingException {
+		checkKind(false);
+		List<Object> bound = bind(values);
+		RetryPolicy retryPolicy = this.template.getRetryPolicy();
+		int attempt = 1;
+		while (true) {
+			// 複数スレッドから同時に実行するため、コミット中か否かは実行ごとに保持
+			boolean isCommitting = false;
+			QueryTrace trace = QueryTrace.start(this.kind, this.table);
+			try (Connection connection = this.template.openConnection()) {
+				if (trace != null) {
+					trace.mark(QueryEvent.Phase.ACQUIRE);
+				}
+				try {
+					int count;
+					try (PreparedStatement preparedStatement = this.template.prepareStatement(connection, this.sql)) {
+						if (trace != null) {
+							trace.prepared(this.sql);
+							trace.parameters(bound.size());
+						}
+						this.template.setStatementValues(preparedStatement, 1, bound);
+						count = preparedStatement.executeUpdate();
+						if (trace != null) {
+							trace.executed(1);
+							trace.rows(count);
+						}
+					}
+					isCommitting = true;
+					connection.commit();
+					isCommitting = false;
+					if (trace != null) {
+						trace.mark(QueryEvent.Phase.COMMIT);
+					}
+					this.template.afterWrite();
+					return count;
+				} catch (SQLException | RuntimeException e) {
+					this.template.rollback(connection, e);
+					throw e;
+				}
+			} catch (SQLException e) {
+				if (trace != null) {
+					trace.fail(e);
+				}
+				if (retryPolicy == null || !retryPolicy.shouldRetry(e, attempt, isCommitting) || !retryPolicy.await(attempt)) {
+					throw e;
+				}
+			} catch (NamingException | RuntimeException | Error e) {
+				if (trace != null) {
+					trace.fail(e);
+				}
+				throw e;
+			} finally {
+				if (trace != null) {
+					trace.finish();
+				}
+			}
+			attempt++;
+		}
+	}
+
+	/**
+	 * 検索結果の処理
+	 * @author ink-0x20
+	 */
+	@FunctionalInterface
+	private interface ResultHandler {
+
+		/**
+		 * 検索結果を処理
+		 * @param resultSet 検索結果
+		 * @return 処理した行数
+		 * @throws SQLException
+		 */
+		long handle(ResultSet resultSet) throws SQLException;
+
+	}
+
+	/**
+	 * 検索を実行
+	 * @param values ステークホルダーの値
+	 * @param handler 検索結果の処理
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	private void select(final Object[] values, final ResultHandler handler) throws SQLException, NamingException {
+		checkKind(true);
+		List<Object> bound = bind(values);
+		QueryTrace trace = QueryTrace.start(this.kind, this.table);
+		try (Connection connection = this.isRead ? this.template.openReadConnection() : this.template.openConnection()) {
+			if (trace != null) {
+				trace.mark(QueryEvent.Phase.ACQUIRE);
+			}
+			try (PreparedStatement preparedStatement = this.template.prepareSelectStatement(connection, this.sql)) {
+				if (trace != null) {
+					trace.prepared(this.sql);
+					trace.parameters(bound.size());
+				}
+				this.template.setStatementValues(preparedStatement, 1, bound);
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					if (trace != null) {
+						trace.executed(0);
+					}
+					long rowCount = handler.handle(resultSet);
+					if (trace != null) {
+						trace.rows(rowCount);
+						trace.mark(QueryEvent.Phase.FETCH);
+					}
+				}
+			}
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			if (trace != null) {
+				trace.fail(e);
+			}
+			throw e;
+		} finally {
+			if (trace != null) {
+				trace.finish();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,575 @@
+package com.inkblogdb.commons.db;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * JNDIを使用しない軽量なコネクションプール
+ * DriverManagerで作成したDB接続を保持し、クローズ時に破棄せずプールへ返却する
+ * 貸出数はセマフォで制限し、未使用のDB接続はロックを使用しない両端キューで管理する
+ * @author ink-0x20
+ */
+public final class ConnectionPool implements DataSource, AutoCloseable {
+
+	/** 接続情報ごとの共有プール */
+	private static final Map<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+	/** 返却時に作成時の値へ戻す設定を変更するメソッド */
+	private static final Set<String> SETTING_METHODS = Set.of("setAutoCommit", "setReadOnly", "setTransactionIsolation", "setCatalog");
+
+	/** 接続URL */
+	private final String url;
+	/** 接続ユーザ */
+	private final String user;
+	/** 接続パスワード */
+	private final String password;
+
+	/** 最大接続数 */
+	private volatile int maxSize = 10;
+	/** 未使用のまま破棄するまでの時間（ミリ秒） */
+	private volatile long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+	/** 貸出待ちの最大時間（ミリ秒） */
+	private volatile long maxWaitMillis = TimeUnit.SECONDS.toMillis(30);
+	/** 貸出時の検証の最大時間（秒） */
+	private volatile int validationTimeoutSeconds = 5;
+
+	/** 貸出数の制限 */
+	private final ResizableSemaphore permits = new ResizableSemaphore();
+	/** 貸出数の制限の現在値 */
+	private int permitSize = 0;
+	/** 未使用のDB接続（先頭が最近返却されたもの） */
+	private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+	/** 作成済みのDB接続数 */
+	private final AtomicInteger totalCount = new AtomicInteger();
+	/** クローズ済みか否か */
+	private volatile boolean isClosed = false;
+
+	/** 貸出回数 */
+	private final LongAdder borrowCount = new LongAdder();
+	/** 貸出待ち時間の合計（ナノ秒） */
+	private final LongAdder totalWaitNanos = new LongAdder();
+	/** 貸出待ち時間の最大（ナノ秒） */
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	/** 貸出待ちのタイムアウト回数 */
+	private final LongAdder timeoutCount = new LongAdder();
+	/** DB接続の作成回数 */
+	private final LongAdder createCount = new LongAdder();
+
+	/**
+	 * コンストラクタ
+	 * @param url 接続URL
+	 * @param user 接続ユーザ
+	 * @param password 接続パスワード
+	 */
+	public ConnectionPool(final String url, final String user, final String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		maxSize(this.maxSize);
+	}
+
+	/**
+	 * 接続情報ごとの共有プールを取得
+	 * 存在しない場合はデフォルト設定で作成
+	 * @param url 接続URL
+	 * @param user 接続ユーザ
+	 * @param password 接続パスワード
+	 * @return {@link ConnectionPool}
+	 */
+	public static ConnectionPool of(final String url, final String user, final String password) {
+		String key = String.join("\0", url, user, password);
+		ConnectionPool pool = POOLS.get(key);
+		if (pool == null || pool.isClosed) {
+			pool = POOLS.compute(key, (k, current) -> current == null || current.isClosed ? new ConnectionPool(url, user, password) : current);
+		}
+		return pool;
+	}
+
+	/**
+	 * 最大接続数を付与
+	 * @param maxSize 最大接続数
+	 * @return {@link ConnectionPool}
+	 */
+	public synchronized ConnectionPool maxSize(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		// 貸出中のDB接続に影響しないよう、差分だけ増減
+		if (this.permitSize < maxSize) {
+			this.permits.release(maxSize - this.permitSize);
+		} else if (maxSize < this.permitSize) {
+			this.permits.reducePermits(this.permitSize - maxSize);
+		}
+		this.permitSize = maxSize;
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * 未使用のまま破棄するまでの時間を付与
+	 * @param idleTimeout 未使用のまま破棄するまでの時間
+	 * @return {@link ConnectionPool}
+	 */
+	public ConnectionPool idleTimeout(final Duration idleTimeout) {
+		this.idleTimeoutMillis = idleTimeout.toMillis();
+		return this;
+	}
+
+	/**
+	 * 貸出待ちの最大時間を付与
+	 * @param maxWait 貸出待ちの最大時間
+	 * @return {@link ConnectionPool}
+	 */
+	public ConnectionPool maxWait(final Duration maxWait) {
+		this.maxWaitMillis = maxWait.toMillis();
+		return this;
+	}
+
+	/**
+	 * 貸出時の検証の最大時間を付与
+	 * 0の場合は検証しない
+	 * @param validationTimeoutSeconds 検証の最大時間（秒）
+	 * @return {@link ConnectionPool}
+	 */
+	public ConnectionPool validationTimeout(final int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		return this;
+	}
+
+	/**
+	 * DB接続を貸出
+	 * 未使用のDB接続があれば検証して再利用し、なければ新規作成する
+	 * 最大接続数まで貸出中の場合は、返却されるまで待機する
+	 * @return DB接続、クローズ時にプールへ返却される
+	 * @throws SQLException
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (this.isClosed) {
+			throw new SQLException("connection pool is closed");
+		}
+		acquirePermit();
+		try {
+			evictIdle();
+			PooledConnection pooled;
+			while ((pooled = this.idleConnections.pollFirst()) != null) {
+				if (pooled.validate()) {
+					return pooled.borrow();
+				}
+				pooled.destroy();
+			}
+			pooled = new PooledConnection(DriverManager.getConnection(this.url, this.user, this.password));
+			this.totalCount.incrementAndGet();
+			this.createCount.increment();
+			return pooled.borrow();
+		} catch (SQLException | RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 貸出枠を取得し、待ち時間を記録
+	 * @throws SQLException
+	 */
+	private void acquirePermit() throws SQLException {
+		long start = System.nanoTime();
+		boolean isAcquired;
+		try {
+			isAcquired = this.permits.tryAcquire(this.maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted while waiting for connection", e);
+		}
+		long waitNanos = System.nanoTime() - start;
+		if (!isAcquired) {
+			this.timeoutCount.increment();
+			throw new SQLTimeoutException("timed out waiting for connection after " + this.maxWaitMillis + "ms");
+		}
+		this.borrowCount.increment();
+		this.totalWaitNanos.add(waitNanos);
+		this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+	}
+
+	/**
+	 * 返却されたDB接続をプールに戻す
+	 * @param pooled DB接続
+	 */
+	private void giveBack(final PooledConnection pooled) {
+		try {
+			if (this.isClosed || !pooled.reset() || this.maxSize <= this.idleConnections.size()) {
+				pooled.destroy();
+			} else {
+				this.idleConnections.offerFirst(pooled);
+			}
+		} finally {
+			this.permits.release();
+		}
+		evictIdle();
+	}
+
+	/**
+	 * 未使用のまま一定時間経過したDB接続を破棄
+	 * 最も古いものは末尾にあるため、末尾から順に確認する
+	 */
+	public void evictIdle() {
+		long expired = System.currentTimeMillis() - this.idleTimeoutMillis;
+		PooledConnection pooled;
+		while ((pooled = this.idleConnections.peekLast()) != null && pooled.lastUsedMillis < expired) {
+			if (this.idleConnections.removeLastOccurrence(pooled)) {
+				pooled.destroy();
+			}
+		}
+	}
+
+	/**
+	 * プールをクローズ
+	 * 未使用のDB接続は即座に、貸出中のDB接続は返却時にクローズする
+	 */
+	@Override
+	public void close() {
+		this.isClosed = true;
+		PooledConnection pooled;
+		while ((pooled = this.idleConnections.pollFirst()) != null) {
+			pooled.destroy();
+		}
+	}
+
+	/**
+	 * 貸出回数を取得
+	 * @return 貸出回数
+	 */
+	public long getBorrowCount() {
+		return this.borrowCount.sum();
+	}
+
+	/**
+	 * 貸出待ち時間の合計を取得
+	 * @return 貸出待ち時間の合計（ナノ秒）
+	 */
+	public long getTotalWaitNanos() {
+		return this.totalWaitNanos.sum();
+	}
+
+	/**
+	 * 貸出待ち時間の最大を取得
+	 * @return 貸出待ち時間の最大（ナノ秒）
+	 */
+	public long getMaxWaitNanos() {
+		return this.maxWaitNanos.get();
+	}
+
+	/**
+	 * 貸出待ち時間の平均を取得
+	 * @return 貸出待ち時間の平均（ナノ秒）
+	 */
+	public long getAverageWaitNanos() {
+		long count = getBorrowCount();
+		return count == 0 ? 0 : getTotalWaitNanos() / count;
+	}
+
+	/**
+	 * 貸出待ちのタイムアウト回数を取得
+	 * @return タイムアウト回数
+	 */
+	public long getTimeoutCount() {
+		return this.timeoutCount.sum();
+	}
+
+	/**
+	 * DB接続の作成回数を取得
+	 * @return 作成回数
+	 */
+	public long getCreateCount() {
+		return this.createCount.sum();
+	}
+
+	/**
+	 * 作成済みのDB接続数を取得
+	 * @return DB接続数
+	 */
+	public int getTotalCount() {
+		return this.totalCount.get();
+	}
+
+	/**
+	 * 未使用のDB接続数を取得
+	 * @return 未使用のDB接続数
+	 */
+	public int getIdleCount() {
+		return this.idleConnections.size();
+	}
+
+	/**
+	 * 貸出中のDB接続数を取得
+	 * @return 貸出中のDB接続数
+	 */
+	public int getActiveCount() {
+		return this.maxSize - this.permits.availablePermits();
+	}
+
+	@Override
+	public Connection getConnection(final String username, final String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("connection pool does not support other users");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(final PrintWriter out) throws SQLException {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(final int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(final Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	/**
+	 * 最大数を変更可能なセマフォ
+	 * @author ink-0x20
+	 */
+	private static final class ResizableSemaphore extends Semaphore {
+
+		/** シリアルバージョンUID */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * コンストラクタ
+		 */
+		private ResizableSemaphore() {
+			super(0);
+		}
+
+		@Override
+		protected void reducePermits(final int reduction) {
+			super.reducePermits(reduction);
+		}
+
+	}
+
+	/**
+	 * プールやレプリカの振り分けが貸し出すDB接続
+	 * ステートメントキャッシュなどで、貸出をまたいで同じDB接続か判定するために使用
+	 * @author ink-0x20
+	 */
+	interface Pooled {
+
+		/**
+		 * 実体のDB接続を取得
+		 * 貸出ごとに異なるプロキシでも、同じ実体であれば同じインスタンスを返却する
+		 * 返却したDB接続がさらにPooledの場合は、利用側で繰り返し取得する
+		 * @return 実体のDB接続
+		 */
+		Connection getPhysicalConnection();
+
+	}
+
+	/**
+	 * プールが管理するDB接続
+	 * 貸出ごとに新しいプロキシを返却し、プロキシのクローズでプールへ返却する
+	 * 返却済みのプロキシは、同じ実体が別の利用者に貸し出された後もクローズ済みとして扱う
+	 * @author ink-0x20
+	 */
+	private final class PooledConnection {
+
+		/** DB接続の実体 */
+		private final Connection connection;
+		/** 作成時の自動コミット */
+		private final boolean autoCommit;
+		/** 作成時の読み取り専用 */
+		private final boolean readOnly;
+		/** 作成時のトランザクション分離レベル */
+		private final int isolation;
+		/** 作成時のカタログ */
+		private final String catalog;
+		/** 貸出ごとに増える世代、プロキシは貸出時の世代と一致する間のみ使用できる */
+		private volatile long generation = 0;
+		/** 貸出中か否か */
+		private volatile boolean isBorrowed = false;
+		/** 貸出中に設定が変更されたか否か */
+		private volatile boolean isDirty = false;
+		/** 最終使用日時（ミリ秒） */
+		private volatile long lastUsedMillis = System.currentTimeMillis();
+
+		/**
+		 * コンストラクタ
+		 * @param connection DB接続の実体
+		 * @throws SQLException
+		 */
+		private PooledConnection(final Connection connection) throws SQLException {
+			this.connection = connection;
+			this.autoCommit = connection.getAutoCommit();
+			this.readOnly = connection.isReadOnly();
+			this.isolation = connection.getTransactionIsolation();
+			this.catalog = connection.getCatalog();
+		}
+
+		/**
+		 * 貸出
+		 * @return 利用者に返却するDB接続
+		 */
+		private synchronized Connection borrow() {
+			long borrowed = ++this.generation;
+			this.isBorrowed = true;
+			return (Connection) Proxy.newProxyInstance(
+					ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class, Pooled.class },
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (release(borrowed)) {
+								giveBack(this);
+							}
+							return null;
+						case "isClosed":
+							return !isBorrowedBy(borrowed) || this.connection.isClosed();
+						case "getPhysicalConnection":
+							return this.connection;
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "toString":
+							return "Pooled" + this.connection;
+						default:
+							if (!isBorrowedBy(borrowed)) {
+								throw new SQLException("connection is closed");
+							}
+							if (SETTING_METHODS.contains(method.getName())) {
+								this.isDirty = true;
+							}
+							try {
+								return method.invoke(this.connection, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+						}
+					});
+		}
+
+		/**
+		 * 指定した世代で貸出中か否か
+		 * @param borrowed 貸出時の世代
+		 * @return 貸出中か否か
+		 */
+		private boolean isBorrowedBy(final long borrowed) {
+			return this.isBorrowed && this.generation == borrowed;
+		}
+
+		/**
+		 * 返却
+		 * @param borrowed 貸出時の世代
+		 * @return 指定した世代で貸出中だった場合はtrue、返却済みの場合はfalse
+		 */
+		private synchronized boolean release(final long borrowed) {
+			if (!isBorrowedBy(borrowed)) {
+				return false;
+			}
+			this.isBorrowed = false;
+			return true;
+		}
+
+		/**
+		 * 貸出可能か検証
+		 * @return 貸出可能か否か
+		 */
+		private boolean validate() {
+			try {
+				if (this.connection.isClosed()) {
+					return false;
+				}
+				return ConnectionPool.this.validationTimeoutSeconds <= 0
+						|| this.connection.isValid(ConnectionPool.this.validationTimeoutSeconds);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * 返却時に未確定のトランザクションを破棄し、変更された設定を作成時の値に戻す
+		 * @return 再利用可能か否か
+		 */
+		private boolean reset() {
+			this.lastUsedMillis = System.currentTimeMillis();
+			try {
+				if (this.connection.isClosed()) {
+					return false;
+				}
+				if (!this.connection.getAutoCommit()) {
+					this.connection.rollback();
+				}
+				if (this.isDirty) {
+					this.connection.setAutoCommit(this.autoCommit);
+					this.connection.setReadOnly(this.readOnly);
+					this.connection.setTransactionIsolation(this.isolation);
+					if (this.catalog != null) {
+						this.connection.setCatalog(this.catalog);
+					}
+					this.isDirty = false;
+				}
+				return true;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * DB接続の実体をクローズ
+		 */
+		private void destroy() {
+			ConnectionPool.this.totalCount.decrementAndGet();
+			try {
+				this.connection.close();
+			} catch (SQLException e) {
+				// 破棄するだけなので無視
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,622 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.naming.NamingException;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * カウンタの加算をメモリ上で集計し、まとめてDBへ反映する
+ * 加算はスレッドごとに分散した領域に記録し、一定時間ごと、または一定キー数ごとにバックグラウンドで
+ * テーブル、キー、カウンタのカラムごとに1つのUPSERTにまとめて1回のトランザクションで反映する
+ * 未反映のキー数が上限に達した場合は、新しいキーの加算をバックグラウンドの反映で空きができるまで待機させ、
+ * 待機の最大時間を過ぎた場合は加算せずに例外とする（集計中の既存のキーへの加算は待機しない）
+ * 反映に失敗した場合は集計した値を戻し、次回の反映で再度実行する
+ * ただしコミット中の失敗はDBに反映されたか不明なため、二重に加算しないよう値を戻さずに破棄し、
+ * {@link #getInDoubtCount()}と{@link #getLastError()}で通知する（コミット中の失敗では加算が失われることがある）
+ * 戻した値も未反映のキー数に含めるため、DBに接続できない間もキー数は上限を超えない
+ * クローズ時に未反映の値を全て反映する
+ * @author ink-0x20
+ */
+public final class CounterAggregator implements AutoCloseable {
+
+	/** 分散数（CPU数の4倍以上の2の累乗） */
+	private static final int STRIPE_COUNT = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+
+	/** 接続情報と設定の引き継ぎ元 */
+	private final SqlBuilder template;
+	/** スレッドごとに分散した集計領域 */
+	private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+	/** 反映中を含む未反映のキー数 */
+	private final AtomicInteger pendingKeys = new AtomicInteger();
+	/** 反映処理の排他 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+	/** バックグラウンドの反映の待機 */
+	private final Object monitor = new Object();
+	/** 未反映のキー数の空きの待機 */
+	private final Object capacity = new Object();
+	/** バックグラウンドの反映が要求されたか否か（monitorで排他） */
+	private boolean isFlushRequested = false;
+	/** バックグラウンドの反映を開始済みか否か */
+	private final AtomicBoolean isStarted = new AtomicBoolean(false);
+	/** バックグラウンドの反映 */
+	private volatile Thread flusher = null;
+	/** クローズ済みか否か */
+	private volatile boolean isClosed = false;
+
+	/** 反映間隔（ミリ秒） */
+	private volatile long flushIntervalMillis = TimeUnit.SECONDS.toMillis(1);
+	/** 反映を開始するキー数 */
+	private volatile int flushKeys = 1000;
+	/** 未反映のキー数の上限 */
+	private volatile int maxPendingKeys = 100000;
+	/** 未反映のキー数の空き待ちの最大時間（ミリ秒） */
+	private volatile long maxWaitMillis = TimeUnit.SECONDS.toMillis(5);
+
+	/** 反映回数 */
+	private final LongAdder flushCount = new LongAdder();
+	/** 反映したキー数 */
+	private final LongAdder flushedKeyCount = new LongAdder();
+	/** 反映の失敗回数 */
+	private final LongAdder failureCount = new LongAdder();
+	/** コミット中に失敗し、反映されたか不明なまま破棄した回数 */
+	private final LongAdder inDoubtCount = new LongAdder();
+	/** バックグラウンドの反映、またはコミット中の失敗で最後に発生した例外 */
+	private volatile Exception lastError = null;
+
+	/**
+	 * 集計のキー
+	 * @param table テーブル
+	 * @param keys 一意キー [ カラム => 値 ]
+	 * @param column カウンタのカラム
+	 */
+	private record CounterKey(String table, Map<String, Object> keys, String column) {
+	}
+
+	/**
+	 * 1回のUPSERTにまとめる単位
+	 * @param table テーブル
+	 * @param keyColumns 一意キーのカラム
+	 * @param column カウンタのカラム
+	 */
+	private record FlushGroup(String table, List<String> keyColumns, String column) {
+	}
+
+	/**
+	 * 集計領域から取り出した集計値
+	 * @param counters 集計値 [ キー => 集計値 ]
+	 * @param entryCount 取り出した集計領域のキー数（分散先ごとに数える）
+	 */
+	private record Drained(Map<CounterKey, Long> counters, int entryCount) {
+	}
+
+	/**
+	 * 分散した集計領域
+	 * @author ink-0x20
+	 */
+	private static final class Stripe {
+
+		/** 排他 */
+		private final ReentrantLock lock = new ReentrantLock();
+		/** 集計値 [ キー => 集計値 ] */
+		private Map<CounterKey, long[]> counters = new HashMap<>();
+
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param template 接続情報と設定を指定した{@link SqlBuilder}
+	 */
+	public CounterAggregator(final SqlBuilder template) {
+		this.template = template;
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * 反映間隔を付与
+	 * @param flushInterval 反映間隔
+	 * @return {@link CounterAggregator}
+	 */
+	public CounterAggregator flushInterval(final Duration flushInterval) {
+		if (flushInterval.toMillis() <= 0) {
+			throw new IllegalArgumentException("flushInterval must be positive");
+		}
+		this.flushIntervalMillis = flushInterval.toMillis();
+		return this;
+	}
+
+	/**
+	 * 反映間隔を待たずに反映を開始するキー数を付与
+	 * @param flushKeys キー数
+	 * @return {@link CounterAggregator}
+	 */
+	public CounterAggregator flushKeys(final int flushKeys) {
+		if (flushKeys <= 0) {
+			throw new IllegalArgumentException("flushKeys must be positive");
+		}
+		this.flushKeys = flushKeys;
+		return this;
+	}
+
+	/**
+	 * 未反映のキー数の上限を付与
+	 * 上限に達した場合は、新しいキーの加算を反映で空きができるまで待機させる
+	 * @param maxPendingKeys キー数
+	 * @return {@link CounterAggregator}
+	 */
+	public CounterAggregator maxPendingKeys(final int maxPendingKeys) {
+		if (maxPendingKeys <= 0) {
+			throw new IllegalArgumentException("maxPendingKeys must be positive");
+		}
+		this.maxPendingKeys = maxPendingKeys;
+		return this;
+	}
+
+	/**
+	 * 未反映のキー数の空き待ちの最大時間を付与
+	 * @param maxWait 空き待ちの最大時間
+	 * @return {@link CounterAggregator}
+	 */
+	public CounterAggregator maxWait(final Duration maxWait) {
+		if (maxWait.isNegative()) {
+			throw new IllegalArgumentException("maxWait must be 0 or greater");
+		}
+		this.maxWaitMillis = maxWait.toMillis();
+		return this;
+	}
+
+	/**
+	 * カウンタに1を加算
+	 * @param table テーブル
+	 * @param keys 一意キー [ カラム => 値 ]
+	 * @param column カウンタのカラム
+	 * @throws SQLException 未反映のキー数の空き待ちがタイムアウトした場合、加算はされていない
+	 */
+	public void increment(final String table, final Map<String, Object> keys, final String column) throws SQLException {
+		add(table, keys, column, 1);
+	}
+
+	/**
+	 * カウンタに加算
+	 * @param table テーブル
+	 * @param keys 一意キー [ カラム => 値 ]
+	 * @param column カウンタのカラム
+	 * @param delta 加算する値
+	 * @throws SQLException 未反映のキー数の空き待ちがタイムアウトした場合、加算はされていない
+	 */
+	public void add(final String table, final Map<String, Object> keys, final String column, final long delta) throws SQLException {
+		if (this.isClosed) {
+			throw new IllegalStateException("aggregator is closed");
+		}
+		if (StringUtils.isBlank(table) || keys == null || keys.isEmpty() || StringUtils.isBlank(column)) {
+			throw new IllegalArgumentException("table, keys and column are required");
+		}
+		start();
+		CounterKey key = new CounterKey(table, Collections.unmodifiableMap(new LinkedHashMap<>(keys)), column);
+		if (addExisting(key, delta)) {
+			return;
+		}
+		// 新しいキーは未反映のキー数の枠を確保してから加算し、確保できない場合は加算しない
+		reserve();
+		if (!addInternal(key, delta)) {
+			// 枠の確保中に他のスレッドが同じキーを加算した場合
+			this.pendingKeys.decrementAndGet();
+			signalCapacity();
+			return;
+		}
+		if (this.flushKeys <= this.pendingKeys.get()) {
+			signalFlusher();
+		}
+	}
+
+	/**
+	 * 未反映のキー数の枠を1つ確保
+	 * 上限に達している場合はバックグラウンドの反映を開始し、空きができるまで待機する
+	 * @throws SQLException 待機の最大時間を過ぎた場合、または割り込まれた場合
+	 */
+	private void reserve() throws SQLException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.maxWaitMillis);
+		boolean isRequested = false;
+		while (true) {
+			int pending = this.pendingKeys.get();
+			if (pending < this.maxPendingKeys) {
+				if (this.pendingKeys.compareAndSet(pending, pending + 1)) {
+					return;
+				}
+				continue;
+			}
+			if (!isRequested) {
+				// 反映に失敗しても再実行を繰り返さないよう、反映の要求は1回の待機につき1回のみ
+				requestFlush();
+				isRequested = true;
+			}
+			synchronized (this.capacity) {
+				long remainingNanos = deadline - System.nanoTime();
+				if (remainingNanos <= 0) {
+					throw new SQLTimeoutException("timed out waiting for pending keys to be flushed after " + this.maxWaitMillis + "ms", this.lastError);
+				}
+				if (this.maxPendingKeys <= this.pendingKeys.get()) {
+					try {
+						this.capacity.wait(TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("interrupted while waiting for pending keys to be flushed", e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * バックグラウンドの反映を開始させる
+	 */
+	private void signalFlusher() {
+		synchronized (this.monitor) {
+			this.monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * 反映間隔や直前の失敗によらず、バックグラウンドの反映を開始させる
+	 */
+	private void requestFlush() {
+		synchronized (this.monitor) {
+			this.isFlushRequested = true;
+			this.monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * 未反映のキー数の空きを待機しているスレッドを再開させる
+	 */
+	private void signalCapacity() {
+		synchronized (this.capacity) {
+			this.capacity.notifyAll();
+		}
+	}
+
+	/**
+	 * 集計領域に既存のキーがある場合のみ加算
+	 * @param key キー
+	 * @param delta 加算する値
+	 * @return 加算したか否か
+	 */
+	private boolean addExisting(final CounterKey key, final long delta) {
+		Stripe stripe = this.stripes[stripeIndex()];
+		stripe.lock.lock();
+		try {
+			long[] counter = stripe.counters.get(key);
+			if (counter == null) {
+				return false;
+			}
+			counter[0] += delta;
+			return true;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * 集計領域に加算
+	 * @param key キー
+	 * @param delta 加算する値
+	 * @return 新しいキーか否か
+	 */
+	private boolean addInternal(final CounterKey key, final long delta) {
+		Stripe stripe = this.stripes[stripeIndex()];
+		stripe.lock.lock();
+		try {
+			long[] counter = stripe.counters.get(key);
+			if (counter == null) {
+				stripe.counters.put(key, new long[] { delta });
+				return true;
+			}
+			counter[0] += delta;
+			return false;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * 現在のスレッドの集計領域を返却
+	 * @return 集計領域の位置
+	 */
+	@SuppressWarnings("deprecation")
+	private static int stripeIndex() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1);
+	}
+
+	/**
+	 * バックグラウンドの反映を開始
+	 */
+	private void start() {
+		if (this.isStarted.get() || !this.isStarted.compareAndSet(false, true)) {
+			return;
+		}
+		Thread thread = new Thread(this::runFlusher, "CounterAggregator-flush");
+		thread.setDaemon(true);
+		this.flusher = thread;
+		thread.start();
+	}
+
+	/**
+	 * 一定時間ごと、または一定キー数ごとに反映
+	 */
+	private void runFlusher() {
+		boolean isFailed = false;
+		while (!this.isClosed) {
+			try {
+				synchronized (this.monitor) {
+					// 失敗した直後は未反映のキー数によらず反映間隔まで待機し、DBへの再実行を繰り返さない
+					if (!this.isClosed && !this.isFlushRequested && (isFailed || this.pendingKeys.get() < this.flushKeys)) {
+						this.monitor.wait(this.flushIntervalMillis);
+					}
+					this.isFlushRequested = false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (this.isClosed) {
+				return;
+			}
+			try {
+				flush();
+				isFailed = false;
+			} catch (SQLException | NamingException | RuntimeException e) {
+				// 集計値は戻されているため次回に再実行
+				this.lastError = e;
+				isFailed = true;
+			}
+		}
+	}
+
+	/**
+	 * 未反映の値を全て反映
+	 * 失敗した場合は集計値を戻す
+	 * コミット中に失敗した場合は反映されたか不明なため、集計値を戻さずに破棄する
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public void flush() throws SQLException, NamingException {
+		this.flushLock.lock();
+		try {
+			Drained drained = drain();
+			if (drained.counters().isEmpty()) {
+				return;
+			}
+			boolean[] isCommitting = new boolean[1];
+			try {
+				write(drained.counters(), isCommitting);
+			} catch (SQLException | NamingException | RuntimeException e) {
+				this.failureCount.increment();
+				if (isCommitting[0]) {
+					// 再度反映すると二重に加算されるおそれがあるため戻さない
+					this.inDoubtCount.increment();
+					this.lastError = e;
+					this.pendingKeys.addAndGet(-drained.entryCount());
+				} else {
+					this.pendingKeys.addAndGet(restore(drained.counters()) - drained.entryCount());
+				}
+				signalCapacity();
+				throw e;
+			}
+			this.flushCount.increment();
+			this.flushedKeyCount.add(drained.counters().size());
+			this.pendingKeys.addAndGet(-drained.entryCount());
+			signalCapacity();
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	/**
+	 * 全ての集計領域の値を取り出して空にする
+	 * 取り出したキーは反映が終わるまで未反映のキー数に含めたままにする
+	 * @return 集計値
+	 */
+	@SuppressWarnings("boxing")
+	private Drained drain() {
+		Map<CounterKey, Long> drained = new LinkedHashMap<>();
+		int entryCount = 0;
+		for (Stripe stripe : this.stripes) {
+			Map<CounterKey, long[]> counters;
+			stripe.lock.lock();
+			try {
+				if (stripe.counters.isEmpty()) {
+					continue;
+				}
+				counters = stripe.counters;
+				stripe.counters = new HashMap<>();
+			} finally {
+				stripe.lock.unlock();
+			}
+			entryCount += counters.size();
+			for (Entry<CounterKey, long[]> counter : counters.entrySet()) {
+				drained.merge(counter.getKey(), counter.getValue()[0], Long::sum);
+			}
+		}
+		return new Drained(drained, entryCount);
+	}
+
+	/**
+	 * 反映に失敗した集計値を集計領域に戻す
+	 * 反映中に同じキーが加算されていた場合はその値に合算する
+	 * @param drained 集計値
+	 * @return 集計領域に新しく追加したキー数
+	 */
+	private int restore(final Map<CounterKey, Long> drained) {
+		int addedCount = 0;
+		for (Entry<CounterKey, Long> counter : drained.entrySet()) {
+			if (addInternal(counter.getKey(), counter.getValue())) {
+				addedCount++;
+			}
+		}
+		return addedCount;
+	}
+
+	/**
+	 * 集計値をテーブル、キー、カウンタのカラムごとに1つのUPSERTにまとめ、1回のトランザクションで反映
+	 * @param drained 集計値
+	 * @param isCommitting UPSERTを実行し終えてコミット中か否かを格納する
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@SuppressWarnings("boxing")
+	private void write(final Map<CounterKey, Long> drained, final boolean[] isCommitting) throws SQLException, NamingException {
+		Map<FlushGroup, List<Map<String, Object>>> groups = new LinkedHashMap<>();
+		for (Entry<CounterKey, Long> counter : drained.entrySet()) {
+			CounterKey key = counter.getKey();
+			if (counter.getValue() == 0) {
+				continue;
+			}
+			List<String> keyColumns = new ArrayList<>(key.keys().keySet());
+			Collections.sort(keyColumns);
+			Map<String, Object> row = new LinkedHashMap<>();
+			for (String keyColumn : keyColumns) {
+				row.put(keyColumn, key.keys().get(keyColumn));
+			}
+			row.put(key.column(), counter.getValue());
+			groups.computeIfAbsent(new FlushGroup(key.table(), keyColumns, key.column()), g -> new ArrayList<>()).add(row);
+		}
+		if (groups.isEmpty()) {
+			return;
+		}
+		// 複数の反映が同時に実行されても行ロックの取得順が一致するよう、キーの順に並べる
+		for (Entry<FlushGroup, List<Map<String, Object>>> group : groups.entrySet()) {
+			List<String> keyColumns = group.getKey().keyColumns();
+			group.getValue().sort((row1, row2) -> {
+				for (String keyColumn : keyColumns) {
+					int result = compare(row1.get(keyColumn), row2.get(keyColumn));
+					if (result != 0) {
+						return result;
+					}
+				}
+				return 0;
+			});
+		}
+		this.template.transaction(tx -> {
+			isCommitting[0] = false;
+			for (Entry<FlushGroup, List<Map<String, Object>>> group : groups.entrySet()) {
+				SqlBuilder builder = tx.table(group.getKey().table());
+				for (Map<String, Object> row : group.getValue()) {
+					builder.insertData(row);
+				}
+				builder.onDuplicate(group.getKey().column(), UpsertAction.ADD).upsert();
+			}
+			// 予約した更新を実行し、以降の失敗はコミット中の失敗とする
+			tx.flush();
+			isCommitting[0] = true;
+			return null;
+		});
+	}
+
+	/**
+	 * キーの値を比較
+	 * 比較できない型の場合は文字列で比較し、NULLは最も小さい値として扱う
+	 * @param value1 値1
+	 * @param value2 値2
+	 * @return 比較結果
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(final Object value1, final Object value2) {
+		if (value1 == null || value2 == null) {
+			return value1 == null ? (value2 == null ? 0 : -1) : 1;
+		}
+		if (value1 instanceof Comparable && value1.getClass() == value2.getClass()) {
+			return ((Comparable) value1).compareTo(value2);
+		}
+		return value1.toString().compareTo(value2.toString());
+	}
+
+	/**
+	 * バックグラウンドの反映を停止し、未反映の値を全て反映
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	@Override
+	public void close() throws SQLException, NamingException {
+		this.isClosed = true;
+		synchronized (this.monitor) {
+			this.monitor.notifyAll();
+		}
+		Thread thread = this.flusher;
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * 反映中を含む未反映のキー数を取得
+	 * @return キー数
+	 */
+	public int getPendingKeyCount() {
+		return this.pendingKeys.get();
+	}
+
+	/**
+	 * 反映回数を取得
+	 * @return 反映回数
+	 */
+	public long getFlushCount() {
+		return this.flushCount.sum();
+	}
+
+	/**
+	 * 反映したキー数を取得
+	 * @return キー数
+	 */
+	public long getFlushedKeyCount() {
+		return this.flushedKeyCount.sum();
+	}
+
+	/**
+	 * 反映の失敗回数を取得
+	 * @return 失敗回数
+	 */
+	public long getFailureCount() {
+		return this.failureCount.sum();
+	}
+
+	/**
+	 * コミット中に失敗し、反映されたか不明なまま集計値を破棄した回数を取得
+	 * @return 回数
+	 */
+	public long getInDoubtCount() {
+		return this.inDoubtCount.sum();
+	}
+
+	/**
+	 * バックグラウンドの反映、またはコミット中の失敗で最後に発生した例外を取得
+	 * @return 例外、発生していない場合はnull
+	 */
+	public Exception getLastError() {
+		return this.lastError;
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.inkblogdb.commons.db;
+
+/**
+ * SQL実行をJFRイベントとして記録するリスナー
+ * イベント名はcom.inkblogdb.commons.db.Query、JFRの記録中かつイベントが有効な場合のみ記録する
+ * SQL実行の開始時にイベントを開始し、終了時に記録するため、イベントの期間がSQL実行の期間となる
+ * @author ink-0x20
+ */
+public final class JfrQueryListener implements QueryListener {
+
+	@Override
+	public Object onStart(final QueryEvent.Kind kind, final String table) {
+		QueryJfrEvent jfrEvent = new QueryJfrEvent();
+		if (!jfrEvent.isEnabled()) {
+			return null;
+		}
+		jfrEvent.begin();
+		return jfrEvent;
+	}
+
+	@Override
+	public void onQuery(final QueryEvent event, final Object context) {
+		if (context instanceof QueryJfrEvent jfrEvent) {
+			record(jfrEvent, event);
+		}
+	}
+
+	/**
+	 * 開始時のイベントなしに計測結果を受け取った場合は、終了時点のイベントとして記録
+	 */
+	@Override
+	public void onQuery(final QueryEvent event) {
+		QueryJfrEvent jfrEvent = new QueryJfrEvent();
+		if (jfrEvent.isEnabled()) {
+			record(jfrEvent, event);
+		}
+	}
+
+	/**
+	 * 計測結果をイベントに設定して記録
+	 * @param jfrEvent イベント
+	 * @param event 計測結果
+	 */
+	private static void record(final QueryJfrEvent jfrEvent, final QueryEvent event) {
+		jfrEvent.kind = event.getKind().name();
+		jfrEvent.table = event.getTable();
+		jfrEvent.sql = event.getSql();
+		jfrEvent.parameterCount = event.getParameterCount();
+		jfrEvent.rowCount = event.getRowCount();
+		jfrEvent.statementCount = event.getStatementCount();
+		jfrEvent.batchSize = event.getBatchSize();
+		jfrEvent.totalNanos = event.getTotalNanos();
+		jfrEvent.acquireNanos = event.getNanos(QueryEvent.Phase.ACQUIRE);
+		jfrEvent.prepareNanos = event.getNanos(QueryEvent.Phase.PREPARE);
+		jfrEvent.executeNanos = event.getNanos(QueryEvent.Phase.EXECUTE);
+		jfrEvent.fetchNanos = event.getNanos(QueryEvent.Phase.FETCH);
+		jfrEvent.commitNanos = event.getNanos(QueryEvent.Phase.COMMIT);
+		jfrEvent.failure = event.getFailure() != null ? event.getFailure().toString() : null;
+		jfrEvent.commit();
+	}
+
+}
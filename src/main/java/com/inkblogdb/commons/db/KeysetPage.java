@@ -0,0 +1,22 @@
+package com.inkblogdb.commons.db;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * キーセットページネーションの1ページ分の検索結果
+ * @author ink-0x20
+ * @param rows 検索結果
+ * @param nextToken 次ページの継続トークン、最終ページの場合はnull
+ */
+public record KeysetPage(List<Map<String, Object>> rows, String nextToken) {
+
+	/**
+	 * 次ページが存在する可能性があるか否か
+	 * @return 次ページが存在する可能性があるか否か
+	 */
+	public boolean hasNext() {
+		return this.nextToken != null;
+	}
+
+}
@@ -0,0 +1,223 @@
+package com.inkblogdb.commons.db;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingException;
+
+/**
+ * キーセット（シーク）方式のページネーション
+ * 前ページの最終行のキーより大きい行を検索するため、OFFSETのような読み飛ばしが発生しない
+ * @author ink-0x20
+ */
+public final class KeysetPaginator implements Iterable<Map<String, Object>> {
+
+	/** 継続トークンの値の区切り文字 */
+	private static final String TOKEN_SEPARATOR = ".";
+
+	/** 検索条件 */
+	private final SqlBuilder builder;
+	/** 1ページの件数 */
+	private final int pageSize;
+	/** キーとなるカラム */
+	private final String[] keyColumns;
+
+	/**
+	 * コンストラクタ
+	 * @param builder 検索条件
+	 * @param pageSize 1ページの件数
+	 * @param keyColumns キーとなるカラム
+	 */
+	KeysetPaginator(final SqlBuilder builder, final int pageSize, final String... keyColumns) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+		if (keyColumns.length == 0) {
+			throw new IllegalArgumentException("keyColumns is empty");
+		}
+		this.builder = builder;
+		this.pageSize = pageSize;
+		this.keyColumns = keyColumns.clone();
+	}
+
+	/**
+	 * 1ページ分の検索を実行
+	 * @param token 継続トークン、最初のページの場合はnull
+	 * @return 1ページ分の検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public KeysetPage page(final String token) throws SQLException, NamingException {
+		Object[] afterValues = token == null ? null : decodeToken(token);
+		List<Map<String, Object>> rows = this.builder.copy()
+				.seek(this.keyColumns, afterValues, this.pageSize)
+				.get();
+		if (rows.size() < this.pageSize) {
+			return new KeysetPage(rows, null);
+		}
+		return new KeysetPage(rows, encodeToken(keyValues(rows.get(rows.size() - 1))));
+	}
+
+	/**
+	 * 全ページを順に検索するイテレータを返却
+	 * 1ページ分ずつ検索するため、テーブル全体を保持しない
+	 * 検索時の例外は{@link IllegalStateException}として送出する
+	 * @return イテレータ
+	 */
+	@Override
+	public Iterator<Map<String, Object>> iterator() {
+		return new Iterator<>() {
+			/** 現在のページ */
+			private KeysetPage page = null;
+			/** 現在のページ内の位置 */
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				if (this.page != null && this.index < this.page.rows().size()) {
+					return true;
+				}
+				if (this.page != null && !this.page.hasNext()) {
+					return false;
+				}
+				try {
+					this.page = page(this.page == null ? null : this.page.nextToken());
+				} catch (SQLException | NamingException e) {
+					throw new IllegalStateException("failed to fetch page", e);
+				}
+				this.index = 0;
+				return !this.page.rows().isEmpty();
+			}
+
+			@Override
+			public Map<String, Object> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.page.rows().get(this.index++);
+			}
+		};
+	}
+
+	/**
+	 * 行からキーの値を取得
+	 * @param row 行
+	 * @return キーの値
+	 */
+	private Object[] keyValues(final Map<String, Object> row) {
+		Object[] values = new Object[this.keyColumns.length];
+		for (int i = 0; i < this.keyColumns.length; i++) {
+			String column = this.keyColumns[i].replace("`", "");
+			column = column.substring(column.lastIndexOf('.') + 1).trim();
+			if (row.containsKey(column)) {
+				values[i] = row.get(column);
+				continue;
+			}
+			boolean isFound = false;
+			for (Entry<String, Object> entry : row.entrySet()) {
+				if (entry.getKey().equalsIgnoreCase(column)) {
+					values[i] = entry.getValue();
+					isFound = true;
+					break;
+				}
+			}
+			if (!isFound) {
+				throw new IllegalStateException("key column is not selected: " + column);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * キーの値を継続トークンに変換
+	 * 値ごとに型を表す1文字とURLセーフなBase64の値を連結する
+	 * @param values キーの値
+	 * @return 継続トークン
+	 */
+	static String encodeToken(final Object[] values) {
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		List<String> tokens = new ArrayList<>();
+		for (Object value : values) {
+			String type;
+			if (value == null) {
+				throw new IllegalStateException("key value must not be null");
+			} else if (value instanceof String) {
+				type = "S";
+			} else if (value instanceof Integer) {
+				type = "I";
+			} else if (value instanceof Long) {
+				type = "L";
+			} else if (value instanceof BigDecimal) {
+				type = "B";
+			} else if (value instanceof Double) {
+				type = "D";
+			} else if (value instanceof Timestamp) {
+				type = "T";
+			} else if (value instanceof java.sql.Date) {
+				type = "A";
+			} else {
+				throw new IllegalStateException("unsupported key type: " + value.getClass().getName());
+			}
+			tokens.add(type + encoder.encodeToString(value.toString().getBytes(StandardCharsets.UTF_8)));
+		}
+		return String.join(TOKEN_SEPARATOR, tokens);
+	}
+
+	/**
+	 * 継続トークンをキーの値に変換
+	 * @param token 継続トークン
+	 * @return キーの値
+	 */
+	static Object[] decodeToken(final String token) {
+		Base64.Decoder decoder = Base64.getUrlDecoder();
+		String[] tokens = token.split(Pattern.quote(TOKEN_SEPARATOR));
+		Object[] values = new Object[tokens.length];
+		try {
+			for (int i = 0; i < tokens.length; i++) {
+				if (tokens[i].isEmpty()) {
+					throw new IllegalArgumentException("invalid token");
+				}
+				String value = new String(decoder.decode(tokens[i].substring(1)), StandardCharsets.UTF_8);
+				switch (tokens[i].charAt(0)) {
+				case 'S':
+					values[i] = value;
+					break;
+				case 'I':
+					values[i] = Integer.valueOf(value);
+					break;
+				case 'L':
+					values[i] = Long.valueOf(value);
+					break;
+				case 'B':
+					values[i] = new BigDecimal(value);
+					break;
+				case 'D':
+					values[i] = Double.valueOf(value);
+					break;
+				case 'T':
+					values[i] = Timestamp.valueOf(value);
+					break;
+				case 'A':
+					values[i] = java.sql.Date.valueOf(value);
+					break;
+				default:
+					throw new IllegalArgumentException("invalid token");
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid token: " + token, e);
+		}
+		return values;
+	}
+
+}
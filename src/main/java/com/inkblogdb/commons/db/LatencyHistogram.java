@@ -0,0 +1,144 @@
+package com.inkblogdb.commons.db;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 時間の分布を固定メモリで記録するヒストグラム
+ * 2の累乗ごとの範囲を32等分した区間で件数を数えるため、パーセンタイルの誤差は約3%以内
+ * 記録はロックを使用せず、複数スレッドから同時に使用できる
+ * @author ink-0x20
+ */
+public final class LatencyHistogram {
+
+	/** 2の累乗ごとの区間数のビット数 */
+	private static final int SUB_BUCKET_BITS = 5;
+	/** 2の累乗ごとの区間数 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/** 全区間数 */
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	/** 区間ごとの件数 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	/** 件数 */
+	private final LongAdder totalCount = new LongAdder();
+	/** 合計 */
+	private final LongAdder totalValue = new LongAdder();
+	/** 最大値 */
+	private final LongAccumulator maxValue = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 値の区間を返却
+	 * @param value 値
+	 * @return 区間
+	 */
+	static int bucketIndex(final long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * 区間の上限値を返却
+	 * @param index 区間
+	 * @return 上限値
+	 */
+	static long bucketUpperBound(final int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lower = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * 値を記録
+	 * @param value 値、負数は0として記録
+	 */
+	public void record(final long value) {
+		long v = Math.max(0, value);
+		this.counts.incrementAndGet(bucketIndex(v));
+		this.totalCount.increment();
+		this.totalValue.add(v);
+		this.maxValue.accumulate(v);
+	}
+
+	/**
+	 * 件数を取得
+	 * @return 件数
+	 */
+	public long getCount() {
+		return this.totalCount.sum();
+	}
+
+	/**
+	 * 最大値を取得
+	 * @return 最大値、未記録の場合は0
+	 */
+	public long getMax() {
+		return this.maxValue.get();
+	}
+
+	/**
+	 * 平均値を取得
+	 * @return 平均値、未記録の場合は0
+	 */
+	public double getMean() {
+		long count = this.totalCount.sum();
+		if (count == 0) {
+			return 0;
+		}
+		return (double) this.totalValue.sum() / count;
+	}
+
+	/**
+	 * パーセンタイルを取得
+	 * 該当する区間の上限値を返却する
+	 * @param percentile パーセンタイル（0から100）
+	 * @return 値、未記録の場合は0
+	 */
+	public long getPercentile(final double percentile) {
+		if (percentile < 0 || 100 < percentile) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		// 記録中の件数の変化に影響されないよう、区間ごとの件数を1度だけ読んで集計
+		long[] snapshot = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = this.counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long max = getMax();
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (rank <= seen) {
+				return Math.min(bucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * 記録を破棄
+	 * 記録中に実行した場合、その記録は一部のみ残ることがある
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.counts.set(i, 0);
+		}
+		this.totalCount.reset();
+		this.totalValue.reset();
+		this.maxValue.reset();
+	}
+
+}
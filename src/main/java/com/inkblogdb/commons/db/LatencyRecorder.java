@@ -0,0 +1,94 @@
+package com.inkblogdb.commons.db;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQLの種類ごとに全体と工程ごとの時間をヒストグラムに記録するリスナー
+ * @author ink-0x20
+ */
+public final class LatencyRecorder implements QueryListener {
+
+	/** 全体の時間 [ SQLの種類 ] */
+	private final LatencyHistogram[] totalHistograms;
+	/** 工程ごとの時間 [ SQLの種類 ][ 工程 ] */
+	private final LatencyHistogram[][] phaseHistograms;
+	/** 行数 [ SQLの種類 ] */
+	private final LongAdder[] rowCounts;
+	/** 失敗件数 [ SQLの種類 ] */
+	private final LongAdder[] failureCounts;
+
+	/**
+	 * コンストラクタ
+	 */
+	public LatencyRecorder() {
+		int kindCount = QueryEvent.Kind.values().length;
+		int phaseCount = QueryEvent.Phase.values().length;
+		this.totalHistograms = new LatencyHistogram[kindCount];
+		this.phaseHistograms = new LatencyHistogram[kindCount][phaseCount];
+		this.rowCounts = new LongAdder[kindCount];
+		this.failureCounts = new LongAdder[kindCount];
+		for (int i = 0; i < kindCount; i++) {
+			this.totalHistograms[i] = new LatencyHistogram();
+			for (int j = 0; j < phaseCount; j++) {
+				this.phaseHistograms[i][j] = new LatencyHistogram();
+			}
+			this.rowCounts[i] = new LongAdder();
+			this.failureCounts[i] = new LongAdder();
+		}
+	}
+
+	@Override
+	public void onQuery(final QueryEvent event) {
+		int kind = event.getKind().ordinal();
+		this.totalHistograms[kind].record(event.getTotalNanos());
+		for (QueryEvent.Phase phase : QueryEvent.Phase.values()) {
+			long nanos = event.getNanos(phase);
+			if (0 < nanos) {
+				this.phaseHistograms[kind][phase.ordinal()].record(nanos);
+			}
+		}
+		this.rowCounts[kind].add(event.getRowCount());
+		if (event.getFailure() != null) {
+			this.failureCounts[kind].increment();
+		}
+	}
+
+	/**
+	 * 全体の時間のヒストグラムを取得
+	 * @param kind SQLの種類
+	 * @return ヒストグラム（ナノ秒）
+	 */
+	public LatencyHistogram getHistogram(final QueryEvent.Kind kind) {
+		return this.totalHistograms[kind.ordinal()];
+	}
+
+	/**
+	 * 工程の時間のヒストグラムを取得
+	 * 工程を通らなかった実行は記録しない
+	 * @param kind SQLの種類
+	 * @param phase 工程
+	 * @return ヒストグラム（ナノ秒）
+	 */
+	public LatencyHistogram getHistogram(final QueryEvent.Kind kind, final QueryEvent.Phase phase) {
+		return this.phaseHistograms[kind.ordinal()][phase.ordinal()];
+	}
+
+	/**
+	 * 行数の合計を取得
+	 * @param kind SQLの種類
+	 * @return 取得行数または更新行数の合計
+	 */
+	public long getRowCount(final QueryEvent.Kind kind) {
+		return this.rowCounts[kind.ordinal()].sum();
+	}
+
+	/**
+	 * 失敗件数を取得
+	 * @param kind SQLの種類
+	 * @return 失敗件数
+	 */
+	public long getFailureCount(final QueryEvent.Kind kind) {
+		return this.failureCounts[kind.ordinal()].sum();
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.inkblogdb.commons.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 最大件数を超えた場合に、最も長く参照されていない要素を破棄するキャッシュ
+ * @author ink-0x20
+ * @param <K> キー
+ * @param <V> 値
+ */
+final class LruCache<K, V> {
+
+	/** 要素 */
+	private final LinkedHashMap<K, V> map;
+
+	/**
+	 * コンストラクタ
+	 * @param maxSize 最大件数
+	 */
+	LruCache(final int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param maxSize 最大件数
+	 * @param evictFunction 破棄時の処理
+	 */
+	LruCache(final int maxSize, final BiConsumer<K, V> evictFunction) {
+		this.map = new LinkedHashMap<>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+				if (size() <= maxSize) {
+					return false;
+				}
+				if (evictFunction != null) {
+					evictFunction.accept(eldest.getKey(), eldest.getValue());
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * 値を取得
+	 * @param key キー
+	 * @return 値、存在しない場合はnull
+	 */
+	synchronized V get(final K key) {
+		return this.map.get(key);
+	}
+
+	/**
+	 * 値を格納
+	 * @param key キー
+	 * @param value 値
+	 */
+	synchronized void put(final K key, final V value) {
+		this.map.put(key, value);
+	}
+
+	/**
+	 * 値を削除
+	 * @param key キー
+	 * @return 削除した値、存在しない場合はnull
+	 */
+	synchronized V remove(final K key) {
+		return this.map.remove(key);
+	}
+
+	/**
+	 * 全ての値に処理を行い削除
+	 * @param evictFunction 削除時の処理
+	 */
+	synchronized void clear(final BiConsumer<K, V> evictFunction) {
+		this.map.forEach(evictFunction);
+		this.map.clear();
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.inkblogdb.commons.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * MySQLのLOAD DATA LOCAL INFILEによるバルクロード
+ * ファイルの代わりにMySQL Connector/JのsetLocalInfileInputStreamでストリームを渡す
+ * LOCALはIGNOREと同じ動作となり、一意キーが重複する行は警告のみで読み飛ばされる
+ * @author ink-0x20
+ */
+final class MySqlBulkLoadDialect extends TextBulkLoadDialect {
+
+	/** ストリームを渡すメソッド名 */
+	private static final String SET_INPUT_STREAM = "setLocalInfileInputStream";
+	/** ストリームを渡すメソッドを持つインターフェース */
+	private static final String STATEMENT_CLASS = "com.mysql.cj.jdbc.JdbcStatement";
+
+	/**
+	 * コンストラクタ
+	 */
+	MySqlBulkLoadDialect() {
+		super(true);
+	}
+
+	@Override
+	public String toLoadSql(final String table, final List<String> columns) {
+		// ファイル名はストリームを渡すため使用されない
+		return StringUtils.join("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ", table,
+				" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (",
+				String.join(", ", columns), ");");
+	}
+
+	@Override
+	void writeBoolean(final OutputStream out, final boolean value) throws IOException {
+		out.write(value ? '1' : '0');
+	}
+
+	@Override
+	void writeBytes(final OutputStream out, final byte[] value) throws IOException {
+		writeEscapedBytes(out, value);
+	}
+
+	@Override
+	public long load(final Connection connection, final String sql, final InputStream input, final int queryTimeout) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			if (0 < queryTimeout) {
+				statement.setQueryTimeout(queryTimeout);
+			}
+			Object target = statement;
+			Method method = findMethod(statement.getClass(), SET_INPUT_STREAM, InputStream.class);
+			if (method == null) {
+				// プールなどでラップされている場合は元のステートメントに渡す
+				Class<?> statementClass = loadClass(STATEMENT_CLASS);
+				if (statementClass != null && statement.isWrapperFor(statementClass)) {
+					target = statement.unwrap(statementClass);
+					method = findMethod(statementClass, SET_INPUT_STREAM, InputStream.class);
+				}
+			}
+			if (method == null) {
+				throw new SQLFeatureNotSupportedException("driver does not support " + SET_INPUT_STREAM);
+			}
+			invoke(method, target, input);
+			return statement.executeLargeUpdate(sql);
+		}
+	}
+
+	/**
+	 * ドライバのクラスを読み込む
+	 * @param name クラス名
+	 * @return クラス、ドライバがない場合はnull
+	 */
+	private static Class<?> loadClass(final String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * 分割検索の結果を分割範囲ごとに1行ずつ処理
+ * 複数の分割範囲から同時に呼び出されるため、スレッドセーフに実装すること
+ * @author ink-0x20
+ */
+@FunctionalInterface
+public interface PartitionConsumer {
+
+	/**
+	 * 1行分の検索結果を処理
+	 * @param partition 分割範囲の番号（0始まり）
+	 * @param row 1行分の検索結果
+	 * @throws SQLException
+	 */
+	void accept(int partition, Map<String, Object> row) throws SQLException;
+
+}
@@ -0,0 +1,414 @@
+package com.inkblogdb.commons.db;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.naming.NamingException;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * キーの範囲でテーブルを分割し、複数のDB接続で同時に検索する
+ * 分割位置は明示するか、キーの最小値と最大値から等間隔に決める
+ * 最初の範囲は下限なし、最後の範囲は上限なしとするため、検索中に追加された範囲外の行も対象となる
+ * キーがNULLの行は最初の範囲に含める
+ * @author ink-0x20
+ */
+public final class PartitionedScan {
+
+	/** 結合時の待機間隔（ミリ秒） */
+	private static final long OFFER_INTERVAL_MILLIS = 100;
+	/** 分割範囲の終了 */
+	private static final Object END = new Object();
+
+	/** 検索条件 */
+	private final SqlBuilder builder;
+	/** キーとなるカラム */
+	private final String keyColumn;
+	/** 分割数 */
+	private final int partitionCount;
+	/** 明示された分割位置 */
+	private final List<Object> boundaries;
+
+	/** 同時に検索する分割範囲の数 */
+	private volatile int parallelism = 4;
+	/** 結合時に保持する最大行数 */
+	private volatile int maxInFlightRows = 10000;
+
+	/**
+	 * コンストラクタ
+	 * @param builder 検索条件
+	 * @param keyColumn キーとなるカラム
+	 * @param partitionCount 分割数
+	 * @param boundaries 明示された昇順の分割位置、最小値と最大値から決める場合はnull
+	 */
+	PartitionedScan(final SqlBuilder builder, final String keyColumn, final int partitionCount, final List<?> boundaries) {
+		if (StringUtils.isBlank(keyColumn)) {
+			throw new IllegalArgumentException("keyColumn is empty");
+		}
+		if (partitionCount <= 0) {
+			throw new IllegalArgumentException("partitionCount must be positive");
+		}
+		this.builder = builder;
+		this.keyColumn = keyColumn;
+		this.partitionCount = partitionCount;
+		if (boundaries != null) {
+			checkBoundaries(boundaries);
+		}
+		this.boundaries = boundaries == null ? null : Collections.unmodifiableList(new ArrayList<>(boundaries));
+	}
+
+	/**
+	 * 明示された分割位置が重複なく昇順か確認
+	 * 昇順でない場合、範囲が重なる行は重複し、範囲の外になる行は検索されない
+	 * @param boundaries 分割位置
+	 */
+	private static void checkBoundaries(final List<?> boundaries) {
+		Object previous = null;
+		for (Object boundary : boundaries) {
+			if (boundary == null) {
+				throw new IllegalArgumentException("boundaries contain null");
+			}
+			if (previous != null && 0 <= compare(previous, boundary)) {
+				throw new IllegalArgumentException("boundaries must be in ascending order");
+			}
+			previous = boundary;
+		}
+	}
+
+	/**
+	 * 分割位置を比較
+	 * 数値は型によらず値で比較する
+	 * @param value1 値1
+	 * @param value2 値2
+	 * @return 比較結果
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(final Object value1, final Object value2) {
+		if (value1 instanceof Number && value2 instanceof Number) {
+			return new BigDecimal(value1.toString()).compareTo(new BigDecimal(value2.toString()));
+		}
+		if (value1 instanceof Comparable && value1.getClass() == value2.getClass()) {
+			return ((Comparable) value1).compareTo(value2);
+		}
+		throw new IllegalArgumentException("boundaries are not comparable");
+	}
+
+	/**
+	 * 同時に検索する分割範囲の数を付与
+	 * 使用するDB接続数の上限となる
+	 * @param parallelism 同時に検索する分割範囲の数
+	 * @return {@link PartitionedScan}
+	 */
+	public PartitionedScan parallelism(final int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * ストリームに結合する際に保持する最大行数を付与
+	 * 上限に達した場合は、読み出されるまで検索を待機する
+	 * @param maxInFlightRows 最大行数
+	 * @return {@link PartitionedScan}
+	 */
+	public PartitionedScan maxInFlightRows(final int maxInFlightRows) {
+		if (maxInFlightRows <= 0) {
+			throw new IllegalArgumentException("maxInFlightRows must be positive");
+		}
+		this.maxInFlightRows = maxInFlightRows;
+		return this;
+	}
+
+	/**
+	 * 分割位置を返却
+	 * 明示されていない場合は、キーの最小値と最大値を検索して決める
+	 * @return 分割位置、分割範囲の数より1つ少ない
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public List<Object> boundaries() throws SQLException, NamingException {
+		if (this.boundaries != null) {
+			return this.boundaries;
+		}
+		Object[] range = this.builder.keyRange(this.keyColumn);
+		return split(range[0], range[1], this.partitionCount);
+	}
+
+	/**
+	 * 最小値から最大値までを等間隔に分割する位置を返却
+	 * @param min 最小値
+	 * @param max 最大値
+	 * @param partitionCount 分割数
+	 * @return 分割位置、分割できない場合は空
+	 */
+	static List<Object> split(final Object min, final Object max, final int partitionCount) {
+		List<Object> boundaryList = new ArrayList<>();
+		if (min == null || max == null) {
+			// 対象の行なし
+			return boundaryList;
+		}
+		if (!(min instanceof Number) || !(max instanceof Number)) {
+			throw new IllegalArgumentException("key is not numeric, specify boundaries");
+		}
+		boolean isIntegral = isIntegral(min) && isIntegral(max);
+		BigDecimal from = new BigDecimal(min.toString());
+		BigDecimal width = new BigDecimal(max.toString()).subtract(from);
+		Object previous = null;
+		for (int i = 1; i < partitionCount; i++) {
+			BigDecimal boundary = from.add(width.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(partitionCount), 10, RoundingMode.FLOOR));
+			Object value = isIntegral ? toIntegral(boundary.setScale(0, RoundingMode.FLOOR).toBigInteger(), min) : boundary;
+			// 範囲が狭く同じ位置になる場合はまとめる
+			if (!value.equals(previous) && !value.equals(min)) {
+				boundaryList.add(value);
+				previous = value;
+			}
+		}
+		return boundaryList;
+	}
+
+	/**
+	 * 整数型か否か
+	 * @param value 値
+	 * @return 整数型か否か
+	 */
+	private static boolean isIntegral(final Object value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+	}
+
+	/**
+	 * 最小値と同じ型の整数に変換
+	 * @param value 値
+	 * @param min 最小値
+	 * @return 変換した値
+	 */
+	@SuppressWarnings("boxing")
+	private static Object toIntegral(final BigInteger value, final Object min) {
+		if (min instanceof BigInteger) {
+			return value;
+		} else if (min instanceof Long || value.bitLength() >= Integer.SIZE) {
+			return value.longValue();
+		}
+		return value.intValue();
+	}
+
+	/**
+	 * 分割範囲ごとの検索条件を作成
+	 * @param boundaryList 分割位置
+	 * @return 分割範囲ごとの検索条件
+	 */
+	private List<SqlBuilder> partitions(final List<Object> boundaryList) {
+		List<SqlBuilder> partitionList = new ArrayList<>(boundaryList.size() + 1);
+		Object from = null;
+		for (Object to : boundaryList) {
+			partitionList.add(this.builder.copy().range(this.keyColumn, from, to));
+			from = to;
+		}
+		partitionList.add(this.builder.copy().range(this.keyColumn, from, null));
+		return partitionList;
+	}
+
+	/**
+	 * 分割範囲ごとに同時に検索し、1行ずつ処理
+	 * 処理は分割範囲ごとのスレッドで同時に呼び出される
+	 * いずれかの分割範囲で例外が発生した場合は、他の分割範囲の検索を中断して最初の例外を送出する
+	 * @param consumer 1行ごとの処理
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public void forEachPartition(final PartitionConsumer consumer) throws SQLException, NamingException {
+		List<SqlBuilder> partitionList = partitions(boundaries());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<CompletableFuture<Void>> futureList = new ArrayList<>(partitionList.size());
+		Semaphore permits = new Semaphore(this.parallelism);
+		for (int i = 0; i < partitionList.size(); i++) {
+			int partition = i;
+			SqlBuilder partitionBuilder = partitionList.get(i);
+			futureList.add(run(permits, failure, () -> {
+				partitionBuilder.forEach(row -> {
+					if (failure.get() != null) {
+						throw new SQLException("partitioned scan is cancelled");
+					}
+					consumer.accept(partition, row);
+				});
+				return null;
+			}, null));
+		}
+		CompletableFuture.allOf(futureList.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+		rethrow(failure.get());
+	}
+
+	/**
+	 * 分割範囲ごとに同時に検索し、1つのストリームに結合
+	 * 行の順序は保証しない
+	 * 検索時の例外は{@link IllegalStateException}として送出する
+	 * 読み出しを中断する場合は、ストリームをクローズして残りの検索を中断すること
+	 * @return 検索結果のストリーム
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public Stream<Map<String, Object>> stream() throws SQLException, NamingException {
+		List<SqlBuilder> partitionList = partitions(boundaries());
+		BlockingQueue<Object> queue = new ArrayBlockingQueue<>(this.maxInFlightRows);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicBoolean isCancelled = new AtomicBoolean(false);
+		Semaphore permits = new Semaphore(this.parallelism);
+		for (SqlBuilder partitionBuilder : partitionList) {
+			run(permits, failure, () -> {
+				partitionBuilder.forEach(row -> offer(queue, row, isCancelled));
+				return null;
+			}, () -> {
+				// 例外の記録後に終了を通知し、読み出し側で例外を確認できるようにする
+				try {
+					offer(queue, END, isCancelled);
+				} catch (SQLException e) {
+					// 中断済みのため読み出し側は待機していない
+				}
+			});
+		}
+		int partitionSize = partitionList.size();
+		Spliterator<Map<String, Object>> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.NONNULL) {
+			/** 終了した分割範囲の数 */
+			private int endCount = 0;
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public boolean tryAdvance(final Consumer<? super Map<String, Object>> action) {
+				while (this.endCount < partitionSize) {
+					Object value;
+					try {
+						value = queue.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("interrupted", e);
+					}
+					if (value == END) {
+						this.endCount++;
+						checkFailure(failure.get());
+						continue;
+					}
+					action.accept((Map<String, Object>) value);
+					return true;
+				}
+				checkFailure(failure.get());
+				return false;
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			isCancelled.set(true);
+			queue.clear();
+		});
+	}
+
+	/**
+	 * 結合用のキューに追加
+	 * 中断された場合は検索を中断する
+	 * @param queue キュー
+	 * @param value 追加する値
+	 * @param isCancelled 中断されたか否か
+	 * @throws SQLException
+	 */
+	private static void offer(final BlockingQueue<Object> queue, final Object value, final AtomicBoolean isCancelled) throws SQLException {
+		try {
+			while (!queue.offer(value, OFFER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (isCancelled.get()) {
+					throw new SQLException("partitioned scan is cancelled");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted", e);
+		}
+	}
+
+	/**
+	 * 分割範囲の検索を実行
+	 * 最初に発生した例外を記録し、他の分割範囲で例外が発生済みの場合は検索しない
+	 * @param permits 同時に検索する分割範囲の数の制限
+	 * @param failure 最初に発生した例外
+	 * @param task 検索
+	 * @param completion 成否に関わらず最後に実行する処理、不要な場合はnull
+	 * @return 実行結果
+	 */
+	private CompletableFuture<Void> run(final Semaphore permits, final AtomicReference<Throwable> failure, final AsyncRunner.Task<Void> task, final Runnable completion) {
+		Executor executor = this.builder.getAsyncExecutor();
+		return CompletableFuture.runAsync(() -> {
+			try {
+				permits.acquire();
+				try {
+					if (failure.get() == null) {
+						task.call();
+					}
+				} finally {
+					permits.release();
+				}
+			} catch (Throwable e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				if (!failure.compareAndSet(null, e) && failure.get() != e) {
+					failure.get().addSuppressed(e);
+				}
+				throw new CompletionException(e);
+			} finally {
+				if (completion != null) {
+					completion.run();
+				}
+			}
+		}, executor == null ? AsyncRunner.defaultExecutor() : executor);
+	}
+
+	/**
+	 * 検索時の例外を送出
+	 * @param exception 例外
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	private static void rethrow(final Throwable exception) throws SQLException, NamingException {
+		if (exception == null) {
+			return;
+		} else if (exception instanceof SQLException sqlException) {
+			throw sqlException;
+		} else if (exception instanceof NamingException namingException) {
+			throw namingException;
+		} else if (exception instanceof RuntimeException runtimeException) {
+			throw runtimeException;
+		} else if (exception instanceof Error error) {
+			throw error;
+		}
+		throw new IllegalStateException("failed to scan partition", exception);
+	}
+
+	/**
+	 * ストリームの読み出し中に検索時の例外を確認
+	 * @param exception 例外
+	 */
+	private static void checkFailure(final Throwable exception) {
+		if (exception != null) {
+			throw new IllegalStateException("failed to scan partition", exception);
+		}
+	}
+
+}
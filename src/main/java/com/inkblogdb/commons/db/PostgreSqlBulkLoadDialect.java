@@ -0,0 +1,95 @@
+package com.inkblogdb.commons.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * PostgreSQLのCOPY FROM STDINによるバルクロード
+ * PostgreSQL JDBC DriverのCopyManagerにストリームを渡す
+ * @author ink-0x20
+ */
+final class PostgreSqlBulkLoadDialect extends TextBulkLoadDialect {
+
+	/** 16進数 */
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * コンストラクタ
+	 */
+	PostgreSqlBulkLoadDialect() {
+		super(false);
+	}
+
+	@Override
+	public String toLoadSql(final String table, final List<String> columns) {
+		List<String> quotedColumns = new ArrayList<>(columns.size());
+		for (String column : columns) {
+			quotedColumns.add(toIdentifier(column));
+		}
+		return StringUtils.join("COPY ", toIdentifier(table), " (", String.join(", ", quotedColumns),
+				") FROM STDIN WITH (FORMAT text, ENCODING 'UTF8');");
+	}
+
+	/**
+	 * バッククォーテーションで囲んだ名前をダブルクォーテーションで囲んだ名前に変換
+	 * @param enclosed バッククォーテーションで囲んだ名前
+	 * @return ダブルクォーテーションで囲んだ名前
+	 */
+	private static String toIdentifier(final String enclosed) {
+		return enclosed.replace("\"", "\"\"").replace('`', '"');
+	}
+
+	@Override
+	void writeBoolean(final OutputStream out, final boolean value) throws IOException {
+		out.write(value ? 't' : 'f');
+	}
+
+	@Override
+	void writeBytes(final OutputStream out, final byte[] value) throws IOException {
+		// byteaの16進数形式、先頭のバックスラッシュはテキスト形式のエスケープが必要
+		out.write('\\');
+		out.write('\\');
+		out.write('x');
+		for (byte b : value) {
+			out.write(HEX[(b >> 4) & 0x0f]);
+			out.write(HEX[b & 0x0f]);
+		}
+	}
+
+	@Override
+	public long load(final Connection connection, final String sql, final InputStream input, final int queryTimeout) throws SQLException {
+		if (0 < queryTimeout) {
+			// CopyManagerはクエリタイムアウトを設定できないため、コミットまで有効なstatement_timeoutで制限
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SET LOCAL statement_timeout = " + queryTimeout * 1000L + ";");
+			}
+		}
+		Object copyManager;
+		try {
+			Class<?> baseConnectionClass = Class.forName("org.postgresql.core.BaseConnection");
+			Class<?> copyManagerClass = Class.forName("org.postgresql.copy.CopyManager");
+			copyManager = copyManagerClass.getConstructor(baseConnectionClass).newInstance(connection.unwrap(baseConnectionClass));
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			throw new SQLFeatureNotSupportedException("PostgreSQL JDBC Driver is required", e);
+		} catch (ReflectiveOperationException e) {
+			throw new SQLException("failed to create CopyManager", e);
+		}
+		Method copyIn = findMethod(copyManager.getClass(), "copyIn", String.class, InputStream.class);
+		if (copyIn == null) {
+			throw new SQLFeatureNotSupportedException("CopyManager.copyIn is not found");
+		}
+		return ((Long) invoke(copyIn, copyManager, sql, input)).longValue();
+	}
+
+}
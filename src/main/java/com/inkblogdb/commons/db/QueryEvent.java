@@ -0,0 +1,195 @@
+package com.inkblogdb.commons.db;
+
+/**
+ * 1回のSQL実行の計測結果
+ * 時間は全てナノ秒で、分割して実行した場合は各工程の合計となる
+ * @author ink-0x20
+ */
+public final class QueryEvent {
+
+	/**
+	 * SQLの種類
+	 * @author ink-0x20
+	 */
+	public enum Kind {
+		/** SELECT */
+		SELECT,
+		/** INSERT */
+		INSERT,
+		/** UPDATE */
+		UPDATE,
+		/** DELETE */
+		DELETE,
+		/** INSERT ... ON DUPLICATE KEY UPDATE */
+		UPSERT,
+		/** トランザクションに予約した更新 */
+		BATCH
+	}
+
+	/**
+	 * 計測する工程
+	 * @author ink-0x20
+	 */
+	public enum Phase {
+		/** DB接続の取得 */
+		ACQUIRE,
+		/** ステートメントの作成 */
+		PREPARE,
+		/** 実行 */
+		EXECUTE,
+		/** 検索結果の取得 */
+		FETCH,
+		/** コミット */
+		COMMIT
+	}
+
+	/** SQLの種類 */
+	private final Kind kind;
+	/** テーブル */
+	private final String table;
+	/** 最後に実行したSQL */
+	private final String sql;
+	/** ステークホルダーの値の数 */
+	private final int parameterCount;
+	/** 取得行数または更新行数 */
+	private final long rowCount;
+	/** 実行回数 */
+	private final int statementCount;
+	/** 1回の実行で送信した最大行数 */
+	private final int batchSize;
+	/** 工程ごとの時間 */
+	private final long[] phaseNanos;
+	/** 全体の時間 */
+	private final long totalNanos;
+	/** 発生した例外 */
+	private final Throwable failure;
+
+	/**
+	 * コンストラクタ
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 * @param sql 最後に実行したSQL
+	 * @param parameterCount ステークホルダーの値の数
+	 * @param rowCount 取得行数または更新行数
+	 * @param statementCount 実行回数
+	 * @param batchSize 1回の実行で送信した最大行数
+	 * @param phaseNanos 工程ごとの時間
+	 * @param totalNanos 全体の時間
+	 * @param failure 発生した例外
+	 */
+	QueryEvent(final Kind kind, final String table, final String sql, final int parameterCount, final long rowCount,
+			final int statementCount, final int batchSize, final long[] phaseNanos, final long totalNanos, final Throwable failure) {
+		this.kind = kind;
+		this.table = table;
+		this.sql = sql;
+		this.parameterCount = parameterCount;
+		this.rowCount = rowCount;
+		this.statementCount = statementCount;
+		this.batchSize = batchSize;
+		this.phaseNanos = phaseNanos;
+		this.totalNanos = totalNanos;
+		this.failure = failure;
+	}
+
+	/**
+	 * SQLの種類を取得
+	 * @return SQLの種類
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * テーブルを取得
+	 * @return テーブル、トランザクションに予約した更新の場合はnull
+	 */
+	public String getTable() {
+		return this.table;
+	}
+
+	/**
+	 * 最後に実行したSQLを取得
+	 * ステークホルダー使用時は値を含まないため、SQLの形として集計に使用できる
+	 * @return SQL
+	 */
+	public String getSql() {
+		return this.sql;
+	}
+
+	/**
+	 * ステークホルダーの値の数を取得
+	 * @return ステークホルダーの値の数
+	 */
+	public int getParameterCount() {
+		return this.parameterCount;
+	}
+
+	/**
+	 * 取得行数または更新行数を取得
+	 * @return 行数
+	 */
+	public long getRowCount() {
+		return this.rowCount;
+	}
+
+	/**
+	 * 実行回数を取得
+	 * @return 実行回数
+	 */
+	public int getStatementCount() {
+		return this.statementCount;
+	}
+
+	/**
+	 * 1回の実行で送信した最大行数を取得
+	 * @return 行数、検索の場合は0
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * 工程の時間を取得
+	 * @param phase 工程
+	 * @return 時間（ナノ秒）
+	 */
+	public long getNanos(final Phase phase) {
+		return this.phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * 全体の時間を取得
+	 * @return 時間（ナノ秒）
+	 */
+	public long getTotalNanos() {
+		return this.totalNanos;
+	}
+
+	/**
+	 * 発生した例外を取得
+	 * @return 例外、成功した場合はnull
+	 */
+	public Throwable getFailure() {
+		return this.failure;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append(this.kind).append(' ').append(this.table);
+		str.append(" total=").append(this.totalNanos / 1000).append("us");
+		for (Phase phase : Phase.values()) {
+			str.append(' ').append(phase.name().toLowerCase()).append('=').append(getNanos(phase) / 1000).append("us");
+		}
+		str.append(" rows=").append(this.rowCount);
+		str.append(" statements=").append(this.statementCount);
+		str.append(" batch=").append(this.batchSize);
+		str.append(" params=").append(this.parameterCount);
+		if (this.failure != null) {
+			str.append(" failure=").append(this.failure);
+		}
+		str.append(" sql=").append(this.sql);
+		return str.toString();
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.inkblogdb.commons.db;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * SQL実行のJFRイベント
+ * イベントの期間はSQL実行の開始から終了まで、工程ごとの内訳はフィールドの時間を参照すること
+ * @author ink-0x20
+ */
+@Name("com.inkblogdb.commons.db.Query")
+@Label("SQL Query")
+@Category({ "ink-commons", "Database" })
+@Description("SqlBuilderによるSQLの実行")
+@StackTrace(false)
+final class QueryJfrEvent extends Event {
+
+	/** SQLの種類 */
+	@Label("Kind")
+	String kind;
+
+	/** テーブル */
+	@Label("Table")
+	String table;
+
+	/** SQL */
+	@Label("SQL")
+	String sql;
+
+	/** ステークホルダーの値の数 */
+	@Label("Parameter Count")
+	int parameterCount;
+
+	/** 行数 */
+	@Label("Row Count")
+	long rowCount;
+
+	/** 実行回数 */
+	@Label("Statement Count")
+	int statementCount;
+
+	/** 1回の実行で送信した最大行数 */
+	@Label("Batch Size")
+	int batchSize;
+
+	/** 全体の時間 */
+	@Label("Total")
+	@Timespan(Timespan.NANOSECONDS)
+	long totalNanos;
+
+	/** DB接続の取得 */
+	@Label("Acquire")
+	@Timespan(Timespan.NANOSECONDS)
+	long acquireNanos;
+
+	/** ステートメントの作成 */
+	@Label("Prepare")
+	@Timespan(Timespan.NANOSECONDS)
+	long prepareNanos;
+
+	/** 実行 */
+	@Label("Execute")
+	@Timespan(Timespan.NANOSECONDS)
+	long executeNanos;
+
+	/** 検索結果の取得 */
+	@Label("Fetch")
+	@Timespan(Timespan.NANOSECONDS)
+	long fetchNanos;
+
+	/** コミット */
+	@Label("Commit")
+	@Timespan(Timespan.NANOSECONDS)
+	long commitNanos;
+
+	/** 発生した例外 */
+	@Label("Failure")
+	String failure;
+
+}
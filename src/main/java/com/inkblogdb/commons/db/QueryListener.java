@@ -0,0 +1,73 @@
+package com.inkblogdb.commons.db;
+
+/**
+ * SQL実行の計測結果を受け取る
+ * {@link SqlBuilder#setQueryListener(QueryListener)}で登録する
+ * SQLを実行したスレッドで呼び出されるため、時間のかかる処理は行わないこと
+ * @author ink-0x20
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+	/**
+	 * SQL実行の計測結果を受け取る
+	 * @param event 計測結果
+	 */
+	void onQuery(QueryEvent event);
+
+	/**
+	 * SQL実行の開始を受け取る
+	 * 開始から終了までの状態が必要な場合に実装し、戻り値は終了時に{@link #onQuery(QueryEvent, Object)}に渡される
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 * @return 終了時に受け取る状態、不要な場合はnull
+	 */
+	default Object onStart(final QueryEvent.Kind kind, final String table) {
+		return null;
+	}
+
+	/**
+	 * SQL実行の計測結果を開始時の状態とともに受け取る
+	 * @param event 計測結果
+	 * @param context {@link #onStart(QueryEvent.Kind, String)}の戻り値
+	 */
+	default void onQuery(final QueryEvent event, final Object context) {
+		onQuery(event);
+	}
+
+	/**
+	 * 複数のリスナーに順に通知するリスナーを作成
+	 * @param listeners リスナー
+	 * @return {@link QueryListener}
+	 */
+	static QueryListener of(final QueryListener... listeners) {
+		QueryListener[] listenerArray = listeners.clone();
+		return new QueryListener() {
+			@Override
+			public void onQuery(final QueryEvent event) {
+				for (QueryListener listener : listenerArray) {
+					listener.onQuery(event);
+				}
+			}
+
+			@Override
+			public Object onStart(final QueryEvent.Kind kind, final String table) {
+				Object[] contexts = new Object[listenerArray.length];
+				for (int i = 0; i < listenerArray.length; i++) {
+					contexts[i] = listenerArray[i].onStart(kind, table);
+				}
+				return contexts;
+			}
+
+			@Override
+			public void onQuery(final QueryEvent event, final Object context) {
+				// 開始の通知に失敗した場合は状態なし
+				Object[] contexts = context instanceof Object[] array ? array : new Object[listenerArray.length];
+				for (int i = 0; i < listenerArray.length; i++) {
+					listenerArray[i].onQuery(event, contexts[i]);
+				}
+			}
+		};
+	}
+
+}
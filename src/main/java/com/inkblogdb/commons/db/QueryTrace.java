@@ -0,0 +1,150 @@
+package com.inkblogdb.commons.db;
+
+/**
+ * SQL実行の計測
+ * リスナー登録時のみ作成し、未登録時は計測しない
+ * @author ink-0x20
+ */
+final class QueryTrace {
+
+	/** 通知先 */
+	private final QueryListener listener;
+	/** SQLの種類 */
+	private final QueryEvent.Kind kind;
+	/** テーブル */
+	private final String table;
+	/** 開始日時（ナノ秒） */
+	private final long startNanos;
+	/** 前回の工程の終了日時（ナノ秒） */
+	private long markNanos;
+	/** 工程ごとの時間 */
+	private final long[] phaseNanos = new long[QueryEvent.Phase.values().length];
+	/** 最後に実行したSQL */
+	private String sql = null;
+	/** ステークホルダーの値の数 */
+	private int parameterCount = 0;
+	/** 取得行数または更新行数 */
+	private long rowCount = 0;
+	/** 実行回数 */
+	private int statementCount = 0;
+	/** 1回の実行で送信した最大行数 */
+	private int batchSize = 0;
+	/** 発生した例外 */
+	private Throwable failure = null;
+	/** 通知先が開始時に返却した状態 */
+	private final Object context;
+
+	/**
+	 * コンストラクタ
+	 * @param listener 通知先
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 */
+	private QueryTrace(final QueryListener listener, final QueryEvent.Kind kind, final String table) {
+		this.listener = listener;
+		this.kind = kind;
+		this.table = table;
+		this.context = startListener(listener, kind, table);
+		this.startNanos = System.nanoTime();
+		this.markNanos = this.startNanos;
+	}
+
+	/**
+	 * 通知先に開始を通知
+	 * 通知先の例外は無視する
+	 * @param listener 通知先
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 * @return 通知先が返却した状態
+	 */
+	private static Object startListener(final QueryListener listener, final QueryEvent.Kind kind, final String table) {
+		try {
+			return listener.onStart(kind, table);
+		} catch (RuntimeException e) {
+			// 計測の失敗でSQLの実行結果を変えない
+			return null;
+		}
+	}
+
+	/**
+	 * 計測を開始
+	 * @param kind SQLの種類
+	 * @param table テーブル
+	 * @return 計測、通知先未登録時はnull
+	 */
+	static QueryTrace start(final QueryEvent.Kind kind, final String table) {
+		QueryListener listener = SqlBuilder.getQueryListener();
+		if (listener == null) {
+			return null;
+		}
+		return new QueryTrace(listener, kind, table);
+	}
+
+	/**
+	 * 前回の工程の終了から現在までを工程の時間に加算
+	 * @param phase 工程
+	 */
+	void mark(final QueryEvent.Phase phase) {
+		long now = System.nanoTime();
+		this.phaseNanos[phase.ordinal()] += now - this.markNanos;
+		this.markNanos = now;
+	}
+
+	/**
+	 * ステートメントの作成を記録
+	 * @param sql SQL
+	 */
+	void prepared(final String sql) {
+		this.sql = sql;
+		mark(QueryEvent.Phase.PREPARE);
+	}
+
+	/**
+	 * ステークホルダーの値の数を加算
+	 * @param count 値の数
+	 */
+	void parameters(final int count) {
+		this.parameterCount += count;
+	}
+
+	/**
+	 * 実行を記録
+	 * @param batchSize 送信した行数、検索の場合は0
+	 */
+	void executed(final int batchSize) {
+		this.statementCount++;
+		this.batchSize = Math.max(this.batchSize, batchSize);
+		mark(QueryEvent.Phase.EXECUTE);
+	}
+
+	/**
+	 * 行数を加算
+	 * @param count 行数
+	 */
+	void rows(final long count) {
+		this.rowCount += count;
+	}
+
+	/**
+	 * 例外を記録
+	 * @param failure 例外
+	 */
+	void fail(final Throwable failure) {
+		this.failure = failure;
+	}
+
+	/**
+	 * 計測を終了して通知
+	 * 通知先の例外は無視する
+	 */
+	void finish() {
+		QueryEvent event = new QueryEvent(this.kind, this.table, this.sql, this.parameterCount, this.rowCount,
+				this.statementCount, this.batchSize, this.phaseNanos.clone(), System.nanoTime() - this.startNanos, this.failure);
+		try {
+			this.listener.onQuery(event, this.context);
+		} catch (RuntimeException e) {
+			// 計測の失敗でSQLの実行結果を変えない
+		}
+	}
+
+}
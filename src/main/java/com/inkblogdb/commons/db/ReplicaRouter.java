@@ -0,0 +1,430 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * 更新用のプライマリと参照用のレプリカへのDB接続の振り分け
+ * {@link SqlBuilder#db(ReplicaRouter)}で指定すると、トランザクション外のロックを伴わない検索はレプリカで実行する
+ * 更新、ロックを伴う検索、トランザクションはプライマリで実行する
+ * 接続に失敗したレプリカは一定時間振り分け対象から外し、全て外れている場合はプライマリで実行する
+ * @author ink-0x20
+ */
+public final class ReplicaRouter {
+
+	/**
+	 * レプリカの選択方法
+	 * @author ink-0x20
+	 */
+	public enum Balance {
+		/** 順番に選択 */
+		ROUND_ROBIN,
+		/** 使用中のDB接続が最も少ないものを選択 */
+		LEAST_OUTSTANDING
+	}
+
+	/** プライマリ */
+	private final DataSource primary;
+	/** レプリカ */
+	private final List<Replica> replicas;
+
+	/** レプリカの選択方法 */
+	private volatile Balance balance = Balance.ROUND_ROBIN;
+	/** 接続に失敗したレプリカを振り分け対象から外す時間（ナノ秒） */
+	private volatile long retryIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+	/** 更新後にプライマリで検索する時間（ナノ秒） */
+	private volatile long readYourWritesNanos = 0;
+	/** ヘルスチェックの最大時間（秒） */
+	private volatile int validationTimeoutSeconds = 5;
+
+	/** 次に選択するレプリカ */
+	private final AtomicInteger nextIndex = new AtomicInteger();
+	/** スレッドごとの最終更新日時（ナノ秒） */
+	private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+	/** プライマリでの検索回数 */
+	private final LongAdder primaryReadCount = new LongAdder();
+
+	/**
+	 * コンストラクタ
+	 * @param primary プライマリ
+	 * @param replicas レプリカ
+	 */
+	public ReplicaRouter(final DataSource primary, final DataSource... replicas) {
+		if (primary == null) {
+			throw new IllegalArgumentException("primary is empty");
+		}
+		this.primary = primary;
+		List<Replica> replicaList = new ArrayList<>(replicas.length);
+		for (DataSource replica : replicas) {
+			replicaList.add(new Replica(replica));
+		}
+		this.replicas = List.copyOf(replicaList);
+	}
+
+	/**
+	 * レプリカの選択方法を付与
+	 * @param balance レプリカの選択方法
+	 * @return {@link ReplicaRouter}
+	 */
+	public ReplicaRouter balance(final Balance balance) {
+		this.balance = balance;
+		return this;
+	}
+
+	/**
+	 * 接続に失敗したレプリカを振り分け対象から外す時間を付与
+	 * @param retryInterval 振り分け対象から外す時間
+	 * @return {@link ReplicaRouter}
+	 */
+	public ReplicaRouter retryInterval(final Duration retryInterval) {
+		this.retryIntervalNanos = retryInterval.toNanos();
+		return this;
+	}
+
+	/**
+	 * 更新後に同じスレッドの検索をプライマリで実行する時間を付与
+	 * レプリカの反映遅延により、更新した内容が検索できないことを防ぐ
+	 * 更新日時はスレッドごとに記録し、非同期実行や分割検索では複製元のスレッドの更新日時を引き継ぐ
+	 * 引き継ぐのは複製した時点の更新日時のため、複製後に別スレッドで行った更新は対象外
+	 * @param readYourWrites プライマリで検索する時間、0の場合は常にレプリカで検索
+	 * @return {@link ReplicaRouter}
+	 */
+	public ReplicaRouter readYourWrites(final Duration readYourWrites) {
+		this.readYourWritesNanos = readYourWrites.toNanos();
+		return this;
+	}
+
+	/**
+	 * ヘルスチェックの最大時間を付与
+	 * @param validationTimeout ヘルスチェックの最大時間（秒）
+	 * @return {@link ReplicaRouter}
+	 */
+	public ReplicaRouter validationTimeout(final int validationTimeout) {
+		this.validationTimeoutSeconds = validationTimeout;
+		return this;
+	}
+
+	/**
+	 * 更新用のDB接続を取得
+	 * @return プライマリのDB接続
+	 * @throws SQLException
+	 */
+	Connection getWriteConnection() throws SQLException {
+		return this.primary.getConnection();
+	}
+
+	/**
+	 * 検索用のDB接続を取得
+	 * 更新直後、またはレプリカが全て振り分け対象外の場合はプライマリのDB接続を返却
+	 * @return DB接続
+	 * @throws SQLException
+	 */
+	Connection getReadConnection() throws SQLException {
+		return getReadConnection(null);
+	}
+
+	/**
+	 * 検索用のDB接続を取得
+	 * 更新直後、またはレプリカが全て振り分け対象外の場合はプライマリのDB接続を返却
+	 * @param inheritedNanos 複製元のスレッドで最後に更新した日時（ナノ秒）、ない場合はnull
+	 * @return DB接続
+	 * @throws SQLException
+	 */
+	Connection getReadConnection(final Long inheritedNanos) throws SQLException {
+		if (!isReadYourWrites(inheritedNanos)) {
+			int size = this.replicas.size();
+			int start = this.balance == Balance.ROUND_ROBIN ? Math.floorMod(this.nextIndex.getAndIncrement(), size == 0 ? 1 : size) : 0;
+			for (int i = 0; i < size; i++) {
+				Replica replica = select(start, i);
+				if (replica == null) {
+					break;
+				}
+				Connection connection = replica.getConnection();
+				if (connection != null) {
+					return connection;
+				}
+			}
+		}
+		this.primaryReadCount.increment();
+		return this.primary.getConnection();
+	}
+
+	/**
+	 * 振り分け対象のレプリカを選択
+	 * @param start 順番に選択する場合の開始位置
+	 * @param attempt 試行回数
+	 * @return レプリカ、振り分け対象がない場合はnull
+	 */
+	private Replica select(final int start, final int attempt) {
+		int size = this.replicas.size();
+		if (this.balance == Balance.ROUND_ROBIN) {
+			// 開始位置から順に振り分け対象を探す
+			for (int i = attempt; i < size; i++) {
+				Replica replica = this.replicas.get((start + i) % size);
+				if (replica.isAvailable()) {
+					return replica;
+				}
+			}
+			return null;
+		}
+		// 使用中のDB接続が最も少ないもの
+		Replica selected = null;
+		for (Replica replica : this.replicas) {
+			if (replica.isAvailable() && (selected == null || replica.outstanding.get() < selected.outstanding.get())) {
+				selected = replica;
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * 更新直後のためプライマリで検索するか否か
+	 * @param inheritedNanos 複製元のスレッドで最後に更新した日時（ナノ秒）、ない場合はnull
+	 * @return プライマリで検索するか否か
+	 */
+	private boolean isReadYourWrites(final Long inheritedNanos) {
+		if (this.readYourWritesNanos <= 0) {
+			return false;
+		}
+		Long writeNanos = this.lastWriteNanos.get();
+		if (writeNanos != null && this.readYourWritesNanos <= System.nanoTime() - writeNanos) {
+			this.lastWriteNanos.remove();
+			writeNanos = null;
+		}
+		writeNanos = latest(writeNanos, inheritedNanos);
+		return writeNanos != null && System.nanoTime() - writeNanos < this.readYourWritesNanos;
+	}
+
+	/**
+	 * 現在のスレッドで最後に更新した日時を取得
+	 * 非同期実行などで別スレッドへ引き継ぐために使用する
+	 * @param inheritedNanos 複製元のスレッドで最後に更新した日時（ナノ秒）、ない場合はnull
+	 * @return 引き継いだ日時と現在のスレッドの日時のうち新しい方、どちらもない場合はnull
+	 */
+	Long lastWritten(final Long inheritedNanos) {
+		if (this.readYourWritesNanos <= 0) {
+			return null;
+		}
+		return latest(this.lastWriteNanos.get(), inheritedNanos);
+	}
+
+	/**
+	 * 新しい方の日時を取得
+	 * @param nanos1 日時（ナノ秒）
+	 * @param nanos2 日時（ナノ秒）
+	 * @return 新しい方の日時、どちらもnullの場合はnull
+	 */
+	@SuppressWarnings("boxing")
+	private static Long latest(final Long nanos1, final Long nanos2) {
+		if (nanos1 == null) {
+			return nanos2;
+		}
+		if (nanos2 == null || 0 < nanos1 - nanos2) {
+			return nanos1;
+		}
+		return nanos2;
+	}
+
+	/**
+	 * 現在のスレッドで更新したことを記録
+	 */
+	@SuppressWarnings("boxing")
+	void written() {
+		if (0 < this.readYourWritesNanos) {
+			this.lastWriteNanos.set(System.nanoTime());
+		}
+	}
+
+	/**
+	 * 全てのレプリカのヘルスチェックを実行
+	 * 接続できないレプリカは振り分け対象から外し、接続できたレプリカは振り分け対象に戻す
+	 * 定期的に実行する場合は呼び出し側でスケジュールすること
+	 * @return 振り分け対象のレプリカ数
+	 */
+	public int checkHealth() {
+		int availableCount = 0;
+		for (Replica replica : this.replicas) {
+			if (replica.check()) {
+				availableCount++;
+			}
+		}
+		return availableCount;
+	}
+
+	/**
+	 * レプリカ数を取得
+	 * @return レプリカ数
+	 */
+	public int getReplicaCount() {
+		return this.replicas.size();
+	}
+
+	/**
+	 * レプリカが振り分け対象か否か
+	 * @param index レプリカの位置
+	 * @return 振り分け対象か否か
+	 */
+	public boolean isAvailable(final int index) {
+		return this.replicas.get(index).isAvailable();
+	}
+
+	/**
+	 * レプリカでの検索回数を取得
+	 * @param index レプリカの位置
+	 * @return 検索回数
+	 */
+	public long getReadCount(final int index) {
+		return this.replicas.get(index).readCount.sum();
+	}
+
+	/**
+	 * レプリカの使用中のDB接続数を取得
+	 * 選択方法が{@link Balance#LEAST_OUTSTANDING}の場合のみ計測する
+	 * @param index レプリカの位置
+	 * @return 使用中のDB接続数
+	 */
+	public int getOutstandingCount(final int index) {
+		return this.replicas.get(index).outstanding.get();
+	}
+
+	/**
+	 * プライマリでの検索回数を取得
+	 * @return 検索回数
+	 */
+	public long getPrimaryReadCount() {
+		return this.primaryReadCount.sum();
+	}
+
+	/**
+	 * レプリカ
+	 * @author ink-0x20
+	 */
+	private final class Replica {
+
+		/** データソース */
+		private final DataSource dataSource;
+		/** 使用中のDB接続数 */
+		private final AtomicInteger outstanding = new AtomicInteger();
+		/** 検索回数 */
+		private final LongAdder readCount = new LongAdder();
+		/** 振り分け対象に戻す日時（ナノ秒） */
+		private volatile long downUntilNanos = 0;
+		/** 振り分け対象外か否か */
+		private volatile boolean isDown = false;
+
+		/**
+		 * コンストラクタ
+		 * @param dataSource データソース
+		 */
+		private Replica(final DataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		/**
+		 * 振り分け対象か否か
+		 * 振り分け対象外の期間が過ぎた場合は、次の接続で再度試行する
+		 * @return 振り分け対象か否か
+		 */
+		private boolean isAvailable() {
+			return !this.isDown || this.downUntilNanos - System.nanoTime() <= 0;
+		}
+
+		/**
+		 * 振り分け対象から外す
+		 */
+		private void down() {
+			this.downUntilNanos = System.nanoTime() + ReplicaRouter.this.retryIntervalNanos;
+			this.isDown = true;
+		}
+
+		/**
+		 * DB接続を取得
+		 * @return DB接続、接続に失敗した場合はnull
+		 */
+		private Connection getConnection() {
+			Connection connection;
+			try {
+				connection = this.dataSource.getConnection();
+			} catch (SQLException e) {
+				down();
+				return null;
+			}
+			this.isDown = false;
+			this.readCount.increment();
+			if (ReplicaRouter.this.balance != Balance.LEAST_OUTSTANDING) {
+				return connection;
+			}
+			return track(connection);
+		}
+
+		/**
+		 * クローズまで使用中として数えるDB接続を作成
+		 * ステートメントキャッシュが元のDB接続ごとにキャッシュできるよう、元のDB接続を返却できるようにする
+		 * @param connection DB接続
+		 * @return DB接続
+		 */
+		private Connection track(final Connection connection) {
+			this.outstanding.incrementAndGet();
+			AtomicBoolean isReleased = new AtomicBoolean(false);
+			return (Connection) Proxy.newProxyInstance(
+					ReplicaRouter.class.getClassLoader(),
+					new Class<?>[] { Connection.class, ConnectionPool.Pooled.class },
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "getPhysicalConnection":
+							return connection;
+						case "isClosed":
+							if (isReleased.get()) {
+								return true;
+							}
+							break;
+						case "close":
+							if (isReleased.compareAndSet(false, true)) {
+								this.outstanding.decrementAndGet();
+							}
+							break;
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							break;
+						}
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+
+		/**
+		 * ヘルスチェック
+		 * @return 振り分け対象か否か
+		 */
+		private boolean check() {
+			try (Connection connection = this.dataSource.getConnection()) {
+				if (connection.isValid(ReplicaRouter.this.validationTimeoutSeconds)) {
+					this.isDown = false;
+					return true;
+				}
+			} catch (SQLException e) {
+				// 接続できない場合は振り分け対象から外す
+			}
+			down();
+			return false;
+		}
+	}
+
+}
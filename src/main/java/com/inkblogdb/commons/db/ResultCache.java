@@ -0,0 +1,348 @@
+package com.inkblogdb.commons.db;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 検索結果のキャッシュ
+ * SQLとステークホルダーの値をキーに検索結果を保持し、件数、行数、有効期間を超えたものを破棄する
+ * 破棄は最も長く参照されていないものから行う
+ * 取得はロックを取らず、検索結果は変更されない複製として保持して行ごとに値を共有して返却するため、同時に取得しても待たされない
+ * キャッシュしたテーブルへの登録、更新、削除を{@link SqlBuilder}で実行すると、自動で該当の検索結果を破棄する
+ * 参照しているテーブルは{@link SqlBuilder}のテーブルと結合したテーブルのみで、条件に記述したサブクエリのテーブルは含まない
+ * そのようなテーブルや{@link SqlBuilder}以外で更新したテーブルは、{@link #invalidate(String)}で明示的に破棄すること
+ * テーブルはスキーマを除いたテーブル名で判定するため、別のスキーマの同名のテーブルの更新でも破棄される
+ * @author ink-0x20
+ */
+public final class ResultCache {
+
+	/** 作成済みのキャッシュ */
+	private static final Set<ResultCache> CACHES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	/** 最大件数 */
+	private final int maxEntries;
+	/** 最大行数 */
+	private final long maxWeight;
+	/** 有効期間（ナノ秒） */
+	private final long ttlNanos;
+
+	/** 検索結果 [ キー => 検索結果 ] */
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+	/** 参照順を判定するための参照ごとに増える値 */
+	private final AtomicLong clock = new AtomicLong();
+	/** テーブルごとのキー [ テーブル => キー ] */
+	private final Map<String, Set<Key>> tableKeys = new HashMap<>();
+	/** テーブルごとの破棄回数 [ テーブル => 破棄回数 ] */
+	private final Map<String, Long> tableGenerations = new HashMap<>();
+	/** 保持している行数 */
+	private long weight = 0;
+
+	/** ヒット数 */
+	private final LongAdder hitCount = new LongAdder();
+	/** ミス数 */
+	private final LongAdder missCount = new LongAdder();
+	/** 破棄数 */
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * キャッシュのキー
+	 * @param sql SQL
+	 * @param parameters ステークホルダーの値
+	 */
+	record Key(String sql, List<Object> parameters) {
+	}
+
+	/**
+	 * キャッシュした検索結果
+	 * @author ink-0x20
+	 */
+	private static final class Entry {
+
+		/** 変更されない検索結果 */
+		private final List<ResultRow> rows;
+		/** 参照しているテーブル */
+		private final List<String> tables;
+		/** 有効期限（ナノ秒） */
+		private final long expiresAt;
+		/** 最後に参照した時点の{@link ResultCache#clock}の値 */
+		private volatile long accessedAt;
+
+		/**
+		 * コンストラクタ
+		 * @param rows 変更されない検索結果
+		 * @param tables 参照しているテーブル
+		 * @param expiresAt 有効期限（ナノ秒）
+		 * @param accessedAt 参照した時点の{@link ResultCache#clock}の値
+		 */
+		Entry(final List<ResultRow> rows, final List<String> tables, final long expiresAt, final long accessedAt) {
+			this.rows = rows;
+			this.tables = tables;
+			this.expiresAt = expiresAt;
+			this.accessedAt = accessedAt;
+		}
+
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param maxEntries 最大件数
+	 * @param maxWeight 全検索結果の合計の最大行数
+	 * @param ttl 有効期間
+	 */
+	public ResultCache(final int maxEntries, final long maxWeight, final Duration ttl) {
+		if (maxEntries <= 0 || maxWeight <= 0) {
+			throw new IllegalArgumentException("maxEntries and maxWeight must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.ttlNanos = ttl.toNanos();
+		CACHES.add(this);
+	}
+
+	/**
+	 * 全てのキャッシュからテーブルの検索結果を破棄
+	 * @param table テーブル
+	 */
+	static void invalidateAll(final String table) {
+		List<ResultCache> caches;
+		synchronized (CACHES) {
+			if (CACHES.isEmpty()) {
+				return;
+			}
+			caches = new ArrayList<>(CACHES);
+		}
+		for (ResultCache cache : caches) {
+			cache.invalidate(table);
+		}
+	}
+
+	/**
+	 * テーブル名を正規化
+	 * スキーマの指定有無や大文字小文字が異なっても同じテーブルと判定するため、スキーマを除いて小文字にする
+	 * 別のテーブルと判定して古い検索結果を返却するより、余分に破棄する方を優先する
+	 * @param table テーブル
+	 * @return 正規化したテーブル
+	 */
+	static String normalize(final String table) {
+		String name = table.replace("`", "").trim();
+		return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * テーブルの破棄回数を取得
+	 * 検索前に取得し、保存時に変わっていれば検索中に更新されたと判定する
+	 * @param tables テーブル
+	 * @return 破棄回数
+	 */
+	synchronized long[] generations(final List<String> tables) {
+		long[] generations = new long[tables.size()];
+		for (int i = 0; i < generations.length; i++) {
+			generations[i] = this.tableGenerations.getOrDefault(normalize(tables.get(i)), 0L);
+		}
+		return generations;
+	}
+
+	/**
+	 * 検索結果を取得
+	 * ロックを取らず、返却する行は値の変更時まで保持している値を共有する
+	 * @param key キー
+	 * @return 検索結果の複製、存在しない場合はnull
+	 */
+	List<Map<String, Object>> get(final Key key) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			this.missCount.increment();
+			return null;
+		}
+		if (entry.expiresAt - System.nanoTime() <= 0) {
+			synchronized (this) {
+				// 他のスレッドが保存し直していない場合のみ破棄
+				if (this.entries.get(key) == entry) {
+					remove(key, entry);
+					this.evictionCount.increment();
+				}
+			}
+			this.missCount.increment();
+			return null;
+		}
+		entry.accessedAt = this.clock.incrementAndGet();
+		this.hitCount.increment();
+		List<Map<String, Object>> rows = new ArrayList<>(entry.rows.size());
+		for (ResultRow row : entry.rows) {
+			rows.add(row.share());
+		}
+		return rows;
+	}
+
+	/**
+	 * 検索結果を保存
+	 * 検索中にテーブルが更新されていた場合は保存しない
+	 * @param key キー
+	 * @param tables 参照しているテーブル
+	 * @param generations 検索前のテーブルの破棄回数
+	 * @param rows 検索結果
+	 */
+	void put(final Key key, final List<String> tables, final long[] generations, final List<Map<String, Object>> rows) {
+		if (this.maxWeight < rows.size()) {
+			return;
+		}
+		// 複製はロックの外で行う
+		List<ResultRow> snapshot = ResultRow.snapshot(rows);
+		synchronized (this) {
+			store(key, tables, generations, snapshot);
+		}
+	}
+
+	/**
+	 * 複製した検索結果を保存
+	 * @param key キー
+	 * @param tables 参照しているテーブル
+	 * @param generations 検索前のテーブルの破棄回数
+	 * @param rows 変更されない検索結果
+	 */
+	private void store(final Key key, final List<String> tables, final long[] generations, final List<ResultRow> rows) {
+		List<String> normalizedTables = new ArrayList<>();
+		for (int i = 0; i < tables.size(); i++) {
+			String table = normalize(tables.get(i));
+			if (this.tableGenerations.getOrDefault(table, 0L) != generations[i]) {
+				return;
+			}
+			normalizedTables.add(table);
+		}
+		Entry previous = this.entries.get(key);
+		if (previous != null) {
+			remove(key, previous);
+		}
+		this.entries.put(key, new Entry(rows, normalizedTables, System.nanoTime() + this.ttlNanos, this.clock.incrementAndGet()));
+		this.weight += rows.size();
+		for (String table : normalizedTables) {
+			this.tableKeys.computeIfAbsent(table, t -> new HashSet<>()).add(key);
+		}
+		// 最も長く参照されていないものから破棄
+		// 取得時にロックを取らないよう参照順は値で保持するため、破棄時に全件から探す
+		while (this.maxEntries < this.entries.size() || this.maxWeight < this.weight) {
+			Map.Entry<Key, Entry> eldest = null;
+			for (Map.Entry<Key, Entry> candidate : this.entries.entrySet()) {
+				if (eldest == null || candidate.getValue().accessedAt < eldest.getValue().accessedAt) {
+					eldest = candidate;
+				}
+			}
+			if (eldest == null) {
+				break;
+			}
+			remove(eldest.getKey(), eldest.getValue());
+			this.evictionCount.increment();
+		}
+	}
+
+	/**
+	 * テーブルを参照している検索結果を破棄
+	 * @param table テーブル、スキーマを指定しても同名のテーブルを全て破棄する
+	 */
+	public synchronized void invalidate(final String table) {
+		String normalizedTable = normalize(table);
+		this.tableGenerations.merge(normalizedTable, 1L, Long::sum);
+		Set<Key> keys = this.tableKeys.remove(normalizedTable);
+		if (keys == null) {
+			return;
+		}
+		for (Key key : keys) {
+			Entry entry = this.entries.get(key);
+			if (entry != null) {
+				remove(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * 全ての検索結果を破棄
+	 */
+	public synchronized void clear() {
+		for (String table : new ArrayList<>(this.tableKeys.keySet())) {
+			invalidate(table);
+		}
+		this.entries.clear();
+		this.weight = 0;
+	}
+
+	/**
+	 * 検索結果を削除
+	 * @param key キー
+	 * @param entry 検索結果
+	 */
+	private void remove(final Key key, final Entry entry) {
+		this.entries.remove(key);
+		removeIndex(key, entry);
+	}
+
+	/**
+	 * 検索結果の行数とテーブルごとのキーを削除
+	 * @param key キー
+	 * @param entry 検索結果
+	 */
+	private void removeIndex(final Key key, final Entry entry) {
+		this.weight -= entry.rows.size();
+		for (String table : entry.tables) {
+			Set<Key> keys = this.tableKeys.get(table);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					this.tableKeys.remove(table);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ヒット数を取得
+	 * @return ヒット数
+	 */
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	/**
+	 * ミス数を取得
+	 * @return ミス数
+	 */
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	/**
+	 * 破棄数を取得
+	 * 有効期限切れ、件数、行数の超過による破棄の合計で、テーブルの更新による破棄は含まない
+	 * @return 破棄数
+	 */
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+	/**
+	 * 保持している件数を取得
+	 * @return 件数
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * 保持している行数を取得
+	 * @return 行数
+	 */
+	public synchronized long weight() {
+		return this.weight;
+	}
+
+}
@@ -0,0 +1,360 @@
+package com.inkblogdb.commons.db;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 1行分の検索結果のMap
+ * 値の配列と、検索結果ごとに1つ作成して全行で共有するカラムの位置から成り、行ごとのエントリーとハッシュ表を作成しない
+ * カラムの順序と重複したカラム名の扱いはLinkedHashMapに格納した場合と同じ
+ * 値の変更はそのまま反映し、カラムの追加と削除を行った場合はLinkedHashMapに複製して以降はそちらを使用する
+ * 検索結果のキャッシュが返却する行は値の配列を共有し、最初の値の変更時に複製する
+ * @author ink-0x20
+ */
+final class ResultRow extends AbstractMap<String, Object> implements Serializable {
+
+	/** シリアライズ用のバージョン */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 全行で共有するカラムの位置
+	 * @author ink-0x20
+	 */
+	static final class ColumnIndex {
+
+		/** 重複を除いたカラム名 */
+		private final String[] names;
+		/** 検索結果のカラムごとの格納位置 */
+		private final int[] slots;
+		/** [ カラム名 => 格納位置 ] */
+		private final Map<String, Integer> indexMap;
+
+		/**
+		 * コンストラクタ
+		 * @param columnNames 検索結果のカラム名
+		 */
+		ColumnIndex(final String[] columnNames) {
+			List<String> nameList = new ArrayList<>(columnNames.length);
+			this.slots = new int[columnNames.length];
+			this.indexMap = new HashMap<>(columnNames.length * 2);
+			for (int i = 0; i < columnNames.length; i++) {
+				Integer slot = this.indexMap.get(columnNames[i]);
+				if (slot == null) {
+					// 重複したカラム名は最初の位置に後の値を格納
+					slot = nameList.size();
+					nameList.add(columnNames[i]);
+					this.indexMap.put(columnNames[i], slot);
+				}
+				this.slots[i] = slot;
+			}
+			this.names = nameList.toArray(String[]::new);
+		}
+
+		/**
+		 * メタデータから作成
+		 * @param meta メタデータ
+		 * @return {@link ColumnIndex}
+		 * @throws SQLException
+		 */
+		static ColumnIndex of(final ResultSetMetaData meta) throws SQLException {
+			return new ColumnIndex(SqlBuilder.getColumnNames(meta));
+		}
+
+		/**
+		 * 現在行を読み込む
+		 * @param resultSet 検索結果
+		 * @return 1行分の検索結果
+		 * @throws SQLException
+		 */
+		ResultRow read(final ResultSet resultSet) throws SQLException {
+			Object[] values = new Object[this.names.length];
+			for (int i = 0; i < this.slots.length; i++) {
+				values[this.slots[i]] = resultSet.getObject(i + 1);
+			}
+			return new ResultRow(this, values);
+		}
+
+	}
+
+	/** カラムの位置 */
+	private final transient ColumnIndex columns;
+	/** 値 */
+	private transient Object[] values;
+	/** 値の配列を他の行と共有しているか否か */
+	private transient boolean isShared = false;
+	/** カラムの追加または削除後の内容 */
+	private transient LinkedHashMap<String, Object> inflated = null;
+	/** エントリー */
+	private transient Set<Entry<String, Object>> entrySet = null;
+
+	/**
+	 * コンストラクタ
+	 * @param columns カラムの位置
+	 * @param values 値
+	 */
+	private ResultRow(final ColumnIndex columns, final Object[] values) {
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * 変更されない複製を作成
+	 * 同じカラムの行はカラムの位置を共有する
+	 * @param rows 検索結果
+	 * @return 複製した検索結果
+	 */
+	static List<ResultRow> snapshot(final List<Map<String, Object>> rows) {
+		List<ResultRow> snapshots = new ArrayList<>(rows.size());
+		ColumnIndex columns = null;
+		for (Map<String, Object> row : rows) {
+			if (row instanceof ResultRow resultRow && resultRow.inflated == null) {
+				snapshots.add(new ResultRow(resultRow.columns, resultRow.values.clone()));
+				continue;
+			}
+			String[] names = row.keySet().toArray(String[]::new);
+			if (columns == null || !Arrays.equals(columns.names, names)) {
+				columns = new ColumnIndex(names);
+			}
+			snapshots.add(new ResultRow(columns, row.values().toArray()));
+		}
+		return snapshots;
+	}
+
+	/**
+	 * 値の配列を共有する行を作成
+	 * 返却した行の値を変更しても、この行には反映されない
+	 * @return 値の配列を共有する行
+	 */
+	ResultRow share() {
+		ResultRow row = new ResultRow(this.columns, this.values);
+		row.isShared = true;
+		return row;
+	}
+
+	/**
+	 * 変更する値の配列を返却
+	 * 他の行と共有している場合は複製する
+	 * @return 値の配列
+	 */
+	private Object[] ownValues() {
+		if (this.isShared) {
+			this.values = this.values.clone();
+			this.isShared = false;
+		}
+		return this.values;
+	}
+
+	/**
+	 * LinkedHashMapに複製して以降はそちらを使用
+	 * @return 複製したMap
+	 */
+	private LinkedHashMap<String, Object> inflate() {
+		if (this.inflated == null) {
+			LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+			for (int i = 0; i < this.values.length; i++) {
+				map.put(this.columns.names[i], this.values[i]);
+			}
+			this.inflated = map;
+		}
+		return this.inflated;
+	}
+
+	/**
+	 * カラムの格納位置を返却
+	 * @param key カラム名
+	 * @return 格納位置、存在しない場合は-1
+	 */
+	private int slotOf(final Object key) {
+		Integer slot = this.columns.indexMap.get(key);
+		return slot == null ? -1 : slot.intValue();
+	}
+
+	@Override
+	public int size() {
+		return this.inflated != null ? this.inflated.size() : this.values.length;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return this.inflated != null ? this.inflated.containsKey(key) : 0 <= slotOf(key);
+	}
+
+	@Override
+	public Object get(final Object key) {
+		if (this.inflated != null) {
+			return this.inflated.get(key);
+		}
+		int slot = slotOf(key);
+		return slot < 0 ? null : this.values[slot];
+	}
+
+	@Override
+	public Object put(final String key, final Object value) {
+		if (this.inflated == null) {
+			int slot = slotOf(key);
+			if (0 <= slot) {
+				Object[] ownValues = ownValues();
+				Object old = ownValues[slot];
+				ownValues[slot] = value;
+				return old;
+			}
+		}
+		return inflate().put(key, value);
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		if (this.inflated == null && slotOf(key) < 0) {
+			return null;
+		}
+		return inflate().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		inflate().clear();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					if (ResultRow.this.inflated != null) {
+						return ResultRow.this.inflated.entrySet().iterator();
+					}
+					return new SlotIterator();
+				}
+
+				@Override
+				public int size() {
+					return ResultRow.this.size();
+				}
+			};
+		}
+		return this.entrySet;
+	}
+
+	/**
+	 * 値の配列のエントリーを順に返却
+	 * 削除した場合は複製したMapから削除し、以降のエントリーも複製したMapを参照する
+	 * @author ink-0x20
+	 */
+	private final class SlotIterator implements Iterator<Entry<String, Object>> {
+
+		/** 次の格納位置 */
+		private int next = 0;
+		/** 直前に返却したカラム名 */
+		private String last = null;
+
+		@Override
+		public boolean hasNext() {
+			return this.next < ResultRow.this.values.length;
+		}
+
+		@Override
+		public Entry<String, Object> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int slot = this.next++;
+			this.last = ResultRow.this.columns.names[slot];
+			return new SlotEntry(slot);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last == null) {
+				throw new IllegalStateException();
+			}
+			inflate().remove(this.last);
+			this.last = null;
+		}
+
+	}
+
+	/**
+	 * 値の配列を参照するエントリー
+	 * @author ink-0x20
+	 */
+	private final class SlotEntry implements Entry<String, Object> {
+
+		/** 格納位置 */
+		private final int slot;
+
+		/**
+		 * コンストラクタ
+		 * @param slot 格納位置
+		 */
+		SlotEntry(final int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public String getKey() {
+			return ResultRow.this.columns.names[this.slot];
+		}
+
+		@Override
+		public Object getValue() {
+			if (ResultRow.this.inflated != null) {
+				return ResultRow.this.inflated.get(getKey());
+			}
+			return ResultRow.this.values[this.slot];
+		}
+
+		@Override
+		public Object setValue(final Object value) {
+			if (ResultRow.this.inflated != null) {
+				return ResultRow.this.inflated.put(getKey(), value);
+			}
+			Object[] ownValues = ownValues();
+			Object old = ownValues[this.slot];
+			ownValues[this.slot] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Entry<?, ?> entry)) {
+				return false;
+			}
+			return getKey().equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ Objects.hashCode(getValue());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+
+	}
+
+	/**
+	 * LinkedHashMapとしてシリアライズ
+	 * @return シリアライズする内容
+	 */
+	private Object writeReplace() {
+		return new LinkedHashMap<>(this);
+	}
+
+}
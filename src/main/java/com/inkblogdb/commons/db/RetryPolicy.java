@@ -0,0 +1,173 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一時的な失敗で更新を再実行する方針
+ * {@link SqlBuilder#retry(RetryPolicy)}で指定する
+ * デッドロック、シリアライズ失敗、ロック待ちタイムアウトと、コミット前のDB接続の切断を再実行の対象とする
+ * 待機時間は再実行ごとに倍増する上限までの乱数で、同時に失敗した処理の再実行が重ならないようにする
+ * @author ink-0x20
+ */
+public final class RetryPolicy {
+
+	/** 再実行するSQLState（シリアライズ失敗、PostgreSQLのデッドロック） */
+	private static final Set<String> CONFLICT_STATES = Set.of("40001", "40P01");
+	/** 再実行するMySQLのエラーコード（デッドロック、ロック待ちタイムアウト） */
+	private static final Set<Integer> CONFLICT_CODES = Set.of(1213, 1205);
+	/** 原因をたどる最大数 */
+	private static final int MAX_DEPTH = 16;
+
+	/** 最大実行回数 */
+	private final int maxAttempts;
+	/** 初回の待機時間の上限 */
+	private volatile Duration initialBackoff = Duration.ofMillis(20);
+	/** 待機時間の上限 */
+	private volatile Duration maxBackoff = Duration.ofSeconds(1);
+
+	/**
+	 * コンストラクタ
+	 * @param maxAttempts 初回を含む最大実行回数
+	 */
+	public RetryPolicy(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be greater than 0");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * 待機時間を設定
+	 * @param initialBackoff 初回の待機時間の上限
+	 * @param maxBackoff 待機時間の上限
+	 * @return {@link RetryPolicy}
+	 */
+	public RetryPolicy backoff(final Duration initialBackoff, final Duration maxBackoff) {
+		if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0) {
+			throw new IllegalArgumentException("backoff must be 0 <= initial <= max");
+		}
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		return this;
+	}
+
+	/**
+	 * 最大実行回数を取得
+	 * @return 初回を含む最大実行回数
+	 */
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	/**
+	 * 他のトランザクションとの競合による失敗か判定
+	 * 競合したトランザクションはDBがロールバックするため、最初から再実行できる
+	 * @param exception 例外
+	 * @return 競合による失敗か否か
+	 */
+	public static boolean isConflict(final SQLException exception) {
+		SQLException current = exception;
+		for (int i = 0; current != null && i < MAX_DEPTH; i++) {
+			if (current instanceof SQLTransactionRollbackException
+					|| CONFLICT_STATES.contains(current.getSQLState())
+					|| CONFLICT_CODES.contains(current.getErrorCode())) {
+				return true;
+			}
+			current = next(current);
+		}
+		return false;
+	}
+
+	/**
+	 * DB接続の切断による失敗か判定
+	 * @param exception 例外
+	 * @return 切断による失敗か否か
+	 */
+	public static boolean isConnectionFailure(final SQLException exception) {
+		SQLException current = exception;
+		for (int i = 0; current != null && i < MAX_DEPTH; i++) {
+			String state = current.getSQLState();
+			if (current instanceof SQLRecoverableException
+					|| current instanceof SQLNonTransientConnectionException
+					|| current instanceof SQLTransientConnectionException
+					|| (state != null && state.startsWith("08"))) {
+				return true;
+			}
+			current = next(current);
+		}
+		return false;
+	}
+
+	/**
+	 * 原因または連鎖した例外を返却
+	 * @param exception 例外
+	 * @return 次の例外、ない場合はnull
+	 */
+	private static SQLException next(final SQLException exception) {
+		if (exception.getCause() instanceof SQLException) {
+			return (SQLException) exception.getCause();
+		}
+		return exception.getNextException();
+	}
+
+	/**
+	 * 再実行するか判定
+	 * コミット中の切断はコミットされたか不明なため再実行しない
+	 * @param exception 例外
+	 * @param attempt 失敗した実行の回数（1から）
+	 * @param isCommitting コミット中の失敗か否か
+	 * @return 再実行するか否か
+	 */
+	boolean shouldRetry(final SQLException exception, final int attempt, final boolean isCommitting) {
+		if (this.maxAttempts <= attempt) {
+			return false;
+		}
+		return isConflict(exception) || (!isCommitting && isConnectionFailure(exception));
+	}
+
+	/**
+	 * 再実行前の待機時間を返却
+	 * 0から、初回の上限を再実行ごとに倍増した値と全体の上限の小さい方までの乱数
+	 * @param attempt 失敗した実行の回数（1から）
+	 * @return 待機時間（ナノ秒）
+	 */
+	long backoffNanos(final int attempt) {
+		long max = this.maxBackoff.toNanos();
+		long ceiling = this.initialBackoff.toNanos();
+		for (int i = 1; i < attempt && ceiling < max; i++) {
+			ceiling *= 2;
+		}
+		ceiling = Math.min(ceiling, max);
+		if (ceiling <= 0) {
+			return 0;
+		}
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * 再実行前に待機
+	 * @param attempt 失敗した実行の回数（1から）
+	 * @return 待機できたか否か、割り込まれた場合はfalse
+	 */
+	boolean await(final int attempt) {
+		long nanos = backoffNanos(attempt);
+		if (nanos == 0) {
+			return true;
+		}
+		try {
+			Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * 検索結果を1行ずつ処理
+ * @author ink-0x20
+ */
+@FunctionalInterface
+public interface RowConsumer {
+
+	/**
+	 * 1行分の検索結果を処理
+	 * @param row 1行分の検索結果 [ カラム名 => 値, ]
+	 * @throws SQLException
+	 */
+	void accept(Map<String, Object> row) throws SQLException;
+
+}
@@ -0,0 +1,45 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * 検索結果の1行を任意の型に変換
+ * @author ink-0x20
+ * @param <T> 変換後の型
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	/**
+	 * 現在行を変換
+	 * @param resultSet 検索結果
+	 * @return 変換結果
+	 * @throws SQLException
+	 */
+	T map(ResultSet resultSet) throws SQLException;
+
+	/**
+	 * 検索結果ごとに1回だけ呼ばれる準備処理
+	 * カラム位置の解決など、行ごとに行う必要のない処理をここで行う
+	 * @param meta メタデータ
+	 * @return 準備済みの変換処理
+	 * @throws SQLException
+	 */
+	default RowMapper<T> prepare(final ResultSetMetaData meta) throws SQLException {
+		return this;
+	}
+
+	/**
+	 * レコードまたはPOJOへの変換処理を返却
+	 * カラム名とフィールド名は、大文字小文字とアンダースコアを無視して対応付ける
+	 * @param <T> 変換後の型
+	 * @param type レコードまたは引数なしコンストラクタを持つクラス
+	 * @return 変換処理
+	 */
+	static <T> RowMapper<T> of(final Class<T> type) {
+		return new ClassRowMapper<>(type);
+	}
+
+}
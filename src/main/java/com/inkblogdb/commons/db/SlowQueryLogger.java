@@ -0,0 +1,69 @@
+package com.inkblogdb.commons.db;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 閾値以上の時間がかかったSQLを出力するリスナー
+ * 工程ごとの時間、行数、ステークホルダーの値の数とSQLを出力する
+ * 値は出力しないため、個人情報などが含まれることはない
+ * @author ink-0x20
+ */
+public final class SlowQueryLogger implements QueryListener {
+
+	/** ロガー */
+	private static final Logger LOGGER = Logger.getLogger(SlowQueryLogger.class.getName());
+
+	/** 閾値（ナノ秒） */
+	private final long thresholdNanos;
+	/** 出力先 */
+	private final Consumer<String> output;
+	/** 出力件数 */
+	private final LongAdder slowCount = new LongAdder();
+
+	/**
+	 * コンストラクタ
+	 * java.util.loggingへWARNINGで出力する
+	 * @param threshold 閾値
+	 */
+	public SlowQueryLogger(final Duration threshold) {
+		this(threshold, message -> LOGGER.log(Level.WARNING, message));
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param threshold 閾値
+	 * @param output 出力先
+	 */
+	public SlowQueryLogger(final Duration threshold, final Consumer<String> output) {
+		if (threshold == null || threshold.isNegative()) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+		if (output == null) {
+			throw new IllegalArgumentException("output is null");
+		}
+		this.thresholdNanos = threshold.toNanos();
+		this.output = output;
+	}
+
+	@Override
+	public void onQuery(final QueryEvent event) {
+		if (event.getTotalNanos() < this.thresholdNanos) {
+			return;
+		}
+		this.slowCount.increment();
+		this.output.accept("slow query: " + event);
+	}
+
+	/**
+	 * 出力件数を取得
+	 * @return 出力件数
+	 */
+	public long getSlowCount() {
+		return this.slowCount.sum();
+	}
+
+}
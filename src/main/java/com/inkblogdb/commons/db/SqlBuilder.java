@@ -1,7 +1,6 @@
 package com.inkblogdb.commons.db;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -9,11 +8,20 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -28,6 +36,17 @@ import com.inkblogdb.commons.util.StringUtils;
  */
 public class SqlBuilder {
 
+	/** 生成済みSQLのキャッシュ最大件数 */
+	private static final int SQL_CACHE_SIZE = 1024;
+	/** 生成済みSQLのキャッシュ [ SQLの形 => SQL ] */
+	private static final LruCache<SqlShape, String> SQL_CACHE = new LruCache<>(SQL_CACHE_SIZE);
+	/** 1つのSQLのステークホルダーの最大数 */
+	private static final int MAX_PARAMETERS = 65535;
+	/** SQL実行の計測結果の通知先 */
+	private static volatile QueryListener queryListener = null;
+	/** 全体のクエリタイムアウト（秒） */
+	private static volatile int defaultQueryTimeout = 0;
+
 	/** DB接続情報 */
 	private volatile String db = null;
 	/** DB接続情報 */
@@ -36,13 +55,19 @@ public class SqlBuilder {
 	private String connectUser = null;
 	/** DB接続情報 */
 	private String connectPassword = null;
+	/** DB接続情報 */
+	private DataSource dataSource = null;
+	/** DB接続情報 */
+	private ReplicaRouter router = null;
+	/** 複製元のスレッドで最後に更新した日時（ナノ秒） */
+	private Long writtenNanos = null;
 	/** テーブル */
 	private volatile String table = null;
 
 	/** カラム */
 	private final List<String> columnList = new ArrayList<>();
 	/** WHERE */
-	private final List<String> whereList = new ArrayList<>();
+	private final List<Condition> whereList = new ArrayList<>();
 	/** 挿入データ */
 	private final List<Map<String, Object>> insertDataList = new ArrayList<>();
 	/** 更新データ */
@@ -56,7 +81,7 @@ public class SqlBuilder {
 	/** LEFT JOIN */
 	private final List<String> leftJoinList = new ArrayList<>();
 	/** HAVING */
-	private final List<String> havingList = new ArrayList<>();
+	private final List<Condition> havingList = new ArrayList<>();
 	/** UNION */
 	private final List<String> unionList = new ArrayList<>();
 
@@ -64,6 +89,26 @@ public class SqlBuilder {
 	private int limit = 0;
 	/** OFFSET */
 	private int offset = 0;
+	/** フェッチサイズ */
+	private int fetchSize = 0;
+	/** 一括挿入時に1回でコミットする最大行数 */
+	private int batchSize = 0;
+	/** 一括挿入時に1回でコミットする最大バイト数（概算） */
+	private long batchBytes = 0;
+	/** DB接続ごとのステートメントキャッシュ最大件数 */
+	private int statementCacheSize = 0;
+	/** クエリタイムアウト（秒） */
+	private int queryTimeout = 0;
+	/** 更新の再実行の方針 */
+	private RetryPolicy retryPolicy = null;
+	/** コミット中か否か */
+	private boolean isCommitting = false;
+	/** 非同期実行の実行環境 */
+	private Executor asyncExecutor = null;
+	/** 非同期実行時の接続先ごとの同時実行数 */
+	private int asyncConcurrency = 10;
+	/** 検索結果のキャッシュ */
+	private ResultCache resultCache = null;
 
 	/** EXPLAIN */
 	private boolean isExplain = false;
@@ -77,8 +122,19 @@ public class SqlBuilder {
 	/** ステークホルダー使用有無 */
 	private boolean isStakeHolder = true;
 
+	/** 一意キー重複時の更新式 [ カラム => 更新式 ] */
+	private final Map<String, String> upsertSqlMap = new LinkedHashMap<>();
+	/** 一意キー重複時の更新方法 [ カラム => 更新方法 ] */
+	private final Map<String, UpsertAction> upsertActionMap = new LinkedHashMap<>();
+	/** 挿入前に同じ値の行をまとめるキー */
+	private final List<String> aggregateKeyList = new ArrayList<>();
+
 	/** DB接続 */
 	private Connection connection = null;
+	/** 参加しているトランザクション */
+	private Transaction transaction = null;
+	/** 実行中のSQLの計測、通知先未登録時はnull */
+	private QueryTrace trace = null;
 
 	/**
 	 * SQLのフォーマットに変換
@@ -186,30 +242,189 @@ public class SqlBuilder {
 		if (!value.endsWith(enclose)) {
 			stringBuilder.append(enclose);
 		}
-		return stringBuilder.toString().replace(".", "`.`");
+		// 囲み済みの`schema`.`table`は二重に囲まない
+		return stringBuilder.toString().replace(".", "`.`").replace("``.``", "`.`");
+	}
+
+	/**
+	 * 条件
+	 * 値はステークホルダー使用時は?として値を別に格納し、未使用時はSQLに直接埋め込む
+	 * @author ink-0x20
+	 */
+	private static final class Condition {
+
+		/** 条件（値の位置は?） */
+		private final String sql;
+		/** 値 */
+		private final Object[] values;
+		/** IN句のように、値をカンマ区切りで?1つの位置に展開するか否か */
+		private final boolean isList;
+
+		/**
+		 * コンストラクタ
+		 * @param sql 条件（値の位置は?）
+		 * @param values 値
+		 * @param isList 値をカンマ区切りで?1つの位置に展開するか否か
+		 */
+		private Condition(final String sql, final Object[] values, final boolean isList) {
+			this.sql = sql;
+			this.values = values;
+			this.isList = isList;
+		}
+
+		/**
+		 * IN句に展開する値の数を返却
+		 * SQLの種類を抑えるため、1, 2, 4, 8...と2の累乗に切り上げる
+		 * @return 展開する値の数
+		 */
+		private int bucketSize() {
+			if (this.values.length <= 1) {
+				return this.values.length;
+			}
+			return Integer.highestOneBit(this.values.length - 1) << 1;
+		}
+
+		/**
+		 * 生成済みのSQLを判定するための条件の形を返却
+		 * ステークホルダー使用時は値を含まないため、SQLに変換せずに条件とIN句に展開する値の数から作成する
+		 * @param builder 値の変換に使用する{@link SqlBuilder}
+		 * @return 条件の形
+		 */
+		private Object toShape(final SqlBuilder builder) {
+			if (!builder.isStakeHolder && this.values.length != 0) {
+				// 値をSQLに埋め込むため、SQLそのものが形になる
+				return toSql(builder);
+			}
+			return this.isList ? new ListShape(this.sql, bucketSize()) : this.sql;
+		}
+
+		/**
+		 * SQLに変換
+		 * @param builder 値の変換に使用する{@link SqlBuilder}
+		 * @return SQL
+		 */
+		private String toSql(final SqlBuilder builder) {
+			if (this.values.length == 0 && !this.isList) {
+				return this.sql;
+			}
+			StringBuilder sql = new StringBuilder();
+			int valueIndex = 0;
+			boolean isQuoted = false;
+			for (int i = 0; i < this.sql.length(); i++) {
+				char c = this.sql.charAt(i);
+				if (c == '\'') {
+					isQuoted = !isQuoted;
+				}
+				if (c != '?' || isQuoted) {
+					sql.append(c);
+				} else if (this.isList) {
+					int size = builder.isStakeHolder ? bucketSize() : this.values.length;
+					for (int j = 0; j < size; j++) {
+						if (0 < j) {
+							sql.append(", ");
+						}
+						sql.append(builder.isStakeHolder ? "?" : builder.toInlineValue(this.values[j]));
+					}
+				} else {
+					sql.append(builder.isStakeHolder ? "?" : builder.toInlineValue(this.values[valueIndex]));
+					valueIndex++;
+				}
+			}
+			return sql.toString();
+		}
+
+		/**
+		 * ステークホルダーに格納する値を追加
+		 * IN句は、2の累乗に切り上げた分だけ最後の値を繰り返す
+		 * @param parameters 追加先
+		 */
+		private void addValues(final List<Object> parameters) {
+			parameters.addAll(Arrays.asList(this.values));
+			if (this.isList) {
+				for (int i = this.values.length; i < bucketSize(); i++) {
+					parameters.add(this.values[this.values.length - 1]);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * SQLに直接埋め込む値に変換
+	 * @param value 値
+	 * @return SQLに埋め込む値
+	 */
+	private String toInlineValue(final Object value) {
+		if (value == null) {
+			return "NULL";
+		} else if (value instanceof String) {
+			return StringUtils.enclose((String) value, "'");
+		}
+		return toSqlString(value);
+	}
+
+	/**
+	 * 条件をSQLに変換
+	 * @param conditions 条件
+	 * @return SQL
+	 */
+	private List<String> toConditionSql(final List<Condition> conditions) {
+		List<String> sqlList = new ArrayList<>(conditions.size());
+		for (Condition condition : conditions) {
+			sqlList.add(condition.toSql(this));
+		}
+		return sqlList;
 	}
 
 	/**
-	 * Stringリストの一つ一つをシングルクォーテーションで囲んだリストに変換
-	 * ["1", "2"] → ["'1'", "'2'"]
-	 * @param str Stringのリスト
-	 * @return シングルクォーテーションで囲み終わったリスト
+	 * IN句の条件の形
+	 * @param sql 条件（値の位置は?）
+	 * @param size 展開する値の数
 	 */
-	private List<String> encloseSingleQuote(final String... str) {
-		return encloseSingleQuote(Arrays.asList(str));
+	private record ListShape(String sql, int size) {
 	}
 
 	/**
-	 * Stringリストの一つ一つをシングルクォーテーションで囲んだリストに変換
-	 * ["1", "2"] → ["'1'", "'2'"]
-	 * @param list Stringのリスト
-	 * @return シングルクォーテーションで囲み終わったリスト
+	 * 条件の形を返却
+	 * @param conditions 条件
+	 * @return 条件の形
 	 */
-	private List<String> encloseSingleQuote(final List<String> list) {
-		if (list == null) {
+	private List<Object> toConditionShapes(final List<Condition> conditions) {
+		if (conditions.isEmpty()) {
 			return List.of();
 		}
-		return list.stream().map((str) -> StringUtils.enclose(str, "'")).toList();
+		List<Object> shapes = new ArrayList<>(conditions.size());
+		for (Condition condition : conditions) {
+			shapes.add(condition.toShape(this));
+		}
+		return shapes;
+	}
+
+	/**
+	 * 条件のステークホルダーに格納する値を返却
+	 * ステークホルダー未使用時は値をSQLに埋め込むため空
+	 * @param conditions 条件
+	 * @return ステークホルダーに格納する値
+	 */
+	private List<Object> toConditionValues(final List<Condition> conditions) {
+		List<Object> parameters = new ArrayList<>();
+		if (this.isStakeHolder) {
+			for (Condition condition : conditions) {
+				condition.addValues(parameters);
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * SELECTのステークホルダーに格納する値を返却
+	 * WHERE、HAVINGの順
+	 * @return ステークホルダーに格納する値
+	 */
+	final List<Object> toSelectParameters() {
+		List<Object> parameters = toConditionValues(this.whereList);
+		parameters.addAll(toConditionValues(this.havingList));
+		return parameters;
 	}
 
 	/**
@@ -238,6 +453,28 @@ public class SqlBuilder {
 		return this;
 	}
 
+	/**
+	 * DB接続情報を付与
+	 * JNDIを使用せずに、{@link ConnectionPool}などのデータソースから接続するために使用
+	 * @param dataSource データソース
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder db(final DataSource dataSource) {
+		this.dataSource = dataSource;
+		return this;
+	}
+
+	/**
+	 * DB接続情報を付与
+	 * トランザクション外のロックを伴わない検索はレプリカ、それ以外はプライマリで実行する
+	 * @param router プライマリとレプリカの振り分け
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder db(final ReplicaRouter router) {
+		this.router = router;
+		return this;
+	}
+
 	/**
 	 * テーブルを付与
 	 * @param tableName テーブル
@@ -277,7 +514,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder where(final String column, final Integer value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " = ", String.valueOf(value)));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " = ?"), value);
 	}
 
 	/**
@@ -287,7 +524,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder where(final String column, final String value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " = ", StringUtils.enclose(value, "'")));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " = ?"), value);
 	}
 
 	/**
@@ -297,7 +534,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereEqual(final String column, final Integer value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " = ", String.valueOf(value)));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " = ?"), value);
 	}
 
 	/**
@@ -307,7 +544,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereEqual(final String column, final String value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " = ", StringUtils.enclose(value, "'")));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " = ?"), value);
 	}
 
 	/**
@@ -317,7 +554,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereNot(final String column, final Integer value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " <> ", String.valueOf(value)));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " <> ?"), value);
 	}
 
 	/**
@@ -327,7 +564,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereNot(final String column, final String value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " <> ", StringUtils.enclose(value, "'")));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " <> ?"), value);
 	}
 
 	/**
@@ -338,7 +575,7 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder where(final String column, final String where, final String value) {
-		return this.where(StringUtils.join(encloseByBackQuote(column), " ", where, " ", StringUtils.enclose(value, "'")));
+		return this.whereSql(StringUtils.join(encloseByBackQuote(column), " ", where, " ?"), value);
 	}
 
 	/**
@@ -347,7 +584,20 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder where(final String where) {
-		this.whereList.add(where);
+		this.whereList.add(new Condition(where, new Object[0], false));
+		return this;
+	}
+
+	/**
+	 * 条件を付与
+	 * 条件内の?には、指定した値が順にステークホルダーとして格納される
+	 * ステークホルダー未使用時は値をSQLに直接埋め込む
+	 * @param where 条件
+	 * @param values 値
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder whereSql(final String where, final Object... values) {
+		this.whereList.add(new Condition(where, values.clone(), false));
 		return this;
 	}
 
@@ -358,10 +608,23 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereIn(final String column, final String... values) {
-		String where = encloseByBackQuote(column) + " IN (" +
-				String.join(", ", encloseSingleQuote(values)) +
-				")";
-		return this.where(where);
+		return whereIn(column, Arrays.asList(values));
+	}
+
+	/**
+	 * 条件を付与
+	 * ステークホルダーの数は値の数を2の累乗に切り上げ、最後の値を繰り返して埋める
+	 * @param column カラム
+	 * @param values 値
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder whereIn(final String column, final Collection<?> values) {
+		if (values.isEmpty()) {
+			// 一致するものがないため常に偽
+			return this.where("1 = 0");
+		}
+		this.whereList.add(new Condition(StringUtils.join(encloseByBackQuote(column), " IN (?)"), values.toArray(), true));
+		return this;
 	}
 
 	/**
@@ -371,10 +634,47 @@ public class SqlBuilder {
 	 * @return {@link SqlBuilder}
 	 */
 	public final SqlBuilder whereNotIn(final String column, final String... values) {
-    String where = encloseByBackQuote(column) + " NOT IN (" +
-        String.join(", ", encloseSingleQuote(values)) +
-        ")";
-		return this.where(where);
+		return whereNotIn(column, Arrays.asList(values));
+	}
+
+	/**
+	 * 条件を付与
+	 * ステークホルダーの数は値の数を2の累乗に切り上げ、最後の値を繰り返して埋める
+	 * @param column カラム
+	 * @param values 値
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder whereNotIn(final String column, final Collection<?> values) {
+		if (values.isEmpty()) {
+			// 除外するものがないため常に真
+			return this.where("1 = 1");
+		}
+		this.whereList.add(new Condition(StringUtils.join(encloseByBackQuote(column), " NOT IN (?)"), values.toArray(), true));
+		return this;
+	}
+
+	/**
+	 * グループ化を付与
+	 * @param columns カラム
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder groupBy(final String... columns) {
+		for (String column : columns) {
+			this.groupByList.add(encloseByBackQuote(column));
+		}
+		return this;
+	}
+
+	/**
+	 * グループ化後の条件を付与
+	 * 条件内の?には、指定した値が順にステークホルダーとして格納される
+	 * @param having 条件
+	 * @param values 値
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder havingSql(final String having, final Object... values) {
+		this.havingList.add(new Condition(having, values.clone(), false));
+		return this;
 	}
 
 	/**
@@ -493,6 +793,47 @@ public class SqlBuilder {
 		return this;
 	}
 
+	/**
+	 * 一意キーが重複した場合の更新方法を付与
+	 * @param column カラム
+	 * @param action 更新方法
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder onDuplicate(final String column, final UpsertAction action) {
+		String enclosedColumn = encloseByBackQuote(column);
+		this.upsertSqlMap.put(enclosedColumn, action.toSql(enclosedColumn));
+		this.upsertActionMap.put(enclosedColumn, action);
+		return this;
+	}
+
+	/**
+	 * 一意キーが重複した場合の更新式を付与
+	 * 例: onDuplicateSql("views", "`views` + VALUES(`views`) * 2")
+	 * @param column カラム
+	 * @param expression 更新式
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder onDuplicateSql(final String column, final String expression) {
+		String enclosedColumn = encloseByBackQuote(column);
+		this.upsertSqlMap.put(enclosedColumn, StringUtils.join(enclosedColumn, " = ", expression));
+		this.upsertActionMap.remove(enclosedColumn);
+		return this;
+	}
+
+	/**
+	 * UPSERT前に同じキーの行を1行にまとめる
+	 * キー以外のカラムは{@link UpsertAction}に従ってまとめ、更新方法がないカラムは先の行の値を使用する
+	 * 更新式を直接指定したカラムがある場合はまとめられない
+	 * @param keyColumns 一意キーのカラム
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder aggregateBy(final String... keyColumns) {
+		for (String keyColumn : keyColumns) {
+			this.aggregateKeyList.add(encloseByBackQuote(keyColumn));
+		}
+		return this;
+	}
+
 	/**
 	 * LIMITを付与
 	 * @param limit LIMIT
@@ -513,6 +854,124 @@ public class SqlBuilder {
 		return this;
 	}
 
+	/**
+	 * フェッチサイズを付与
+	 * 0の場合はドライバのデフォルト、MySQLで1行ずつ逐次取得する場合はInteger.MIN_VALUEを指定
+	 * @param fetchSize フェッチサイズ
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder fetchSize(final int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	/**
+	 * クエリタイムアウトを付与
+	 * 0の場合は{@link #setDefaultQueryTimeout(int)}の値を使用
+	 * @param queryTimeout タイムアウト（秒）
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder queryTimeout(final int queryTimeout) {
+		if (queryTimeout < 0) {
+			throw new IllegalArgumentException("queryTimeout must be 0 or greater");
+		}
+		this.queryTimeout = queryTimeout;
+		return this;
+	}
+
+	/**
+	 * 更新の再実行の方針を付与
+	 * デッドロックなどの一時的な失敗時に、ロールバックして待機後に再実行する
+	 * 一括挿入は未コミットの分割単位から、トランザクションは処理全体を再実行する
+	 * @param retryPolicy 再実行の方針、nullの場合は再実行しない
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder retry(final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+		return this;
+	}
+
+	/**
+	 * 更新の再実行の方針を取得
+	 * @return 再実行の方針、未指定の場合はnull
+	 */
+	final RetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
+	/**
+	 * 一括挿入時に1回でコミットする最大行数を付与
+	 * 0の場合は全行を1回でコミット
+	 * @param batchSize 最大行数
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder batchSize(final int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * 一括挿入時に1回でコミットする最大バイト数を付与
+	 * 値のサイズは概算で、0の場合はサイズで分割しない
+	 * @param batchBytes 最大バイト数
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder batchBytes(final long batchBytes) {
+		this.batchBytes = batchBytes;
+		return this;
+	}
+
+	/**
+	 * DB接続ごとのステートメントキャッシュ最大件数を付与
+	 * 0の場合はキャッシュしない
+	 * DB接続を使い回す場合（コネクションプールなど）に、同じSQLのステートメント作成を省略できる
+	 * 外部のコネクションプールは{@link Connection#unwrap(Class)}で実体のDB接続を取得できる場合のみ、貸出をまたいで再利用する
+	 * @param statementCacheSize 最大件数
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder statementCacheSize(final int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+		return this;
+	}
+
+	/**
+	 * 非同期実行の実行環境を付与
+	 * 未指定の場合は、仮想スレッドが使用できれば仮想スレッドで実行
+	 * @param asyncExecutor 実行環境
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder asyncExecutor(final Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+		return this;
+	}
+
+	/**
+	 * 非同期実行時の接続先ごとの同時実行数を付与
+	 * 接続先ごとに最後に非同期実行した際の値で制限する
+	 * @param asyncConcurrency 同時実行数
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder asyncConcurrency(final int asyncConcurrency) {
+		if (asyncConcurrency <= 0) {
+			throw new IllegalArgumentException("asyncConcurrency must be positive");
+		}
+		this.asyncConcurrency = asyncConcurrency;
+		return this;
+	}
+
+	/**
+	 * 検索結果のキャッシュを付与
+	 * get、getFirst、countの検索結果を、SQLとステークホルダーの値をキーにキャッシュする
+	 * 同じテーブルへの登録、更新、削除を実行すると該当の検索結果は破棄される
+	 * 条件のサブクエリで参照するテーブルの更新では破棄されないため、{@link ResultCache#invalidate(String)}で破棄すること
+	 * @param resultCache 検索結果のキャッシュ、nullの場合はキャッシュしない
+	 * @return {@link SqlBuilder}
+	 */
+	public final SqlBuilder cache(final ResultCache resultCache) {
+		this.resultCache = resultCache;
+		return this;
+	}
+
 	/**
 	 * EXPLAINを付与
 	 * @param isExplain EXPLAIN
@@ -578,6 +1037,17 @@ public class SqlBuilder {
 		return this;
 	}
 
+	/**
+	 * 保持したDB接続を解除
+	 * プールのDB接続は返却後に別の利用者へ貸し出されるため、クローズ後は保持しない
+	 * @param connection DB接続
+	 */
+	private void releaseConnection(final Connection connection) {
+		if (this.connection == connection) {
+			this.connection = null;
+		}
+	}
+
 	/**
 	 * DBへ接続
 	 * 接続履歴がある場合はそのまま継続
@@ -586,137 +1056,464 @@ public class SqlBuilder {
 	 * @throws NamingException
 	 */
 	private Connection getConnection() throws SQLException, NamingException {
+		if (this.transaction != null) {
+			// トランザクション中は固定のDB接続を使用し、予約済みの更新を先に実行
+			Connection connect = this.transaction.pin();
+			markTrace(QueryEvent.Phase.ACQUIRE);
+			return connect;
+		}
 		Connection connect;
 		if (this.connection == null || this.connection.isClosed()) {
 			// 接続履歴なしのため接続
-			// コネクションプールか通常接続か判定して接続させる
-			if (StringUtils.isNotBlank(this.db)) {
-				InitialContext context = new InitialContext();
-				DataSource dataSource = (DataSource) context.lookup(this.db);
-				connect = dataSource.getConnection();
-			} else if (StringUtils.isNotBlank(this.connectUrl) && StringUtils.isNotBlank(this.connectUser) && StringUtils.isNotBlank(this.connectPassword)) {
-				connect = DriverManager.getConnection(this.connectUrl, this.connectUser, this.connectPassword);
-			} else {
-				throw new IllegalArgumentException("db is empty");
-			}
+			connect = openConnection();
 		} else {
 			// 継続
 			connect = this.connection;
+			connect.setAutoCommit(false);
 		}
-		connect.setAutoCommit(false);
+		markTrace(QueryEvent.Phase.ACQUIRE);
 		return connect;
 	}
 
 	/**
-	 * 条件リセット
+	 * 接続情報から新たにDBへ接続
+	 * 接続履歴とトランザクションを参照しないため、複数スレッドから同時に使用できる
+	 * @return DB接続情報
 	 * @throws SQLException
+	 * @throws NamingException
 	 */
-	public final void reset() throws SQLException {
-		this.columnList.clear();
-		this.joinList.clear();
-		this.leftJoinList.clear();
-		this.whereList.clear();
-		this.insertDataList.clear();
-		this.groupByList.clear();
-		this.havingList.clear();
-		this.unionList.clear();
-		this.orderByList.clear();
-		this.limit = 0;
-		this.offset = 0;
-		this.isExplain = false;
-		this.isDistinct = false;
-		this.isForUpdate = false;
-		this.isNoWait = false;
+	final Connection openConnection() throws SQLException, NamingException {
+		Connection connect;
+		// コネクションプールか通常接続か判定して接続させる
+		// 通常接続の場合も接続情報ごとの共有プールから取得する
+		if (this.router != null) {
+			connect = this.router.getWriteConnection();
+		} else if (this.dataSource != null) {
+			connect = this.dataSource.getConnection();
+		} else if (StringUtils.isNotBlank(this.db)) {
+			InitialContext context = new InitialContext();
+			DataSource dataSource = (DataSource) context.lookup(this.db);
+			connect = dataSource.getConnection();
+		} else if (StringUtils.isNotBlank(this.connectUrl) && StringUtils.isNotBlank(this.connectUser) && StringUtils.isNotBlank(this.connectPassword)) {
+			connect = ConnectionPool.of(this.connectUrl, this.connectUser, this.connectPassword).getConnection();
+		} else {
+			throw new IllegalArgumentException("db is empty");
+		}
+		connect.setAutoCommit(false);
+		return connect;
 	}
 
 	/**
-	 * INSERT用にデータのカラムだけ抽出してSQLに追加
-	 * @param sql SQL
+	 * 接続情報から新たに検索用にDBへ接続
+	 * レプリカが指定されている場合はレプリカへ接続
+	 * @return DB接続情報
+	 * @throws SQLException
+	 * @throws NamingException
 	 */
-	private int addDataColumns(final StringBuilder sql) {
-		if (this.insertDataList.isEmpty()) {
-			return 0;
-		}
-		int count = 0;
-		int dataCount = 0;
-		boolean isMultiple = false;
-		StringBuilder columns = new StringBuilder();
-		for (Map<String, Object> dataMap : this.insertDataList) {
-			if (count == 0) {
-				count = dataMap.size();
-			} else if (count != dataMap.size()) {
-				throw new IllegalArgumentException("data counts do not match");
-			}
-			for (Entry<String, Object> data : dataMap.entrySet()) {
-				if (isMultiple) {
-					if (columns.indexOf(data.getKey()) == -1) {
-						dataCount++;
-						columns.append(", ");
-						columns.append(data.getKey());
-					}
-				} else {
-					dataCount++;
-					isMultiple = true;
-					columns.append(data.getKey());
-				}
-			}
-		}
-		if (count != dataCount) {
-			throw new IllegalArgumentException("data counts do not match");
+	final Connection openReadConnection() throws SQLException, NamingException {
+		if (this.router == null) {
+			return openConnection();
 		}
-		sql.append(columns);
-		return count;
+		Connection connect = this.router.getReadConnection(this.writtenNanos);
+		connect.setAutoCommit(false);
+		return connect;
 	}
 
 	/**
-	 * INSERT用にデータの値だけ抽出してSQLに追加
-	 * @param sql SQL
+	 * 検索用にDBへ接続
+	 * レプリカが指定されている場合、トランザクション外のロックを伴わない検索はレプリカへ接続
+	 * @return DB接続情報
+	 * @throws SQLException
+	 * @throws NamingException
 	 */
-	private boolean addDataValues(final StringBuilder sql, final int columnCount) {
-		if (this.insertDataList.isEmpty()) {
-			return false;
+	private Connection getReadConnection() throws SQLException, NamingException {
+		if (this.router == null || this.transaction != null || this.isForUpdate
+				|| (this.connection != null && !this.connection.isClosed())) {
+			return getConnection();
 		}
-		boolean isValueMultiple = false;
-		boolean isBulkMultiple = false;
-		StringBuilder values = new StringBuilder();
-		for (Map<String, Object> dataMap : this.insertDataList) {
-			int valueCount = 0;
-			if (dataMap.size() != columnCount) {
-				throw new IllegalArgumentException("data counts do not match");
-			}
-			for (Entry<String, Object> data : dataMap.entrySet()) {
-				if (isValueMultiple) {
-					values.append(", ");
-					if (this.isStakeHolder) {
-						values.append("?");
-					} else {
-						values.append(toSqlString(data.getValue()));
-					}
-				} else {
-					isValueMultiple = true;
-					if (isBulkMultiple) {
-						values.append(", (");
-					} else {
-						isBulkMultiple = true;
-					}
-					if (this.isStakeHolder) {
-						values.append("?");
-					} else {
-						values.append(toSqlString(data.getValue()));
-					}
+		Connection connect = openReadConnection();
+		markTrace(QueryEvent.Phase.ACQUIRE);
+		return connect;
+	}
+
+	/**
+	 * 接続情報、条件、設定を引き継いだ新しいインスタンスを作成
+	 * DB接続は引き継がない
+	 * @return {@link SqlBuilder}
+	 */
+	final SqlBuilder copy() {
+		SqlBuilder builder = copySettings();
+		builder.table = this.table;
+		builder.columnList.addAll(this.columnList);
+		builder.whereList.addAll(this.whereList);
+		for (Map<String, Object> dataMap : this.insertDataList) {
+			builder.insertDataList.add(new LinkedHashMap<>(dataMap));
+		}
+		for (Map<String, Object> dataMap : this.updateDataList) {
+			builder.updateDataList.add(new LinkedHashMap<>(dataMap));
+		}
+		builder.orderByList.addAll(this.orderByList);
+		builder.groupByList.addAll(this.groupByList);
+		builder.joinList.addAll(this.joinList);
+		builder.leftJoinList.addAll(this.leftJoinList);
+		builder.havingList.addAll(this.havingList);
+		builder.unionList.addAll(this.unionList);
+		builder.upsertSqlMap.putAll(this.upsertSqlMap);
+		builder.upsertActionMap.putAll(this.upsertActionMap);
+		builder.aggregateKeyList.addAll(this.aggregateKeyList);
+		builder.limit = this.limit;
+		builder.offset = this.offset;
+		builder.isExplain = this.isExplain;
+		builder.isDistinct = this.isDistinct;
+		builder.isForUpdate = this.isForUpdate;
+		builder.isNoWait = this.isNoWait;
+		return builder;
+	}
+
+	/**
+	 * 接続情報と設定のみ引き継いだ新しいインスタンスを作成
+	 * 参加しているトランザクションは引き継ぎ、DB接続は引き継がない
+	 * @return {@link SqlBuilder}
+	 */
+	final SqlBuilder copySettings() {
+		SqlBuilder builder = new SqlBuilder();
+		builder.db = this.db;
+		builder.connectUrl = this.connectUrl;
+		builder.connectUser = this.connectUser;
+		builder.connectPassword = this.connectPassword;
+		builder.dataSource = this.dataSource;
+		builder.router = this.router;
+		// 非同期実行や分割検索でも更新直後の検索をプライマリで実行するため、更新日時を引き継ぐ
+		builder.writtenNanos = this.router == null ? null : this.router.lastWritten(this.writtenNanos);
+		builder.fetchSize = this.fetchSize;
+		builder.batchSize = this.batchSize;
+		builder.batchBytes = this.batchBytes;
+		builder.statementCacheSize = this.statementCacheSize;
+		builder.queryTimeout = this.queryTimeout;
+		builder.retryPolicy = this.retryPolicy;
+		builder.asyncExecutor = this.asyncExecutor;
+		builder.asyncConcurrency = this.asyncConcurrency;
+		builder.resultCache = this.resultCache;
+		builder.isStakeHolder = this.isStakeHolder;
+		builder.transaction = this.transaction;
+		return builder;
+	}
+
+	/**
+	 * トランザクションに参加
+	 * @param transaction トランザクション
+	 * @return {@link SqlBuilder}
+	 */
+	final SqlBuilder transaction(final Transaction transaction) {
+		this.transaction = transaction;
+		return this;
+	}
+
+	/**
+	 * トランザクションを開始し、処理の完了後に1回だけコミット
+	 * 処理内では{@link Transaction#table(String)}で作成した{@link SqlBuilder}が同じDB接続で実行され、個別にコミットされない
+	 * 処理で例外が発生した場合はロールバックする
+	 * 既にトランザクション中の場合は、そのトランザクションに参加する
+	 * {@link #retry(RetryPolicy)}指定時は、一時的な失敗でロールバック後に処理全体を再実行するため、処理はDB以外に副作用を持たないこと
+	 * コミット中の接続断はコミットされたか不明なため再実行しない
+	 * @param <T> 実行結果の型
+	 * @param body トランザクション内の処理
+	 * @return 実行結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final <T> T transaction(final TransactionBody<T> body) throws SQLException, NamingException {
+		if (this.transaction != null) {
+			return body.apply(this.transaction);
+		}
+		int attempt = 1;
+		while (true) {
+			Transaction transaction = new Transaction(this, getConnection());
+			T result;
+			try {
+				result = body.apply(transaction);
+				transaction.commit();
+				if (this.router != null) {
+					this.router.written();
+				}
+			} catch (SQLException | NamingException | RuntimeException | Error e) {
+				transaction.rollback(e);
+				closeAll(e, transaction::close);
+				// 一時的な失敗は処理全体を再実行
+				if (e instanceof SQLException && this.retryPolicy != null
+						&& this.retryPolicy.shouldRetry((SQLException) e, attempt, transaction.isCommitting())
+						&& this.retryPolicy.await(attempt)) {
+					attempt++;
+					continue;
 				}
-				valueCount++;
+				throw e;
+			}
+			transaction.close();
+			return result;
+		}
+	}
+
+	/**
+	 * 現在の条件の検索をコンパイル
+	 * SQLの生成は1回のみで、ステークホルダーの値を差し替えて複数スレッドから同時に実行できる
+	 * ステークホルダー未使用時は値を差し替えられない
+	 * @return {@link CompiledQuery}
+	 */
+	public final CompiledQuery compile() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		return compile(QueryEvent.Kind.SELECT, toSelectSQL(), toSelectParameters());
+	}
+
+	/**
+	 * 現在の更新データと条件の更新をコンパイル
+	 * @return {@link CompiledQuery}
+	 */
+	public final CompiledQuery compileUpdate() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		return compile(QueryEvent.Kind.UPDATE, toUpdateSQL(), toUpdateValues());
+	}
+
+	/**
+	 * 現在の条件の削除をコンパイル
+	 * @return {@link CompiledQuery}
+	 */
+	public final CompiledQuery compileDelete() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		return compile(QueryEvent.Kind.DELETE, toDeleteSQL(), toConditionValues(this.whereList));
+	}
+
+	/**
+	 * SQLをコンパイル
+	 * @param kind SQLの種類
+	 * @param sql SQL
+	 * @param values ステークホルダーの値
+	 * @return {@link CompiledQuery}
+	 */
+	private CompiledQuery compile(final QueryEvent.Kind kind, final String sql, final List<Object> values) {
+		if (this.transaction != null) {
+			throw new IllegalStateException("compile cannot be used in transaction");
+		}
+		// 接続情報のみを持つ複製を共有し、以降は変更しない
+		SqlBuilder template = copySettings();
+		template.table = this.table;
+		boolean isRead = kind == QueryEvent.Kind.SELECT && !this.isForUpdate;
+		return new CompiledQuery(template, kind, this.table, sql, this.isStakeHolder ? values : List.of(), isRead);
+	}
+
+	/**
+	 * キーセットページネーションを作成
+	 * 現在の条件を引き継ぎ、キーとなるカラムの昇順で1ページずつ検索する
+	 * OFFSETを使用しないため、後方のページでも読み飛ばしが発生しない
+	 * @param pageSize 1ページの件数
+	 * @param keyColumns 一意に並び順が決まるキーとなるカラム
+	 * @return {@link KeysetPaginator}
+	 */
+	public final KeysetPaginator keyset(final int pageSize, final String... keyColumns) {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		if (!this.orderByList.isEmpty() || 0 < this.offset) {
+			throw new IllegalArgumentException("order by and offset cannot be used with keyset");
+		}
+		return new KeysetPaginator(copy(), pageSize, keyColumns);
+	}
+
+	/**
+	 * キーの最小値と最大値から等間隔に分割して同時に検索する分割検索を作成
+	 * 現在の条件を引き継ぎ、分割範囲ごとに別のDB接続で検索する
+	 * @param keyColumn 数値のキーとなるカラム
+	 * @param partitionCount 分割数
+	 * @return {@link PartitionedScan}
+	 */
+	public final PartitionedScan partitionBy(final String keyColumn, final int partitionCount) {
+		checkPartition();
+		return new PartitionedScan(copy(), keyColumn, partitionCount, null);
+	}
+
+	/**
+	 * 分割位置を指定して同時に検索する分割検索を作成
+	 * 現在の条件を引き継ぎ、分割範囲ごとに別のDB接続で検索する
+	 * @param keyColumn キーとなるカラム
+	 * @param boundaries 昇順の分割位置、分割範囲は分割位置の数より1つ多くなる
+	 * @return {@link PartitionedScan}
+	 */
+	public final PartitionedScan partitionBy(final String keyColumn, final List<?> boundaries) {
+		checkPartition();
+		return new PartitionedScan(copy(), keyColumn, boundaries.size() + 1, boundaries);
+	}
+
+	/**
+	 * 分割検索が可能な条件か確認
+	 */
+	private void checkPartition() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		if (!this.orderByList.isEmpty() || 0 < this.limit || 0 < this.offset) {
+			throw new IllegalArgumentException("order by, limit and offset cannot be used with partition");
+		}
+		if (this.transaction != null) {
+			throw new IllegalStateException("partition cannot be used in transaction");
+		}
+	}
+
+	/**
+	 * 現在の条件でのキーの最小値と最大値を検索
+	 * @param keyColumn キーとなるカラム
+	 * @return [ 最小値, 最大値 ]、対象の行がない場合はどちらもnull
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	final Object[] keyRange(final String keyColumn) throws SQLException, NamingException {
+		String enclosedColumn = encloseByBackQuote(keyColumn);
+		SqlBuilder builder = copy();
+		builder.columnList.clear();
+		builder.columnList.add(StringUtils.join("MIN(", enclosedColumn, ") AS MIN_KEY"));
+		builder.columnList.add(StringUtils.join("MAX(", enclosedColumn, ") AS MAX_KEY"));
+		// ドライバによって別名が返却されないため位置で取得
+		List<Object> values = new ArrayList<>(builder.getFirst().values());
+		if (values.size() != 2) {
+			return new Object[] { null, null };
+		}
+		return values.toArray();
+	}
+
+	/**
+	 * 分割検索用のキーの範囲の条件を付与
+	 * from &lt;= key &lt; to
+	 * 下限なしの範囲はキーがNULLの行も含め、いずれの範囲にも含まれない行をなくす
+	 * @param keyColumn キーとなるカラム
+	 * @param from 下限（含む）、nullの場合は下限なし
+	 * @param to 上限（含まない）、nullの場合は上限なし
+	 * @return {@link SqlBuilder}
+	 */
+	final SqlBuilder range(final String keyColumn, final Object from, final Object to) {
+		String enclosedColumn = encloseByBackQuote(keyColumn);
+		if (from != null) {
+			whereSql(StringUtils.join(enclosedColumn, " >= ?"), from);
+		}
+		if (to != null) {
+			if (from == null) {
+				whereSql(StringUtils.join("(", enclosedColumn, " < ? OR ", enclosedColumn, " IS NULL)"), to);
+			} else {
+				whereSql(StringUtils.join(enclosedColumn, " < ?"), to);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * 非同期実行の実行環境を返却
+	 * @return 実行環境、デフォルトの場合はnull
+	 */
+	final Executor getAsyncExecutor() {
+		return this.asyncExecutor;
+	}
+
+	/**
+	 * キーセットページネーション用の条件を付与
+	 * (k1, k2) > (?, ?) ORDER BY k1, k2 LIMIT n
+	 * @param keyColumns キーとなるカラム
+	 * @param afterValues 前ページの最終行のキーの値、最初のページの場合はnull
+	 * @param pageSize 1ページの件数
+	 * @return {@link SqlBuilder}
+	 */
+	final SqlBuilder seek(final String[] keyColumns, final Object[] afterValues, final int pageSize) {
+		if (afterValues != null) {
+			if (afterValues.length != keyColumns.length) {
+				throw new IllegalArgumentException("key counts do not match");
+			}
+			List<String> columns = new ArrayList<>();
+			List<String> placeholders = new ArrayList<>();
+			for (String keyColumn : keyColumns) {
+				columns.add(encloseByBackQuote(keyColumn));
+				placeholders.add("?");
+			}
+			if (columns.size() == 1) {
+				whereSql(StringUtils.join(columns.get(0), " > ?"), afterValues);
+			} else {
+				whereSql(StringUtils.join("(", String.join(", ", columns), ") > (", String.join(", ", placeholders), ")"), afterValues);
 			}
-			if (columnCount != valueCount) {
+		}
+		for (String keyColumn : keyColumns) {
+			orderByAsc(keyColumn);
+		}
+		return limit(pageSize);
+	}
+
+	/**
+	 * 条件リセット
+	 * @throws SQLException
+	 */
+	public final void reset() throws SQLException {
+		this.columnList.clear();
+		this.joinList.clear();
+		this.leftJoinList.clear();
+		this.whereList.clear();
+		this.insertDataList.clear();
+		this.groupByList.clear();
+		this.havingList.clear();
+		this.unionList.clear();
+		this.orderByList.clear();
+		this.upsertSqlMap.clear();
+		this.upsertActionMap.clear();
+		this.aggregateKeyList.clear();
+		this.limit = 0;
+		this.offset = 0;
+		this.isExplain = false;
+		this.isDistinct = false;
+		this.isForUpdate = false;
+		this.isNoWait = false;
+	}
+
+	/**
+	 * 挿入データのカラムを1行目の順序で返却
+	 * SQLのカラム、生成済みSQLのキー、ステークホルダーの値の順序は全てこのカラム順に揃える
+	 * @param rows 挿入データ
+	 * @return カラム
+	 */
+	private static List<String> toInsertColumns(final List<Map<String, Object>> rows) {
+		List<String> columns = new ArrayList<>(rows.get(0).keySet());
+		for (Map<String, Object> dataMap : rows) {
+			if (dataMap.size() != columns.size()) {
 				throw new IllegalArgumentException("data counts do not match");
 			}
+			if (!dataMap.keySet().containsAll(columns)) {
+				throw new IllegalArgumentException("data columns do not match");
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * INSERT用にデータの値だけ抽出してSQLに追加
+	 * ステークホルダー使用時は1行分のみ、未使用時は全行分を追加
+	 * @param sql SQL
+	 * @param columns カラム
+	 * @param rows 挿入データ
+	 */
+	private void addDataValues(final StringBuilder sql, final List<String> columns, final List<Map<String, Object>> rows) {
+		for (int i = 0; i < rows.size(); i++) {
+			if (0 < i) {
+				sql.append("), (");
+			}
+			List<Object> values = toInsertValues(columns, rows.get(i));
+			for (int j = 0; j < values.size(); j++) {
+				if (0 < j) {
+					sql.append(", ");
+				}
+				sql.append(this.isStakeHolder ? "?" : toSqlString(values.get(j)));
+			}
 			if (this.isStakeHolder) {
 				break;
 			}
-			isValueMultiple = false;
 		}
-		sql.append(values);
-		return true;
 	}
 
 	/**
@@ -756,6 +1553,62 @@ public class SqlBuilder {
 		return true;
 	}
 
+	/**
+	 * SQLの形
+	 * テーブル、カラム、条件、フラグが同じであれば同じSQLが生成される
+	 * @param kind SQLの種類
+	 * @param option 種類ごとの付加情報
+	 * @param table テーブル
+	 * @param columns カラム
+	 * @param joins JOIN
+	 * @param leftJoins LEFT JOIN
+	 * @param wheres WHEREの条件の形
+	 * @param groupBys GROUP BY
+	 * @param havings HAVINGの条件の形
+	 * @param unions UNION
+	 * @param orderBys ORDER BY
+	 * @param limit LIMIT
+	 * @param offset OFFSET
+	 * @param flags EXPLAIN、DISTINCT、FOR UPDATE、NO WAIT、ステークホルダーの有無
+	 */
+	private record SqlShape(String kind, String option, String table, List<String> columns,
+			List<String> joins, List<String> leftJoins, List<Object> wheres, List<String> groupBys,
+			List<Object> havings, List<String> unions, List<String> orderBys,
+			int limit, int offset, int flags) {
+
+		/**
+		 * キャッシュに保存するため、以降の変更の影響を受けない複製を作成
+		 * @return 複製
+		 */
+		SqlShape snapshot() {
+			return new SqlShape(this.kind, this.option, this.table, List.copyOf(this.columns),
+					List.copyOf(this.joins), List.copyOf(this.leftJoins), this.wheres,
+					List.copyOf(this.groupBys), this.havings, List.copyOf(this.unions),
+					List.copyOf(this.orderBys), this.limit, this.offset, this.flags);
+		}
+
+	}
+
+	/**
+	 * 現在の条件からSQLの形を作成
+	 * 生成済みのSQLの検索にのみ使用するため、リストは複製せずに参照し、保存時に{@link SqlShape#snapshot()}で複製する
+	 * @param kind SQLの種類
+	 * @param option 種類ごとの付加情報
+	 * @param columns カラム
+	 * @return SQLの形
+	 */
+	private SqlShape toShape(final String kind, final String option, final List<String> columns) {
+		int flags = (this.isExplain ? 1 : 0)
+				| (this.isDistinct ? 2 : 0)
+				| (this.isForUpdate ? 4 : 0)
+				| (this.isNoWait ? 8 : 0)
+				| (this.isStakeHolder ? 16 : 0);
+		return new SqlShape(kind, StringUtils.defaultString(option), this.table, columns,
+				this.joinList, this.leftJoinList, toConditionShapes(this.whereList),
+				this.groupByList, toConditionShapes(this.havingList), this.unionList,
+				this.orderByList, this.limit, this.offset, flags);
+	}
+
 	/**
 	 * SELECTのSQLを返却
 	 * @return SELECT SQL
@@ -766,10 +1619,26 @@ public class SqlBuilder {
 
 	/**
 	 * SELECTのSQLを返却
+	 * 同じ形のSQLは生成済みのものを返却
 	 * @param count カウントするカラム、またはアスタリスク
 	 * @return SELECT SQL
 	 */
 	public final String toSelectSQL(final String count) {
+		SqlShape shape = toShape("SELECT", count, this.columnList);
+		String sql = SQL_CACHE.get(shape);
+		if (sql == null) {
+			sql = buildSelectSQL(count);
+			SQL_CACHE.put(shape.snapshot(), sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * SELECTのSQLを生成
+	 * @param count カウントするカラム、またはアスタリスク
+	 * @return SELECT SQL
+	 */
+	private String buildSelectSQL(final String count) {
 		StringBuilder sql = new StringBuilder();
 		// EXPLAIN
 		if (this.isExplain) {
@@ -799,11 +1668,11 @@ public class SqlBuilder {
 		toSqlFormat(sql, this.joinList, "JOIN", " JOIN ");
 		toSqlFormat(sql, this.leftJoinList, "LEFT JOIN", " LEFT JOIN ");
 		// 条件追加
-		toSqlFormat(sql, this.whereList, "WHERE", " AND ");
+		toSqlFormat(sql, toConditionSql(this.whereList), "WHERE", " AND ");
 		// group
 		toSqlFormat(sql, this.groupByList, "GROUP BY", ", ");
 		// having
-		toSqlFormat(sql, this.havingList, "HAVING", " AND ");
+		toSqlFormat(sql, toConditionSql(this.havingList), "HAVING", " AND ");
 		// union
 		toSqlFormat(sql, this.unionList, "UNION", " UNION ");
 		// order
@@ -832,13 +1701,20 @@ public class SqlBuilder {
 	 * @return DELETE SQL
 	 */
 	public final String toDeleteSQL() {
+		SqlShape shape = toShape("DELETE", null, List.of());
+		String cachedSql = SQL_CACHE.get(shape);
+		if (cachedSql != null) {
+			return cachedSql;
+		}
 		StringBuilder sql = new StringBuilder("DELETE ");
 		// テーブル追加
 		sql.append("FROM ");
 		sql.append(this.table);
 		// 条件追加
-		toSqlFormat(sql, this.whereList, "WHERE", " AND ");
-		return sql.append(";").toString();
+		toSqlFormat(sql, toConditionSql(this.whereList), "WHERE", " AND ");
+		String deleteSql = sql.append(";").toString();
+		SQL_CACHE.put(shape.snapshot(), deleteSql);
+		return deleteSql;
 	}
 
 	/**
@@ -849,47 +1725,167 @@ public class SqlBuilder {
 		if (this.insertDataList.isEmpty()) {
 			return "";
 		}
+		return toInsertSQL(toInsertColumns(this.insertDataList), this.insertDataList);
+	}
+
+	/**
+	 * INSERTのSQLを返却
+	 * @param columns カラム
+	 * @param rows 挿入データ
+	 * @return INSERT SQL
+	 */
+	private String toInsertSQL(final List<String> columns, final List<Map<String, Object>> rows) {
+		// ステークホルダー使用時は値を含まないため、同じカラムのSQLは生成済みのものを使用
+		SqlShape shape = null;
+		if (this.isStakeHolder) {
+			shape = toShape("INSERT", null, columns);
+			String cachedSql = SQL_CACHE.get(shape);
+			if (cachedSql != null) {
+				return cachedSql;
+			}
+		}
 		// SQL作成
 		StringBuilder sql = new StringBuilder("INSERT INTO ");
 		// テーブル追加
 		sql.append(this.table);
 		sql.append(" (");
 		// 挿入データ追加
-		int columnCount = this.addDataColumns(sql);
+		sql.append(String.join(", ", columns));
 		sql.append(") VALUES (");
-		this.addDataValues(sql, columnCount);
+		this.addDataValues(sql, columns, rows);
 		sql.append(")");
-		return sql.append(";").toString();
+		String insertSql = sql.append(";").toString();
+		if (shape != null) {
+			SQL_CACHE.put(shape.snapshot(), insertSql);
+		}
+		return insertSql;
 	}
 
 	/**
 	 * インクリメントのSQLを返却
+	 * 挿入データにインクリメントしたいカラムがない行は1を加算する
 	 * @param column インクリメントしたいカラム
 	 * @return インクリメントSQL
 	 */
-	@SuppressWarnings("boxing")
 	public final String toIncrementSQL(final String column) {
-		if (this.insertDataList.isEmpty()) {
+		prepareIncrement(column);
+		return toUpsertSQL();
+	}
+
+	/**
+	 * インクリメント用に挿入データと更新方法を付与
+	 * @param column インクリメントしたいカラム
+	 */
+	@SuppressWarnings("boxing")
+	private void prepareIncrement(final String column) {
+		String enclosedColumn = encloseByBackQuote(column);
+		for (Map<String, Object> dataMap : this.insertDataList) {
+			dataMap.putIfAbsent(enclosedColumn, 1);
+		}
+		onDuplicate(column, UpsertAction.ADD);
+	}
+
+	/**
+	 * UPSERTのSQLを返却
+	 * 全ての挿入データを1つのSQLにまとめる
+	 * @return INSERT ... ON DUPLICATE KEY UPDATE SQL
+	 */
+	public final String toUpsertSQL() {
+		List<Map<String, Object>> rows = aggregateInsertData();
+		if (rows.isEmpty()) {
 			return "";
 		}
-		// インクリメント用データ挿入
-		insertData(column, 1);
+		return toUpsertSQL(toInsertColumns(rows), rows);
+	}
+
+	/**
+	 * UPSERTのSQLを返却
+	 * @param columns カラム
+	 * @param rows 挿入データ
+	 * @return INSERT ... ON DUPLICATE KEY UPDATE SQL
+	 */
+	private String toUpsertSQL(final List<String> columns, final List<Map<String, Object>> rows) {
+		if (this.upsertSqlMap.isEmpty()) {
+			throw new IllegalArgumentException("on duplicate is empty");
+		}
+		// ステークホルダー使用時は値を含まないため、同じカラムと行数のSQLは生成済みのものを使用
+		SqlShape shape = null;
+		if (this.isStakeHolder) {
+			shape = toShape("UPSERT", StringUtils.join(String.valueOf(rows.size()), "\0", String.join(", ", this.upsertSqlMap.values())), columns);
+			String cachedSql = SQL_CACHE.get(shape);
+			if (cachedSql != null) {
+				return cachedSql;
+			}
+		}
 		// SQL作成
 		StringBuilder sql = new StringBuilder("INSERT INTO ");
 		// テーブル追加
 		sql.append(this.table);
 		sql.append(" (");
 		// 挿入データ追加
-		int columnCount = this.addDataColumns(sql);
-		sql.append(") VALUES (");
-		this.addDataValues(sql, columnCount);
-		sql.append(") ON DUPLICATE KEY UPDATE ");
-		// 更新データ追加
-		sql.append(encloseByBackQuote(column));
-		sql.append(" = ");
-		sql.append(encloseByBackQuote(column));
-		sql.append(" + 1");
-		return sql.append(";").toString();
+		sql.append(String.join(", ", columns));
+		sql.append(") VALUES ");
+		for (int i = 0; i < rows.size(); i++) {
+			if (0 < i) {
+				sql.append(", ");
+			}
+			List<Object> values = toInsertValues(columns, rows.get(i));
+			sql.append("(");
+			for (int j = 0; j < values.size(); j++) {
+				if (0 < j) {
+					sql.append(", ");
+				}
+				sql.append(this.isStakeHolder ? "?" : toSqlString(values.get(j)));
+			}
+			sql.append(")");
+		}
+		// 更新式追加
+		sql.append(" ON DUPLICATE KEY UPDATE ");
+		sql.append(String.join(", ", this.upsertSqlMap.values()));
+		String upsertSql = sql.append(";").toString();
+		if (shape != null) {
+			SQL_CACHE.put(shape.snapshot(), upsertSql);
+		}
+		return upsertSql;
+	}
+
+	/**
+	 * 挿入データのうち同じキーの行を1行にまとめる
+	 * キーが指定されていない場合はそのまま返却
+	 * @return まとめた挿入データ
+	 */
+	private List<Map<String, Object>> aggregateInsertData() {
+		if (this.aggregateKeyList.isEmpty() || this.insertDataList.size() <= 1) {
+			return this.insertDataList;
+		}
+		Map<List<Object>, Map<String, Object>> aggregateMap = new LinkedHashMap<>();
+		for (Map<String, Object> dataMap : this.insertDataList) {
+			List<Object> key = new ArrayList<>(this.aggregateKeyList.size());
+			for (String keyColumn : this.aggregateKeyList) {
+				if (!dataMap.containsKey(keyColumn)) {
+					throw new IllegalArgumentException(StringUtils.join("key column is missing: ", keyColumn));
+				}
+				key.add(dataMap.get(keyColumn));
+			}
+			Map<String, Object> aggregated = aggregateMap.get(key);
+			if (aggregated == null) {
+				aggregateMap.put(key, new LinkedHashMap<>(dataMap));
+				continue;
+			}
+			for (Entry<String, Object> data : dataMap.entrySet()) {
+				String column = data.getKey();
+				if (this.aggregateKeyList.contains(column)) {
+					continue;
+				}
+				UpsertAction action = this.upsertActionMap.get(column);
+				if (action != null) {
+					aggregated.put(column, action.merge(aggregated.get(column), data.getValue()));
+				} else if (this.upsertSqlMap.containsKey(column)) {
+					throw new IllegalArgumentException(StringUtils.join("raw expression cannot be aggregated: ", column));
+				}
+			}
+		}
+		return new ArrayList<>(aggregateMap.values());
 	}
 
 	/**
@@ -900,6 +1896,19 @@ public class SqlBuilder {
 		if (this.updateDataList.isEmpty()) {
 			return "";
 		}
+		// ステークホルダー使用時は値を含まないため、同じカラムのSQLは生成済みのものを使用
+		SqlShape shape = null;
+		if (this.isStakeHolder) {
+			List<String> columns = new ArrayList<>();
+			for (Map<String, Object> dataMap : this.updateDataList) {
+				columns.addAll(dataMap.keySet());
+			}
+			shape = toShape("UPDATE", null, columns);
+			String cachedSql = SQL_CACHE.get(shape);
+			if (cachedSql != null) {
+				return cachedSql;
+			}
+		}
 		// SQL作成
 		StringBuilder sql = new StringBuilder("UPDATE ");
 		// テーブル追加
@@ -908,8 +1917,12 @@ public class SqlBuilder {
 		sql.append(" SET ");
 		this.addData(sql);
 		// 条件追加
-		toSqlFormat(sql, this.whereList, "WHERE", " AND ");
-		return sql.append(";").toString();
+		toSqlFormat(sql, toConditionSql(this.whereList), "WHERE", " AND ");
+		String updateSql = sql.append(";").toString();
+		if (shape != null) {
+			SQL_CACHE.put(shape.snapshot(), updateSql);
+		}
+		return updateSql;
 	}
 
 	/**
@@ -966,26 +1979,38 @@ public class SqlBuilder {
 			throw new IllegalArgumentException("table is empty");
 		}
 		this.limit = 1;
+		startTrace(QueryEvent.Kind.SELECT);
 		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toSelectSQL());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			// メタデータ取得
-			ResultSetMetaData meta = resultSet.getMetaData();
+				PreparedStatement preparedStatement = prepareStatement(connection, toSelectSQL());
+				ResultSet resultSet = executeQuery(preparedStatement)) {
 			// 検索
-			Map<String, Object> resultMap = new LinkedHashMap<>();
-			while (resultSet.next()) {
+			Map<String, Object> resultMap;
+			if (resultSet.next()) {
 				// 取得した全カラムを保存
-				for (int i = 1; i <= meta.getColumnCount(); i++) {
-					resultMap.put(meta.getColumnName(i), resultSet.getObject(i));
-				}
-				break;
+				resultMap = ResultRow.ColumnIndex.of(resultSet.getMetaData()).read(resultSet);
+			} else {
+				resultMap = new LinkedHashMap<>();
 			}
+			traceRows(resultMap.isEmpty() ? 0 : 1);
+			markTrace(QueryEvent.Phase.FETCH);
+			// 検索後処理は計測に含めない
+			finishTrace();
 			// 条件をリセット
 			reset();
 			// DB接続を継続
 			setConnection(connection);
-			// 検索後処理を実行し結果を返却
-			return endFunction.apply(resultMap, this);
+			try {
+				// 検索後処理を実行し結果を返却
+				return endFunction.apply(resultMap, this);
+			} finally {
+				// クローズするDB接続を保持し続けないよう解除
+				releaseConnection(connection);
+			}
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
 		}
     }
 
@@ -1010,30 +2035,89 @@ public class SqlBuilder {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
+		startTrace(QueryEvent.Kind.SELECT);
 		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toSelectSQL());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			// メタデータ取得
-			ResultSetMetaData meta = resultSet.getMetaData();
+				PreparedStatement preparedStatement = prepareStatement(connection, toSelectSQL());
+				ResultSet resultSet = executeQuery(preparedStatement)) {
+			// カラムの位置は全行で共有
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
 			// 検索
 			List<Map<String, Object>> resultList = new ArrayList<>();
 			while (resultSet.next()) {
-				Map<String, Object> resultMap = new LinkedHashMap<>();
 				// 取得した全カラムを保存
-				for (int i = 1; i <= meta.getColumnCount(); i++) {
-					resultMap.put(meta.getColumnName(i), resultSet.getObject(i));
-				}
-				resultList.add(resultMap);
+				resultList.add(columns.read(resultSet));
 			}
+			traceRows(resultList.size());
+			markTrace(QueryEvent.Phase.FETCH);
+			// 検索後処理は計測に含めない
+			finishTrace();
 			// 条件をリセット
 			reset();
 			// DB接続を継続
 			setConnection(connection);
-			// 検索後処理を実行し結果を返却
-			return endFunction.apply(resultList, this);
+			try {
+				// 検索後処理を実行し結果を返却
+				return endFunction.apply(resultList, this);
+			} finally {
+				// クローズするDB接続を保持し続けないよう解除
+				releaseConnection(connection);
+			}
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
 		}
     }
 
+	/**
+	 * 複数の検索を実行し、1行ずつ指定の型に変換
+	 * 行ごとのMapを作成しないため、大量の検索結果でもメモリ使用量を抑えられる
+	 * @param <T> 変換後の型
+	 * @param rowMapper 変換処理
+	 * @return 複数の検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final <T> List<T> get(final RowMapper<T> rowMapper) throws SQLException, NamingException {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		startTrace(QueryEvent.Kind.SELECT);
+		try (Connection connection = getReadConnection();
+				PreparedStatement preparedStatement = prepareSelectStatement(connection, toSelectSQL());
+				ResultSet resultSet = executeQuery(preparedStatement)) {
+			// カラム位置の解決は1回のみ
+			RowMapper<T> mapper = rowMapper.prepare(resultSet.getMetaData());
+			// 検索
+			List<T> resultList = new ArrayList<>();
+			while (resultSet.next()) {
+				resultList.add(mapper.map(resultSet));
+			}
+			traceRows(resultList.size());
+			markTrace(QueryEvent.Phase.FETCH);
+			return resultList;
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+	}
+
+	/**
+	 * 複数の検索を実行し、レコードまたはPOJOに変換
+	 * カラム名とフィールド名は、大文字小文字とアンダースコアを無視して対応付ける
+	 * @param <T> 変換後の型
+	 * @param type レコードまたは引数なしコンストラクタを持つクラス
+	 * @return 複数の検索結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final <T> List<T> get(final Class<T> type) throws SQLException, NamingException {
+		return get(RowMapper.of(type));
+	}
+
 	/**
 	 * 検索を実行
 	 * @param isFirst 1件のみの検索か否か
@@ -1045,28 +2129,317 @@ public class SqlBuilder {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
-		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toSelectSQL(count));
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			// メタデータ取得
-			ResultSetMetaData meta = resultSet.getMetaData();
+		String sql = toSelectSQL(count);
+		// 検索結果のキャッシュ確認（ロックを伴う検索と、未確定の更新が見えるトランザクション中の検索はキャッシュしない）
+		ResultCache cache = this.isForUpdate || this.transaction != null ? null : this.resultCache;
+		ResultCache.Key cacheKey = null;
+		List<String> tables = null;
+		long[] generations = null;
+		if (cache != null) {
+			cacheKey = new ResultCache.Key(sql, toSelectParameters());
+			List<Map<String, Object>> cachedList = cache.get(cacheKey);
+			if (cachedList != null) {
+				return cachedList;
+			}
+			tables = getTables();
+			generations = cache.generations(tables);
+		}
+		startTrace(QueryEvent.Kind.SELECT);
+		try (Connection connection = getReadConnection();
+				PreparedStatement preparedStatement = prepareSelectStatement(connection, sql);
+				ResultSet resultSet = executeQuery(preparedStatement)) {
+			// カラムの位置は全行で共有
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
 			// 検索
 			List<Map<String, Object>> resultList = new ArrayList<>();
 			while (resultSet.next()) {
-				Map<String, Object> resultMap = new LinkedHashMap<>();
 				// 取得した全カラムを保存
-				for (int i = 1; i <= meta.getColumnCount(); i++) {
-					resultMap.put(meta.getColumnName(i), resultSet.getObject(i));
-				}
-				resultList.add(resultMap);
+				resultList.add(columns.read(resultSet));
 				if (isFirst) {
 					break;
 				}
 			}
+			traceRows(resultList.size());
+			markTrace(QueryEvent.Phase.FETCH);
+			if (cache != null) {
+				cache.put(cacheKey, tables, generations, resultList);
+			}
 			return resultList;
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
 		}
     }
 
+	/**
+	 * 検索で参照するテーブルを返却
+	 * @return テーブル
+	 */
+	private List<String> getTables() {
+		List<String> tables = new ArrayList<>();
+		tables.add(this.table);
+		for (String join : this.joinList) {
+			tables.add(join.substring(0, join.indexOf(" ON ")));
+		}
+		for (String join : this.leftJoinList) {
+			tables.add(join.substring(0, join.indexOf(" ON ")));
+		}
+		return tables;
+	}
+
+	/**
+	 * 条件の値をステークホルダーに格納して検索を実行
+	 * @param preparedStatement ステートメント
+	 * @return 検索結果
+	 * @throws SQLException
+	 */
+	private ResultSet executeQuery(final PreparedStatement preparedStatement) throws SQLException {
+		setStatementValues(preparedStatement, 1, toSelectParameters());
+		ResultSet resultSet = preparedStatement.executeQuery();
+		if (this.trace != null) {
+			this.trace.executed(0);
+		}
+		return resultSet;
+	}
+
+	/**
+	 * ステートメントに複数の値を順に格納
+	 * @param preparedStatement ステートメント
+	 * @param paramIndex 最初の格納インデックス
+	 * @param values 値
+	 * @return 次の格納インデックス
+	 * @throws SQLException
+	 */
+	final int setStatementValues(final PreparedStatement preparedStatement, final int paramIndex, final List<Object> values) throws SQLException {
+		if (this.trace != null) {
+			this.trace.parameters(values.size());
+		}
+		int index = paramIndex;
+		for (Object value : values) {
+			setStatementValue(preparedStatement, index, value);
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * ステートメントを作成
+	 * ステートメントキャッシュが有効な場合は、DB接続ごとに作成済みのものを使い回す
+	 * @param connection DB接続
+	 * @param sql SQL
+	 * @return ステートメント
+	 * @throws SQLException
+	 */
+	final PreparedStatement prepareStatement(final Connection connection, final String sql) throws SQLException {
+		PreparedStatement preparedStatement;
+		if (0 < this.statementCacheSize) {
+			// トランザクション中はトランザクションをまたいで使い回せるよう、元のDB接続ごとにキャッシュ
+			Connection cacheConnection = this.transaction != null ? this.transaction.getConnection() : connection;
+			preparedStatement = StatementCache.prepare(cacheConnection, sql, this.statementCacheSize);
+		} else {
+			preparedStatement = connection.prepareStatement(sql);
+		}
+		int timeout = getQueryTimeout();
+		if (0 < timeout || 0 < this.statementCacheSize) {
+			// 使い回すステートメントは前回の設定が残るため常に設定
+			preparedStatement.setQueryTimeout(timeout);
+		}
+		if (this.trace != null) {
+			this.trace.prepared(sql);
+		}
+		return preparedStatement;
+	}
+
+	/**
+	 * 適用するクエリタイムアウトを取得
+	 * @return タイムアウト（秒）、未指定の場合は全体のクエリタイムアウト
+	 */
+	final int getQueryTimeout() {
+		return 0 < this.queryTimeout ? this.queryTimeout : defaultQueryTimeout;
+	}
+
+	/**
+	 * 検索用のステートメントを作成
+	 * フェッチサイズが指定されていれば設定する
+	 * @param connection DB接続
+	 * @param sql SQL
+	 * @return ステートメント
+	 * @throws SQLException
+	 */
+	final PreparedStatement prepareSelectStatement(final Connection connection, final String sql) throws SQLException {
+		PreparedStatement preparedStatement = prepareStatement(connection, sql);
+		if (this.fetchSize != 0) {
+			preparedStatement.setFetchSize(this.fetchSize);
+		}
+		return preparedStatement;
+	}
+
+	/**
+	 * 検索を実行し、1行ずつ処理
+	 * 結果をリストに保持しないため、件数に関わらずメモリ使用量は一定
+	 * @param consumer 1行ごとの処理
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final void forEach(final RowConsumer consumer) throws SQLException, NamingException {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		startTrace(QueryEvent.Kind.SELECT);
+		try (Connection connection = getReadConnection();
+				PreparedStatement preparedStatement = prepareSelectStatement(connection, toSelectSQL());
+				ResultSet resultSet = executeQuery(preparedStatement)) {
+			// カラムの位置は全行で共有
+			ResultRow.ColumnIndex columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
+			// 1行ずつ処理
+			long rowCount = 0;
+			while (resultSet.next()) {
+				consumer.accept(columns.read(resultSet));
+				rowCount++;
+			}
+			traceRows(rowCount);
+			markTrace(QueryEvent.Phase.FETCH);
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+	}
+
+	/**
+	 * 検索を実行し、列指向の検索結果として一定行数ずつ処理
+	 * 値をプリミティブ型の配列（DECIMALとNUMERICはBigDecimal[]）に格納するため、行ごとのMapや値のボクシングが発生しない
+	 * @param batchSize 1回に処理する行数
+	 * @param consumer 一定行数ごとの処理
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final void forEachBatch(final int batchSize, final BatchConsumer consumer) throws SQLException, NamingException {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		startTrace(QueryEvent.Kind.SELECT);
+		try (Connection connection = getReadConnection();
+				PreparedStatement preparedStatement = prepareSelectStatement(connection, toSelectSQL());
+				ResultSet resultSet = executeQuery(preparedStatement)) {
+			// 格納先は使い回す
+			ColumnBatch batch = new ColumnBatch(resultSet.getMetaData(), batchSize);
+			while (0 < batch.fill(resultSet)) {
+				traceRows(batch.size());
+				consumer.accept(batch);
+			}
+			markTrace(QueryEvent.Phase.FETCH);
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+	}
+
+	/**
+	 * 検索を実行し、結果をストリームで返却
+	 * 行は読み進めるごとに取得し、ストリームのクローズ時にDB接続もクローズする
+	 * 必ずtry-with-resourcesなどでクローズすること
+	 * @return 検索結果のストリーム
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final Stream<Map<String, Object>> stream() throws SQLException, NamingException {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		startTrace(QueryEvent.Kind.SELECT);
+		Connection connection = null;
+		PreparedStatement preparedStatement = null;
+		ResultSet resultSet = null;
+		ResultRow.ColumnIndex columns;
+		try {
+			connection = getReadConnection();
+			preparedStatement = prepareSelectStatement(connection, toSelectSQL());
+			resultSet = executeQuery(preparedStatement);
+			columns = ResultRow.ColumnIndex.of(resultSet.getMetaData());
+		} catch (SQLException | NamingException | RuntimeException e) {
+			closeAll(e, resultSet, preparedStatement, connection);
+			failTrace(e);
+			finishTrace();
+			throw e;
+		}
+		// 計測はストリームのクローズまで継続
+		final QueryTrace streamTrace = this.trace;
+		this.trace = null;
+		final ResultSet rows = resultSet;
+		final AutoCloseable[] resources = { resultSet, preparedStatement, connection };
+		Spliterator<Map<String, Object>> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(final Consumer<? super Map<String, Object>> action) {
+				try {
+					if (!rows.next()) {
+						return false;
+					}
+					if (streamTrace != null) {
+						streamTrace.rows(1);
+					}
+					action.accept(columns.read(rows));
+					return true;
+				} catch (SQLException e) {
+					if (streamTrace != null) {
+						streamTrace.fail(e);
+					}
+					throw new IllegalStateException("failed to fetch row", e);
+				}
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			IllegalStateException exception = new IllegalStateException("failed to close result");
+			closeAll(exception, resources);
+			if (streamTrace != null) {
+				streamTrace.mark(QueryEvent.Phase.FETCH);
+				streamTrace.finish();
+			}
+			if (exception.getSuppressed().length != 0) {
+				throw exception;
+			}
+		});
+	}
+
+	/**
+	 * メタデータからカラム名を取得
+	 * 別名（AS）を指定した場合は別名とし、Mapの検索結果、レコードやPOJOへの変換、列指向の検索結果で共通とする
+	 * @param meta メタデータ
+	 * @return カラム名
+	 * @throws SQLException
+	 */
+	static String[] getColumnNames(final ResultSetMetaData meta) throws SQLException {
+		String[] columnNames = new String[meta.getColumnCount()];
+		for (int i = 0; i < columnNames.length; i++) {
+			columnNames[i] = meta.getColumnLabel(i + 1);
+		}
+		return columnNames;
+	}
+
+	/**
+	 * リソースを順にクローズ
+	 * クローズ時の例外は引数の例外に抑制された例外として追加する
+	 * @param exception 抑制された例外の追加先
+	 * @param resources クローズするリソース
+	 */
+	private static void closeAll(final Throwable exception, final AutoCloseable... resources) {
+		for (AutoCloseable resource : resources) {
+			if (resource == null) {
+				continue;
+			}
+			try {
+				resource.close();
+			} catch (Exception e) {
+				exception.addSuppressed(e);
+			}
+		}
+	}
+
 	/**
 	 * insertSQLを実行
 	 * @return 更新行数
@@ -1077,28 +2450,129 @@ public class SqlBuilder {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
-		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toInsertSQL())) {
-			if (this.isStakeHolder) {
-				// ステークホルダーに値をセット
-				for (Map<String, Object> dataMap : this.insertDataList) {
-					int paramIndex = 1;
-					for (Entry<String, Object> data : dataMap.entrySet()) {
-						setStatementValue(preparedStatement, paramIndex, data.getValue());
-						paramIndex++;
+		if (this.insertDataList.isEmpty()) {
+			throw new IllegalArgumentException("insert data is empty");
+		}
+		List<String> columns = toInsertColumns(this.insertDataList);
+		List<List<Map<String, Object>>> chunks = splitInsertData();
+		List<Integer> countList = new ArrayList<>();
+		// コミット済みの分割単位の数、再実行時は次の分割単位から実行
+		int[] committed = { 0 };
+		startTrace(QueryEvent.Kind.INSERT);
+		try {
+			retryable(() -> {
+				try (Connection connection = getConnection()) {
+					while (committed[0] < chunks.size()) {
+						List<Map<String, Object>> rows = chunks.get(committed[0]);
+						// ステークホルダー使用時は1行ずつバッチに追加、未使用時は複数行のVALUESで1回実行
+						try (PreparedStatement preparedStatement = prepareStatement(connection, toInsertSQL(columns, rows))) {
+							if (this.isStakeHolder) {
+								// ステークホルダーにSQLと同じカラム順で値をセット
+								for (Map<String, Object> dataMap : rows) {
+									setStatementValues(preparedStatement, 1, toInsertValues(columns, dataMap));
+									preparedStatement.addBatch();
+								}
+							} else {
+								preparedStatement.addBatch();
+							}
+							int[] count = preparedStatement.executeBatch();
+							traceExecuted(rows.size(), count);
+							// 分割単位でコミット
+							commit(connection);
+							committed[0]++;
+							afterWrite();
+							for (int c : count) {
+								countList.add(c);
+							}
+						} catch (SQLException | RuntimeException e) {
+							rollback(connection, e);
+							throw e;
+						}
 					}
 				}
-				preparedStatement.addBatch();
-			} else {
-				preparedStatement.addBatch();
+				return null;
+			});
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+		return countList.toArray(Integer[]::new);
+	}
+
+	/**
+	 * 1行分の挿入データをカラム順の値に変換
+	 * @param columns カラム
+	 * @param dataMap 挿入データ
+	 * @return ステークホルダーの値
+	 */
+	static List<Object> toInsertValues(final List<String> columns, final Map<String, Object> dataMap) {
+		if (dataMap.size() != columns.size()) {
+			throw new IllegalArgumentException("data counts do not match");
+		}
+		List<Object> values = new ArrayList<>(columns.size());
+		for (String column : columns) {
+			if (!dataMap.containsKey(column)) {
+				throw new IllegalArgumentException("data columns do not match");
 			}
-			int[] count = preparedStatement.executeBatch();
-			connection.commit();
-			// int配列をInteger配列に変換して返す
-			return Arrays.stream(count)
-					.boxed()
-					.toArray(Integer[]::new);
+			values.add(dataMap.get(column));
 		}
+		return values;
+	}
+
+	/**
+	 * 挿入データを1回でコミットする単位に分割
+	 * @return 分割した挿入データ
+	 */
+	private List<List<Map<String, Object>>> splitInsertData() {
+		return splitRows(this.insertDataList, this.batchSize);
+	}
+
+	/**
+	 * 挿入データを最大行数と最大バイト数で分割
+	 * @param rows 挿入データ
+	 * @param maxRows 最大行数、0の場合は無制限
+	 * @return 分割した挿入データ
+	 */
+	private List<List<Map<String, Object>>> splitRows(final List<Map<String, Object>> rows, final int maxRows) {
+		List<List<Map<String, Object>>> chunkList = new ArrayList<>();
+		int from = 0;
+		long bytes = 0;
+		for (int i = 0; i < rows.size(); i++) {
+			long rowBytes = 0;
+			for (Object value : rows.get(i).values()) {
+				rowBytes += estimateBytes(value);
+			}
+			boolean isRowsFull = 0 < maxRows && maxRows <= i - from;
+			boolean isBytesFull = 0 < this.batchBytes && from < i && this.batchBytes < bytes + rowBytes;
+			if (isRowsFull || isBytesFull) {
+				chunkList.add(rows.subList(from, i));
+				from = i;
+				bytes = 0;
+			}
+			bytes += rowBytes;
+		}
+		chunkList.add(rows.subList(from, rows.size()));
+		return chunkList;
+	}
+
+	/**
+	 * 値の送信サイズを概算
+	 * @param value 値
+	 * @return 概算バイト数
+	 */
+	private static long estimateBytes(final Object value) {
+		if (value == null) {
+			return 1;
+		} else if (value instanceof String) {
+			return ((String) value).length();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		} else if (value instanceof Integer || value instanceof Float) {
+			return 4;
+		}
+		return 8;
 	}
 
 	/**
@@ -1111,29 +2585,54 @@ public class SqlBuilder {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
-		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toUpdateSQL())) {
-			if (this.isStakeHolder) {
-				// ステークホルダーに値をセット
-				int paramIndex = 1;
-				Map<String, Object> dataMap = this.updateDataList.get(0);
-				for (Entry<String, Object> data : dataMap.entrySet()) {
-					setStatementValue(preparedStatement, paramIndex, data.getValue());
-					paramIndex++;
+		startTrace(QueryEvent.Kind.UPDATE);
+		try {
+			int[] count = retryable(() -> {
+				try (Connection connection = getConnection();
+						PreparedStatement preparedStatement = prepareStatement(connection, toUpdateSQL())) {
+					try {
+						// 更新データと条件の値をセット
+						setStatementValues(preparedStatement, 1, toUpdateValues());
+						preparedStatement.addBatch();
+						int[] batchCount = preparedStatement.executeBatch();
+						traceExecuted(1, batchCount);
+						commit(connection);
+						return batchCount;
+					} catch (SQLException | RuntimeException e) {
+						rollback(connection, e);
+						throw e;
+					}
 				}
-				preparedStatement.addBatch();
-			} else {
-				preparedStatement.addBatch();
-			}
-			int[] count = preparedStatement.executeBatch();
-			connection.commit();
+			});
+			afterWrite();
 			// int配列をInteger配列に変換して返す
 			return Arrays.stream(count)
 					.boxed()
 					.toArray(Integer[]::new);
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
 		}
 	}
 
+	/**
+	 * UPDATEのステークホルダーの値を返却
+	 * 更新データ、条件の順
+	 * @return ステークホルダーの値
+	 */
+	private List<Object> toUpdateValues() {
+		List<Object> values = new ArrayList<>();
+		if (this.isStakeHolder) {
+			for (Map<String, Object> dataMap : this.updateDataList) {
+				values.addAll(dataMap.values());
+			}
+		}
+		values.addAll(toConditionValues(this.whereList));
+		return values;
+	}
+
 	/**
 	 * deleteSQLを実行
 	 * @return 更新行数
@@ -1144,49 +2643,560 @@ public class SqlBuilder {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
-		try (Connection connection = getConnection();
-			 PreparedStatement preparedStatement = connection.prepareStatement(toDeleteSQL())) {
-			preparedStatement.addBatch();
-			int[] count = preparedStatement.executeBatch();
-			connection.commit();
+		startTrace(QueryEvent.Kind.DELETE);
+		try {
+			int[] count = retryable(() -> {
+				try (Connection connection = getConnection();
+						PreparedStatement preparedStatement = prepareStatement(connection, toDeleteSQL())) {
+					try {
+						// 条件の値をセット
+						setStatementValues(preparedStatement, 1, toConditionValues(this.whereList));
+						preparedStatement.addBatch();
+						int[] batchCount = preparedStatement.executeBatch();
+						traceExecuted(1, batchCount);
+						commit(connection);
+						return batchCount;
+					} catch (SQLException | RuntimeException e) {
+						rollback(connection, e);
+						throw e;
+					}
+				}
+			});
+			afterWrite();
 			// int配列をInteger配列に変換して返す
 			return Arrays.stream(count)
 					.boxed()
 					.toArray(Integer[]::new);
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
 		}
 	}
 
 	/**
 	 * インクリメントSQLを実行
+	 * 挿入データにインクリメントしたいカラムがない行は1を加算する
 	 * @param column インクリメントするカラム
 	 * @return 更新行数
 	 * @throws Exception
 	 */
 	public final Integer[] increment(final String column) throws Exception {
+		prepareIncrement(column);
+		return upsert();
+	}
+
+	/**
+	 * UPSERTを実行
+	 * 複数行のINSERT ... ON DUPLICATE KEY UPDATEを分割単位ごとに1回実行してコミットする
+	 * 分割単位は{@link #batchSize(int)}、{@link #batchBytes(long)}とステークホルダーの最大数から決まる
+	 * @return 分割単位ごとの更新行数
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final Integer[] upsert() throws SQLException, NamingException {
 		if (StringUtils.isBlank(this.table)) {
 			throw new IllegalArgumentException("table is empty");
 		}
-		try (Connection connection = getConnection();
-				PreparedStatement preparedStatement = connection.prepareStatement(toIncrementSQL(column))) {
+		if (this.insertDataList.isEmpty()) {
+			throw new IllegalArgumentException("insert data is empty");
+		}
+		List<Map<String, Object>> rows = aggregateInsertData();
+		List<String> columns = toInsertColumns(rows);
+		int maxRows = this.isStakeHolder ? MAX_PARAMETERS / rows.get(0).size() : 0;
+		if (0 < this.batchSize && (maxRows == 0 || this.batchSize < maxRows)) {
+			maxRows = this.batchSize;
+		}
+		List<List<Map<String, Object>>> chunks = splitRows(rows, maxRows);
+		List<Integer> countList = new ArrayList<>();
+		// コミット済みの分割単位の数、再実行時は次の分割単位から実行
+		int[] committed = { 0 };
+		startTrace(QueryEvent.Kind.UPSERT);
+		try {
+			retryable(() -> {
+				try (Connection connection = getConnection()) {
+					while (committed[0] < chunks.size()) {
+						List<Map<String, Object>> chunk = chunks.get(committed[0]);
+						try (PreparedStatement preparedStatement = prepareStatement(connection, toUpsertSQL(columns, chunk))) {
+							if (this.isStakeHolder) {
+								// ステークホルダーにSQLと同じカラム順で全行の値をセット
+								int paramIndex = 1;
+								for (Map<String, Object> dataMap : chunk) {
+									paramIndex = setStatementValues(preparedStatement, paramIndex, toInsertValues(columns, dataMap));
+								}
+							}
+							int count = preparedStatement.executeUpdate();
+							traceExecuted(chunk.size(), count);
+							// 分割単位でコミット
+							commit(connection);
+							committed[0]++;
+							countList.add(count);
+							afterWrite();
+						} catch (SQLException | RuntimeException e) {
+							rollback(connection, e);
+							throw e;
+						}
+					}
+				}
+				return null;
+			});
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+		return countList.toArray(Integer[]::new);
+	}
+
+	/**
+	 * 挿入データをDBのバルクロードで挿入
+	 * 行はロード用の形式に変換しながらストリームで送信し、1回でコミットする
+	 * MySQLでは一意キーが重複する行はエラーにならず読み飛ばされるため、戻り値の行数を確認すること
+	 * @param dialect バルクロードの方法
+	 * @return ロードした行数
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final long bulkLoad(final BulkLoadDialect dialect) throws SQLException, NamingException {
+		if (this.insertDataList.isEmpty()) {
+			throw new IllegalArgumentException("insert data is empty");
+		}
+		return bulkLoad(dialect, this.insertDataList.iterator());
+	}
+
+	/**
+	 * 行をDBのバルクロードで挿入
+	 * 行は読み込んだ分だけロード用の形式に変換して送信するため、大量の行も一定のメモリ使用量で挿入できる
+	 * 全行のカラムは1行目と同じであること
+	 * MySQLでは一意キーが重複する行はエラーにならず読み飛ばされるため、戻り値の行数を確認すること
+	 * @param dialect バルクロードの方法
+	 * @param rows 行 [ カラム名 => 値, ]
+	 * @return ロードした行数
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	public final long bulkLoad(final BulkLoadDialect dialect, final Iterator<? extends Map<String, Object>> rows) throws SQLException, NamingException {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		if (dialect == null) {
+			throw new IllegalArgumentException("dialect is null");
+		}
+		if (!rows.hasNext()) {
+			throw new IllegalArgumentException("insert data is empty");
+		}
+		Map<String, Object> first = rows.next();
+		List<String> columns = new ArrayList<>(first.keySet());
+		List<String> enclosedColumns = new ArrayList<>(columns.size());
+		for (String column : columns) {
+			enclosedColumns.add(encloseByBackQuote(column));
+		}
+		// テーブルは付与時にバッククォーテーションで囲んでいる
+		String sql = dialect.toLoadSql(this.table, enclosedColumns);
+		BulkLoadInputStream input = new BulkLoadInputStream(dialect, columns, first, rows);
+		startTrace(QueryEvent.Kind.INSERT);
+		try (Connection connection = getConnection()) {
+			try {
+				if (this.trace != null) {
+					this.trace.prepared(sql);
+				}
+				long count = dialect.load(connection, sql, input, getQueryTimeout());
+				if (this.trace != null) {
+					this.trace.executed((int) Math.min(Integer.MAX_VALUE, input.getRowCount()));
+					this.trace.rows(count);
+				}
+				connection.commit();
+				markTrace(QueryEvent.Phase.COMMIT);
+				afterWrite();
+				return count;
+			} catch (SQLException | RuntimeException e) {
+				rollback(connection, e);
+				throw e;
+			}
+		} catch (SQLException | NamingException | RuntimeException | Error e) {
+			failTrace(e);
+			throw e;
+		} finally {
+			finishTrace();
+		}
+	}
+
+	/**
+	 * 全体のクエリタイムアウトを設定
+	 * {@link #queryTimeout(int)}未指定のSqlBuilderに適用する
+	 * @param queryTimeout タイムアウト（秒）、0の場合はドライバの既定値
+	 */
+	public static void setDefaultQueryTimeout(final int queryTimeout) {
+		if (queryTimeout < 0) {
+			throw new IllegalArgumentException("queryTimeout must be 0 or greater");
+		}
+		defaultQueryTimeout = queryTimeout;
+	}
+
+	/**
+	 * 全体のクエリタイムアウトを取得
+	 * @return タイムアウト（秒）
+	 */
+	public static int getDefaultQueryTimeout() {
+		return defaultQueryTimeout;
+	}
+
+	/**
+	 * 再実行できる更新処理
+	 * @param <T> 実行結果の型
+	 * @author ink-0x20
+	 */
+	@FunctionalInterface
+	private interface WriteTask<T> {
+
+		/**
+		 * 実行
+		 * @return 実行結果
+		 * @throws SQLException
+		 * @throws NamingException
+		 */
+		T run() throws SQLException, NamingException;
+
+	}
+
+	/**
+	 * 更新処理を実行し、一時的な失敗の場合は待機後に再実行
+	 * トランザクション中はトランザクション全体で再実行するため、個別には再実行しない
+	 * @param <T> 実行結果の型
+	 * @param task 更新処理
+	 * @return 実行結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	private <T> T retryable(final WriteTask<T> task) throws SQLException, NamingException {
+		int attempt = 1;
+		while (true) {
+			this.isCommitting = false;
+			try {
+				return task.run();
+			} catch (SQLException e) {
+				if (this.retryPolicy == null || this.transaction != null
+						|| !this.retryPolicy.shouldRetry(e, attempt, this.isCommitting)
+						|| !this.retryPolicy.await(attempt)) {
+					throw e;
+				}
+				attempt++;
+			}
+		}
+	}
+
+	/**
+	 * コミット
+	 * コミット中の失敗はコミットされたか不明なため、再実行の判定のため記録する
+	 * @param connection DB接続
+	 * @throws SQLException
+	 */
+	private void commit(final Connection connection) throws SQLException {
+		this.isCommitting = true;
+		connection.commit();
+		this.isCommitting = false;
+		markTrace(QueryEvent.Phase.COMMIT);
+	}
+
+	/**
+	 * 失敗した更新をロールバック
+	 * トランザクション中はトランザクションでロールバックするため何もしない
+	 * ロールバック時の例外は引数の例外に抑制された例外として追加する
+	 * @param connection DB接続
+	 * @param exception 発生した例外
+	 */
+	final void rollback(final Connection connection, final Throwable exception) {
+		if (this.transaction != null) {
+			return;
+		}
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			exception.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * SQL実行の計測結果の通知先を登録
+	 * 未登録時は計測を行わない
+	 * @param listener 通知先、nullの場合は登録を解除
+	 */
+	public static void setQueryListener(final QueryListener listener) {
+		queryListener = listener;
+	}
+
+	/**
+	 * SQL実行の計測結果の通知先を取得
+	 * @return 通知先、未登録時はnull
+	 */
+	public static QueryListener getQueryListener() {
+		return queryListener;
+	}
+
+	/**
+	 * 計測を開始
+	 * 通知先未登録時は何もしない
+	 * @param kind SQLの種類
+	 */
+	private void startTrace(final QueryEvent.Kind kind) {
+		this.trace = QueryTrace.start(kind, this.table);
+	}
+
+	/**
+	 * 工程の終了を記録
+	 * @param phase 工程
+	 */
+	private void markTrace(final QueryEvent.Phase phase) {
+		if (this.trace != null) {
+			this.trace.mark(phase);
+		}
+	}
+
+	/**
+	 * 取得行数を記録
+	 * @param count 行数
+	 */
+	private void traceRows(final long count) {
+		if (this.trace != null) {
+			this.trace.rows(count);
+		}
+	}
+
+	/**
+	 * 更新の実行を記録
+	 * @param rowCount 1回の実行で送信した行数
+	 * @param counts 更新行数、件数不明の場合は負数
+	 */
+	private void traceExecuted(final int rowCount, final int... counts) {
+		if (this.trace == null) {
+			return;
+		}
+		this.trace.executed(rowCount);
+		for (int count : counts) {
+			if (0 < count) {
+				this.trace.rows(count);
+			}
+		}
+	}
+
+	/**
+	 * 例外を記録
+	 * @param failure 例外
+	 */
+	private void failTrace(final Throwable failure) {
+		if (this.trace != null) {
+			this.trace.fail(failure);
+		}
+	}
+
+	/**
+	 * 計測を終了して通知
+	 */
+	private void finishTrace() {
+		QueryTrace finished = this.trace;
+		if (finished != null) {
+			this.trace = null;
+			finished.finish();
+		}
+	}
+
+	/**
+	 * 更新後処理
+	 * 更新したテーブルの検索結果のキャッシュを破棄し、レプリカ使用時は更新したことを記録する
+	 * トランザクション中はコミット時に行う
+	 */
+	final void afterWrite() {
+		if (this.transaction != null) {
+			this.transaction.modified(this.table);
+			return;
+		}
+		ResultCache.invalidateAll(this.table);
+		if (this.router != null) {
+			this.router.written();
+		}
+	}
+
+	/**
+	 * トランザクションに予約するINSERTを返却
+	 * @return 予約するINSERT
+	 */
+	final List<Transaction.Pending> toInsertPending() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		if (this.insertDataList.isEmpty()) {
+			throw new IllegalArgumentException("insert data is empty");
+		}
+		List<String> columns = toInsertColumns(this.insertDataList);
+		List<Transaction.Pending> pendingList = new ArrayList<>();
+		for (List<Map<String, Object>> rows : splitInsertData()) {
+			String sql = toInsertSQL(columns, rows);
 			if (this.isStakeHolder) {
-				// ステークホルダーに値をセット
-				int paramIndex = 1;
-				Map<String, Object> dataMap = this.insertDataList.get(0);
-				for (Entry<String, Object> data : dataMap.entrySet()) {
-					setStatementValue(preparedStatement, paramIndex, data.getValue());
-					paramIndex++;
+				for (Map<String, Object> dataMap : rows) {
+					pendingList.add(new Transaction.Pending(sql, toInsertValues(columns, dataMap), this.table));
 				}
-				preparedStatement.addBatch();
 			} else {
-				preparedStatement.addBatch();
+				pendingList.add(new Transaction.Pending(sql, List.of(), this.table));
 			}
-			int[] count = preparedStatement.executeBatch();
-			connection.commit();
-			// int配列をInteger配列に変換して返す
-			return Arrays.stream(count)
-					.boxed()
-					.toArray(Integer[]::new);
 		}
-    }
+		return pendingList;
+	}
+
+	/**
+	 * トランザクションに予約するUPDATEを返却
+	 * @return 予約するUPDATE
+	 */
+	final Transaction.Pending toUpdatePending() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		return new Transaction.Pending(toUpdateSQL(), toUpdateValues(), this.table);
+	}
+
+	/**
+	 * トランザクションに予約するDELETEを返却
+	 * @return 予約するDELETE
+	 */
+	final Transaction.Pending toDeletePending() {
+		if (StringUtils.isBlank(this.table)) {
+			throw new IllegalArgumentException("table is empty");
+		}
+		return new Transaction.Pending(toDeleteSQL(), toConditionValues(this.whereList), this.table);
+	}
+
+	/**
+	 * 非同期実行時の同時実行数を制限する単位となる接続先を返却
+	 * @return 接続先
+	 */
+	private Object getConnectionKey() {
+		if (this.router != null) {
+			return this.router;
+		} else if (this.dataSource != null) {
+			return this.dataSource;
+		} else if (StringUtils.isNotBlank(this.db)) {
+			return StringUtils.join("jndi:", this.db);
+		}
+		return StringUtils.join("url:", this.connectUrl, "\0", this.connectUser);
+	}
+
+	/**
+	 * 非同期に実行する処理
+	 * @param <T> 実行結果の型
+	 * @author ink-0x20
+	 */
+	@FunctionalInterface
+	private interface AsyncTask<T> {
+
+		/**
+		 * 実行
+		 * @param builder 呼び出し時点の条件を複製したインスタンス
+		 * @return 実行結果
+		 * @throws Exception
+		 */
+		T run(SqlBuilder builder) throws Exception;
+
+	}
+
+	/**
+	 * 非同期に実行
+	 * 呼び出し時点の条件を複製したインスタンスで実行するため、呼び出し後にこのインスタンスの条件を変更しても影響しない
+	 * @param <T> 実行結果の型
+	 * @param task 実行する処理
+	 * @return 実行結果
+	 */
+	private <T> CompletableFuture<T> async(final AsyncTask<T> task) {
+		if (this.transaction != null) {
+			throw new IllegalStateException("async cannot be used in transaction");
+		}
+		SqlBuilder snapshot = copy();
+		return AsyncRunner.run(this.asyncExecutor, getConnectionKey(), this.asyncConcurrency, () -> task.run(snapshot));
+	}
+
+	/**
+	 * レコード数の取得を非同期に実行
+	 * @return レコード数
+	 */
+	public final CompletableFuture<Long> countAsync() {
+		return async(SqlBuilder::count);
+	}
+
+	/**
+	 * 1件のみ検索を非同期に実行
+	 * @return 1件のみの検索結果
+	 */
+	public final CompletableFuture<Map<String, Object>> getFirstAsync() {
+		return async(SqlBuilder::getFirst);
+	}
+
+	/**
+	 * 複数の検索を非同期に実行
+	 * @return 複数の検索結果
+	 */
+	public final CompletableFuture<List<Map<String, Object>>> getAsync() {
+		return async(SqlBuilder::get);
+	}
+
+	/**
+	 * 複数の検索を非同期に実行し、1行ずつ指定の型に変換
+	 * @param <T> 変換後の型
+	 * @param rowMapper 変換処理
+	 * @return 複数の検索結果
+	 */
+	public final <T> CompletableFuture<List<T>> getAsync(final RowMapper<T> rowMapper) {
+		return async(builder -> builder.get(rowMapper));
+	}
+
+	/**
+	 * 複数の検索を非同期に実行し、レコードまたはPOJOに変換
+	 * @param <T> 変換後の型
+	 * @param type レコードまたは引数なしコンストラクタを持つクラス
+	 * @return 複数の検索結果
+	 */
+	public final <T> CompletableFuture<List<T>> getAsync(final Class<T> type) {
+		return async(builder -> builder.get(type));
+	}
+
+	/**
+	 * insertSQLを非同期に実行
+	 * @return 更新行数
+	 */
+	public final CompletableFuture<Integer[]> insertAsync() {
+		return async(SqlBuilder::insert);
+	}
+
+	/**
+	 * updateSQLを非同期に実行
+	 * @return 更新行数
+	 */
+	public final CompletableFuture<Integer[]> updateAsync() {
+		return async(SqlBuilder::update);
+	}
+
+	/**
+	 * deleteSQLを非同期に実行
+	 * @return 更新行数
+	 */
+	public final CompletableFuture<Integer[]> deleteAsync() {
+		return async(SqlBuilder::delete);
+	}
+
+	/**
+	 * UPSERTを非同期に実行
+	 * @return 分割単位ごとの更新行数
+	 */
+	public final CompletableFuture<Integer[]> upsertAsync() {
+		return async(SqlBuilder::upsert);
+	}
+
+	/**
+	 * インクリメントSQLを非同期に実行
+	 * @param column インクリメントするカラム
+	 * @return 更新行数
+	 */
+	public final CompletableFuture<Integer[]> incrementAsync(final String column) {
+		return async(builder -> builder.increment(column));
+	}
 
 }
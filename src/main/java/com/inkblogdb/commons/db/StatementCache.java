@@ -0,0 +1,240 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DB接続ごとのステートメントキャッシュ
+ * SQLごとに作成済みのステートメントを保持し、最大件数を超えた場合は最も長く使われていないものをクローズする
+ * 返却するステートメントはクローズしても実体はクローズされず、パラメータをクリアし、フェッチサイズと最大行数を作成時の値に戻してキャッシュに戻る
+ * @author ink-0x20
+ */
+final class StatementCache {
+
+	/** DB接続ごとのキャッシュ */
+	private static final Map<Connection, StatementCache> CACHES = new ConcurrentHashMap<>();
+
+	/** DB接続 */
+	private final Connection connection;
+	/** SQLごとのステートメント */
+	private final LruCache<String, CachedStatement> statements;
+
+	/**
+	 * コンストラクタ
+	 * @param connection DB接続
+	 * @param maxSize 最大件数
+	 */
+	private StatementCache(final Connection connection, final int maxSize) {
+		this.connection = connection;
+		this.statements = new LruCache<>(maxSize, (sql, statement) -> statement.evict());
+	}
+
+	/**
+	 * キャッシュからステートメントを取得、存在しない場合は作成してキャッシュ
+	 * @param connection DB接続
+	 * @param sql SQL
+	 * @param maxSize DB接続ごとの最大件数
+	 * @return ステートメント
+	 * @throws SQLException
+	 */
+	static PreparedStatement prepare(final Connection connection, final String sql, final int maxSize) throws SQLException {
+		// プールやレプリカのDB接続は貸出ごとにプロキシが異なるため、実体のDB接続ごとにキャッシュ
+		Connection physical = toPhysical(connection);
+		StatementCache cache = CACHES.get(physical);
+		if (cache == null) {
+			// 新しいDB接続の登録時に、クローズ済みのDB接続のキャッシュを破棄
+			sweep();
+			cache = CACHES.computeIfAbsent(physical, c -> new StatementCache(c, maxSize));
+		}
+		return cache.prepare(sql);
+	}
+
+	/**
+	 * 実体のDB接続を取得
+	 * {@link ConnectionPool.Pooled}は実体のDB接続を、それ以外の外部のプールなどは{@link Connection#unwrap(Class)}でラップを解除したDB接続を返却する
+	 * ラップを解除できない場合は引数のDB接続を返却するため、貸出ごとに異なるDB接続ではキャッシュが再利用されない
+	 * @param connection DB接続
+	 * @return 実体のDB接続
+	 * @throws SQLException DB接続がクローズ済みの場合に発生
+	 */
+	private static Connection toPhysical(final Connection connection) throws SQLException {
+		// 実体のDB接続は返却後も開いているため、貸し出されたDB接続の状態を確認
+		if (connection.isClosed()) {
+			throw new SQLException("connection is closed");
+		}
+		Connection physical = connection;
+		while (physical instanceof ConnectionPool.Pooled pooled) {
+			physical = pooled.getPhysicalConnection();
+		}
+		try {
+			if (physical.isWrapperFor(Connection.class)) {
+				physical = physical.unwrap(Connection.class);
+			}
+		} catch (SQLException e) {
+			// ラップを解除できない場合はそのまま使用
+		}
+		return physical;
+	}
+
+	/**
+	 * クローズ済みのDB接続のキャッシュを破棄
+	 */
+	private static void sweep() {
+		for (StatementCache cache : CACHES.values()) {
+			try {
+				if (!cache.connection.isClosed()) {
+					continue;
+				}
+			} catch (SQLException e) {
+				// 状態が取得できない場合も破棄
+			}
+			CACHES.remove(cache.connection);
+			cache.statements.clear((sql, statement) -> statement.evict());
+		}
+	}
+
+	/**
+	 * キャッシュからステートメントを取得、存在しない場合は作成してキャッシュ
+	 * 同じSQLのステートメントが使用中の場合は、キャッシュしないステートメントを作成
+	 * @param sql SQL
+	 * @return ステートメント
+	 * @throws SQLException
+	 */
+	private synchronized PreparedStatement prepare(final String sql) throws SQLException {
+		CachedStatement cached = this.statements.get(sql);
+		if (cached != null) {
+			if (cached.statement.isClosed()) {
+				this.statements.remove(sql);
+			} else if (cached.acquire()) {
+				return cached.proxy;
+			} else {
+				return this.connection.prepareStatement(sql);
+			}
+		}
+		cached = new CachedStatement(this.connection.prepareStatement(sql));
+		cached.acquire();
+		this.statements.put(sql, cached);
+		return cached.proxy;
+	}
+
+	/**
+	 * キャッシュされたステートメント
+	 * @author ink-0x20
+	 */
+	private static final class CachedStatement {
+
+		/** ステートメントの実体 */
+		private final PreparedStatement statement;
+		/** 利用者に返却するステートメント */
+		private final PreparedStatement proxy;
+		/** 作成時のフェッチサイズ */
+		private final int fetchSize;
+		/** 作成時の最大行数 */
+		private final int maxRows;
+		/** 使用中にフェッチサイズか最大行数が変更されたか否か */
+		private volatile boolean isDirty = false;
+		/** 使用中か否か */
+		private boolean isInUse = false;
+		/** キャッシュから破棄済みか否か */
+		private boolean isEvicted = false;
+
+		/**
+		 * コンストラクタ
+		 * @param statement ステートメントの実体
+		 * @throws SQLException
+		 */
+		private CachedStatement(final PreparedStatement statement) throws SQLException {
+			this.statement = statement;
+			this.fetchSize = statement.getFetchSize();
+			this.maxRows = statement.getMaxRows();
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class },
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							release();
+							return null;
+						case "isClosed":
+							return !isInUse();
+						default:
+							if (method.getName().equals("setFetchSize") || method.getName().equals("setMaxRows")) {
+								this.isDirty = true;
+							}
+							try {
+								return method.invoke(this.statement, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+						}
+					});
+		}
+
+		/**
+		 * 使用開始
+		 * @return 使用開始できたか否か、使用中の場合はfalse
+		 */
+		private synchronized boolean acquire() {
+			if (this.isInUse) {
+				return false;
+			}
+			this.isInUse = true;
+			return true;
+		}
+
+		/**
+		 * 使用中か否か
+		 * @return 使用中か否か
+		 */
+		private synchronized boolean isInUse() {
+			return this.isInUse;
+		}
+
+		/**
+		 * 使用終了
+		 * キャッシュから破棄済みの場合はクローズ、それ以外はパラメータをクリアし設定を戻して再利用可能にする
+		 * @throws SQLException
+		 */
+		private synchronized void release() throws SQLException {
+			if (!this.isInUse) {
+				return;
+			}
+			this.isInUse = false;
+			if (this.isEvicted) {
+				this.statement.close();
+				return;
+			}
+			this.statement.clearParameters();
+			this.statement.clearBatch();
+			// 次の利用者に前回のフェッチサイズや最大行数が残らないよう戻す
+			if (this.isDirty) {
+				this.statement.setFetchSize(this.fetchSize);
+				this.statement.setMaxRows(this.maxRows);
+				this.isDirty = false;
+			}
+		}
+
+		/**
+		 * キャッシュから破棄
+		 * 使用中の場合は使用終了時にクローズする
+		 */
+		private synchronized void evict() {
+			this.isEvicted = true;
+			if (this.isInUse) {
+				return;
+			}
+			try {
+				this.statement.close();
+			} catch (SQLException e) {
+				// 破棄するだけなので無視
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.inkblogdb.commons.db;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import com.inkblogdb.commons.util.DateUtils;
+
+/**
+ * タブ区切り、改行終端、バックスラッシュエスケープのテキスト形式でロードするバルクロード
+ * MySQLのLOAD DATAとPostgreSQLのCOPYのテキスト形式に共通の部分
+ * @author ink-0x20
+ */
+abstract class TextBulkLoadDialect implements BulkLoadDialect {
+
+	/** NULL */
+	private static final byte[] NULL_BYTES = { '\\', 'N' };
+	/** java.util.Dateの形式 */
+	private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+	/** NUL文字をエスケープするか否か */
+	private final boolean isEscapeNul;
+
+	/**
+	 * コンストラクタ
+	 * @param isEscapeNul NUL文字をエスケープするか否か
+	 */
+	TextBulkLoadDialect(final boolean isEscapeNul) {
+		this.isEscapeNul = isEscapeNul;
+	}
+
+	@Override
+	public void writeRow(final OutputStream out, final List<Object> values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			if (i != 0) {
+				out.write('\t');
+			}
+			writeValue(out, values.get(i));
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * 値を書き込む
+	 * ステートメントに格納できる型はString、数値、日時、Boolean、byte[]で、その他はtoString()の値
+	 * DoubleとFloatは指数表記にせず、java.util.Dateはローカル時刻の日時として書き込む
+	 * @param out 書き込み先
+	 * @param value 値
+	 * @throws IOException
+	 */
+	private void writeValue(final OutputStream out, final Object value) throws IOException {
+		if (value == null) {
+			out.write(NULL_BYTES);
+		} else if (value instanceof Boolean) {
+			writeBoolean(out, (Boolean) value);
+		} else if (value instanceof byte[]) {
+			writeBytes(out, (byte[]) value);
+		} else if (value instanceof BigDecimal) {
+			writeText(out, ((BigDecimal) value).toPlainString());
+		} else if (value instanceof Double || value instanceof Float) {
+			writeText(out, toDecimalText((Number) value));
+		} else if (value instanceof Timestamp || value instanceof java.sql.Date || value instanceof Time) {
+			// JDBCの日時型の文字列表現はDBが解釈できる形式
+			writeText(out, value.toString());
+		} else if (value instanceof Date) {
+			// toString()は曜日やタイムゾーン名を含みDBが解釈できないため、JDBCと同じくローカル時刻で書き込む
+			writeText(out, DateUtils.toString((Date) value, DATE_FORMAT));
+		} else {
+			// String、Integer、Longなどは文字列表現のままDBが解釈できる
+			writeText(out, value.toString());
+		}
+	}
+
+	/**
+	 * 浮動小数点数を指数表記にしない文字列に変換
+	 * 非数と無限大はそのままの文字列とする
+	 * @param value 値
+	 * @return 文字列
+	 */
+	private static String toDecimalText(final Number value) {
+		double doubleValue = value.doubleValue();
+		if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+			return value.toString();
+		}
+		// 2進数の誤差を展開しないよう、toString()の最短表現から変換する
+		return new BigDecimal(value.toString()).toPlainString();
+	}
+
+	/**
+	 * 真偽値を書き込む
+	 * @param out 書き込み先
+	 * @param value 値
+	 * @throws IOException
+	 */
+	abstract void writeBoolean(OutputStream out, boolean value) throws IOException;
+
+	/**
+	 * バイナリを書き込む
+	 * @param out 書き込み先
+	 * @param value 値
+	 * @throws IOException
+	 */
+	abstract void writeBytes(OutputStream out, byte[] value) throws IOException;
+
+	/**
+	 * 区切り文字とエスケープ文字をエスケープしてUTF-8で書き込む
+	 * @param out 書き込み先
+	 * @param text 文字列
+	 * @throws IOException
+	 */
+	final void writeText(final OutputStream out, final String text) throws IOException {
+		StringBuilder escaped = null;
+		for (int i = 0; i < text.length(); i++) {
+			String replacement = escape(text.charAt(i));
+			if (replacement == null) {
+				if (escaped != null) {
+					escaped.append(text.charAt(i));
+				}
+				continue;
+			}
+			if (escaped == null) {
+				// エスケープが必要な場合のみ複製
+				escaped = new StringBuilder(text.length() + 16);
+				escaped.append(text, 0, i);
+			}
+			escaped.append(replacement);
+		}
+		out.write((escaped == null ? text : escaped.toString()).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 1文字のエスケープ
+	 * @param c 文字
+	 * @return エスケープ後の文字列、エスケープ不要の場合はnull
+	 */
+	private String escape(final char c) {
+		switch (c) {
+			case '\\':
+				return "\\\\";
+			case '\t':
+				return "\\t";
+			case '\n':
+				return "\\n";
+			case '\r':
+				return "\\r";
+			case '\0':
+				return this.isEscapeNul ? "\\0" : null;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * バイナリのバイトをエスケープして書き込む
+	 * @param out 書き込み先
+	 * @param value 値
+	 * @throws IOException
+	 */
+	final void writeEscapedBytes(final OutputStream out, final byte[] value) throws IOException {
+		for (byte b : value) {
+			switch (b) {
+				case '\\':
+				case '\t':
+				case '\n':
+				case '\r':
+					out.write('\\');
+					out.write(b == '\t' ? 't' : b == '\n' ? 'n' : b == '\r' ? 'r' : '\\');
+					break;
+				case 0:
+					out.write('\\');
+					out.write('0');
+					break;
+				default:
+					out.write(b);
+			}
+		}
+	}
+
+	/**
+	 * ドライバ固有のメソッドを公開されたクラスまたはインターフェースから検索
+	 * @param type 検索するクラス
+	 * @param name メソッド名
+	 * @param parameterTypes 引数の型
+	 * @return メソッド、見つからない場合はnull
+	 */
+	static Method findMethod(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			for (Class<?> iface : current.getInterfaces()) {
+				Method method = findMethod(iface, name, parameterTypes);
+				if (method != null) {
+					return method;
+				}
+			}
+			if (Modifier.isPublic(current.getModifiers())) {
+				try {
+					return current.getMethod(name, parameterTypes);
+				} catch (NoSuchMethodException e) {
+					// 親クラスを検索
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * ドライバ固有のメソッドを実行
+	 * @param method メソッド
+	 * @param target 実行対象
+	 * @param args 引数
+	 * @return 戻り値
+	 * @throws SQLException
+	 */
+	static Object invoke(final Method method, final Object target, final Object... args) throws SQLException {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("failed to bulk load", e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new SQLException("failed to bulk load", e);
+		}
+	}
+
+}
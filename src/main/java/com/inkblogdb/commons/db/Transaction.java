@@ -0,0 +1,304 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 1つのDB接続を固定して複数のSQLを実行し、最後に1回だけコミットするトランザクション
+ * {@link SqlBuilder#transaction(TransactionBody)}で作成する
+ * {@link #table(String)}で作成した{@link SqlBuilder}の実行はこのDB接続で行われ、個別のコミットとクローズは行われない
+ * addInsert、addUpdate、addDeleteで予約した更新は、同じSQLが連続する単位でJDBCのバッチにまとめて実行する
+ * 予約した更新は検索の実行前、{@link #flush()}、コミット時に実行される
+ * 複数スレッドから同時に使用しないこと
+ * @author ink-0x20
+ */
+public final class Transaction {
+
+	/**
+	 * 予約した更新
+	 * @param sql SQL
+	 * @param values ステークホルダーの値
+	 * @param table 更新するテーブル
+	 */
+	record Pending(String sql, List<Object> values, String table) {
+	}
+
+	/** 接続情報と設定の引き継ぎ元 */
+	private final SqlBuilder template;
+	/** DB接続 */
+	private final Connection connection;
+	/** {@link SqlBuilder}に渡すコミットとクローズを行わないDB接続 */
+	private final Connection pinnedConnection;
+	/** 予約した更新 */
+	private final List<Pending> pendingList = new ArrayList<>();
+	/** 更新したテーブル */
+	private final Set<String> modifiedTables = new LinkedHashSet<>();
+	/** 実行中か否か */
+	private boolean isActive = true;
+	/** DB接続のコミット中か否か、予約した更新の実行中は含まない */
+	private boolean isCommitting = false;
+
+	/**
+	 * コンストラクタ
+	 * @param template 接続情報と設定の引き継ぎ元
+	 * @param connection DB接続
+	 */
+	Transaction(final SqlBuilder template, final Connection connection) {
+		this.template = template;
+		this.connection = connection;
+		this.pinnedConnection = (Connection) Proxy.newProxyInstance(
+				Transaction.class.getClassLoader(),
+				new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+					case "commit":
+					case "setAutoCommit":
+						// トランザクションの終了時にまとめて行う
+						return null;
+					case "isClosed":
+						return !this.isActive || this.connection.isClosed();
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return "Transaction" + this.connection;
+					default:
+						if (!this.isActive) {
+							throw new SQLException("transaction is finished");
+						}
+						try {
+							return method.invoke(this.connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * このトランザクションで実行する{@link SqlBuilder}を作成
+	 * 接続情報と設定は作成元から引き継ぐ
+	 * @param table テーブル
+	 * @return {@link SqlBuilder}
+	 */
+	public SqlBuilder table(final String table) {
+		checkActive();
+		return this.template.copySettings().transaction(this).table(table);
+	}
+
+	/**
+	 * INSERTを予約
+	 * @param builder 挿入データを設定した{@link SqlBuilder}
+	 * @return {@link Transaction}
+	 */
+	public Transaction addInsert(final SqlBuilder builder) {
+		checkActive();
+		this.pendingList.addAll(builder.toInsertPending());
+		return this;
+	}
+
+	/**
+	 * UPDATEを予約
+	 * @param builder 更新データと条件を設定した{@link SqlBuilder}
+	 * @return {@link Transaction}
+	 */
+	public Transaction addUpdate(final SqlBuilder builder) {
+		checkActive();
+		this.pendingList.add(builder.toUpdatePending());
+		return this;
+	}
+
+	/**
+	 * DELETEを予約
+	 * @param builder 条件を設定した{@link SqlBuilder}
+	 * @return {@link Transaction}
+	 */
+	public Transaction addDelete(final SqlBuilder builder) {
+		checkActive();
+		this.pendingList.add(builder.toDeletePending());
+		return this;
+	}
+
+	/**
+	 * 予約した更新を実行
+	 * 同じSQLが連続する単位で1つのステートメントのバッチにまとめる
+	 * @return 予約順の更新行数
+	 * @throws SQLException
+	 */
+	public int[] flush() throws SQLException {
+		checkActive();
+		if (this.pendingList.isEmpty()) {
+			return new int[0];
+		}
+		QueryTrace trace = QueryTrace.start(QueryEvent.Kind.BATCH, null);
+		try {
+			return flush(trace);
+		} catch (SQLException | RuntimeException | Error e) {
+			if (trace != null) {
+				trace.fail(e);
+			}
+			throw e;
+		} finally {
+			if (trace != null) {
+				trace.finish();
+			}
+		}
+	}
+
+	/**
+	 * 予約した更新を実行
+	 * @param trace 計測、計測しない場合はnull
+	 * @return 予約順の更新行数
+	 * @throws SQLException
+	 */
+	private int[] flush(final QueryTrace trace) throws SQLException {
+		List<Pending> pendings = new ArrayList<>(this.pendingList);
+		this.pendingList.clear();
+		int[] counts = new int[pendings.size()];
+		int countIndex = 0;
+		int from = 0;
+		while (from < pendings.size()) {
+			String sql = pendings.get(from).sql();
+			int to = from;
+			try (PreparedStatement preparedStatement = this.template.prepareStatement(this.connection, sql)) {
+				if (trace != null) {
+					trace.prepared(sql);
+				}
+				while (to < pendings.size() && pendings.get(to).sql().equals(sql)) {
+					Pending pending = pendings.get(to);
+					this.template.setStatementValues(preparedStatement, 1, pending.values());
+					preparedStatement.addBatch();
+					if (trace != null) {
+						trace.parameters(pending.values().size());
+					}
+					this.modifiedTables.add(pending.table());
+					to++;
+				}
+				for (int count : preparedStatement.executeBatch()) {
+					counts[countIndex] = count;
+					countIndex++;
+					if (trace != null && 0 < count) {
+						trace.rows(count);
+					}
+				}
+				if (trace != null) {
+					trace.executed(to - from);
+				}
+			}
+			from = to;
+		}
+		return counts;
+	}
+
+	/**
+	 * 検索結果のキャッシュをコミット時に破棄するテーブルを追加
+	 * @param table テーブル
+	 */
+	void modified(final String table) {
+		this.modifiedTables.add(table);
+	}
+
+	/**
+	 * 予約した更新を実行し、{@link SqlBuilder}に渡すDB接続を返却
+	 * @return コミットとクローズを行わないDB接続
+	 * @throws SQLException
+	 */
+	Connection pin() throws SQLException {
+		flush();
+		return this.pinnedConnection;
+	}
+
+	/**
+	 * DB接続を返却
+	 * @return DB接続
+	 */
+	Connection getConnection() {
+		return this.connection;
+	}
+
+	/**
+	 * 予約した更新を実行してコミット
+	 * コミット後に更新したテーブルの検索結果のキャッシュを破棄する
+	 * @throws SQLException
+	 */
+	void commit() throws SQLException {
+		checkActive();
+		QueryTrace trace = QueryTrace.start(QueryEvent.Kind.BATCH, null);
+		try {
+			if (!this.pendingList.isEmpty()) {
+				flush(trace);
+			}
+			this.isCommitting = true;
+			this.connection.commit();
+			this.isCommitting = false;
+			if (trace != null) {
+				trace.mark(QueryEvent.Phase.COMMIT);
+			}
+		} catch (SQLException | RuntimeException | Error e) {
+			if (trace != null) {
+				trace.fail(e);
+			}
+			throw e;
+		} finally {
+			if (trace != null) {
+				trace.finish();
+			}
+		}
+		for (String table : this.modifiedTables) {
+			ResultCache.invalidateAll(table);
+		}
+		this.modifiedTables.clear();
+	}
+
+	/**
+	 * DB接続のコミット中に失敗したか否か
+	 * コミットされたか不明なため、再実行の判定に使用する
+	 * @return コミット中か否か
+	 */
+	boolean isCommitting() {
+		return this.isCommitting;
+	}
+
+	/**
+	 * ロールバック
+	 * ロールバック時の例外は引数の例外に抑制された例外として追加する
+	 * @param exception 発生した例外
+	 */
+	void rollback(final Throwable exception) {
+		this.pendingList.clear();
+		this.modifiedTables.clear();
+		try {
+			this.connection.rollback();
+		} catch (SQLException e) {
+			exception.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * トランザクションを終了してDB接続をクローズ
+	 * @throws SQLException
+	 */
+	void close() throws SQLException {
+		this.isActive = false;
+		this.connection.close();
+	}
+
+	/**
+	 * 実行中か確認
+	 */
+	private void checkActive() {
+		if (!this.isActive) {
+			throw new IllegalStateException("transaction is finished");
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+
+import javax.naming.NamingException;
+
+/**
+ * トランザクション内で実行する処理
+ * @param <T> 実行結果の型
+ * @author ink-0x20
+ */
+@FunctionalInterface
+public interface TransactionBody<T> {
+
+	/**
+	 * トランザクション内の処理を実行
+	 * 例外が発生した場合はロールバックされる
+	 * @param transaction トランザクション
+	 * @return 実行結果
+	 * @throws SQLException
+	 * @throws NamingException
+	 */
+	T apply(Transaction transaction) throws SQLException, NamingException;
+
+}
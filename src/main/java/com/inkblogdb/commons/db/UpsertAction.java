@@ -0,0 +1,117 @@
+package com.inkblogdb.commons.db;
+
+import java.math.BigDecimal;
+
+import com.inkblogdb.commons.util.StringUtils;
+
+/**
+ * 一意キーが重複した場合のカラムの更新方法
+ * {@link SqlBuilder#onDuplicate(String, UpsertAction)}で指定する
+ * @author ink-0x20
+ */
+public enum UpsertAction {
+
+	/** 既存の値に加算 `c` = `c` + VALUES(`c`) */
+	ADD {
+		@Override
+		String toSql(final String column) {
+			return StringUtils.join(column, " = ", column, " + VALUES(", column, ")");
+		}
+
+		@SuppressWarnings("boxing")
+		@Override
+		Object merge(final Object current, final Object value) {
+			if (current == null) {
+				return value;
+			} else if (value == null) {
+				return current;
+			} else if (current instanceof BigDecimal || value instanceof BigDecimal) {
+				return new BigDecimal(current.toString()).add(new BigDecimal(value.toString()));
+			} else if (current instanceof Double || current instanceof Float || value instanceof Double || value instanceof Float) {
+				return ((Number) current).doubleValue() + ((Number) value).doubleValue();
+			}
+			long sum = Math.addExact(((Number) current).longValue(), ((Number) value).longValue());
+			if (current instanceof Integer && value instanceof Integer && sum == (int) sum) {
+				return (int) sum;
+			}
+			return sum;
+		}
+	},
+
+	/** 挿入しようとした値で置換 `c` = VALUES(`c`) */
+	REPLACE {
+		@Override
+		String toSql(final String column) {
+			return StringUtils.join(column, " = VALUES(", column, ")");
+		}
+
+		@Override
+		Object merge(final Object current, final Object value) {
+			return value;
+		}
+	},
+
+	/** 大きい方の値 `c` = GREATEST(`c`, VALUES(`c`)) */
+	GREATEST {
+		@Override
+		String toSql(final String column) {
+			return StringUtils.join(column, " = GREATEST(", column, ", VALUES(", column, "))");
+		}
+
+		@Override
+		Object merge(final Object current, final Object value) {
+			if (current == null || value == null) {
+				return current == null ? value : current;
+			}
+			return compare(current, value) < 0 ? value : current;
+		}
+	},
+
+	/** 小さい方の値 `c` = LEAST(`c`, VALUES(`c`)) */
+	LEAST {
+		@Override
+		String toSql(final String column) {
+			return StringUtils.join(column, " = LEAST(", column, ", VALUES(", column, "))");
+		}
+
+		@Override
+		Object merge(final Object current, final Object value) {
+			if (current == null || value == null) {
+				return current == null ? value : current;
+			}
+			return compare(value, current) < 0 ? value : current;
+		}
+	};
+
+	/**
+	 * ON DUPLICATE KEY UPDATEの更新式を返却
+	 * @param column バッククォーテーションで囲んだカラム
+	 * @return 更新式
+	 */
+	abstract String toSql(String column);
+
+	/**
+	 * 同じキーの行を1行にまとめる場合の値を返却
+	 * NULLは値がないものとして扱う
+	 * @param current まとめた値
+	 * @param value 後の行の値
+	 * @return まとめた値
+	 */
+	abstract Object merge(Object current, Object value);
+
+	/**
+	 * 値を比較
+	 * 型の異なる数値は10進数で比較する
+	 * @param value1 値1
+	 * @param value2 値2
+	 * @return 比較結果
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(final Object value1, final Object value2) {
+		if (value1 instanceof Number && value2 instanceof Number && value1.getClass() != value2.getClass()) {
+			return new BigDecimal(value1.toString()).compareTo(new BigDecimal(value2.toString()));
+		}
+		return ((Comparable) value1).compareTo(value2);
+	}
+
+}
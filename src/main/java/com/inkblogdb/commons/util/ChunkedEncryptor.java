@@ -0,0 +1,682 @@
+package com.inkblogdb.commons.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.inkblogdb.commons.util.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * AES-GCMで一定の長さのセグメントごとに暗号化する暗号器
+ * セグメントごとにnonceと認証タグを持つため、{@link ForkJoinPool}で並列に暗号化・復号でき、任意のセグメントだけを復号できる
+ * 形式は「識別子(4) バージョン(1) セグメント長(4) 平文の長さ(8) ソルト(16) nonce接頭辞(7)」のヘッダと、「暗号文 認証タグ(16)」のセグメントの並び
+ * 暗号化キーとヘッダのランダムなソルトからHKDF-SHA256でコンテナごとの鍵を導出するため、同じ暗号化キーで多数のコンテナを暗号化してもnonceが衝突しない
+ * nonceは「nonce接頭辞(7) セグメント番号(4) 最終セグメントか否か(1)」で、ヘッダを追加認証データとするため、セグメントの入れ替えや切り詰めを検知できる
+ * 複数スレッドから同時に使用できる
+ * @author ink-0x20
+ */
+public final class ChunkedEncryptor {
+
+	/** 既定のセグメント長 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+	/** 最大のセグメント長、認証前に確保するバッファの上限 */
+	public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+	/** 認証タグの長さ */
+	static final int TAG_LENGTH = 16;
+	/** ヘッダの識別子 */
+	private static final byte[] MAGIC = { 'I', 'N', 'K', 'C' };
+	/** 形式のバージョン */
+	private static final byte VERSION = 1;
+	/** ソルトの長さ */
+	private static final int SALT_LENGTH = 16;
+	/** nonce接頭辞の長さ */
+	private static final int NONCE_PREFIX_LENGTH = 7;
+	/** nonceの長さ */
+	private static final int NONCE_LENGTH = NONCE_PREFIX_LENGTH + 5;
+	/** ヘッダの長さ */
+	static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 8 + SALT_LENGTH + NONCE_PREFIX_LENGTH;
+	/** 鍵の導出に使用するMACアルゴリズム */
+	private static final String KDF_ALGORITHM = "HmacSHA256";
+	/** 鍵の導出に使用する用途の情報 */
+	private static final byte[] KDF_INFO = { 'I', 'N', 'K', 'C', ' ', 'k', 'e', 'y' };
+	/** 分割せずに1スレッドで処理するセグメント数 */
+	private static final int SEQUENTIAL_SEGMENTS = 4;
+
+	/** コンテナごとの鍵を導出する元の鍵 */
+	private final byte[] masterKey;
+	/** セグメント長 */
+	private final int segmentSize;
+	/** 並列処理に使用するスレッドプール */
+	private final ForkJoinPool pool;
+
+	/**
+	 * コンストラクタ
+	 * @param encryptKey 暗号化キー
+	 */
+	public ChunkedEncryptor(final String encryptKey) {
+		this(ConvertUtils.stringToBytes(encryptKey));
+	}
+
+	/**
+	 * コンストラクタ
+	 * @param encryptKey 暗号化キー
+	 */
+	public ChunkedEncryptor(final byte[] encryptKey) {
+		this(encryptKey, DEFAULT_SEGMENT_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * コンストラクタ
+	 * 暗号化キーはSHA-256でハッシュし、コンテナごとの鍵の導出元として使用する
+	 * @param encryptKey 暗号化キー
+	 * @param segmentSize セグメント長、{@link #MAX_SEGMENT_SIZE}以下、暗号化時のみ使用し、復号時はヘッダの値を使用する
+	 * @param pool 並列処理に使用するスレッドプール
+	 */
+	public ChunkedEncryptor(final byte[] encryptKey, final int segmentSize, final ForkJoinPool pool) {
+		if (encryptKey == null || encryptKey.length == 0) {
+			throw new IllegalArgumentException("encryptKey is empty");
+		}
+		if (segmentSize <= 0 || MAX_SEGMENT_SIZE < segmentSize) {
+			throw new IllegalArgumentException("segmentSize is out of range");
+		}
+		if (pool == null) {
+			throw new IllegalArgumentException("pool is null");
+		}
+		this.masterKey = DigestUtils.sha256(encryptKey);
+		this.segmentSize = segmentSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * 暗号化
+	 * @param target 平文
+	 * @return 暗号文
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] encrypt(final byte[] target) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		byte[] plain = target == null ? new byte[0] : target;
+		Header header = Header.create(this.segmentSize, plain.length);
+		long length = header.getEncryptedLength();
+		if (Integer.MAX_VALUE < length) {
+			throw new IllegalArgumentException("target is too large, use encrypt(Path, Path)");
+		}
+		byte[] result = new byte[(int) length];
+		System.arraycopy(header.bytes, 0, result, 0, HEADER_LENGTH);
+		SecretKeySpec key = deriveKey(header);
+		run(header.getSegmentCount(), (cipher, index) -> {
+			int offset = (int) header.getPlainOffset(index);
+			ByteBuffer src = ByteBuffer.wrap(plain, offset, header.getPlainLength(index));
+			ByteBuffer dst = ByteBuffer.wrap(result, (int) header.getEncryptedOffset(index), header.getPlainLength(index) + TAG_LENGTH);
+			init(cipher, Cipher.ENCRYPT_MODE, key, header, index);
+			cipher.doFinal(src, dst);
+		});
+		return result;
+	}
+
+	/**
+	 * 復号
+	 * @param target 暗号文
+	 * @return 平文
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 改ざんされている場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] decrypt(final byte[] target) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		Header header = Header.read(target);
+		if (header.getEncryptedLength() != target.length) {
+			throw new IllegalArgumentException("target length does not match the header");
+		}
+		byte[] result = new byte[(int) header.plainLength];
+		SecretKeySpec key = deriveKey(header);
+		run(header.getSegmentCount(), (cipher, index) -> {
+			ByteBuffer src = ByteBuffer.wrap(target, (int) header.getEncryptedOffset(index), header.getPlainLength(index) + TAG_LENGTH);
+			ByteBuffer dst = ByteBuffer.wrap(result, (int) header.getPlainOffset(index), header.getPlainLength(index));
+			init(cipher, Cipher.DECRYPT_MODE, key, header, index);
+			cipher.doFinal(src, dst);
+		});
+		return result;
+	}
+
+	/**
+	 * 指定したセグメントのみを復号
+	 * @param target 暗号文
+	 * @param index セグメント番号
+	 * @return セグメントの平文
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 改ざんされている場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] decryptSegment(final byte[] target, final int index) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		Header header = Header.read(target);
+		header.checkIndex(index);
+		int offset = (int) header.getEncryptedOffset(index);
+		int length = header.getPlainLength(index) + TAG_LENGTH;
+		if (target.length < offset + length) {
+			throw new IllegalArgumentException("target is truncated");
+		}
+		Cipher cipher = Encryptor.borrowCipher(EncryptAlgorithm.AES_GCM.getAlgorithm());
+		try {
+			init(cipher, Cipher.DECRYPT_MODE, deriveKey(header), header, index);
+			return cipher.doFinal(target, offset, length);
+		} finally {
+			Encryptor.giveBackCipher(EncryptAlgorithm.AES_GCM.getAlgorithm(), cipher);
+		}
+	}
+
+	/**
+	 * 指定したセグメントのみを読み込んで復号
+	 * ヘッダとセグメントの位置のみを読み込むため、大きなファイルの一部を取り出す場合に使用
+	 * チャネルの位置は変更される
+	 * @param channel 暗号文の読み込み元
+	 * @param index セグメント番号
+	 * @return セグメントの平文
+	 * @throws IOException 入出力に失敗した場合、ヘッダが不正な場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 改ざんされている場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] decryptSegment(final SeekableByteChannel channel, final int index) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		channel.position(0);
+		Header header = Header.read(channel);
+		header.checkIndex(index);
+		// 認証前に確保するバッファは、ヘッダの値ではなく実際に読み込めるセグメントの長さに限定する
+		int length = header.getPlainLength(index) + TAG_LENGTH;
+		if (channel.size() < header.getEncryptedOffset(index) + length) {
+			throw new IOException("segment is truncated");
+		}
+		ByteBuffer src = ByteBuffer.allocate(length);
+		channel.position(header.getEncryptedOffset(index));
+		readFully(channel, src);
+		Cipher cipher = Encryptor.borrowCipher(EncryptAlgorithm.AES_GCM.getAlgorithm());
+		try {
+			init(cipher, Cipher.DECRYPT_MODE, deriveKey(header), header, index);
+			return cipher.doFinal(src.array());
+		} finally {
+			Encryptor.giveBackCipher(EncryptAlgorithm.AES_GCM.getAlgorithm(), cipher);
+		}
+	}
+
+	/**
+	 * セグメント数を取得
+	 * @param target 暗号文
+	 * @return セグメント数
+	 */
+	public int getSegmentCount(final byte[] target) {
+		return Header.read(target).getSegmentCount();
+	}
+
+	/**
+	 * ファイルを並列に暗号化
+	 * 各スレッドはセグメント単位で読み書きするため、ファイルの大きさに関わらず使用するメモリは一定
+	 * 出力先のファイルは上書きする
+	 * @param src 平文のファイル
+	 * @param dst 暗号文の出力先ファイル
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long encrypt(final Path src, final Path dst) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Header header = Header.create(this.segmentSize, in.size());
+			writeFully(out, ByteBuffer.wrap(header.bytes), 0);
+			SecretKeySpec key = deriveKey(header);
+			run(header.getSegmentCount(), (cipher, index) -> {
+				ByteBuffer plain = ByteBuffer.allocate(header.getPlainLength(index));
+				readFully(in, plain, header.getPlainOffset(index));
+				ByteBuffer encrypted = ByteBuffer.allocate(plain.capacity() + TAG_LENGTH);
+				init(cipher, Cipher.ENCRYPT_MODE, key, header, index);
+				cipher.doFinal(plain, encrypted);
+				writeFully(out, encrypted.flip(), header.getEncryptedOffset(index));
+			});
+			return header.getEncryptedLength();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * {@link #encrypt(Path, Path)}で暗号化したファイルを並列に復号
+	 * 出力先のファイルは上書きする
+	 * @param src 暗号文のファイル
+	 * @param dst 平文の出力先ファイル
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合、ヘッダが不正な場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 改ざんされている場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long decrypt(final Path src, final Path dst) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Header header = Header.read(in);
+			if (header.getEncryptedLength() != in.size()) {
+				throw new IOException("file length does not match the header");
+			}
+			SecretKeySpec key = deriveKey(header);
+			run(header.getSegmentCount(), (cipher, index) -> {
+				ByteBuffer encrypted = ByteBuffer.allocate(header.getPlainLength(index) + TAG_LENGTH);
+				readFully(in, encrypted, header.getEncryptedOffset(index));
+				ByteBuffer plain = ByteBuffer.allocate(header.getPlainLength(index));
+				init(cipher, Cipher.DECRYPT_MODE, key, header, index);
+				cipher.doFinal(encrypted, plain);
+				writeFully(out, plain.flip(), header.getPlainOffset(index));
+			});
+			return header.plainLength;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * ヘッダのソルトからコンテナの鍵を導出
+	 * HKDF-SHA256(RFC 5869)で、鍵長がハッシュ長と同じため展開は1ブロックのみ
+	 * @param header ヘッダ
+	 * @return コンテナの鍵
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 */
+	private SecretKeySpec deriveKey(final Header header) throws NoSuchAlgorithmException, InvalidKeyException {
+		Mac mac = Mac.getInstance(KDF_ALGORITHM);
+		// 抽出
+		mac.init(new SecretKeySpec(header.salt, KDF_ALGORITHM));
+		byte[] pseudoRandomKey = mac.doFinal(this.masterKey);
+		// 展開
+		mac.init(new SecretKeySpec(pseudoRandomKey, KDF_ALGORITHM));
+		mac.update(KDF_INFO);
+		mac.update((byte) 1);
+		return new SecretKeySpec(mac.doFinal(), EncryptAlgorithm.AES_GCM.getEncrypt());
+	}
+
+	/**
+	 * セグメントの暗号化・復号用に初期化
+	 * @param cipher {@link Cipher}
+	 * @param mode 暗号化か復号か
+	 * @param key コンテナの鍵
+	 * @param header ヘッダ
+	 * @param index セグメント番号
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 */
+	private static void init(final Cipher cipher, final int mode, final SecretKeySpec key, final Header header, final int index) throws InvalidKeyException, InvalidAlgorithmParameterException {
+		byte[] nonce = new byte[NONCE_LENGTH];
+		ByteBuffer.wrap(nonce)
+				.put(header.noncePrefix)
+				.putInt(index)
+				.put((byte) (index == header.getSegmentCount() - 1 ? 1 : 0));
+		cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+		cipher.updateAAD(header.bytes);
+	}
+
+	/**
+	 * セグメントごとの処理を並列に実行
+	 * @param segmentCount セグメント数
+	 * @param action セグメントごとの処理
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	private void run(final int segmentCount, final SegmentAction action) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		try {
+			this.pool.invoke(new SegmentTask(action, 0, segmentCount));
+		} catch (SegmentException e) {
+			// ワーカースレッドで発生した例外を呼び出し元の型で投げ直す
+			Throwable cause = e;
+			while (cause instanceof SegmentException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof InvalidKeyException exception) {
+				throw exception;
+			} else if (cause instanceof InvalidAlgorithmParameterException exception) {
+				throw exception;
+			} else if (cause instanceof NoSuchAlgorithmException exception) {
+				throw exception;
+			} else if (cause instanceof NoSuchPaddingException exception) {
+				throw exception;
+			} else if (cause instanceof IllegalBlockSizeException exception) {
+				throw exception;
+			} else if (cause instanceof BadPaddingException exception) {
+				throw exception;
+			} else if (cause instanceof IOException exception) {
+				// 入出力の例外はファイルの処理で取り出す
+				throw new UncheckedIOException(exception);
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * 位置を指定してバッファが埋まるまで読み込み
+	 * @param channel 読み込み元
+	 * @param buffer 読み込み先
+	 * @param position 読み込み開始位置
+	 * @throws IOException 途中で終端に達した場合に発生
+	 */
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		long current = position;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, current);
+			if (read == -1) {
+				throw new IOException("unexpected end of file");
+			}
+			current += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * バッファが埋まるまで読み込み
+	 * @param channel 読み込み元
+	 * @param buffer 読み込み先
+	 * @throws IOException 途中で終端に達した場合に発生
+	 */
+	private static void readFully(final SeekableByteChannel channel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) == -1) {
+				throw new IOException("unexpected end of file");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * 位置を指定してバッファの内容をすべて書き込み
+	 * @param channel 書き込み先
+	 * @param buffer 書き込むバッファ
+	 * @param position 書き込み開始位置
+	 * @throws IOException 書き込みに失敗した場合に発生
+	 */
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		long current = position;
+		while (buffer.hasRemaining()) {
+			current += channel.write(buffer, current);
+		}
+	}
+
+	/**
+	 * ヘッダ
+	 * @author ink-0x20
+	 */
+	private static final class Header {
+
+		/** ヘッダのbyte配列、追加認証データとして使用 */
+		private final byte[] bytes;
+		/** セグメント長 */
+		private final int segmentSize;
+		/** 平文の長さ */
+		private final long plainLength;
+		/** コンテナの鍵の導出に使用するソルト */
+		private final byte[] salt;
+		/** nonce接頭辞 */
+		private final byte[] noncePrefix;
+		/** セグメント数 */
+		private final int segmentCount;
+
+		/**
+		 * コンストラクタ
+		 * @param bytes ヘッダのbyte配列
+		 */
+		private Header(final byte[] bytes) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			for (byte b : MAGIC) {
+				if (buffer.get() != b) {
+					throw new IllegalArgumentException("invalid container header");
+				}
+			}
+			if (buffer.get() != VERSION) {
+				throw new IllegalArgumentException("unsupported container version");
+			}
+			this.bytes = bytes;
+			this.segmentSize = buffer.getInt();
+			this.plainLength = buffer.getLong();
+			this.salt = new byte[SALT_LENGTH];
+			buffer.get(this.salt);
+			this.noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+			buffer.get(this.noncePrefix);
+			// ヘッダは認証前に読み込むため、セグメント長を上限で制限してから使用する
+			if (this.segmentSize <= 0 || MAX_SEGMENT_SIZE < this.segmentSize || this.plainLength < 0) {
+				throw new IllegalArgumentException("invalid container header");
+			}
+			// 空の平文も1セグメントとしてヘッダを認証する
+			long count = this.plainLength == 0 ? 1 : (this.plainLength - 1) / this.segmentSize + 1;
+			if (Integer.MAX_VALUE < count) {
+				throw new IllegalArgumentException("too many segments");
+			}
+			this.segmentCount = (int) count;
+		}
+
+		/**
+		 * 暗号化用のヘッダを作成
+		 * @param segmentSize セグメント長
+		 * @param plainLength 平文の長さ
+		 * @return ヘッダ
+		 */
+		static Header create(final int segmentSize, final long plainLength) {
+			byte[] random = new byte[SALT_LENGTH + NONCE_PREFIX_LENGTH];
+			Encryptor.RANDOM.nextBytes(random);
+			byte[] bytes = new byte[HEADER_LENGTH];
+			ByteBuffer.wrap(bytes)
+					.put(MAGIC)
+					.put(VERSION)
+					.putInt(segmentSize)
+					.putLong(plainLength)
+					.put(random);
+			return new Header(bytes);
+		}
+
+		/**
+		 * 暗号文からヘッダを読み込み
+		 * @param target 暗号文
+		 * @return ヘッダ
+		 */
+		static Header read(final byte[] target) {
+			if (target == null || target.length < HEADER_LENGTH) {
+				throw new IllegalArgumentException("target is too short");
+			}
+			byte[] bytes = new byte[HEADER_LENGTH];
+			System.arraycopy(target, 0, bytes, 0, HEADER_LENGTH);
+			return new Header(bytes);
+		}
+
+		/**
+		 * チャネルの現在位置からヘッダを読み込み
+		 * @param channel 読み込み元
+		 * @return ヘッダ
+		 * @throws IOException 読み込みに失敗した場合、ヘッダが不正な場合に発生
+		 */
+		static Header read(final SeekableByteChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+			readFully(channel, buffer);
+			try {
+				return new Header(buffer.array());
+			} catch (IllegalArgumentException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * セグメント数を取得
+		 * @return セグメント数
+		 */
+		int getSegmentCount() {
+			return this.segmentCount;
+		}
+
+		/**
+		 * セグメント番号を検証
+		 * @param index セグメント番号
+		 */
+		void checkIndex(final int index) {
+			if (index < 0 || this.segmentCount <= index) {
+				throw new IndexOutOfBoundsException("index " + index + " out of " + this.segmentCount + " segments");
+			}
+		}
+
+		/**
+		 * セグメントの平文の長さを取得
+		 * @param index セグメント番号
+		 * @return 平文の長さ
+		 */
+		int getPlainLength(final int index) {
+			return (int) Math.min(this.segmentSize, this.plainLength - getPlainOffset(index));
+		}
+
+		/**
+		 * セグメントの平文の開始位置を取得
+		 * @param index セグメント番号
+		 * @return 開始位置
+		 */
+		long getPlainOffset(final int index) {
+			return (long) index * this.segmentSize;
+		}
+
+		/**
+		 * セグメントの暗号文の開始位置を取得
+		 * @param index セグメント番号
+		 * @return 開始位置
+		 */
+		long getEncryptedOffset(final int index) {
+			return HEADER_LENGTH + (long) index * (this.segmentSize + TAG_LENGTH);
+		}
+
+		/**
+		 * 暗号文全体の長さを取得
+		 * @return 暗号文の長さ
+		 */
+		long getEncryptedLength() {
+			return HEADER_LENGTH + this.plainLength + (long) this.segmentCount * TAG_LENGTH;
+		}
+
+	}
+
+	/**
+	 * セグメントごとの処理
+	 * @author ink-0x20
+	 */
+	@FunctionalInterface
+	private interface SegmentAction {
+
+		/**
+		 * 実行
+		 * @param cipher 処理中のみ使用する{@link Cipher}
+		 * @param index セグメント番号
+		 * @throws GeneralSecurityException 暗号化・復号に失敗した場合に発生
+		 * @throws IOException 入出力に失敗した場合に発生
+		 */
+		void run(Cipher cipher, int index) throws GeneralSecurityException, IOException;
+
+	}
+
+	/**
+	 * セグメントの範囲を分割して並列に処理するタスク
+	 * @author ink-0x20
+	 */
+	private static final class SegmentTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** セグメントごとの処理 */
+		private final transient SegmentAction action;
+		/** 開始セグメント番号 */
+		private final int from;
+		/** 終了セグメント番号（含まない） */
+		private final int to;
+
+		/**
+		 * コンストラクタ
+		 * @param action セグメントごとの処理
+		 * @param from 開始セグメント番号
+		 * @param to 終了セグメント番号（含まない）
+		 */
+		SegmentTask(final SegmentAction action, final int from, final int to) {
+			this.action = action;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= SEQUENTIAL_SEGMENTS) {
+				try {
+					// 借りたCipherは返却するまで他の処理と共有されないため、ファイルへの書き込みを挟んでも影響しない
+					Cipher cipher = Encryptor.borrowCipher(EncryptAlgorithm.AES_GCM.getAlgorithm());
+					try {
+						for (int index = this.from; index < this.to; index++) {
+							this.action.run(cipher, index);
+						}
+					} finally {
+						Encryptor.giveBackCipher(EncryptAlgorithm.AES_GCM.getAlgorithm(), cipher);
+					}
+				} catch (GeneralSecurityException | IOException e) {
+					throw new SegmentException(e);
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new SegmentTask(this.action, this.from, middle), new SegmentTask(this.action, middle, this.to));
+		}
+
+	}
+
+	/**
+	 * ワーカースレッドで発生した検査例外を呼び出し元へ伝える例外
+	 * @author ink-0x20
+	 */
+	private static final class SegmentException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * コンストラクタ
+		 * @param cause 発生した例外
+		 */
+		SegmentException(final Throwable cause) {
+			super(cause);
+		}
+
+	}
+
+}
@@ -1,9 +1,11 @@
 package com.inkblogdb.commons.util;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 import java.util.Base64;
 
@@ -11,6 +13,7 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -19,8 +22,18 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public class EncryptUtils {
 
-	/** 自動補完暗号化キーの長さ */
-	private static final int AUTO_KEY_LENGTH = 128;
+	/** 自動補完暗号化キーの長さ（SHA-256の出力長） */
+	private static final int AUTO_KEY_LENGTH = 32;
+	/** 自動補完初期化ベクトルキーの長さ（MD5の出力長） */
+	private static final int AUTO_IV_LENGTH = 16;
+	/** 形式の識別子、Base64の文字と旧形式の先頭byteには現れない値 */
+	private static final byte ENVELOPE_MAGIC = (byte) 0xE7;
+	/** 形式のバージョン */
+	private static final byte ENVELOPE_VERSION = 1;
+	/** 初期化ベクトルキーを含むことを示すフラグ */
+	private static final int FLAG_IV = 0x01;
+	/** 暗号化キーを含むことを示すフラグ */
+	private static final int FLAG_KEY = 0x02;
 	/** byteずらし */
 	private static final int SHIFT_BYTE = 73;
 	/** 区切り文字1 */
@@ -426,8 +439,40 @@ public class EncryptUtils {
 
 
 
+	/**
+	 * すべての暗号化キーを指定して、byte配列を指定の暗号方式でBase64に変換せずに暗号化
+	 * DBのバイナリ列などに保存する場合に使用し、{@link #doDecrypt(EncryptAlgorithm, byte[], byte[], byte[])}でそのまま復号できる
+	 * @param algorithm 暗号アルゴリズム
+	 * @param target 平文
+	 * @param encryptKey 暗号化キー、nullの場合は自動作成して暗号文に含む
+	 * @param ivKey 初期化ベクトルキー、nullの場合は自動作成して暗号文に含む、{@link EncryptAlgorithm#AES_GCM}の場合はnullのみ指定可能
+	 * @return 暗号化byte配列
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public static byte[] doEncryptBinary(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		return encryptEnvelope(algorithm, target, encryptKey, ivKey);
+	}
+
 	/**
 	 * 暗号化を管理
+	 * 形式をBase64に変換して返却する
+	 * @param algorithm 暗号アルゴリズム
+	 * @param target 平文
+	 * @param encryptKey 暗号化キー
+	 * @param ivKey 初期化ベクトルキー
+	 * @return 暗号化byte配列
+	 */
+	private static byte[] manageEncrypt(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		return Base64.getEncoder().encode(encryptEnvelope(algorithm, target, encryptKey, ivKey));
+	}
+
+	/**
+	 * 暗号化してバイナリ形式に変換
 	 * @param algorithm 暗号アルゴリズム
 	 * @param target 平文
 	 * @param encryptKey 暗号化キー
@@ -441,7 +486,11 @@ public class EncryptUtils {
 	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
 	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
 	 */
-	private static byte[] manageEncrypt(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+	private static byte[] encryptEnvelope(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws NoSuchAlgorithmException, InvalidKeyException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		// 固定の初期化ベクトルキーはGCMのnonceの再利用となるため、AES_GCMは毎回ランダムに作成する
+		if (algorithm == EncryptAlgorithm.AES_GCM && ivKey != null) {
+			throw new IllegalArgumentException("ivKey cannot be specified for AES_GCM");
+		}
 		// 準備
 		EncryptUtils.EncryptBean encryptBean = new EncryptUtils().new EncryptBean();
 		encryptBean.setSaveEncryptKey(encryptKey == null);
@@ -452,14 +501,14 @@ public class EncryptUtils {
 			encryptBean.setEncryptKey(encryptKey);
 		}
 		if (encryptBean.isSaveIvKey()) {
-			encryptBean.setIvKey(secureRandomBytes(AUTO_KEY_LENGTH));
+			encryptBean.setIvKey(secureRandomBytes(AUTO_IV_LENGTH));
 		} else {
 			encryptBean.setIvKey(ivKey);
 		}
 		// 暗号化
 		byte[] encryptBytes = encrypt(algorithm, target, encryptBean);
-		// 独自暗号化して返却
-		return doOriginal(encryptBytes, encryptBean);
+		// バイナリ形式に変換して返却
+		return toEnvelope(encryptBytes, encryptBean);
 	}
 
 	/**
@@ -484,61 +533,134 @@ public class EncryptUtils {
 			throw new NullPointerException();
 		}
 		SecretKeySpec secretKeySpec = new SecretKeySpec(DigestUtils.sha256(encryptBean.getEncryptKey()), algorithm.getEncrypt());
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(DigestUtils.md5(encryptBean.getIvKey()));
-		Cipher cipher = Cipher.getInstance(algorithm.getAlgorithm());
-		cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivParameterSpec);
-		return cipher.doFinal(target);
+		AlgorithmParameterSpec parameterSpec = toParameterSpec(algorithm, encryptBean.getIvKey());
+		// 使用していないCipherを再利用
+		Cipher cipher = Encryptor.borrowCipher(algorithm.getAlgorithm());
+		try {
+			cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, parameterSpec);
+			return cipher.doFinal(target);
+		} finally {
+			Encryptor.giveBackCipher(algorithm.getAlgorithm(), cipher);
+		}
 	}
 
 	/**
-	 * 独自にbyte配列を改ざん
-	 * 初期化ベクトルキー、暗号文、暗号化キー、の順で連結し返却
-	 * Base64を使用し、初期化ベクトルキー、暗号文、暗号化キーはエンコードをかける（Base64は英数字と「/」「+」）
-	 * 各3つの間をBase64では使用しない「-」「_」で区切る
-	 * 最終的にすべてのキーを保存する場合は、初期化ベクトルキー_暗号文-暗号化キーとなる
-	 * byteを+3ずらす
-	 * @param encryptBytes 暗号化
+	 * 暗号文をバイナリ形式に変換
+	 * 「識別子(1) バージョン(1) フラグ(1) [長さ 初期化ベクトルキー] [長さ 暗号化キー] 暗号文」の順で連結し返却
+	 * 長さは可変長整数で、保存しないキーは長さも含めない
+	 * @param encryptBytes 暗号文
+	 * @param encryptBean 暗号化時のデータ
+	 * @return バイナリ形式のbyte配列
+	 */
+	private static byte[] toEnvelope(byte[] encryptBytes, EncryptBean encryptBean) {
+		if (encryptBean.isSaveEncryptKey() && !encryptBean.isSaveIvKey()) {
+			throw new IllegalArgumentException();
+		}
+		byte[] ivKey = encryptBean.isSaveIvKey() ? encryptBean.getIvKey() : null;
+		byte[] encryptKey = encryptBean.isSaveEncryptKey() ? encryptBean.getEncryptKey() : null;
+		int length = 3 + encryptBytes.length;
+		int flags = 0;
+		if (ivKey != null) {
+			flags |= FLAG_IV;
+			length += varintSize(ivKey.length) + ivKey.length;
+		}
+		if (encryptKey != null) {
+			flags |= FLAG_KEY;
+			length += varintSize(encryptKey.length) + encryptKey.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length)
+				.put(ENVELOPE_MAGIC)
+				.put(ENVELOPE_VERSION)
+				.put((byte) flags);
+		if (ivKey != null) {
+			putVarint(buffer, ivKey.length);
+			buffer.put(ivKey);
+		}
+		if (encryptKey != null) {
+			putVarint(buffer, encryptKey.length);
+			buffer.put(encryptKey);
+		}
+		buffer.put(encryptBytes);
+		return buffer.array();
+	}
+
+	/**
+	 * バイナリ形式から暗号文とキーを取り出す
+	 * 形式に含まれないキーは引数の値を使用する
+	 * @param envelope バイナリ形式のbyte配列
 	 * @param encryptKey 暗号化キー
 	 * @param ivKey 初期化ベクトルキー
-	 * @param saveKey 暗号化キーを暗号文字列に含むか否か
-	 * @return 独自改竄byte配列
-	 * @throws EP0102EncryptKeyNoneException 暗号化キーがない場合に発生
+	 * @return 復号時のデータ
 	 */
-	private static byte[] doOriginal(byte[] encryptBytes, EncryptBean encryptBean) {
-		if (encryptBytes == null) {
-			return new byte[0];
+	private static DecryptBean fromEnvelope(byte[] envelope, byte[] encryptKey, byte[] ivKey) {
+		ByteBuffer buffer = ByteBuffer.wrap(envelope);
+		buffer.get();
+		if (buffer.get() != ENVELOPE_VERSION) {
+			throw new IllegalArgumentException("unsupported envelope version");
 		}
-		byte[] original;
-		if (encryptBean.isSaveEncryptKey()) {
-			if (encryptBean.isSaveIvKey()) {
-				// 初期化ベクトルキー + 区切り文字1
-				original = ArrayUtils.addAll(Base64.getEncoder().encode(ArrayUtils.reverse(encryptBean.getIvKey())), SPLIT1);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArrayUtils.reverse(encryptBytes)));
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文 + 区切り文字2
-				original = ArrayUtils.addAll(original, SPLIT2);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文 + 区切り文字2 + 暗号化キー
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArrayUtils.reverse(encryptBean.getEncryptKey())));
-			} else {
-				throw new IllegalArgumentException();
+		int flags = buffer.get();
+		EncryptUtils.DecryptBean decryptBean = new EncryptUtils().new DecryptBean();
+		decryptBean.setIvKey((flags & FLAG_IV) != 0 ? getField(buffer) : ivKey);
+		decryptBean.setEncryptKey((flags & FLAG_KEY) != 0 ? getField(buffer) : encryptKey);
+		if (decryptBean.getIvKey() == null || decryptBean.getEncryptKey() == null) {
+			throw new IllegalArgumentException();
+		}
+		byte[] decrypt = new byte[buffer.remaining()];
+		buffer.get(decrypt);
+		decryptBean.setDecrypt(decrypt);
+		return decryptBean;
+	}
+
+	/**
+	 * 長さ付きの項目を読み込み
+	 * @param buffer 読み込み元
+	 * @return 項目
+	 */
+	private static byte[] getField(ByteBuffer buffer) {
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (!buffer.hasRemaining() || 28 < shift) {
+				throw new IllegalArgumentException("invalid envelope length");
 			}
-		} else {
-			if (encryptBean.isSaveIvKey()) {
-				// 初期化ベクトルキー + 区切り文字1
-				original = ArrayUtils.addAll(Base64.getEncoder().encode(ArrayUtils.reverse(encryptBean.getIvKey())), SPLIT1);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArrayUtils.reverse(encryptBytes)));
-			} else {
-				// 暗号文のみ
-				original = Base64.getEncoder().encode(ArrayUtils.reverse(encryptBytes));
+			byte b = buffer.get();
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
 			}
 		}
-		// byteをずらす(ずらし分 + インデックス / 3)
-		for (int i = 0; i < original.length; i++) {
-			original[i] = (byte) (original[i] + SHIFT_BYTE + i / 3);
+		if (length < 0 || buffer.remaining() < length) {
+			throw new IllegalArgumentException("invalid envelope length");
+		}
+		byte[] field = new byte[length];
+		buffer.get(field);
+		return field;
+	}
+
+	/**
+	 * 可変長整数を書き込み
+	 * @param buffer 書き込み先
+	 * @param value 値
+	 */
+	private static void putVarint(ByteBuffer buffer, int value) {
+		int rest = value;
+		while ((rest & ~0x7F) != 0) {
+			buffer.put((byte) ((rest & 0x7F) | 0x80));
+			rest >>>= 7;
 		}
-		// Base64エンコードして返却
-		return Base64.getEncoder().encode(original);
+		buffer.put((byte) rest);
+	}
+
+	/**
+	 * 可変長整数のbyte数を取得
+	 * @param value 値
+	 * @return byte数
+	 */
+	private static int varintSize(int value) {
+		int size = 1;
+		for (int rest = value >>> 7; rest != 0; rest >>>= 7) {
+			size++;
+		}
+		return size;
 	}
 
 	/**
@@ -557,14 +679,33 @@ public class EncryptUtils {
 	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
 	 */
 	private static byte[] manageDecrypt(EncryptAlgorithm algorithm, byte[] encrypt, byte[] encryptKey, byte[] ivKey) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
-		// 独自復号
-		DecryptBean decryptBean = undoOriginal(encrypt, encryptKey, ivKey);
+		// 形式を判定して暗号文とキーを取り出す
+		DecryptBean decryptBean = decode(encrypt, encryptKey, ivKey);
 		// 復号して返却
 		return decrypt(algorithm, decryptBean.getDecrypt(), decryptBean.getEncryptKey(), decryptBean.getIvKey());
 	}
 
 	/**
-	 * 独自に改竄したbyte配列を戻
+	 * 暗号文の形式を判定して暗号文とキーを取り出す
+	 * バイナリ形式、Base64に変換したバイナリ形式、旧形式の順で判定する
+	 * @param encryptBytes 暗号化
+	 * @param encryptKey 暗号化キー
+	 * @param ivKey 初期化ベクトルキー
+	 * @return 復号時のデータ
+	 */
+	private static DecryptBean decode(byte[] encryptBytes, byte[] encryptKey, byte[] ivKey) {
+		if (0 < encryptBytes.length && encryptBytes[0] == ENVELOPE_MAGIC) {
+			return fromEnvelope(encryptBytes, encryptKey, ivKey);
+		}
+		byte[] decoded = Base64.getDecoder().decode(encryptBytes);
+		if (0 < decoded.length && decoded[0] == ENVELOPE_MAGIC) {
+			return fromEnvelope(decoded, encryptKey, ivKey);
+		}
+		return undoOriginal(decoded, encryptKey, ivKey);
+	}
+
+	/**
+	 * 旧形式で独自に改竄したbyte配列を戻
 	 * 初期化ベクトルキー、暗号文字列、暗号化キー、の順で連結し返却
 	 * @param encryptBytes 暗号化
 	 * @param encryptKey 暗号化キー
@@ -575,8 +716,8 @@ public class EncryptUtils {
 	 */
 	private static DecryptBean undoOriginal(byte[] encryptBytes, byte[] encryptKey, byte[] ivKey) {
 		EncryptUtils.DecryptBean decryptBean = new EncryptUtils().new DecryptBean();
-		// Base64デコード
-		byte[] original = Base64.getDecoder().decode(encryptBytes);
+		// Base64デコード済み
+		byte[] original = encryptBytes;
 		// byteを戻す(ずらし分 インデックス / 3)
 		for (int i = 0; i < original.length; i++) {
 			original[i] = (byte) (original[i] - SHIFT_BYTE - i / 3);
@@ -631,10 +772,28 @@ public class EncryptUtils {
 			throw new NullPointerException();
 		}
 		SecretKeySpec secretKeySpec = new SecretKeySpec(DigestUtils.sha256(encKey), algorithm.getEncrypt());
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(DigestUtils.md5(ivKey));
-		Cipher cipher = Cipher.getInstance(algorithm.getAlgorithm());
-		cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivParameterSpec);
-		return cipher.doFinal(encrypt);
+		AlgorithmParameterSpec parameterSpec = toParameterSpec(algorithm, ivKey);
+		// 使用していないCipherを再利用
+		Cipher cipher = Encryptor.borrowCipher(algorithm.getAlgorithm());
+		try {
+			cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, parameterSpec);
+			return cipher.doFinal(encrypt);
+		} finally {
+			Encryptor.giveBackCipher(algorithm.getAlgorithm(), cipher);
+		}
+	}
+
+	/**
+	 * 初期化ベクトルキーから暗号アルゴリズムのパラメータを作成
+	 * @param algorithm 暗号アルゴリズム
+	 * @param ivKey 初期化ベクトルキー
+	 * @return パラメータ
+	 */
+	private static AlgorithmParameterSpec toParameterSpec(EncryptAlgorithm algorithm, byte[] ivKey) {
+		if (algorithm == EncryptAlgorithm.AES_GCM) {
+			return new GCMParameterSpec(ChunkedEncryptor.TAG_LENGTH * 8, DigestUtils.md5(ivKey));
+		}
+		return new IvParameterSpec(DigestUtils.md5(ivKey));
 	}
 
 	/**
@@ -645,6 +804,14 @@ public class EncryptUtils {
 	public enum EncryptAlgorithm {
 		/** AES/CBC/PKCS5Padding */
 		  AES("AES", "AES/CBC/PKCS5Padding")
+		/**
+		 * AES/GCM/NoPadding
+		 * 改ざんを検知できる認証付き暗号
+		 * 同じnonceを再利用しないよう暗号化ごとにランダムな初期化ベクトルキーを作成して暗号文に含むため、
+		 * 暗号化時に初期化ベクトルキーを指定した場合は{@link IllegalArgumentException}となる
+		 * 大きなデータは{@link ChunkedEncryptor}で分割して並列に暗号化する
+		 */
+		, AES_GCM("AES", "AES/GCM/NoPadding")
 		/** RSA/ECB/PKCS1Padding */
 		, RSA("RSA", "RSA/ECB/PKCS1Padding")
 		;
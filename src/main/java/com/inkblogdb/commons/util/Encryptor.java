@@ -0,0 +1,511 @@
+package com.inkblogdb.commons.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.inkblogdb.commons.util.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * 同じ暗号化キーで繰り返し暗号化・復号する暗号器
+ * 暗号化キーのハッシュと{@link Cipher}の生成を1回にまとめ、小さなデータを大量に暗号化する場合の負荷を下げる
+ * {@link Cipher}は使用中のみ貸し出して使い回すため、複数スレッドから同時に使用できる
+ * 出力は暗号文のみで、{@link EncryptUtils}の独自形式には変換しない
+ * @author ink-0x20
+ */
+public final class Encryptor {
+
+	/** AESのブロック長 */
+	static final int BLOCK_SIZE = 16;
+	/** ストリーム暗号化の読み込み単位 */
+	static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	/** ストリーム暗号化のヘッダの識別子 */
+	private static final byte[] STREAM_MAGIC = { 'I', 'N', 'K', 'S' };
+	/** ストリーム暗号化の形式のバージョン */
+	private static final byte STREAM_VERSION = 1;
+	/** ヘッダに初期化ベクトルを含むことを示すフラグ */
+	private static final byte FLAG_IV = 0x01;
+	/** 初期化ベクトルの生成元 */
+	static final SecureRandom RANDOM = new SecureRandom();
+	/** 暗号方式別の使用していない{@link Cipher} */
+	private static final Map<String, Queue<Cipher>> CIPHERS = new ConcurrentHashMap<>();
+
+	/** 暗号アルゴリズム */
+	private final EncryptAlgorithm algorithm;
+	/** 暗号化キー */
+	private final SecretKeySpec secretKeySpec;
+	/** 固定の初期化ベクトル、nullの場合は暗号化ごとに生成して暗号文の先頭に付与 */
+	private final IvParameterSpec ivParameterSpec;
+
+	/**
+	 * コンストラクタ
+	 * 初期化ベクトルは暗号化ごとに生成し、暗号文の先頭に付与する
+	 * @param encryptKey 暗号化キー
+	 */
+	public Encryptor(final byte[] encryptKey) {
+		this(EncryptAlgorithm.AES, encryptKey, null);
+	}
+
+	/**
+	 * コンストラクタ
+	 * 初期化ベクトルは暗号化ごとに生成し、暗号文の先頭に付与する
+	 * @param encryptKey 暗号化キー
+	 */
+	public Encryptor(final String encryptKey) {
+		this(EncryptAlgorithm.AES, ConvertUtils.stringToBytes(encryptKey), null);
+	}
+
+	/**
+	 * コンストラクタ
+	 * {@link EncryptUtils}と同じく、初期化ベクトルキーから固定の初期化ベクトルを作成する
+	 * @param encryptKey 暗号化キー
+	 * @param ivKey 初期化ベクトルキー
+	 */
+	public Encryptor(final String encryptKey, final String ivKey) {
+		this(EncryptAlgorithm.AES, ConvertUtils.stringToBytes(encryptKey), ConvertUtils.stringToBytes(ivKey));
+	}
+
+	/**
+	 * コンストラクタ
+	 * 暗号化キーはSHA-256、初期化ベクトルキーはMD5でハッシュして使用する
+	 * @param algorithm 暗号アルゴリズム
+	 * @param encryptKey 暗号化キー
+	 * @param ivKey 初期化ベクトルキー、nullの場合は暗号化ごとに生成して暗号文の先頭に付与
+	 */
+	public Encryptor(final EncryptAlgorithm algorithm, final byte[] encryptKey, final byte[] ivKey) {
+		if (algorithm != EncryptAlgorithm.AES) {
+			throw new IllegalArgumentException("algorithm must be AES");
+		}
+		if (encryptKey == null || encryptKey.length == 0) {
+			throw new IllegalArgumentException("encryptKey is empty");
+		}
+		this.algorithm = algorithm;
+		this.secretKeySpec = new SecretKeySpec(DigestUtils.sha256(encryptKey), algorithm.getEncrypt());
+		this.ivParameterSpec = ivKey == null ? null : new IvParameterSpec(DigestUtils.md5(ivKey));
+	}
+
+	/**
+	 * 暗号化
+	 * @param target 平文
+	 * @return 暗号文
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] encrypt(final byte[] target) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		if (target == null) {
+			return new byte[0];
+		}
+		byte[] result = new byte[getOutputSize(target.length)];
+		try {
+			encrypt(ByteBuffer.wrap(target), ByteBuffer.wrap(result));
+		} catch (ShortBufferException e) {
+			// 出力長は事前に計算済みのため発生しない
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * 暗号化
+	 * srcの残りをすべて暗号化してdstに書き込み、それぞれの位置を進める
+	 * dstには{@link #getOutputSize(int)}以上の残りが必要
+	 * @param src 平文
+	 * @param dst 暗号文の出力先
+	 * @return 書き込んだbyte数
+	 * @throws ShortBufferException 出力先の残りが足りない場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public int encrypt(final ByteBuffer src, final ByteBuffer dst) throws ShortBufferException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		if (dst.remaining() < getOutputSize(src.remaining())) {
+			throw new ShortBufferException("dst needs " + getOutputSize(src.remaining()) + " bytes");
+		}
+		int written = 0;
+		IvParameterSpec iv = this.ivParameterSpec;
+		if (iv == null) {
+			// 初期化ベクトルを生成して先頭に付与
+			byte[] ivBytes = new byte[BLOCK_SIZE];
+			RANDOM.nextBytes(ivBytes);
+			dst.put(ivBytes);
+			written = BLOCK_SIZE;
+			iv = new IvParameterSpec(ivBytes);
+		}
+		Cipher cipher = borrowCipher(this.algorithm.getAlgorithm());
+		try {
+			// 同じキーの再初期化ではキー拡張が省略される
+			cipher.init(Cipher.ENCRYPT_MODE, this.secretKeySpec, iv);
+			return written + cipher.doFinal(src, dst);
+		} finally {
+			giveBackCipher(this.algorithm.getAlgorithm(), cipher);
+		}
+	}
+
+	/**
+	 * 復号
+	 * @param target 暗号文
+	 * @return 平文
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public byte[] decrypt(final byte[] target) throws InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		if (target == null) {
+			return new byte[0];
+		}
+		ByteBuffer src = ByteBuffer.wrap(target);
+		// 復号後はパディング分だけ短くなるため、暗号文の長さで確保して切り詰める
+		byte[] result = new byte[target.length];
+		int length;
+		try {
+			length = decrypt(src, ByteBuffer.wrap(result));
+		} catch (ShortBufferException e) {
+			throw new IllegalStateException(e);
+		}
+		return length == result.length ? result : Arrays.copyOf(result, length);
+	}
+
+	/**
+	 * 復号
+	 * srcの残りをすべて復号してdstに書き込み、それぞれの位置を進める
+	 * @param src 暗号文
+	 * @param dst 平文の出力先
+	 * @return 書き込んだbyte数
+	 * @throws ShortBufferException 出力先の残りが足りない場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public int decrypt(final ByteBuffer src, final ByteBuffer dst) throws ShortBufferException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		IvParameterSpec iv = this.ivParameterSpec;
+		if (iv == null) {
+			// 先頭の初期化ベクトルを読み込み
+			if (src.remaining() < BLOCK_SIZE) {
+				throw new IllegalBlockSizeException("missing initialization vector");
+			}
+			byte[] ivBytes = new byte[BLOCK_SIZE];
+			src.get(ivBytes);
+			iv = new IvParameterSpec(ivBytes);
+		}
+		Cipher cipher = borrowCipher(this.algorithm.getAlgorithm());
+		try {
+			cipher.init(Cipher.DECRYPT_MODE, this.secretKeySpec, iv);
+			return cipher.doFinal(src, dst);
+		} finally {
+			giveBackCipher(this.algorithm.getAlgorithm(), cipher);
+		}
+	}
+
+	/**
+	 * ストリームを暗号化
+	 * 一定の長さずつ暗号化して書き込むため、データの長さに関わらず使用するメモリは一定
+	 * 出力は識別子、バージョン、フラグ、初期化ベクトルのヘッダと暗号文で、Base64には変換しない
+	 * ストリームは閉じない
+	 * @param in 平文の読み込み元
+	 * @param out 暗号文の書き込み先
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long encrypt(final InputStream in, final OutputStream out) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		return encrypt(Channels.newChannel(in), Channels.newChannel(out), false);
+	}
+
+	/**
+	 * ファイルを暗号化
+	 * ダイレクトバッファで一定の長さずつ暗号化し、出力先のファイルは上書きする
+	 * @param src 平文のファイル
+	 * @param dst 暗号文の出力先ファイル
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long encrypt(final Path src, final Path dst) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			return encrypt(in, out, true);
+		}
+	}
+
+	/**
+	 * {@link #encrypt(InputStream, OutputStream)}で暗号化したストリームを復号
+	 * ストリームは閉じない
+	 * @param in 暗号文の読み込み元
+	 * @param out 平文の書き込み先
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合、ヘッダが不正な場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long decrypt(final InputStream in, final OutputStream out) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		return decrypt(Channels.newChannel(in), Channels.newChannel(out), false);
+	}
+
+	/**
+	 * {@link #encrypt(Path, Path)}で暗号化したファイルを復号
+	 * 出力先のファイルは上書きする
+	 * @param src 暗号文のファイル
+	 * @param dst 平文の出力先ファイル
+	 * @return 書き込んだbyte数
+	 * @throws IOException 入出力に失敗した場合、ヘッダが不正な場合に発生
+	 * @throws InvalidAlgorithmParameterException 無効または不適切なアルゴリズム・パラメータの場合に発生
+	 * @throws InvalidKeyException 無効な符号化、長さの誤り、未初期化などの無効なキーの場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	public long decrypt(final Path src, final Path dst) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			return decrypt(in, out, true);
+		}
+	}
+
+	/**
+	 * チャネル間で暗号化
+	 * @param in 平文の読み込み元
+	 * @param out 暗号文の書き込み先
+	 * @param isDirect ダイレクトバッファを使用するか否か
+	 * @return 書き込んだbyte数
+	 */
+	private long encrypt(final ReadableByteChannel in, final WritableByteChannel out, final boolean isDirect) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		// 書き込み中に呼び出し元の処理が割り込んでも影響しないよう、専用の{@link Cipher}を使用
+		Cipher cipher = Cipher.getInstance(this.algorithm.getAlgorithm());
+		ByteBuffer input = allocate(STREAM_BUFFER_SIZE, isDirect);
+		ByteBuffer output = allocate(STREAM_BUFFER_SIZE + BLOCK_SIZE * 2, isDirect);
+		// ヘッダ
+		IvParameterSpec iv = this.ivParameterSpec;
+		output.put(STREAM_MAGIC).put(STREAM_VERSION);
+		if (iv == null) {
+			byte[] ivBytes = new byte[BLOCK_SIZE];
+			RANDOM.nextBytes(ivBytes);
+			output.put(FLAG_IV).put(ivBytes);
+			iv = new IvParameterSpec(ivBytes);
+		} else {
+			output.put((byte) 0);
+		}
+		cipher.init(Cipher.ENCRYPT_MODE, this.secretKeySpec, iv);
+		long written = writeFully(out, output);
+		while (in.read(input) != -1) {
+			input.flip();
+			written += update(cipher, input, output, out);
+			input.clear();
+		}
+		input.flip();
+		return written + doFinal(cipher, input, output, out);
+	}
+
+	/**
+	 * チャネル間で復号
+	 * @param in 暗号文の読み込み元
+	 * @param out 平文の書き込み先
+	 * @param isDirect ダイレクトバッファを使用するか否か
+	 * @return 書き込んだbyte数
+	 */
+	private long decrypt(final ReadableByteChannel in, final WritableByteChannel out, final boolean isDirect) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException {
+		// 書き込み中に呼び出し元の処理が割り込んでも影響しないよう、専用の{@link Cipher}を使用
+		Cipher cipher = Cipher.getInstance(this.algorithm.getAlgorithm());
+		// ヘッダ
+		ByteBuffer header = ByteBuffer.allocate(STREAM_MAGIC.length + 2);
+		readFully(in, header);
+		for (byte b : STREAM_MAGIC) {
+			if (header.get() != b) {
+				throw new IOException("invalid stream header");
+			}
+		}
+		if (header.get() != STREAM_VERSION) {
+			throw new IOException("unsupported stream version");
+		}
+		IvParameterSpec iv = this.ivParameterSpec;
+		if ((header.get() & FLAG_IV) != 0) {
+			ByteBuffer ivBuffer = ByteBuffer.allocate(BLOCK_SIZE);
+			readFully(in, ivBuffer);
+			iv = new IvParameterSpec(ivBuffer.array());
+		} else if (iv == null) {
+			throw new IOException("initialization vector is required");
+		}
+		cipher.init(Cipher.DECRYPT_MODE, this.secretKeySpec, iv);
+		ByteBuffer input = allocate(STREAM_BUFFER_SIZE, isDirect);
+		ByteBuffer output = allocate(STREAM_BUFFER_SIZE + BLOCK_SIZE * 2, isDirect);
+		long written = 0;
+		while (in.read(input) != -1) {
+			input.flip();
+			written += update(cipher, input, output, out);
+			input.clear();
+		}
+		input.flip();
+		return written + doFinal(cipher, input, output, out);
+	}
+
+	/**
+	 * 読み込んだ分を暗号化・復号して書き込み
+	 * @param cipher 初期化済みの{@link Cipher}
+	 * @param input 読み込んだデータ
+	 * @param output 出力用バッファ
+	 * @param out 書き込み先
+	 * @return 書き込んだbyte数
+	 * @throws IOException 書き込みに失敗した場合に発生
+	 */
+	private static long update(final Cipher cipher, final ByteBuffer input, final ByteBuffer output, final WritableByteChannel out) throws IOException {
+		output.clear();
+		try {
+			cipher.update(input, output);
+		} catch (ShortBufferException e) {
+			// 出力用バッファは読み込み単位より大きく確保済みのため発生しない
+			throw new IllegalStateException(e);
+		}
+		return writeFully(out, output);
+	}
+
+	/**
+	 * 残りを暗号化・復号して書き込み
+	 * @param cipher 初期化済みの{@link Cipher}
+	 * @param input 残りのデータ
+	 * @param output 出力用バッファ
+	 * @param out 書き込み先
+	 * @return 書き込んだbyte数
+	 * @throws IOException 書き込みに失敗した場合に発生
+	 * @throws BadPaddingException 特定のパディング・メカニズムが入力データに対して予期されているのにデータが適切にパディングされない場合に発生
+	 * @throws IllegalBlockSizeException ブロック暗号に提供されたデータの長さが正しくない場合、つまり暗号のブロック・サイズと一致しない場合に発生
+	 */
+	private static long doFinal(final Cipher cipher, final ByteBuffer input, final ByteBuffer output, final WritableByteChannel out) throws IOException, IllegalBlockSizeException, BadPaddingException {
+		output.clear();
+		try {
+			cipher.doFinal(input, output);
+		} catch (ShortBufferException e) {
+			// 出力用バッファは読み込み単位より大きく確保済みのため発生しない
+			throw new IllegalStateException(e);
+		}
+		return writeFully(out, output);
+	}
+
+	/**
+	 * バッファの内容をすべて書き込み
+	 * @param out 書き込み先
+	 * @param buffer 書き込み前のバッファ
+	 * @return 書き込んだbyte数
+	 * @throws IOException 書き込みに失敗した場合に発生
+	 */
+	private static int writeFully(final WritableByteChannel out, final ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		int length = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+		return length;
+	}
+
+	/**
+	 * バッファが埋まるまで読み込み
+	 * @param in 読み込み元
+	 * @param buffer 読み込み先
+	 * @throws IOException 途中で終端に達した場合に発生
+	 */
+	private static void readFully(final ReadableByteChannel in, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer) == -1) {
+				throw new IOException("unexpected end of stream");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * バッファを確保
+	 * @param capacity 容量
+	 * @param isDirect ダイレクトバッファか否か
+	 * @return バッファ
+	 */
+	private static ByteBuffer allocate(final int capacity, final boolean isDirect) {
+		return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * 暗号化後の長さを取得
+	 * @param inputLength 平文の長さ
+	 * @return 暗号文の長さ
+	 */
+	public int getOutputSize(final int inputLength) {
+		// PKCS5パディングは常に1ブロック以内を付与
+		int length = (inputLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+		return this.ivParameterSpec == null ? length + BLOCK_SIZE : length;
+	}
+
+	/**
+	 * 使用していない{@link Cipher}を借りる
+	 * ない場合は作成する
+	 * 使用後は{@link #giveBackCipher(String, Cipher)}で返却し、途中で他の処理に渡さない
+	 * @param transformation 暗号方式
+	 * @return {@link Cipher}
+	 * @throws NoSuchAlgorithmException ある暗号アルゴリズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 * @throws NoSuchPaddingException あるパディング・メカニズムが要求されたにもかかわらず、現在の環境では使用可能でない場合に発生
+	 */
+	static Cipher borrowCipher(final String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher cipher = CIPHERS.computeIfAbsent(transformation, t -> new ConcurrentLinkedQueue<>()).poll();
+		return cipher == null ? Cipher.getInstance(transformation) : cipher;
+	}
+
+	/**
+	 * 借りた{@link Cipher}を返却
+	 * 使用時に必ず初期化するため、失敗した{@link Cipher}も返却できる
+	 * @param transformation 暗号方式
+	 * @param cipher {@link #borrowCipher(String)}で借りた{@link Cipher}
+	 */
+	static void giveBackCipher(final String transformation, final Cipher cipher) {
+		CIPHERS.get(transformation).offer(cipher);
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.inkblogdb.commons.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRunnerTest {
+
+    @Test
+    void 呼び出し後に条件を変更しても呼び出し時点の条件で実行されること() throws Exception {
+        // given
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(Map.of("id", values.get(0))));
+        var tasks = new ArrayList<Runnable>();
+        var builder = new SqlBuilder().db(dataSource.proxy()).asyncExecutor(tasks::add).table("article").where("id", 1);
+
+        // when
+        var future = builder.getAsync();
+        builder.table("user").where("name", "a");
+        tasks.forEach(Runnable::run);
+
+        // then
+        assertEquals(List.of(Map.of("id", 1)), future.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("SELECT * FROM `article` WHERE `id` = ?;"), dataSource.preparedSqlList);
+        assertEquals(List.of(1), dataSource.parameterList);
+    }
+
+    @Test
+    void デフォルトの実行環境で実行できること() throws Exception {
+        // when
+        var future = AsyncRunner.run(null, new Object(), 1, () -> "done");
+
+        // then
+        assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void 同時実行数の変更が以降の実行に反映されること() throws Exception {
+        // given
+        var executor = Executors.newFixedThreadPool(4);
+        var key = new Object();
+        var running = new AtomicInteger();
+        var max = new AtomicInteger();
+        var gate = new CountDownLatch(1);
+        AsyncRunner.Task<Void> task = () -> {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            gate.await();
+            running.decrementAndGet();
+            return null;
+        };
+
+        // when
+        var first = List.of(AsyncRunner.run(executor, key, 1, task), AsyncRunner.run(executor, key, 1, task));
+        Thread.sleep(200);
+        int limited = max.get();
+        var second = List.of(AsyncRunner.run(executor, key, 3, task), AsyncRunner.run(executor, key, 3, task));
+        Thread.sleep(200);
+        int resized = max.get();
+        gate.countDown();
+        for (var future : first) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        for (var future : second) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then
+        assertEquals(1, limited);
+        assertEquals(3, resized);
+    }
+
+    @Test
+    void 同時実行数に0以下は指定できないこと() {
+        assertThrows(IllegalArgumentException.class, () -> AsyncRunner.run(null, new Object(), 0, () -> null));
+        assertThrows(IllegalArgumentException.class, () -> new SqlBuilder().asyncConcurrency(0));
+    }
+
+}
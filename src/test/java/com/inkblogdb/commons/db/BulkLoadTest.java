@@ -0,0 +1,213 @@
+package com.inkblogdb.commons.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadTest {
+
+    @Test
+    void LOAD_DATAのストリームに挿入データがエスケープされて渡されること() throws SQLException, NamingException {
+        // given
+        var infile = new LocalInfile();
+        var dataSource = new StubDataSource().statement(infile::proxy);
+        var builder = new SqlBuilder().db(dataSource.proxy()).table("article");
+        builder.insertData(row(1, "tab\there", Boolean.TRUE));
+        builder.insertData(row(2, "back\\slash\nline", null));
+
+        // when
+        var count = builder.bulkLoad(BulkLoadDialect.MYSQL);
+
+        // then
+        assertEquals(2, count);
+        assertEquals("LOAD DATA LOCAL INFILE 'stream' INTO TABLE `article` CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (`id`, `title`, `open`);",
+                infile.sql);
+        assertEquals("1\ttab\\there\t1\n2\tback\\\\slash\\nline\t\\N\n", infile.loaded);
+        assertEquals(1, dataSource.commitCount.get());
+    }
+
+    @Test
+    void 大量の行が読み込んだ分だけ変換されること() throws IOException {
+        // given
+        var consumed = new int[1];
+        Iterator<Map<String, Object>> rows = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return consumed[0] < 1_000_000;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                consumed[0]++;
+                return row(consumed[0], "title", Boolean.FALSE);
+            }
+        };
+        var first = rows.next();
+        var input = new BulkLoadInputStream(BulkLoadDialect.MYSQL, new ArrayList<>(first.keySet()), first, rows);
+
+        // when
+        var head = input.readNBytes(8);
+
+        // then
+        assertEquals("1\ttitle\t", new String(head, StandardCharsets.UTF_8));
+        assertTrue(consumed[0] < 10_000);
+        assertEquals(consumed[0], input.getRowCount());
+    }
+
+    @Test
+    void COPYの形式で値が書き込まれること() throws IOException {
+        // given
+        var out = new ByteArrayOutputStream();
+        List<Object> values = Arrays.asList(1L, "a\tb", Boolean.TRUE, new byte[] { 0x0a, (byte) 0xff }, null);
+
+        // when
+        BulkLoadDialect.POSTGRESQL.writeRow(out, values);
+        var sql = BulkLoadDialect.POSTGRESQL.toLoadSql("`public`.`article`", List.of("`id`", "`title`"));
+
+        // then
+        assertEquals("1\ta\\tb\tt\t\\\\x0aff\t\\N\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals("COPY \"public\".\"article\" (\"id\", \"title\") FROM STDIN WITH (FORMAT text, ENCODING 'UTF8');", sql);
+    }
+
+    @Test
+    void スキーマを指定したテーブルもバッククォーテーションで囲まれること() throws SQLException, NamingException {
+        // given
+        var infile = new LocalInfile();
+        var dataSource = new StubDataSource().statement(infile::proxy);
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).table("app", "article").insertData(row(1, "a", null)).bulkLoad(BulkLoadDialect.MYSQL);
+        new SqlBuilder().db(dataSource.proxy()).table("app.article").insertData(row(1, "a", null)).bulkLoad(BulkLoadDialect.MYSQL);
+
+        // then
+        assertTrue(infile.sqlList.get(0).startsWith("LOAD DATA LOCAL INFILE 'stream' INTO TABLE `app`.`article` "));
+        assertEquals(infile.sqlList.get(0), infile.sqlList.get(1));
+    }
+
+    @Test
+    void ロードに失敗した場合はロールバックされること() {
+        // given
+        var infile = new LocalInfile();
+        infile.isFailure = true;
+        var dataSource = new StubDataSource().statement(infile::proxy);
+        var builder = new SqlBuilder().db(dataSource.proxy()).table("article").insertData(row(1, "a", null));
+
+        // when
+        assertThrows(SQLException.class, () -> builder.bulkLoad(BulkLoadDialect.MYSQL));
+
+        // then
+        assertEquals(1, dataSource.rollbackCount.get());
+        assertEquals(0, dataSource.commitCount.get());
+        assertEquals(1, dataSource.closeCount.get());
+    }
+
+    @Test
+    void ロードにクエリタイムアウトが設定されること() throws SQLException, NamingException {
+        // given
+        var infile = new LocalInfile();
+        var dataSource = new StubDataSource().statement(infile::proxy);
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).queryTimeout(7).table("article").insertData(row(1, "a", null)).bulkLoad(BulkLoadDialect.MYSQL);
+
+        // then
+        assertEquals(7, infile.timeout);
+    }
+
+    @Test
+    void 日時と浮動小数点数がDBの解釈できる形式で書き込まれること() throws IOException {
+        // given
+        var out = new ByteArrayOutputStream();
+        var date = Date.from(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000_000).atZone(ZoneId.systemDefault()).toInstant());
+        List<Object> values = Arrays.asList(date, Timestamp.valueOf("2024-01-02 03:04:05"), 1.0E10, 1.5E-7, 0.1f, Double.NaN);
+
+        // when
+        BulkLoadDialect.MYSQL.writeRow(out, values);
+
+        // then
+        assertEquals("2024-01-02 03:04:05.006\t2024-01-02 03:04:05.0\t10000000000\t0.00000015\t0.1\tNaN\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, Object> row(final int id, final String title, final Boolean open) {
+        var row = new LinkedHashMap<String, Object>();
+        row.put("id", id);
+        row.put("title", title);
+        row.put("open", open);
+        return row;
+    }
+
+    /**
+     * MySQL Connector/Jのストリームを渡すメソッド
+     */
+    public interface LocalInfileStatement extends Statement {
+
+        void setLocalInfileInputStream(InputStream input);
+    }
+
+    /**
+     * LOAD DATAで渡されたストリームを読み込むステートメント
+     */
+    private static class LocalInfile {
+
+        /** 実行したSQL */
+        private String sql;
+        /** 実行した全てのSQL */
+        private final List<String> sqlList = new ArrayList<>();
+        /** 読み込んだ内容 */
+        private String loaded;
+        /** 設定されたクエリタイムアウト */
+        private int timeout;
+        /** 実行に失敗させるか否か */
+        private boolean isFailure;
+
+        Statement proxy() {
+            var input = new InputStream[1];
+            return (Statement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { LocalInfileStatement.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "setLocalInfileInputStream" -> {
+                        input[0] = (InputStream) args[0];
+                        yield null;
+                    }
+                    case "setQueryTimeout" -> {
+                        timeout = (Integer) args[0];
+                        yield null;
+                    }
+                    case "executeLargeUpdate" -> {
+                        if (isFailure) {
+                            throw new SQLException("data too long", "22001");
+                        }
+                        sql = (String) args[0];
+                        sqlList.add(sql);
+                        loaded = new String(input[0].readAllBytes(), StandardCharsets.UTF_8);
+                        yield loaded.chars().filter(c -> c == '\n').count();
+                    }
+                    default -> null;
+                });
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassRowMapperTest {
+
+    record Article(long articleId, String title, Integer viewCount, char status, Character grade, BigDecimal price) {
+    }
+
+    static class Base {
+        long id;
+    }
+
+    static class User extends Base {
+        String userName;
+        boolean active;
+        int age;
+        static int ignored;
+    }
+
+    @Test
+    void カラム名の表記によらずレコードに変換されること() throws SQLException {
+        // given
+        var resultSet = resultSet(row(
+            "ARTICLE_ID", 1L, "title", "hello", "view_count", null, "status", "A", "grade", "", "price", new BigDecimal("1.10")));
+
+        // when
+        resultSet.next();
+        var article = new ClassRowMapper<>(Article.class).map(resultSet);
+
+        // then
+        assertEquals(new Article(1L, "hello", null, 'A', null, new BigDecimal("1.10")), article);
+    }
+
+    @Test
+    void 存在しないカラムはプリミティブ型の初期値になること() throws SQLException {
+        // given
+        var resultSet = resultSet(row("title", "hello"));
+
+        // when
+        resultSet.next();
+        var article = new ClassRowMapper<>(Article.class).map(resultSet);
+
+        // then
+        assertEquals(0L, article.articleId());
+        assertEquals('\0', article.status());
+        assertNull(article.viewCount());
+    }
+
+    @Test
+    void 継承したフィールドを含めPOJOに変換されること() throws SQLException {
+        // given
+        var resultSet = resultSet(row("id", 3L, "user_name", "ink", "active", true));
+
+        // when
+        resultSet.next();
+        var user = new ClassRowMapper<>(User.class).map(resultSet);
+
+        // then
+        assertEquals(3L, user.id);
+        assertEquals("ink", user.userName);
+        assertTrue(user.active);
+        assertEquals(0, user.age);
+    }
+
+    @Test
+    void 別名を指定したカラムは別名で対応付けられること() throws SQLException {
+        // given
+        // SELECT user_id AS id, name AS user_name
+        var resultSet = resultSet(row("id", 3L, "user_name", "ink"), Map.of("id", "user_id", "user_name", "name"));
+
+        // when
+        resultSet.next();
+        var user = new ClassRowMapper<>(User.class).map(resultSet);
+
+        // then
+        assertEquals(3L, user.id);
+        assertEquals("ink", user.userName);
+        assertArrayEquals(new String[] { "id", "user_name" }, SqlBuilder.getColumnNames(resultSet.getMetaData()));
+    }
+
+    @Test
+    void 検索結果の全行が変換されること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(
+            row("article_id", 1L, "title", "a", "status", "A"),
+            row("article_id", 2L, "title", "b", "status", "B")));
+
+        // when
+        var articles = new SqlBuilder().db(dataSource.proxy()).table("article").get(Article.class);
+
+        // then
+        assertEquals(List.of(
+            new Article(1L, "a", null, 'A', null, null),
+            new Article(2L, "b", null, 'B', null, null)), articles);
+    }
+
+    @Test
+    void 引数なしコンストラクタがないクラスは変換できないこと() {
+        assertThrows(IllegalArgumentException.class, () -> new ClassRowMapper<>(Integer.class).prepare(resultSet(row()).getMetaData()));
+    }
+
+    /**
+     * カラム名と値を交互に指定した行を作成する
+     */
+    private static Map<String, Object> row(final Object... keyValues) {
+        var row = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    /**
+     * 1行の検索結果を作成する
+     */
+    private static ResultSet resultSet(final Map<String, Object> row) {
+        return resultSet(row, Map.of());
+    }
+
+    /**
+     * 1行の検索結果を作成する
+     * 行のキーを別名とし、aliasesに指定したカラムはgetColumnNameで別名の元のカラム名を返却する
+     */
+    private static ResultSet resultSet(final Map<String, Object> row, final Map<String, String> aliases) {
+        var labels = List.copyOf(row.keySet());
+        var meta = (ResultSetMetaData) Proxy.newProxyInstance(
+            ClassRowMapperTest.class.getClassLoader(),
+            new Class<?>[] { ResultSetMetaData.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getColumnCount" -> labels.size();
+                case "getColumnLabel" -> labels.get((int) args[0] - 1);
+                case "getColumnName" -> aliases.getOrDefault(labels.get((int) args[0] - 1), labels.get((int) args[0] - 1));
+                default -> null;
+            });
+        var position = new int[] { -1 };
+        var wasNull = new boolean[1];
+        return (ResultSet) Proxy.newProxyInstance(
+            ClassRowMapperTest.class.getClassLoader(),
+            new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        return ++position[0] < 1;
+                    case "getMetaData":
+                        return meta;
+                    case "wasNull":
+                        return wasNull[0];
+                    default:
+                        break;
+                }
+                var value = row.get(labels.get((int) args[0] - 1));
+                wasNull[0] = value == null;
+                return switch (method.getName()) {
+                    case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                    case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                    case "getBoolean" -> value != null && (Boolean) value;
+                    case "getString" -> value == null ? null : value.toString();
+                    default -> value;
+                };
+            });
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.inkblogdb.commons.db;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import com.inkblogdb.commons.db.ColumnBatch.ColumnType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnBatchTest {
+
+    @Test
+    void DECIMALの列が精度を落とさずに格納されること() throws SQLException, NamingException {
+        // given
+        var price = new BigDecimal("12345678901234567.89");
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(
+            row(1L, price, 0.5d, "a"),
+            row(2L, null, null, null)));
+        var types = new ArrayList<ColumnType>();
+        var prices = new ArrayList<BigDecimal>();
+        var nulls = new ArrayList<Boolean>();
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).table("item").forEachBatch(10, batch -> {
+            for (int column = 0; column < batch.columnCount(); column++) {
+                types.add(batch.columnType(column));
+            }
+            int column = batch.columnIndex("price");
+            for (int row = 0; row < batch.size(); row++) {
+                prices.add(batch.decimals(column)[row]);
+                nulls.add(batch.isNull(column, row));
+            }
+        });
+
+        // then
+        assertEquals(List.of(ColumnType.LONG, ColumnType.DECIMAL, ColumnType.DOUBLE, ColumnType.STRING), types);
+        assertEquals(price, prices.get(0));
+        assertNull(prices.get(1));
+        assertEquals(List.of(false, true), nulls);
+    }
+
+    @Test
+    void DECIMALの列はdouble型として取得できないこと() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(row(1L, BigDecimal.ONE, 1d, "a")));
+
+        // when
+        // then
+        new SqlBuilder().db(dataSource.proxy()).table("item").forEachBatch(10, batch -> {
+            assertThrows(IllegalArgumentException.class, () -> batch.doubles(batch.columnIndex("price")));
+            assertEquals(1d, batch.doubles(batch.columnIndex("rate"))[0]);
+        });
+    }
+
+    @Test
+    void 再利用時に前回のDECIMALの値が破棄されること() throws SQLException, NamingException {
+        // given
+        var rows = new ArrayList<Map<String, Object>>();
+        rows.add(row(1L, BigDecimal.ONE, 1d, "a"));
+        rows.add(row(2L, BigDecimal.TEN, 1d, "a"));
+        rows.add(row(3L, BigDecimal.ZERO, 1d, "a"));
+        var dataSource = new StubDataSource().result((sql, values) -> rows);
+        var seconds = new ArrayList<BigDecimal>();
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).table("item").forEachBatch(2, batch -> {
+            seconds.add(batch.decimals(batch.columnIndex("price"))[1]);
+        });
+
+        // then
+        assertEquals(BigDecimal.TEN, seconds.get(0));
+        assertNull(seconds.get(1));
+    }
+
+    @Test
+    void 符号なしのBIGINTの列がDECIMALとして格納されること() throws SQLException, NamingException {
+        // given
+        var max = new BigInteger("18446744073709551615");
+        var row = new LinkedHashMap<String, Object>();
+        row.put("id", 1L);
+        row.put("hash", max);
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(row));
+        var types = new ArrayList<ColumnType>();
+        var hashes = new ArrayList<BigDecimal>();
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).table("item").forEachBatch(10, batch -> {
+            types.add(batch.columnType(batch.columnIndex("id")));
+            types.add(batch.columnType(batch.columnIndex("hash")));
+            hashes.add(batch.decimals(batch.columnIndex("hash"))[0]);
+        });
+
+        // then
+        assertEquals(List.of(ColumnType.LONG, ColumnType.DECIMAL), types);
+        assertEquals(new BigDecimal(max), hashes.get(0));
+    }
+
+    /**
+     * id、price、rate、nameの列を持つ行を作成する
+     * 列の型は1行目の値から決まるため、列の順序を保持しNULLを許容するMapを使用する
+     */
+    private static Map<String, Object> row(final Long id, final BigDecimal price, final Double rate, final String name) {
+        var row = new LinkedHashMap<String, Object>();
+        row.put("id", id);
+        row.put("price", price);
+        row.put("rate", rate);
+        row.put("name", name);
+        return row;
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledQueryTest {
+
+    @Test
+    void 作成時のSQLと値で検索できること() throws SQLException, NamingException {
+        // given
+        var dataSource = echo();
+        var query = new SqlBuilder().db(dataSource.proxy()).table("article").where("id", 1).compile();
+
+        // when
+        var result = query.get();
+
+        // then
+        assertEquals("SELECT * FROM `article` WHERE `id` = ?;", query.getSql());
+        assertEquals(1, query.getParameterCount());
+        assertEquals(List.of(1), query.getValues());
+        assertEquals(1, result.get(0).get("value"));
+    }
+
+    @Test
+    void 複数スレッドから異なる値で同時に実行できること() throws Exception {
+        // given
+        var dataSource = echo();
+        var query = new SqlBuilder().db(dataSource.proxy()).table("article").where("id", 0).compile();
+        var executor = Executors.newFixedThreadPool(8);
+        var tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < 200; i++) {
+            int id = i;
+            tasks.add(() -> query.getFirst(id).get("value"));
+        }
+
+        // when
+        List<Future<Object>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+
+        // then
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get());
+        }
+        assertTrue(dataSource.preparedSqlList.stream().allMatch(query.getSql()::equals));
+    }
+
+    @Test
+    void 値の数が異なる場合は例外となること() {
+        // given
+        var query = new SqlBuilder().db(echo().proxy()).table("article").where("id", 1).compile();
+
+        // when / then
+        assertThrows(IllegalArgumentException.class, () -> query.get(1, 2));
+    }
+
+    @Test
+    void コンパイルした更新を実行するとコミットされること() throws SQLException, NamingException {
+        // given
+        var dataSource = echo();
+        var query = new SqlBuilder().db(dataSource.proxy()).table("article")
+                .updateData("views", 0).where("id", 1).compileUpdate();
+
+        // when
+        var count = query.execute(10, 2);
+
+        // then
+        assertEquals("UPDATE `article` SET `views` = ? WHERE `id` = ?;", query.getSql());
+        assertEquals(1, count);
+        assertEquals(1, dataSource.commitCount.get());
+        assertThrows(IllegalStateException.class, query::get);
+    }
+
+    @Test
+    void コンパイルした更新の失敗はロールバックされ再実行されること() throws SQLException, NamingException {
+        // given
+        var dataSource = echo().failWith("40001");
+        var query = new SqlBuilder().db(dataSource.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO))
+                .table("article").updateData("views", 0).where("id", 1).compileUpdate();
+
+        // when
+        var count = query.execute(10, 2);
+
+        // then
+        assertEquals(1, count);
+        assertEquals(2, dataSource.executeCount.get());
+        assertEquals(1, dataSource.rollbackCount.get());
+        assertEquals(1, dataSource.commitCount.get());
+    }
+
+    @Test
+    void コンパイルした更新のコミット中の接続断は再実行しないこと() {
+        // given
+        var dataSource = echo();
+        dataSource.isCommitFailure.set(true);
+        var query = new SqlBuilder().db(dataSource.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO))
+                .table("article").updateData("views", 0).where("id", 1).compileUpdate();
+
+        // when
+        assertThrows(SQLException.class, () -> query.execute(10, 2));
+
+        // then
+        assertEquals(1, dataSource.executeCount.get());
+        assertEquals(1, dataSource.rollbackCount.get());
+    }
+
+    @Test
+    void トランザクション中はコンパイルできないこと() {
+        // given
+        var builder = new SqlBuilder().db(echo().proxy());
+
+        // when / then
+        assertThrows(IllegalStateException.class,
+                () -> builder.transaction(tx -> tx.table("article").where("id", 1).compile()));
+    }
+
+    /**
+     * 1つ目の値を検索結果として返却するデータソースを作成する
+     */
+    private static StubDataSource echo() {
+        return new StubDataSource().result((sql, values) -> List.of(Collections.singletonMap("value", values.get(0))));
+    }
+
+}
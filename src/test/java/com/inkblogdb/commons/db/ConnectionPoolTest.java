@@ -0,0 +1,249 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    /** 接続URL */
+    private static final String URL = "jdbc:stub:pool";
+    /** スタブドライバ */
+    private static final StubDriver DRIVER = new StubDriver();
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(DRIVER);
+    }
+
+    @Test
+    void 返却したDB接続が再利用されること() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")) {
+            // when
+            var connection1 = pool.getConnection();
+            connection1.close();
+            var connection2 = pool.getConnection();
+            connection2.close();
+
+            // then
+            assertNotSame(connection1, connection2);
+            assertSame(((ConnectionPool.Pooled) connection1).getPhysicalConnection(),
+                    ((ConnectionPool.Pooled) connection2).getPhysicalConnection());
+            assertEquals(1, pool.getCreateCount());
+            assertEquals(2, pool.getBorrowCount());
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    void 最大接続数まで貸出中の場合はタイムアウトすること() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")
+                .maxSize(1)
+                .maxWait(Duration.ofMillis(10))) {
+            var connection = pool.getConnection();
+
+            // when
+            assertThrows(SQLTimeoutException.class, pool::getConnection);
+
+            // then
+            assertEquals(1, pool.getTimeoutCount());
+            assertEquals(1, pool.getActiveCount());
+            connection.close();
+            assertEquals(0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    void 無効なDB接続は貸出時に破棄されること() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")) {
+            var connection1 = pool.getConnection();
+            connection1.close();
+            DRIVER.isValid.set(false);
+
+            // when
+            var connection2 = pool.getConnection();
+            DRIVER.isValid.set(true);
+            connection2.close();
+
+            // then
+            assertNotSame(((ConnectionPool.Pooled) connection1).getPhysicalConnection(),
+                    ((ConnectionPool.Pooled) connection2).getPhysicalConnection());
+            assertEquals(2, pool.getCreateCount());
+            assertEquals(1, pool.getTotalCount());
+        } finally {
+            DRIVER.isValid.set(true);
+        }
+    }
+
+    @Test
+    void 返却済みのDB接続は使用できないこと() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")) {
+            var connection = pool.getConnection();
+
+            // when
+            connection.close();
+
+            // then
+            assertTrue(connection.isClosed());
+            assertThrows(SQLException.class, connection::commit);
+        }
+    }
+
+    @Test
+    void 返却済みのDB接続から再貸出したDB接続をクローズできないこと() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password").maxSize(1)) {
+            var stale = pool.getConnection();
+            stale.close();
+            var current = pool.getConnection();
+
+            // when
+            stale.close();
+
+            // then
+            assertTrue(stale.isClosed());
+            assertFalse(current.isClosed());
+            assertThrows(SQLException.class, stale::commit);
+            assertEquals(1, pool.getActiveCount());
+            current.close();
+            assertEquals(0, pool.getActiveCount());
+        }
+    }
+
+    @Test
+    void 返却時に変更した設定が作成時の値に戻ること() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")) {
+            var connection = pool.getConnection();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            connection.setCatalog("other");
+
+            // when
+            connection.close();
+            var reused = pool.getConnection();
+
+            // then
+            assertTrue(reused.getAutoCommit());
+            assertFalse(reused.isReadOnly());
+            assertEquals(Connection.TRANSACTION_READ_COMMITTED, reused.getTransactionIsolation());
+            assertEquals("main", reused.getCatalog());
+            assertEquals(1, pool.getCreateCount());
+            reused.close();
+        }
+    }
+
+    @Test
+    void 未使用のまま一定時間経過したDB接続が破棄されること() throws SQLException {
+        // given
+        try (var pool = new ConnectionPool(URL, "user", "password")
+                .idleTimeout(Duration.ofMillis(-1))) {
+            pool.getConnection().close();
+
+            // when
+            pool.evictIdle();
+
+            // then
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(0, pool.getTotalCount());
+        }
+    }
+
+    /**
+     * 何もしないDB接続を返却するドライバ
+     */
+    private static class StubDriver implements Driver {
+
+        /** DB接続が有効か否か */
+        private final AtomicBoolean isValid = new AtomicBoolean(true);
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            var isClosed = new AtomicBoolean(false);
+            var settings = new ConcurrentHashMap<String, Object>(Map.of(
+                "AutoCommit", true,
+                "ReadOnly", false,
+                "TransactionIsolation", Connection.TRANSACTION_READ_COMMITTED,
+                "Catalog", "main"));
+            return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        isClosed.set(true);
+                        yield null;
+                    }
+                    case "isClosed" -> isClosed.get();
+                    case "isValid" -> isValid.get();
+                    case "getAutoCommit", "isReadOnly", "getTransactionIsolation", "getCatalog" ->
+                        settings.get(method.getName().replaceFirst("^(get|is)", ""));
+                    case "setAutoCommit", "setReadOnly", "setTransactionIsolation", "setCatalog" -> {
+                        settings.put(method.getName().substring(3), args[0]);
+                        yield null;
+                    }
+                    default -> null;
+                });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterAggregatorTest {
+
+    @Test
+    void 同じキーの加算が1つのUPSERTにまとめられること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1));
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            aggregator.increment("article_view", Map.of("article_id", 1), "views");
+        }
+        aggregator.add("article_view", Map.of("article_id", 2), "views", 5);
+        aggregator.flush();
+
+        // then
+        assertEquals(List.of("INSERT INTO `article_view` (`article_id`, `views`) VALUES (?, ?), (?, ?)"
+                + " ON DUPLICATE KEY UPDATE `views` = `views` + VALUES(`views`);"), dataSource.preparedSqlList);
+        assertEquals(List.of(1, 100L, 2, 5L), dataSource.parameterList);
+        assertEquals(1, dataSource.commitCount.get());
+        assertEquals(0, aggregator.getPendingKeyCount());
+        assertEquals(2, aggregator.getFlushedKeyCount());
+    }
+
+    @Test
+    void 反映に失敗した場合は次回の反映で再実行されること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1));
+        aggregator.add("article_view", Map.of("article_id", 1), "views", 3);
+        dataSource.isFailure.set(true);
+
+        // when
+        assertThrows(SQLException.class, aggregator::flush);
+        dataSource.isFailure.set(false);
+        aggregator.add("article_view", Map.of("article_id", 1), "views", 4);
+        dataSource.parameterList.clear();
+        aggregator.flush();
+
+        // then
+        assertEquals(List.of(1, 7L), dataSource.parameterList);
+        assertEquals(1, dataSource.rollbackCount.get());
+        assertEquals(1, aggregator.getFailureCount());
+    }
+
+    @Test
+    void コミット中に失敗した場合は二重に加算しないよう値を戻さないこと() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1));
+        aggregator.add("article_view", Map.of("article_id", 1), "views", 3);
+        dataSource.isCommitFailure.set(true);
+
+        // when
+        var exception = assertThrows(SQLException.class, aggregator::flush);
+        dataSource.isCommitFailure.set(false);
+        aggregator.add("article_view", Map.of("article_id", 1), "views", 4);
+        dataSource.parameterList.clear();
+        aggregator.flush();
+
+        // then
+        assertEquals(List.of(1, 4L), dataSource.parameterList);
+        assertEquals(1, aggregator.getInDoubtCount());
+        assertEquals(1, aggregator.getFailureCount());
+        assertSame(exception, aggregator.getLastError());
+        assertEquals(0, aggregator.getPendingKeyCount());
+    }
+
+    @Test
+    void クローズ時に未反映の値が反映されること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1));
+        aggregator.increment("article_view", Map.of("article_id", 1), "views");
+
+        // when
+        aggregator.close();
+
+        // then
+        assertEquals(List.of(1, 1L), dataSource.parameterList);
+        assertThrows(IllegalStateException.class,
+                () -> aggregator.increment("article_view", Map.of("article_id", 1), "views"));
+    }
+
+    @Test
+    void 未反映のキー数が上限に達した場合はバックグラウンドの反映を待って加算されること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1))
+                .maxPendingKeys(2);
+
+        // when
+        aggregator.increment("article_view", Map.of("article_id", 1), "views");
+        aggregator.increment("article_view", Map.of("article_id", 2), "views");
+        aggregator.increment("article_view", Map.of("article_id", 3), "views");
+
+        // then
+        assertEquals(1, aggregator.getFlushCount());
+        assertEquals(2, aggregator.getFlushedKeyCount());
+        assertEquals(1, aggregator.getPendingKeyCount());
+    }
+
+    @Test
+    void 反映できない間は上限を超えるキーを加算せずに例外とすること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var aggregator = new CounterAggregator(new SqlBuilder().db(dataSource.proxy()))
+                .flushInterval(Duration.ofHours(1))
+                .maxPendingKeys(1)
+                .maxWait(Duration.ofMillis(100));
+        dataSource.isFailure.set(true);
+        aggregator.increment("article_view", Map.of("article_id", 1), "views");
+
+        // when
+        assertThrows(SQLTimeoutException.class,
+                () -> aggregator.increment("article_view", Map.of("article_id", 2), "views"));
+        int pending = aggregator.getPendingKeyCount();
+        dataSource.isFailure.set(false);
+        aggregator.maxWait(Duration.ofSeconds(5));
+        aggregator.increment("article_view", Map.of("article_id", 2), "views");
+        aggregator.close();
+
+        // then
+        assertEquals(1, pending);
+        assertTrue(1 <= aggregator.getFailureCount());
+        assertEquals(2, aggregator.getFlushedKeyCount());
+        // 失敗した加算は記録されないため、再度加算しても1回分のみ反映される
+        assertEquals(1, dataSource.parameterList.stream().filter(value -> Integer.valueOf(2).equals(value)).count());
+        int index = dataSource.parameterList.lastIndexOf(2);
+        assertEquals(1L, dataSource.parameterList.get(index + 1));
+    }
+
+}
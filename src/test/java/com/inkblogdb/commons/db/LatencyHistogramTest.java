@@ -0,0 +1,59 @@
+package com.inkblogdb.commons.db;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void パーセンタイルが誤差3パーセント以内で取得できること() {
+        // given
+        var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        // when
+        var p50 = histogram.getPercentile(50);
+        var p99 = histogram.getPercentile(99);
+        var p100 = histogram.getPercentile(100);
+
+        // then
+        assertEquals(50_000_000, p50, 50_000_000 * 0.03);
+        assertEquals(99_000_000, p99, 99_000_000 * 0.03);
+        assertEquals(100_000_000, p100);
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_500.0, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    void 区間の上限値が区間に含まれること() {
+        // given
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE };
+
+        for (long value : values) {
+            // when
+            var index = LatencyHistogram.bucketIndex(value);
+
+            // then
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+            assertEquals(index, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(index)));
+        }
+    }
+
+    @Test
+    void 未記録の場合は0を返却すること() {
+        // given
+        var histogram = new LatencyHistogram();
+
+        // when
+        var p99 = histogram.getPercentile(99);
+
+        // then
+        assertEquals(0, p99);
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean());
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.inkblogdb.commons.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    @Test
+    void 最大件数を超えた場合は最も長く参照されていない要素が破棄されること() {
+        // given
+        var evicted = new ArrayList<String>();
+        var cache = new LruCache<String, Integer>(2, (key, value) -> evicted.add(key));
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        // when
+        cache.get("a");
+        cache.put("c", 3);
+
+        // then
+        assertEquals(List.of("b"), evicted);
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    void 全ての要素に処理を行い削除できること() {
+        // given
+        var cleared = new ArrayList<String>();
+        var cache = new LruCache<String, Integer>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        // when
+        cache.clear((key, value) -> cleared.add(key));
+
+        // then
+        assertEquals(2, cleared.size());
+        assertNull(cache.get("a"));
+        assertNull(cache.remove("b"));
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedScanTest {
+
+    @Test
+    void 最小値から最大値までが等間隔に分割されること() {
+        // when
+        var boundaries = PartitionedScan.split(1, 100, 4);
+
+        // then
+        assertEquals(List.of(25, 50, 75), boundaries);
+    }
+
+    @Test
+    void 範囲が分割数より狭い場合は同じ分割位置がまとめられること() {
+        // when
+        var boundaries = PartitionedScan.split(1L, 3L, 8);
+
+        // then
+        assertEquals(List.of(2L), boundaries);
+    }
+
+    @Test
+    void 分割範囲ごとの条件のSELECT文が生成できること() {
+        // when
+        var builder = new SqlBuilder()
+            .table("test_table")
+            .where("status", 1)
+            .range("id", 25, 50);
+
+        // then
+        assertEquals("SELECT * FROM `test_table` WHERE `status` = ? AND `id` >= ? AND `id` < ?;", builder.toSelectSQL());
+        assertEquals(List.of(1, 25, 50), builder.toSelectParameters());
+    }
+
+    @Test
+    void 下限なしの分割範囲はキーがNULLの行も含む条件になること() {
+        // when
+        var builder = new SqlBuilder()
+            .table("test_table")
+            .range("id", null, 25);
+
+        // then
+        assertEquals("SELECT * FROM `test_table` WHERE (`id` < ? OR `id` IS NULL);", builder.toSelectSQL());
+        assertEquals(List.of(25), builder.toSelectParameters());
+    }
+
+    @Test
+    void 昇順でない分割位置は指定できないこと() {
+        // given
+        var builder = new SqlBuilder().table("test_table");
+
+        // when
+        // then
+        assertThrows(IllegalArgumentException.class, () -> builder.partitionBy("id", List.of(50, 25)));
+        assertThrows(IllegalArgumentException.class, () -> builder.partitionBy("id", List.of(25, 25L)));
+        assertThrows(IllegalArgumentException.class, () -> builder.partitionBy("id", Arrays.asList(25, null)));
+        assertDoesNotThrow(() -> builder.partitionBy("id", List.of(25, 50L, 75.5)));
+    }
+
+    @Test
+    void キーがNULLの行も最初の分割範囲で処理されること() throws SQLException, NamingException {
+        // given
+        var scan = new SqlBuilder()
+            .db(ids(100, true).proxy())
+            .table("test_table")
+            .partitionBy("id", List.of(25, 50, 75));
+        var rows = Collections.synchronizedList(new ArrayList<Integer>());
+        var nullPartitions = Collections.synchronizedList(new ArrayList<Integer>());
+
+        // when
+        scan.forEachPartition((partition, row) -> {
+            rows.add((Integer) row.get("id"));
+            if (row.get("id") == null) {
+                nullPartitions.add(partition);
+            }
+        });
+
+        // then
+        assertEquals(101, rows.size());
+        assertEquals(List.of(0), nullPartitions);
+    }
+
+    @Test
+    void 全ての分割範囲の行が処理されること() throws SQLException, NamingException {
+        // given
+        var scan = new SqlBuilder()
+            .db(ids(100).proxy())
+            .table("test_table")
+            .partitionBy("id", List.of(25, 50, 75))
+            .parallelism(2);
+        var rows = Collections.synchronizedList(new ArrayList<Integer>());
+        var partitions = Collections.synchronizedSet(new HashSet<Integer>());
+
+        // when
+        scan.forEachPartition((partition, row) -> {
+            partitions.add(partition);
+            rows.add((Integer) row.get("id"));
+        });
+
+        // then
+        assertEquals(100, rows.size());
+        assertEquals(100, rows.stream().distinct().count());
+        assertEquals(4, partitions.size());
+    }
+
+    @Test
+    void 全ての分割範囲の行が1つのストリームに結合されること() throws SQLException, NamingException {
+        // given
+        var scan = new SqlBuilder()
+            .db(ids(100).proxy())
+            .table("test_table")
+            .partitionBy("id", List.of(25, 50, 75))
+            .maxInFlightRows(3);
+
+        // when
+        List<Integer> ids;
+        try (var stream = scan.stream()) {
+            ids = stream.map(row -> (Integer) row.get("id")).sorted().collect(Collectors.toList());
+        }
+
+        // then
+        assertEquals(100, ids.size());
+        assertEquals(1, ids.get(0));
+        assertEquals(100, ids.get(99));
+    }
+
+    /**
+     * 1からmaxまでのidを範囲の条件に従って返却するデータソースを作成する
+     */
+    private static StubDataSource ids(final int max) {
+        return ids(max, false);
+    }
+
+    /**
+     * 1からmaxまでのidを範囲の条件に従って返却するデータソースを作成する
+     * hasNullの場合は、idがNULLの行をNULLを含む条件か範囲の条件がない場合のみ返却する
+     */
+    private static StubDataSource ids(final int max, final boolean hasNull) {
+        return new StubDataSource().result((sql, values) -> {
+            int index = 0;
+            boolean hasFrom = sql.contains(">= ?");
+            boolean hasTo = sql.contains("< ?");
+            int from = hasFrom ? (Integer) values.get(index++) : 1;
+            int to = hasTo ? (Integer) values.get(index) : max + 1;
+            var rows = new ArrayList<Map<String, Object>>();
+            if (hasNull && (sql.contains("IS NULL") || (!hasFrom && !hasTo))) {
+                rows.add(Collections.singletonMap("id", null));
+            }
+            for (int id = from; id < to; id++) {
+                rows.add(Map.of("id", id));
+            }
+            return rows;
+        });
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.inkblogdb.commons.db;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.NamingException;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryListenerTest {
+
+    @AfterEach
+    void tearDown() {
+        SqlBuilder.setQueryListener(null);
+    }
+
+    @Test
+    void 更新の計測結果が通知されること() throws SQLException, NamingException {
+        // given
+        var events = new ArrayList<QueryEvent>();
+        SqlBuilder.setQueryListener(events::add);
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+
+        // when
+        builder.table("`user`").updateData("name", "a").where("id", 1).update();
+
+        // then
+        assertEquals(1, events.size());
+        var event = events.get(0);
+        assertEquals(QueryEvent.Kind.UPDATE, event.getKind());
+        assertEquals("`user`", event.getTable());
+        assertEquals("UPDATE `user` SET `name` = ? WHERE `id` = ?;", event.getSql());
+        assertEquals(2, event.getParameterCount());
+        assertEquals(1, event.getRowCount());
+        assertEquals(1, event.getStatementCount());
+        assertEquals(1, event.getBatchSize());
+        assertNull(event.getFailure());
+        long phaseNanos = 0;
+        for (var phase : QueryEvent.Phase.values()) {
+            phaseNanos += event.getNanos(phase);
+        }
+        assertTrue(phaseNanos <= event.getTotalNanos());
+    }
+
+    @Test
+    void 失敗した場合は例外が通知されること() {
+        // given
+        var events = new ArrayList<QueryEvent>();
+        SqlBuilder.setQueryListener(events::add);
+        var builder = new SqlBuilder().db(new StubDataSource().failWith("40001").proxy());
+
+        // when
+        assertThrows(SQLException.class, () -> builder.table("`user`").where("id", 1).delete());
+
+        // then
+        assertEquals(1, events.size());
+        assertEquals(QueryEvent.Kind.DELETE, events.get(0).getKind());
+        assertInstanceOf(SQLException.class, events.get(0).getFailure());
+    }
+
+    @Test
+    void トランザクションに予約した更新とコミットが通知されること() throws SQLException, NamingException {
+        // given
+        var events = new ArrayList<QueryEvent>();
+        SqlBuilder.setQueryListener(events::add);
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+
+        // when
+        builder.transaction(tx -> {
+            tx.addInsert(tx.table("`user`").insertData("id", 1));
+            tx.addInsert(tx.table("`user`").insertData("id", 2));
+            return null;
+        });
+
+        // then
+        assertEquals(1, events.size());
+        var event = events.get(0);
+        assertEquals(QueryEvent.Kind.BATCH, event.getKind());
+        assertEquals(2, event.getRowCount());
+        assertEquals(2, event.getBatchSize());
+        assertEquals(2, event.getParameterCount());
+    }
+
+    @Test
+    void 閾値以上の時間がかかったSQLのみ出力されること() throws SQLException, NamingException {
+        // given
+        var messages = new ArrayList<String>();
+        var slowLogger = new SlowQueryLogger(Duration.ZERO, messages::add);
+        var fastLogger = new SlowQueryLogger(Duration.ofHours(1), messages::add);
+        var recorder = new LatencyRecorder();
+        SqlBuilder.setQueryListener(QueryListener.of(slowLogger, fastLogger, recorder));
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+
+        // when
+        builder.table("`user`").updateData("name", "a").where("id", 1).update();
+
+        // then
+        assertEquals(1, slowLogger.getSlowCount());
+        assertEquals(0, fastLogger.getSlowCount());
+        assertTrue(messages.get(0).contains("params=2"));
+        assertTrue(messages.get(0).contains("UPDATE `user`"));
+        assertEquals(1, recorder.getHistogram(QueryEvent.Kind.UPDATE).getCount());
+        assertEquals(1, recorder.getRowCount(QueryEvent.Kind.UPDATE));
+    }
+
+    @Test
+    void 開始時の状態が終了時に通知先ごとに渡されること() throws SQLException, NamingException {
+        // given
+        var contexts = new ArrayList<Object>();
+        var starts = new ArrayList<String>();
+        class ContextListener implements QueryListener {
+            private final String name;
+
+            ContextListener(final String name) {
+                this.name = name;
+            }
+
+            @Override
+            public Object onStart(final QueryEvent.Kind kind, final String table) {
+                starts.add(name + ":" + kind + ":" + table);
+                return name;
+            }
+
+            @Override
+            public void onQuery(final QueryEvent event, final Object context) {
+                contexts.add(context);
+            }
+
+            @Override
+            public void onQuery(final QueryEvent event) {
+                fail("context is not passed");
+            }
+        }
+        SqlBuilder.setQueryListener(QueryListener.of(new ContextListener("a"), new ContextListener("b")));
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+
+        // when
+        builder.table("`user`").where("id", 1).delete();
+
+        // then
+        assertEquals(List.of("a:DELETE:`user`", "b:DELETE:`user`"), starts);
+        assertEquals(List.of("a", "b"), contexts);
+    }
+
+    @Test
+    void JFRイベントの期間がSQL実行の開始から終了までとなること(@TempDir final Path dir) throws Exception {
+        // given
+        SqlBuilder.setQueryListener(new JfrQueryListener());
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+        var file = dir.resolve("query.jfr");
+
+        // when
+        try (var recording = new Recording()) {
+            recording.enable("com.inkblogdb.commons.db.Query");
+            recording.start();
+            builder.table("`user`").updateData("name", "a").where("id", 1).update();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // then
+        var events = RecordingFile.readAllEvents(file);
+        assertEquals(1, events.size());
+        var event = events.get(0);
+        assertEquals("UPDATE", event.getString("kind"));
+        assertTrue(event.getLong("totalNanos") <= event.getDuration().toNanos());
+    }
+
+    @Test
+    void 通知先未登録の場合は計測しないこと() throws SQLException, NamingException {
+        // given
+        var recorder = new LatencyRecorder();
+        var builder = new SqlBuilder().db(new StubDataSource().proxy());
+
+        // when
+        builder.table("`user`").updateData("name", "a").where("id", 1).update();
+
+        // then
+        assertNull(SqlBuilder.getQueryListener());
+        assertEquals(0, recorder.getHistogram(QueryEvent.Kind.UPDATE).getCount());
+    }
+
+}
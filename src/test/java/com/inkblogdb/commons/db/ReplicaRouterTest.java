@@ -0,0 +1,168 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRouterTest {
+
+    @Test
+    void 検索はレプリカに順番に振り分けられること() throws SQLException {
+        // given
+        var primary = new StubDataSource();
+        var replica1 = new StubDataSource();
+        var replica2 = new StubDataSource();
+        var router = new ReplicaRouter(primary.proxy(), replica1.proxy(), replica2.proxy());
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            router.getReadConnection().close();
+        }
+
+        // then
+        assertEquals(0, primary.connectCount.get());
+        assertEquals(2, replica1.connectCount.get());
+        assertEquals(2, replica2.connectCount.get());
+    }
+
+    @Test
+    void 使用中のDB接続が少ないレプリカが選択されること() throws SQLException {
+        // given
+        var replica1 = new StubDataSource();
+        var replica2 = new StubDataSource();
+        var router = new ReplicaRouter(new StubDataSource().proxy(), replica1.proxy(), replica2.proxy())
+                .balance(ReplicaRouter.Balance.LEAST_OUTSTANDING);
+
+        // when
+        var connection1 = router.getReadConnection();
+        var connection2 = router.getReadConnection();
+
+        // then
+        assertEquals(1, replica1.connectCount.get());
+        assertEquals(1, replica2.connectCount.get());
+        assertEquals(1, router.getOutstandingCount(0));
+        connection1.close();
+        connection2.close();
+        assertEquals(0, router.getOutstandingCount(0));
+        assertEquals(0, router.getOutstandingCount(1));
+    }
+
+    @Test
+    void 使用中の数を数えるDB接続でもステートメントが再利用されること() throws SQLException {
+        // given
+        var replica = new StubDataSource();
+        var physical = replica.proxy().getConnection();
+        var dataSource = (DataSource) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { DataSource.class },
+            (proxy, method, args) -> method.getName().equals("getConnection") ? physical : null);
+        var router = new ReplicaRouter(new StubDataSource().proxy(), dataSource)
+                .balance(ReplicaRouter.Balance.LEAST_OUTSTANDING);
+
+        // when
+        var connection1 = router.getReadConnection();
+        var statement1 = StatementCache.prepare(connection1, "SELECT 1;", 8);
+        statement1.close();
+        connection1.close();
+        var connection2 = router.getReadConnection();
+        var statement2 = StatementCache.prepare(connection2, "SELECT 1;", 8);
+        statement2.close();
+        connection2.close();
+
+        // then
+        assertNotSame(connection1, connection2);
+        assertSame(statement1, statement2);
+        assertEquals(1, replica.preparedSqlList.size());
+        assertTrue(connection1.isClosed());
+        assertThrows(SQLException.class, () -> StatementCache.prepare(connection1, "SELECT 1;", 8));
+    }
+
+    @Test
+    void 接続できないレプリカは振り分け対象から外されること() throws SQLException {
+        // given
+        var primary = new StubDataSource();
+        var replica = new StubDataSource();
+        replica.isDown.set(true);
+        var router = new ReplicaRouter(primary.proxy(), replica.proxy());
+
+        // when
+        router.getReadConnection().close();
+        router.getReadConnection().close();
+
+        // then
+        assertFalse(router.isAvailable(0));
+        assertEquals(1, replica.connectCount.get());
+        assertEquals(2, primary.connectCount.get());
+        assertEquals(2, router.getPrimaryReadCount());
+    }
+
+    @Test
+    void ヘルスチェックで復旧したレプリカが振り分け対象に戻ること() throws SQLException {
+        // given
+        var replica = new StubDataSource();
+        replica.isDown.set(true);
+        var router = new ReplicaRouter(new StubDataSource().proxy(), replica.proxy());
+        router.getReadConnection().close();
+
+        // when
+        replica.isDown.set(false);
+        var availableCount = router.checkHealth();
+
+        // then
+        assertEquals(1, availableCount);
+        assertTrue(router.isAvailable(0));
+    }
+
+    @Test
+    void 更新直後の検索はプライマリで実行されること() throws SQLException {
+        // given
+        var primary = new StubDataSource();
+        var replica = new StubDataSource();
+        var router = new ReplicaRouter(primary.proxy(), replica.proxy())
+                .readYourWrites(Duration.ofMinutes(1));
+
+        // when
+        router.written();
+        router.getReadConnection().close();
+
+        // then
+        assertEquals(1, primary.connectCount.get());
+        assertEquals(0, replica.connectCount.get());
+    }
+
+    @Test
+    void 複製したインスタンスでは別スレッドでも更新直後の検索がプライマリで実行されること() throws Exception {
+        // given
+        var primary = new StubDataSource();
+        var replica = new StubDataSource();
+        var router = new ReplicaRouter(primary.proxy(), replica.proxy())
+                .readYourWrites(Duration.ofMinutes(1));
+        var builder = new SqlBuilder().db(router);
+        var before = builder.copySettings();
+        router.written();
+        var after = builder.copySettings();
+
+        // when
+        var worker = new Thread(() -> {
+            try {
+                before.openReadConnection().close();
+                after.openReadConnection().close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        worker.start();
+        worker.join();
+
+        // then
+        assertEquals(1, primary.connectCount.get());
+        assertEquals(1, replica.connectCount.get());
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    /** 検索で参照するテーブル */
+    private static final List<String> TABLES = List.of("`test_table`");
+
+    @Test
+    void 保存した検索結果が取得できること() {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var key = new ResultCache.Key("SELECT * FROM `test_table` WHERE `id` = ?;", List.of(1));
+
+        // when
+        var miss = cache.get(key);
+        cache.put(key, TABLES, cache.generations(TABLES), List.of(Map.of("id", 1)));
+        var hit = cache.get(key);
+
+        // then
+        assertNull(miss);
+        assertEquals(List.of(Map.of("id", 1)), hit);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void テーブルの更新で検索結果が破棄されること() {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var key = new ResultCache.Key("SELECT * FROM `test_table`;", List.of());
+        cache.put(key, TABLES, cache.generations(TABLES), List.of(Map.of("id", 1)));
+
+        // when
+        ResultCache.invalidateAll("`test_table`");
+
+        // then
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void スキーマの指定有無によらずテーブルの更新で検索結果が破棄されること() throws SQLException, NamingException {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var dataSource = new StubDataSource().result((sql, values) -> List.of(Map.of("id", 1)));
+        new SqlBuilder().db(dataSource.proxy()).cache(cache).table("blog", "Article")
+                .join("user", "Article", "user_id", "user", "id").get();
+
+        // when
+        new SqlBuilder().db(dataSource.proxy()).table("article").updateData("title", "a").where("id", 1).update();
+
+        // then
+        assertEquals(0, cache.size());
+        assertEquals("article", ResultCache.normalize("`blog`.`Article`"));
+        assertEquals("article", ResultCache.normalize("article"));
+    }
+
+    @Test
+    void 検索中にテーブルが更新された場合は保存されないこと() {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var key = new ResultCache.Key("SELECT * FROM `test_table`;", List.of());
+        var generations = cache.generations(TABLES);
+
+        // when
+        cache.invalidate("test_table");
+        cache.put(key, TABLES, generations, List.of(Map.of("id", 1)));
+
+        // then
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void 最大行数を超えた場合は最も長く参照されていない検索結果が破棄されること() {
+        // given
+        var cache = new ResultCache(10, 2, Duration.ofMinutes(1));
+        var key1 = new ResultCache.Key("SELECT 1;", List.of());
+        var key2 = new ResultCache.Key("SELECT 2;", List.of());
+        var key3 = new ResultCache.Key("SELECT 3;", List.of());
+        cache.put(key1, TABLES, cache.generations(TABLES), List.of(Map.of("id", 1)));
+        cache.put(key2, TABLES, cache.generations(TABLES), List.of(Map.of("id", 2)));
+        cache.get(key1);
+
+        // when
+        cache.put(key3, TABLES, cache.generations(TABLES), List.of(Map.of("id", 3)));
+
+        // then
+        assertNotNull(cache.get(key1));
+        assertNull(cache.get(key2));
+        assertNotNull(cache.get(key3));
+        assertEquals(2, cache.weight());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void 取得した検索結果を変更してもキャッシュに影響しないこと() {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var key = new ResultCache.Key("SELECT * FROM `test_table`;", List.of());
+        var row = new LinkedHashMap<String, Object>(Map.of("id", 1));
+        cache.put(key, TABLES, cache.generations(TABLES), List.of(row));
+        row.put("id", 2);
+
+        // when
+        var first = cache.get(key);
+        first.get(0).put("id", 3);
+        first.get(0).put("name", "a");
+        var second = cache.get(key);
+
+        // then
+        assertEquals(Map.of("id", 3, "name", "a"), first.get(0));
+        assertEquals(List.of(Map.of("id", 1)), second);
+    }
+
+    @Test
+    void 取得中の他のスレッドに待たされずに取得できること() throws Exception {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ofMinutes(1));
+        var key = new ResultCache.Key("SELECT * FROM `test_table`;", List.of());
+        cache.put(key, TABLES, cache.generations(TABLES), List.of(Map.of("id", 1)));
+        var result = new AtomicReference<List<Map<String, Object>>>();
+
+        // when
+        // 保存や破棄でキャッシュのロックが取られている間も取得できる
+        synchronized (cache) {
+            var thread = new Thread(() -> result.set(cache.get(key)));
+            thread.start();
+            thread.join(5000);
+        }
+
+        // then
+        assertEquals(List.of(Map.of("id", 1)), result.get());
+    }
+
+    @Test
+    void 有効期間を過ぎた検索結果は取得できないこと() {
+        // given
+        var cache = new ResultCache(10, 100, Duration.ZERO);
+        var key = new ResultCache.Key("SELECT * FROM `test_table`;", List.of());
+        cache.put(key, TABLES, cache.generations(TABLES), List.of(Map.of("id", 1)));
+
+        // when
+        var result = cache.get(key);
+
+        // then
+        assertNull(result);
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.inkblogdb.commons.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultRowTest {
+
+    @Test
+    void LinkedHashMapと同じ内容と順序になること() throws SQLException {
+        // given
+        var columns = new ResultRow.ColumnIndex(new String[] { "id", "name", "id", "note" });
+
+        // when
+        var row = columns.read(resultSet(1, "a", 2, null));
+
+        // then
+        var expected = new LinkedHashMap<String, Object>();
+        expected.put("id", 1);
+        expected.put("name", "a");
+        expected.put("id", 2);
+        expected.put("note", null);
+        assertEquals(expected, row);
+        assertEquals(expected.hashCode(), row.hashCode());
+        assertEquals(expected.toString(), row.toString());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(row.keySet()));
+        assertTrue(row.containsKey("note"));
+        assertNull(row.get("missing"));
+    }
+
+    @Test
+    void カラムの位置を全行で共有し値は行ごとに保持すること() throws SQLException {
+        // given
+        var columns = new ResultRow.ColumnIndex(new String[] { "id", "name" });
+
+        // when
+        var first = columns.read(resultSet(1, "a"));
+        var second = columns.read(resultSet(2, "b"));
+        first.put("name", "changed");
+
+        // then
+        assertEquals(Map.of("id", 1, "name", "changed"), first);
+        assertEquals(Map.of("id", 2, "name", "b"), second);
+    }
+
+    @Test
+    void カラムの追加と削除ができること() throws SQLException {
+        // given
+        var row = new ResultRow.ColumnIndex(new String[] { "id", "name" }).read(resultSet(1, "a"));
+
+        // when
+        row.put("extra", true);
+        row.remove("id");
+
+        // then
+        assertEquals(List.of("name", "extra"), new ArrayList<>(row.keySet()));
+        assertEquals("a", row.get("name"));
+        assertEquals(2, row.size());
+    }
+
+    @Test
+    void イテレーターで値の変更と削除ができること() throws SQLException {
+        // given
+        var row = new ResultRow.ColumnIndex(new String[] { "id", "name", "note" }).read(resultSet(1, "a", "x"));
+
+        // when
+        var iterator = row.entrySet().iterator();
+        iterator.next().setValue(10);
+        iterator.next();
+        iterator.remove();
+        iterator.next().setValue("y");
+
+        // then
+        assertFalse(iterator.hasNext());
+        assertEquals(Map.of("id", 10, "note", "y"), row);
+    }
+
+    @Test
+    void LinkedHashMapとしてシリアライズされること() throws SQLException, IOException, ClassNotFoundException {
+        // given
+        var row = new ResultRow.ColumnIndex(new String[] { "id", "name" }).read(resultSet(1, "a"));
+
+        // when
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(row);
+        }
+        Object restored;
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = in.readObject();
+        }
+
+        // then
+        assertInstanceOf(LinkedHashMap.class, restored);
+        assertEquals(row, restored);
+    }
+
+    private static ResultSet resultSet(final Object... values) {
+        return (ResultSet) Proxy.newProxyInstance(
+            ResultRowTest.class.getClassLoader(),
+            new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> method.getName().equals("getObject") ? values[(int) args[0] - 1] : null);
+    }
+
+}
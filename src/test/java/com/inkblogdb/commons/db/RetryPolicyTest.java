@@ -0,0 +1,169 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    @Test
+    void SQLStateで一時的な失敗を判定できること() {
+        // given
+        var deadlock = new SQLException("deadlock", "40P01");
+        var mysqlDeadlock = new SQLException("deadlock", "HY000", 1213);
+        var wrapped = new SQLException("wrapped", "HY000", new SQLTransactionRollbackException("rollback"));
+        var reset = new SQLException("reset", "08S01");
+        var syntax = new SQLException("syntax", "42000");
+
+        // then
+        assertTrue(RetryPolicy.isConflict(deadlock));
+        assertTrue(RetryPolicy.isConflict(mysqlDeadlock));
+        assertTrue(RetryPolicy.isConflict(wrapped));
+        assertFalse(RetryPolicy.isConflict(reset));
+        assertTrue(RetryPolicy.isConnectionFailure(reset));
+        assertFalse(RetryPolicy.isConflict(syntax));
+        assertFalse(RetryPolicy.isConnectionFailure(syntax));
+    }
+
+    @Test
+    void 待機時間が上限を超えないこと() {
+        // given
+        var policy = new RetryPolicy(10).backoff(Duration.ofMillis(10), Duration.ofMillis(50));
+
+        // then
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long nanos = policy.backoffNanos(attempt);
+            assertTrue(0 <= nanos && nanos <= Duration.ofMillis(50).toNanos());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0));
+    }
+
+    @Test
+    void 直列化の失敗はロールバックして再実行されること() throws SQLException, NamingException {
+        // given
+        var stub = new StubDataSource().failWith("40001");
+        var builder = new SqlBuilder().db(stub.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO));
+
+        // when
+        var count = builder.table("`user`").updateData("name", "a").where("id", 1).update();
+
+        // then
+        assertArrayEquals(new Integer[] { 1 }, count);
+        assertEquals(2, stub.executeCount.get());
+        assertEquals(1, stub.rollbackCount.get());
+        assertEquals(1, stub.commitCount.get());
+    }
+
+    @Test
+    void 再実行の方針未指定の場合は再実行しないこと() {
+        // given
+        var stub = new StubDataSource().failWith("40001");
+        var builder = new SqlBuilder().db(stub.proxy());
+
+        // when
+        assertThrows(SQLException.class, () -> builder.table("`user`").where("id", 1).delete());
+
+        // then
+        assertEquals(1, stub.executeCount.get());
+        assertEquals(1, stub.rollbackCount.get());
+    }
+
+    @Test
+    void トランザクションは処理全体が再実行されること() throws SQLException, NamingException {
+        // given
+        var stub = new StubDataSource().failWith("40P01");
+        var builder = new SqlBuilder().db(stub.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO));
+        var calls = new int[1];
+
+        // when
+        builder.transaction(tx -> {
+            calls[0]++;
+            tx.table("`user`").updateData("name", "a").where("id", 1).update();
+            return null;
+        });
+
+        // then
+        assertEquals(2, calls[0]);
+        assertEquals(1, stub.commitCount.get());
+    }
+
+    @Test
+    void コミット中の接続断は再実行しないこと() {
+        // given
+        var stub = new StubDataSource();
+        stub.isCommitFailure.set(true);
+        var builder = new SqlBuilder().db(stub.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO));
+
+        // when
+        assertThrows(SQLException.class, () -> builder.table("`user`").updateData("name", "a").where("id", 1).update());
+
+        // then
+        assertEquals(1, stub.executeCount.get());
+    }
+
+    @Test
+    void コミット前の予約した更新の接続断はトランザクション全体が再実行されること() throws SQLException, NamingException {
+        // given
+        var stub = new StubDataSource().failWith("08S01");
+        var builder = new SqlBuilder().db(stub.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO));
+        var calls = new int[1];
+
+        // when
+        builder.transaction(tx -> {
+            calls[0]++;
+            tx.table("`user`").updateData("name", "a").where("id", 1).update();
+            return null;
+        });
+
+        // then
+        assertEquals(2, calls[0]);
+        assertEquals(1, stub.commitCount.get());
+    }
+
+    @Test
+    void トランザクションのコミット中の接続断は再実行しないこと() {
+        // given
+        var stub = new StubDataSource();
+        stub.isCommitFailure.set(true);
+        var builder = new SqlBuilder().db(stub.proxy())
+                .retry(new RetryPolicy(3).backoff(Duration.ZERO, Duration.ZERO));
+        var calls = new int[1];
+
+        // when
+        assertThrows(SQLException.class, () -> builder.transaction(tx -> {
+            calls[0]++;
+            tx.table("`user`").updateData("name", "a").where("id", 1).update();
+            return null;
+        }));
+
+        // then
+        assertEquals(1, calls[0]);
+        assertEquals(1, stub.executeCount.get());
+    }
+
+    @Test
+    void クエリタイムアウトが設定されること() throws SQLException, NamingException {
+        // given
+        var stub = new StubDataSource();
+        var builder = new SqlBuilder().db(stub.proxy()).queryTimeout(5);
+
+        // when
+        builder.table("`user`").updateData("name", "a").where("id", 1).update();
+
+        // then
+        assertEquals(List.of(5), stub.timeoutList);
+        assertThrows(IllegalArgumentException.class, () -> builder.queryTimeout(-1));
+    }
+
+}
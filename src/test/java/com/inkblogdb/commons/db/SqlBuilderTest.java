@@ -1,5 +1,14 @@
 package com.inkblogdb.commons.db;
 
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
@@ -20,6 +29,46 @@ class SqlBuilderTest {
             assertEquals("SELECT * FROM `test_table`;", sql);
         }
 
+        @Test
+        void 値のみ異なる条件では生成済みのSQLが再利用されること() {
+            // when
+            var sql1 = new SqlBuilder().table("test_table").where("id", 1).toSelectSQL();
+            var sql2 = new SqlBuilder().table("test_table").where("id", 2).toSelectSQL();
+            var sql3 = new SqlBuilder().table("test_table").where("name", 1).toSelectSQL();
+
+            // then
+            assertSame(sql1, sql2);
+            assertEquals("SELECT * FROM `test_table` WHERE `name` = ?;", sql3);
+        }
+
+        @Test
+        void IN句の値の数が同じ2の累乗に切り上がる場合は生成済みのSQLが再利用されること() {
+            // when
+            var sql3 = new SqlBuilder().table("test_table").whereIn("id", List.of(1, 2, 3)).toSelectSQL();
+            var sql4 = new SqlBuilder().table("test_table").whereIn("id", List.of(1, 2, 3, 4)).toSelectSQL();
+            var sql5 = new SqlBuilder().table("test_table").whereIn("id", List.of(1, 2, 3, 4, 5)).toSelectSQL();
+
+            // then
+            assertSame(sql3, sql4);
+            assertEquals("SELECT * FROM `test_table` WHERE `id` IN (?, ?, ?, ?, ?, ?, ?, ?);", sql5);
+        }
+
+        @Test
+        void SQL生成後に条件を追加しても生成済みのSQLに影響しないこと() {
+            // given
+            var builder = new SqlBuilder().table("test_table").where("id", 1).orderByAsc("id");
+            var sql1 = builder.toSelectSQL();
+
+            // when
+            builder.where("name", "a").orderByDesc("name");
+            var sql2 = builder.toSelectSQL();
+            var sql3 = new SqlBuilder().table("test_table").where("id", 2).orderByAsc("id").toSelectSQL();
+
+            // then
+            assertEquals("SELECT * FROM `test_table` WHERE `id` = ? AND `name` = ? ORDER BY `id` ASC, `name` DESC;", sql2);
+            assertSame(sql1, sql3);
+        }
+
         @Test
         void カラム指定のSELECT文が生成できること() {
             // when
@@ -36,9 +85,22 @@ class SqlBuilderTest {
         class where {
             @Test
             void 数値が一致する条件のSELECT文が生成できること1() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .where("id", 1);
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` = ?;", builder.toSelectSQL());
+                assertEquals(List.of(1), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は数値が一致する条件の値を埋め込んだSELECT文が生成できること1() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .where("id", 1)
                     .toSelectSQL();
 
@@ -48,9 +110,22 @@ class SqlBuilderTest {
 
             @Test
             void 文字列が一致する条件のSELECT文が生成できること1() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .where("id", "A");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` = ?;", builder.toSelectSQL());
+                assertEquals(List.of("A"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は文字列が一致する条件の値を埋め込んだSELECT文が生成できること1() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .where("id", "A")
                     .toSelectSQL();
 
@@ -60,9 +135,22 @@ class SqlBuilderTest {
 
             @Test
             void 数値が一致する条件のSELECT文が生成できること2() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereEqual("id", 1);
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` = ?;", builder.toSelectSQL());
+                assertEquals(List.of(1), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は数値が一致する条件の値を埋め込んだSELECT文が生成できること2() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereEqual("id", 1)
                     .toSelectSQL();
 
@@ -72,9 +160,22 @@ class SqlBuilderTest {
 
             @Test
             void 文字列が一致する条件のSELECT文が生成できること2() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereEqual("id", "A");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` = ?;", builder.toSelectSQL());
+                assertEquals(List.of("A"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は文字列が一致する条件の値を埋め込んだSELECT文が生成できること2() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereEqual("id", "A")
                     .toSelectSQL();
 
@@ -84,9 +185,22 @@ class SqlBuilderTest {
 
             @Test
             void 数値が一致しない条件のSELECT文が生成できること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereNot("id", 1);
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` <> ?;", builder.toSelectSQL());
+                assertEquals(List.of(1), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は数値が一致しない条件の値を埋め込んだSELECT文が生成できること() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereNot("id", 1)
                     .toSelectSQL();
 
@@ -96,9 +210,22 @@ class SqlBuilderTest {
 
             @Test
             void 文字列が一致しない条件のSELECT文が生成できること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereNot("id", "A");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` <> ?;", builder.toSelectSQL());
+                assertEquals(List.of("A"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は文字列が一致しない条件の値を埋め込んだSELECT文が生成できること() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereNot("id", "A")
                     .toSelectSQL();
 
@@ -108,9 +235,22 @@ class SqlBuilderTest {
 
             @Test
             void 演算子を指定した条件のSELECT文が生成できること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .where("id", "=", "A");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` = ?;", builder.toSelectSQL());
+                assertEquals(List.of("A"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は演算子を指定した条件の値を埋め込んだSELECT文が生成できること() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .where("id", "=", "A")
                     .toSelectSQL();
 
@@ -120,9 +260,22 @@ class SqlBuilderTest {
 
             @Test
             void 条件に含むSELECT文が生成できること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereIn("id", "A", "B", "C");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` IN (?, ?, ?, ?);", builder.toSelectSQL());
+                assertEquals(List.of("A", "B", "C", "C"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は条件に含む値を埋め込んだSELECT文が生成できること() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereIn("id", "A", "B", "C")
                     .toSelectSQL();
 
@@ -132,15 +285,52 @@ class SqlBuilderTest {
 
             @Test
             void 条件に含まれないSELECT文が生成できること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereNotIn("id", "A", "B", "C");
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` NOT IN (?, ?, ?, ?);", builder.toSelectSQL());
+                assertEquals(List.of("A", "B", "C", "C"), builder.toSelectParameters());
+            }
+
+            @Test
+            void ステークホルダーを使用しない場合は条件に含まれない値を埋め込んだSELECT文が生成できること() {
                 // when
                 var sql = new SqlBuilder()
                     .table("test_table")
+                    .stakeHolder(false)
                     .whereNotIn("id", "A", "B", "C")
                     .toSelectSQL();
 
                 // then
                 assertEquals("SELECT * FROM `test_table` WHERE `id` NOT IN ('A', 'B', 'C');", sql);
             }
+
+            @Test
+            void 条件に含む値の数が2の累乗に切り上げられること() {
+                // when
+                var builder = new SqlBuilder()
+                    .table("test_table")
+                    .whereIn("id", List.of(1, 2, 3, 4, 5));
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE `id` IN (?, ?, ?, ?, ?, ?, ?, ?);", builder.toSelectSQL());
+                assertEquals(List.of(1, 2, 3, 4, 5, 5, 5, 5), builder.toSelectParameters());
+            }
+
+            @Test
+            void 条件に含む値が空の場合は常に偽のSELECT文が生成できること() {
+                // when
+                var sql = new SqlBuilder()
+                    .table("test_table")
+                    .whereIn("id", List.of())
+                    .toSelectSQL();
+
+                // then
+                assertEquals("SELECT * FROM `test_table` WHERE 1 = 0;", sql);
+            }
         }
 
         @Nested
@@ -198,4 +388,422 @@ class SqlBuilderTest {
         }
     }
 
+    @Nested
+    class toInsertSQL {
+        @Test
+        void ステークホルダーを使用する場合は1行分のINSERT文が生成できること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("test_table")
+                .insertData(Map.of("id", 1))
+                .insertData(Map.of("id", 2))
+                .toInsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `test_table` (`id`) VALUES (?);", sql);
+        }
+
+        @Test
+        void ステークホルダーを使用しない場合は複数行のINSERT文が生成できること() {
+            // when
+            var data1 = new LinkedHashMap<String, Object>();
+            data1.put("id", 1);
+            data1.put("name", "A");
+            var data2 = new LinkedHashMap<String, Object>();
+            data2.put("id", 2);
+            data2.put("name", "B");
+            var sql = new SqlBuilder()
+                .table("test_table")
+                .stakeHolder(false)
+                .insertData(data1)
+                .insertData(data2)
+                .toInsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `test_table` (`id`, `name`) VALUES (1, 'A'), (2, 'B');", sql);
+        }
+
+        @Test
+        void 行ごとにカラム順が異なる場合は1行目のカラム順で生成されること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("test_table")
+                .stakeHolder(false)
+                .insertData(data("id", 1, "name", "A"))
+                .insertData(data("name", "B", "id", 2))
+                .toInsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `test_table` (`id`, `name`) VALUES (1, 'A'), (2, 'B');", sql);
+        }
+
+        @Test
+        void 分割した行のカラム順が異なる場合も1行目のカラム順のSQLが使用されること() throws SQLException, NamingException {
+            // given
+            var reversed = new SqlBuilder()
+                .table("test_table")
+                .insertData(data("name", "C", "id", 3))
+                .toInsertSQL();
+            var dataSource = new StubDataSource();
+            var builder = new SqlBuilder()
+                .db(dataSource.proxy())
+                .table("test_table")
+                .batchSize(1)
+                .insertData(data("id", 1, "name", "A"))
+                .insertData(data("name", "B", "id", 2));
+
+            // when
+            builder.insert();
+
+            // then
+            assertEquals("INSERT INTO `test_table` (`name`, `id`) VALUES (?, ?);", reversed);
+            assertEquals(List.of(
+                "INSERT INTO `test_table` (`id`, `name`) VALUES (?, ?);",
+                "INSERT INTO `test_table` (`id`, `name`) VALUES (?, ?);"), dataSource.preparedSqlList);
+        }
+
+        @Test
+        void 行ごとにカラム順が異なる場合もSQLのカラム順で値が設定されること() throws SQLException, NamingException {
+            // given
+            var dataSource = new StubDataSource();
+            var builder = new SqlBuilder()
+                .db(dataSource.proxy())
+                .table("test_table")
+                .batchSize(1)
+                .insertData(data("id", 1, "name", "A"))
+                .insertData(data("name", "B", "id", 2));
+
+            // when
+            builder.insert();
+            builder.transaction(tx -> tx.addInsert(tx.table("test_table")
+                .insertData(data("id", 3, "name", "C"))
+                .insertData(data("name", "D", "id", 4))));
+
+            // then
+            assertEquals(List.of(1, "A", 2, "B", 3, "C", 4, "D"), dataSource.parameterList);
+        }
+
+        @Test
+        void カラムが異なる行がある場合は例外となること() {
+            // given
+            var builder = new SqlBuilder()
+                .table("test_table")
+                .insertData(data("id", 1, "name", "A"))
+                .insertData(data("id", 2, "title", "B"));
+
+            // when
+            // then
+            assertThrows(IllegalArgumentException.class, builder::toInsertSQL);
+        }
+    }
+
+    @Nested
+    class toUpsertSQL {
+        @Test
+        void 複数行のUPSERT文が生成できること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("article_view")
+                .insertData(row(1, 3))
+                .insertData(row(2, 5))
+                .onDuplicate("views", UpsertAction.ADD)
+                .toUpsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `article_view` (`article_id`, `views`) VALUES (?, ?), (?, ?)"
+                + " ON DUPLICATE KEY UPDATE `views` = `views` + VALUES(`views`);", sql);
+        }
+
+        @Test
+        void 同じキーの行がまとめられること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("article_view")
+                .stakeHolder(false)
+                .insertData(row(1, 3))
+                .insertData(row(2, 5))
+                .insertData(row(1, 4))
+                .onDuplicate("views", UpsertAction.ADD)
+                .aggregateBy("article_id")
+                .toUpsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `article_view` (`article_id`, `views`) VALUES (1, 7), (2, 5)"
+                + " ON DUPLICATE KEY UPDATE `views` = `views` + VALUES(`views`);", sql);
+        }
+
+        @Test
+        void 大きい方の値でまとめられること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("article_view")
+                .stakeHolder(false)
+                .insertData(row(1, 3))
+                .insertData(row(1, 9))
+                .insertData(row(1, 4))
+                .onDuplicate("views", UpsertAction.GREATEST)
+                .aggregateBy("article_id")
+                .toUpsertSQL();
+
+            // then
+            assertEquals("INSERT INTO `article_view` (`article_id`, `views`) VALUES (1, 9)"
+                + " ON DUPLICATE KEY UPDATE `views` = GREATEST(`views`, VALUES(`views`));", sql);
+        }
+
+        @Test
+        void 更新式を直接指定した場合はまとめられないこと() {
+            // given
+            var builder = new SqlBuilder()
+                .table("article_view")
+                .insertData(row(1, 3))
+                .insertData(row(1, 4))
+                .onDuplicateSql("views", "`views` + VALUES(`views`) * 2")
+                .aggregateBy("article_id");
+
+            // when
+            // then
+            assertThrows(IllegalArgumentException.class, builder::toUpsertSQL);
+        }
+
+        @Test
+        void インクリメントのSQLが複数行で生成できること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("article_view")
+                .insertData(Map.of("article_id", 1))
+                .insertData(Map.of("article_id", 2))
+                .toIncrementSQL("views");
+
+            // then
+            assertEquals("INSERT INTO `article_view` (`article_id`, `views`) VALUES (?, ?), (?, ?)"
+                + " ON DUPLICATE KEY UPDATE `views` = `views` + VALUES(`views`);", sql);
+        }
+
+        @Test
+        void 行ごとにカラム順が異なる場合もSQLのカラム順で値が設定されること() throws SQLException, NamingException {
+            // given
+            var dataSource = new StubDataSource();
+            var builder = new SqlBuilder()
+                .db(dataSource.proxy())
+                .table("article_view")
+                .batchSize(1)
+                .insertData(data("article_id", 1, "views", 3))
+                .insertData(data("views", 5, "article_id", 2))
+                .onDuplicate("views", UpsertAction.ADD);
+
+            // when
+            builder.upsert();
+
+            // then
+            var sql = "INSERT INTO `article_view` (`article_id`, `views`) VALUES (?, ?)"
+                + " ON DUPLICATE KEY UPDATE `views` = `views` + VALUES(`views`);";
+            assertEquals(List.of(sql, sql), dataSource.preparedSqlList);
+            assertEquals(List.of(1, 3, 2, 5), dataSource.parameterList);
+        }
+
+        private Map<String, Object> row(int articleId, int views) {
+            var data = new LinkedHashMap<String, Object>();
+            data.put("article_id", articleId);
+            data.put("views", views);
+            return data;
+        }
+    }
+
+    @Nested
+    class keyset {
+        @Test
+        void 最初のページのSELECT文が生成できること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("test_table")
+                .seek(new String[] { "id" }, null, 100)
+                .toSelectSQL();
+
+            // then
+            assertEquals("SELECT * FROM `test_table` ORDER BY `id` ASC LIMIT 100;", sql);
+        }
+
+        @Test
+        void 複数キーで次のページのSELECT文が生成できること() {
+            // when
+            var sql = new SqlBuilder()
+                .table("test_table")
+                .seek(new String[] { "created_at", "id" }, new Object[] { "2024-01-01", 10 }, 100)
+                .toSelectSQL();
+
+            // then
+            assertEquals("SELECT * FROM `test_table` WHERE (`created_at`, `id`) > (?, ?) ORDER BY `created_at` ASC, `id` ASC LIMIT 100;", sql);
+        }
+
+        @Test
+        void 継続トークンからキーの値が復元できること() {
+            // given
+            var values = new Object[] { "A.B", 1, 2L, Timestamp.valueOf("2024-01-01 12:34:56") };
+
+            // when
+            var token = KeysetPaginator.encodeToken(values);
+
+            // then
+            assertArrayEquals(values, KeysetPaginator.decodeToken(token));
+        }
+    }
+
+    @Nested
+    class stream {
+        @Test
+        void 途中で読み込みをやめてクローズした場合もリソースが解放されること() throws SQLException, NamingException {
+            // given
+            var dataSource = rows(5);
+            var ids = new ArrayList<Object>();
+
+            // when
+            try (var stream = new SqlBuilder().db(dataSource.proxy()).table("test_table").stream()) {
+                stream.limit(2).forEach(row -> ids.add(row.get("id")));
+                assertEquals(0, dataSource.closeCount.get());
+            }
+
+            // then
+            assertEquals(List.of(1, 2), ids);
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+
+        @Test
+        void 読み込み中の例外が送出されクローズでリソースが解放されること() throws SQLException, NamingException {
+            // given
+            var dataSource = rows(5);
+            dataSource.failureRow.set(2);
+            var ids = new ArrayList<Object>();
+
+            // when
+            IllegalStateException exception;
+            try (var stream = new SqlBuilder().db(dataSource.proxy()).table("test_table").stream()) {
+                exception = assertThrows(IllegalStateException.class, () -> stream.forEach(row -> ids.add(row.get("id"))));
+            }
+
+            // then
+            assertEquals(List.of(1, 2), ids);
+            assertInstanceOf(SQLException.class, exception.getCause());
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+
+        @Test
+        void 処理中の例外でもtry_with_resourcesでリソースが解放されること() throws SQLException, NamingException {
+            // given
+            var dataSource = rows(5);
+
+            // when
+            assertThrows(IllegalArgumentException.class, () -> {
+                try (var stream = new SqlBuilder().db(dataSource.proxy()).table("test_table").stream()) {
+                    stream.forEach(row -> {
+                        throw new IllegalArgumentException("invalid row");
+                    });
+                }
+            });
+
+            // then
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+
+        @Test
+        void 検索に失敗した場合はストリームを返さずにリソースが解放されること() {
+            // given
+            var dataSource = rows(5).failWith("42S02");
+
+            // when
+            assertThrows(SQLException.class, () -> new SqlBuilder().db(dataSource.proxy()).table("test_table").stream());
+
+            // then
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+    }
+
+    @Nested
+    class forEach {
+        @Test
+        void 全ての行が処理されリソースが解放されること() throws SQLException, NamingException {
+            // given
+            var dataSource = rows(3);
+            var ids = new ArrayList<Object>();
+
+            // when
+            new SqlBuilder().db(dataSource.proxy()).table("test_table").forEach(row -> ids.add(row.get("id")));
+
+            // then
+            assertEquals(List.of(1, 2, 3), ids);
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+
+        @Test
+        void 処理中の例外がそのまま送出されリソースが解放されること() {
+            // given
+            var dataSource = rows(5);
+            var ids = new ArrayList<Object>();
+
+            // when
+            var exception = assertThrows(SQLException.class, () -> new SqlBuilder().db(dataSource.proxy()).table("test_table").forEach(row -> {
+                if (row.get("id").equals(3)) {
+                    throw new SQLException("stop");
+                }
+                ids.add(row.get("id"));
+            }));
+
+            // then
+            assertEquals("stop", exception.getMessage());
+            assertEquals(List.of(1, 2), ids);
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+
+        @Test
+        void 読み込み中の例外が送出されリソースが解放されること() {
+            // given
+            var dataSource = rows(5);
+            dataSource.failureRow.set(1);
+
+            // when
+            var exception = assertThrows(SQLException.class,
+                    () -> new SqlBuilder().db(dataSource.proxy()).table("test_table").forEach(row -> { }));
+
+            // then
+            assertEquals("fetch failed", exception.getMessage());
+            assertEquals(1, dataSource.resultCloseCount.get());
+            assertEquals(1, dataSource.statementCloseCount.get());
+            assertEquals(1, dataSource.closeCount.get());
+        }
+    }
+
+    /**
+     * 1からcountまでのidの行を返却するデータソースを作成する
+     */
+    private static StubDataSource rows(final int count) {
+        return new StubDataSource().result((sql, values) -> {
+            var rows = new ArrayList<Map<String, Object>>();
+            for (int id = 1; id <= count; id++) {
+                rows.add(Map.of("id", id));
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * 指定した順序の挿入データを作成する
+     */
+    private static Map<String, Object> data(final Object... keyValues) {
+        var data = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            data.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return data;
+    }
+
 }
@@ -0,0 +1,143 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+
+    @Test
+    void 同じDB接続と同じSQLのステートメントが再利用されること() throws SQLException {
+        // given
+        var dataSource = new StubDataSource();
+        var connection = dataSource.proxy().getConnection();
+
+        // when
+        var statement1 = StatementCache.prepare(connection, "SELECT 1;", 8);
+        statement1.close();
+        var statement2 = StatementCache.prepare(connection, "SELECT 1;", 8);
+        statement2.close();
+
+        // then
+        assertSame(statement1, statement2);
+        assertEquals(1, dataSource.preparedSqlList.size());
+    }
+
+    @Test
+    void 使用中の場合はキャッシュしないステートメントが作成されること() throws SQLException {
+        // given
+        var dataSource = new StubDataSource();
+        var connection = dataSource.proxy().getConnection();
+
+        // when
+        var statement1 = StatementCache.prepare(connection, "SELECT 1;", 8);
+        var statement2 = StatementCache.prepare(connection, "SELECT 1;", 8);
+
+        // then
+        assertNotSame(statement1, statement2);
+        assertEquals(2, dataSource.preparedSqlList.size());
+        statement1.close();
+        statement2.close();
+    }
+
+    @Test
+    void 返却時にフェッチサイズと最大行数が作成時の値に戻ること() throws SQLException {
+        // given
+        var connection = new StubDataSource().proxy().getConnection();
+        var statement = StatementCache.prepare(connection, "SELECT 1;", 8);
+        statement.setFetchSize(500);
+        statement.setMaxRows(10);
+
+        // when
+        statement.close();
+        var reused = StatementCache.prepare(connection, "SELECT 1;", 8);
+
+        // then
+        assertSame(statement, reused);
+        assertEquals(0, reused.getFetchSize());
+        assertEquals(0, reused.getMaxRows());
+        reused.close();
+    }
+
+    @Test
+    void 最大件数を超えた場合は最も長く使われていないステートメントが破棄されること() throws SQLException {
+        // given
+        var dataSource = new StubDataSource();
+        var connection = dataSource.proxy().getConnection();
+
+        // when
+        StatementCache.prepare(connection, "SELECT 1;", 1).close();
+        StatementCache.prepare(connection, "SELECT 2;", 1).close();
+        StatementCache.prepare(connection, "SELECT 1;", 1).close();
+
+        // then
+        assertEquals(3, dataSource.preparedSqlList.size());
+    }
+
+    @Test
+    void 外部のプールが貸出ごとに異なるDB接続を返却してもステートメントが再利用されること() throws SQLException {
+        // given
+        var dataSource = new StubDataSource();
+        var physical = dataSource.proxy().getConnection();
+        var pool = externalPool(physical);
+
+        // when
+        var connection1 = pool.getConnection();
+        var statement1 = StatementCache.prepare(connection1, "SELECT 1;", 8);
+        statement1.close();
+        connection1.close();
+        var connection2 = pool.getConnection();
+        var statement2 = StatementCache.prepare(connection2, "SELECT 1;", 8);
+        statement2.close();
+        connection2.close();
+
+        // then
+        assertNotSame(connection1, connection2);
+        assertSame(statement1, statement2);
+        assertEquals(1, dataSource.preparedSqlList.size());
+        assertThrows(SQLException.class, () -> StatementCache.prepare(connection1, "SELECT 1;", 8));
+    }
+
+    /**
+     * 貸出ごとに実体のDB接続をラップした新しいDB接続を返却する外部のプールを作成する
+     * ラップしたDB接続はunwrapで実体を返却し、クローズ後は使用できない
+     */
+    private static DataSource externalPool(final Connection physical) {
+        return (DataSource) Proxy.newProxyInstance(
+            StatementCacheTest.class.getClassLoader(),
+            new Class<?>[] { DataSource.class },
+            (proxy, method, args) -> {
+                if (!method.getName().equals("getConnection")) {
+                    return null;
+                }
+                var isClosed = new boolean[1];
+                return Proxy.newProxyInstance(
+                    StatementCacheTest.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    (handle, handleMethod, handleArgs) -> switch (handleMethod.getName()) {
+                        case "close" -> {
+                            isClosed[0] = true;
+                            yield null;
+                        }
+                        case "isClosed" -> isClosed[0];
+                        case "isWrapperFor" -> true;
+                        case "unwrap" -> {
+                            if (isClosed[0]) {
+                                throw new SQLException("connection is closed");
+                            }
+                            yield physical;
+                        }
+                        case "hashCode" -> System.identityHashCode(handle);
+                        case "equals" -> handle == handleArgs[0];
+                        default -> handleMethod.invoke(physical, handleArgs);
+                    });
+            });
+    }
+
+}
@@ -0,0 +1,301 @@
+package com.inkblogdb.commons.db;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+/**
+ * 実行内容を記録するテスト用のデータソース
+ */
+class StubDataSource {
+
+    /** 接続回数 */
+    final AtomicInteger connectCount = new AtomicInteger();
+    /** コミット回数 */
+    final AtomicInteger commitCount = new AtomicInteger();
+    /** ロールバック回数 */
+    final AtomicInteger rollbackCount = new AtomicInteger();
+    /** クローズ回数 */
+    final AtomicInteger closeCount = new AtomicInteger();
+    /** 実行回数 */
+    final AtomicInteger executeCount = new AtomicInteger();
+    /** ステートメントのクローズ回数 */
+    final AtomicInteger statementCloseCount = new AtomicInteger();
+    /** 検索結果のクローズ回数 */
+    final AtomicInteger resultCloseCount = new AtomicInteger();
+    /** 検索結果の読み込みに失敗させる行番号（0始まり）、失敗させない場合は-1 */
+    final AtomicInteger failureRow = new AtomicInteger(-1);
+    /** 作成したステートメントのSQL */
+    final List<String> preparedSqlList = Collections.synchronizedList(new ArrayList<>());
+    /** 実行したバッチの件数 */
+    final List<Integer> batchSizeList = Collections.synchronizedList(new ArrayList<>());
+    /** ステートメントに設定された値 */
+    final List<Object> parameterList = Collections.synchronizedList(new ArrayList<>());
+    /** 設定されたクエリタイムアウト */
+    final List<Integer> timeoutList = Collections.synchronizedList(new ArrayList<>());
+    /** 接続できないか否か */
+    final AtomicBoolean isDown = new AtomicBoolean(false);
+    /** 実行に失敗させるか否か */
+    final AtomicBoolean isFailure = new AtomicBoolean(false);
+    /** コミット時に接続断とするか否か */
+    final AtomicBoolean isCommitFailure = new AtomicBoolean(false);
+    /** 実行時に順に発生させるSQLState */
+    private final Queue<String> failureStates = new ConcurrentLinkedQueue<>();
+    /** SQLと値から検索結果を作成する処理 */
+    private BiFunction<String, List<Object>, List<Map<String, Object>>> result = (sql, values) -> List.of();
+    /** createStatementで返却するステートメントを作成する処理 */
+    private Supplier<Statement> statement = () -> null;
+
+    /**
+     * 実行時に順に発生させるSQLStateを追加する
+     * @param states SQLState
+     * @return 自身のインスタンス
+     */
+    StubDataSource failWith(final String... states) {
+        failureStates.addAll(Arrays.asList(states));
+        return this;
+    }
+
+    /**
+     * 検索結果を作成する処理を設定する
+     * @param result SQLと設定順の値から検索結果の行を作成する処理
+     * @return 自身のインスタンス
+     */
+    StubDataSource result(final BiFunction<String, List<Object>, List<Map<String, Object>>> result) {
+        this.result = result;
+        return this;
+    }
+
+    /**
+     * createStatementで返却するステートメントを設定する
+     * @param statement ステートメントを作成する処理
+     * @return 自身のインスタンス
+     */
+    StubDataSource statement(final Supplier<Statement> statement) {
+        this.statement = statement;
+        return this;
+    }
+
+    DataSource proxy() {
+        return (DataSource) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { DataSource.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "getConnection":
+                        break;
+                    default:
+                        return null;
+                }
+                connectCount.incrementAndGet();
+                if (isDown.get()) {
+                    throw new SQLException("connection refused");
+                }
+                return connection();
+            });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { Connection.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "commit" -> {
+                    if (isCommitFailure.get()) {
+                        throw new SQLException("reset", "08S01");
+                    }
+                    commitCount.incrementAndGet();
+                    yield null;
+                }
+                case "rollback" -> {
+                    rollbackCount.incrementAndGet();
+                    yield null;
+                }
+                case "close" -> {
+                    closeCount.incrementAndGet();
+                    yield null;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "isValid", "isWrapperFor" -> true;
+                case "unwrap" -> proxy;
+                case "isClosed", "getAutoCommit" -> false;
+                case "prepareStatement" -> {
+                    preparedSqlList.add((String) args[0]);
+                    yield statement((String) args[0]);
+                }
+                case "createStatement" -> statement.get();
+                default -> null;
+            });
+    }
+
+    private PreparedStatement statement(final String sql) {
+        var values = new TreeMap<Integer, Object>();
+        var batchSize = new int[1];
+        var fetchSize = new int[1];
+        var maxRows = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> {
+                var name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                    var value = name.equals("setNull") ? null : args[1];
+                    values.put(index, value);
+                    parameterList.add(value);
+                    return null;
+                }
+                return switch (name) {
+                    case "setQueryTimeout" -> {
+                        timeoutList.add((Integer) args[0]);
+                        yield null;
+                    }
+                    case "setFetchSize" -> {
+                        fetchSize[0] = (Integer) args[0];
+                        yield null;
+                    }
+                    case "setMaxRows" -> {
+                        maxRows[0] = (Integer) args[0];
+                        yield null;
+                    }
+                    case "getFetchSize" -> fetchSize[0];
+                    case "getMaxRows" -> maxRows[0];
+                    case "clearParameters" -> {
+                        values.clear();
+                        yield null;
+                    }
+                    case "addBatch" -> {
+                        batchSize[0]++;
+                        yield null;
+                    }
+                    case "executeBatch" -> {
+                        execute();
+                        batchSizeList.add(batchSize[0]);
+                        var counts = new int[batchSize[0]];
+                        Arrays.fill(counts, 1);
+                        batchSize[0] = 0;
+                        yield counts;
+                    }
+                    case "executeUpdate" -> {
+                        execute();
+                        yield 1;
+                    }
+                    case "executeQuery" -> {
+                        execute();
+                        yield resultSet(result.apply(sql, new ArrayList<>(values.values())));
+                    }
+                    case "close" -> {
+                        statementCloseCount.incrementAndGet();
+                        yield null;
+                    }
+                    case "isClosed" -> false;
+                    default -> null;
+                };
+            });
+    }
+
+    private void execute() throws SQLException {
+        executeCount.incrementAndGet();
+        var state = failureStates.poll();
+        if (state != null) {
+            throw new SQLException("failed", state);
+        }
+        if (isFailure.get()) {
+            throw new SQLException("deadlock", "40001");
+        }
+    }
+
+    private ResultSet resultSet(final List<Map<String, Object>> rows) {
+        var labels = rows.isEmpty() ? List.<String>of() : new ArrayList<>(rows.get(0).keySet());
+        var meta = (ResultSetMetaData) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { ResultSetMetaData.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getColumnCount" -> labels.size();
+                case "getColumnName", "getColumnLabel" -> labels.get((int) args[0] - 1);
+                case "getColumnType" -> columnType(rows.get(0).get(labels.get((int) args[0] - 1)));
+                case "isSigned" -> !(rows.get(0).get(labels.get((int) args[0] - 1)) instanceof BigInteger);
+                default -> null;
+            });
+        var position = new int[] { -1 };
+        var isClosed = new boolean[1];
+        var wasNull = new boolean[1];
+        return (ResultSet) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> switch (method.getName()) {
+                case "next" -> {
+                    if (++position[0] == failureRow.get()) {
+                        throw new SQLException("fetch failed", "08S01");
+                    }
+                    yield position[0] < rows.size();
+                }
+                case "getObject", "getString", "getBigDecimal", "getLong", "getInt", "getDouble" -> {
+                    var value = rows.get(position[0]).get(
+                        args[0] instanceof Integer index ? labels.get(index - 1) : (String) args[0]);
+                    wasNull[0] = value == null;
+                    yield switch (method.getName()) {
+                        case "getString" -> value == null ? null : value.toString();
+                        case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                        case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                        case "getDouble" -> value == null ? 0d : ((Number) value).doubleValue();
+                        case "getBigDecimal" -> value instanceof BigInteger integer ? new BigDecimal(integer) : value;
+                        default -> value;
+                    };
+                }
+                case "getMetaData" -> meta;
+                case "wasNull" -> wasNull[0];
+                case "close" -> {
+                    if (!isClosed[0]) {
+                        resultCloseCount.incrementAndGet();
+                    }
+                    isClosed[0] = true;
+                    yield null;
+                }
+                case "isClosed" -> isClosed[0];
+                default -> null;
+            });
+    }
+
+    /**
+     * 値の型からJDBCの型を返却する
+     */
+    private static int columnType(final Object value) {
+        if (value instanceof Long || value instanceof BigInteger) {
+            return Types.BIGINT;
+        } else if (value instanceof Integer) {
+            return Types.INTEGER;
+        } else if (value instanceof Double) {
+            return Types.DOUBLE;
+        } else if (value instanceof BigDecimal) {
+            return Types.DECIMAL;
+        }
+        return Types.VARCHAR;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.inkblogdb.commons.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.naming.NamingException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest {
+
+    @Test
+    void 複数の更新が1つのDB接続で実行され1回だけコミットされること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var builder = new SqlBuilder().db(dataSource.proxy());
+
+        // when
+        builder.transaction(tx -> {
+            tx.table("`user`").insertData("id", 1).insert();
+            tx.table("`user`").updateData("name", "a").where("id", 1).update();
+            tx.table("`user`").where("id", 2).delete();
+            return null;
+        });
+
+        // then
+        assertEquals(1, dataSource.connectCount.get());
+        assertEquals(1, dataSource.commitCount.get());
+        assertEquals(0, dataSource.rollbackCount.get());
+        assertEquals(1, dataSource.closeCount.get());
+        assertEquals(3, dataSource.preparedSqlList.size());
+    }
+
+    @Test
+    void 予約した同じSQLの更新が1つのバッチにまとめられること() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var builder = new SqlBuilder().db(dataSource.proxy());
+
+        // when
+        var counts = builder.transaction(tx -> {
+            tx.addInsert(tx.table("`user`").insertData("id", 1));
+            tx.addInsert(tx.table("`user`").insertData("id", 2));
+            tx.addUpdate(tx.table("`user`").updateData("name", "a").where("id", 1));
+            return tx.flush();
+        });
+
+        // then
+        assertArrayEquals(new int[] { 1, 1, 1 }, counts);
+        assertEquals(List.of("INSERT INTO `user` (`id`) VALUES (?);", "UPDATE `user` SET `name` = ? WHERE `id` = ?;"),
+                dataSource.preparedSqlList);
+        assertEquals(List.of(2, 1), dataSource.batchSizeList);
+        assertEquals(1, dataSource.commitCount.get());
+    }
+
+    @Test
+    void 例外が発生した場合はロールバックされること() {
+        // given
+        var dataSource = new StubDataSource();
+        var builder = new SqlBuilder().db(dataSource.proxy());
+
+        // when
+        assertThrows(IllegalStateException.class, () -> builder.transaction(tx -> {
+            tx.table("`user`").insertData("id", 1).insert();
+            throw new IllegalStateException("failed");
+        }));
+
+        // then
+        assertEquals(0, dataSource.commitCount.get());
+        assertEquals(1, dataSource.rollbackCount.get());
+        assertEquals(1, dataSource.closeCount.get());
+    }
+
+    @Test
+    void 終了したトランザクションは使用できないこと() throws SQLException, NamingException {
+        // given
+        var dataSource = new StubDataSource();
+        var builder = new SqlBuilder().db(dataSource.proxy());
+        var transactions = new ArrayList<Transaction>();
+        builder.transaction(tx -> transactions.add(tx));
+
+        // when
+        // then
+        assertThrows(IllegalStateException.class, () -> transactions.get(0).table("`user`"));
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.inkblogdb.commons.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.AEADBadTagException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.inkblogdb.commons.util.EncryptUtils.EncryptAlgorithm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedEncryptorTest {
+
+    @Test
+    void 複数セグメントを並列に暗号化と復号ができること() throws Exception {
+        // given
+        var pool = new ForkJoinPool(4);
+        var encryptor = new ChunkedEncryptor("secret".getBytes(StandardCharsets.UTF_8), 100, pool);
+        var plain = new byte[1050];
+        new Random(1).nextBytes(plain);
+
+        // when
+        var encrypted = encryptor.encrypt(plain);
+        var decrypted = encryptor.decrypt(encrypted);
+        pool.shutdown();
+
+        // then
+        assertEquals(11, encryptor.getSegmentCount(encrypted));
+        assertEquals(ChunkedEncryptor.HEADER_LENGTH + plain.length + 11 * ChunkedEncryptor.TAG_LENGTH, encrypted.length);
+        assertArrayEquals(plain, decrypted);
+        assertArrayEquals(Arrays.copyOfRange(plain, 300, 400), encryptor.decryptSegment(encrypted, 3));
+        assertArrayEquals(Arrays.copyOfRange(plain, 1000, 1050), encryptor.decryptSegment(encrypted, 10));
+    }
+
+    @Test
+    void 改ざんやセグメントの入れ替えを検知できること() throws Exception {
+        // given
+        var encryptor = new ChunkedEncryptor("secret".getBytes(StandardCharsets.UTF_8), 16, ForkJoinPool.commonPool());
+        var plain = new byte[64];
+        var encrypted = encryptor.encrypt(plain);
+        int segment = 16 + ChunkedEncryptor.TAG_LENGTH;
+        int offset = ChunkedEncryptor.HEADER_LENGTH;
+
+        // when
+        var tampered = encrypted.clone();
+        tampered[offset + 3] ^= 1;
+        var swapped = encrypted.clone();
+        System.arraycopy(encrypted, offset, swapped, offset + segment, segment);
+        System.arraycopy(encrypted, offset + segment, swapped, offset, segment);
+
+        // then
+        assertThrows(AEADBadTagException.class, () -> encryptor.decrypt(tampered));
+        assertThrows(AEADBadTagException.class, () -> encryptor.decrypt(swapped));
+        assertThrows(AEADBadTagException.class, () -> new ChunkedEncryptor("other").decrypt(encrypted));
+        assertThrows(IllegalArgumentException.class, () -> encryptor.decrypt(Arrays.copyOf(encrypted, encrypted.length - 1)));
+    }
+
+    @Test
+    void ヘッダのソルトを改ざんすると復号できないこと() throws Exception {
+        // given
+        var encryptor = new ChunkedEncryptor("secret");
+        var plain = "token".getBytes(StandardCharsets.UTF_8);
+        var encrypted = encryptor.encrypt(plain);
+
+        // when
+        var tampered = encrypted.clone();
+        // 識別子(4) バージョン(1) セグメント長(4) 平文の長さ(8)の直後のソルト
+        tampered[17] ^= 1;
+
+        // then
+        assertFalse(Arrays.equals(Arrays.copyOfRange(encrypted, 17, 33), Arrays.copyOfRange(encryptor.encrypt(plain), 17, 33)));
+        assertThrows(AEADBadTagException.class, () -> encryptor.decrypt(tampered));
+    }
+
+    @Test
+    void 上限を超えるセグメント長のヘッダは読み込まないこと(@TempDir final Path dir) throws Exception {
+        // given
+        var encryptor = new ChunkedEncryptor("secret");
+        var encrypted = encryptor.encrypt(new byte[10]);
+        ByteBuffer.wrap(encrypted).putInt(5, ChunkedEncryptor.MAX_SEGMENT_SIZE + 1);
+        var file = Files.write(dir.resolve("large.enc"), encrypted);
+
+        // when
+        // then
+        assertThrows(IllegalArgumentException.class, () -> encryptor.decryptSegment(encrypted, 0));
+        try (var channel = FileChannel.open(file)) {
+            assertThrows(IOException.class, () -> encryptor.decryptSegment(channel, 0));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new ChunkedEncryptor("secret".getBytes(StandardCharsets.UTF_8), ChunkedEncryptor.MAX_SEGMENT_SIZE + 1, ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    void 空の平文も暗号化と復号ができること() throws Exception {
+        // given
+        var encryptor = new ChunkedEncryptor("secret");
+
+        // when
+        var encrypted = encryptor.encrypt(new byte[0]);
+
+        // then
+        assertEquals(1, encryptor.getSegmentCount(encrypted));
+        assertArrayEquals(new byte[0], encryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void ファイルを暗号化し任意のセグメントを読み込めること(@TempDir final Path dir) throws Exception {
+        // given
+        var encryptor = new ChunkedEncryptor("secret".getBytes(StandardCharsets.UTF_8), 1000, ForkJoinPool.commonPool());
+        var plain = new byte[12345];
+        new Random(2).nextBytes(plain);
+        var src = Files.write(dir.resolve("plain.bin"), plain);
+        var encrypted = dir.resolve("plain.bin.enc");
+        var decrypted = dir.resolve("plain.bin.dec");
+
+        // when
+        long encryptLength = encryptor.encrypt(src, encrypted);
+        long decryptLength = encryptor.decrypt(encrypted, decrypted);
+        byte[] segment;
+        try (var channel = FileChannel.open(encrypted)) {
+            segment = encryptor.decryptSegment(channel, 12);
+        }
+
+        // then
+        assertEquals(Files.size(encrypted), encryptLength);
+        assertEquals(plain.length, decryptLength);
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+        assertArrayEquals(Arrays.copyOfRange(plain, 12000, 12345), segment);
+    }
+
+    @Test
+    void EncryptUtilsでもAES_GCMを使用できること() throws Exception {
+        // given
+        var plain = "token".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var encrypted = EncryptUtils.doEncrypt(EncryptAlgorithm.AES_GCM, plain, "secret");
+
+        // then
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(EncryptAlgorithm.AES_GCM, encrypted, "secret"));
+    }
+
+    @Test
+    void EncryptUtilsのAES_GCMは同じスレッドで繰り返し暗号化できること() throws Exception {
+        // given
+        var plain = "token".getBytes(StandardCharsets.UTF_8);
+        var key = "secret".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var first = EncryptUtils.doEncryptBinary(EncryptAlgorithm.AES_GCM, plain, key, null);
+        var second = EncryptUtils.doEncryptBinary(EncryptAlgorithm.AES_GCM, plain, key, null);
+
+        // then
+        assertFalse(Arrays.equals(first, second));
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(EncryptAlgorithm.AES_GCM, first, key));
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(EncryptAlgorithm.AES_GCM, second, key));
+        assertThrows(IllegalArgumentException.class,
+                () -> EncryptUtils.doEncrypt(EncryptAlgorithm.AES_GCM, plain, "secret", "iv"));
+    }
+
+}
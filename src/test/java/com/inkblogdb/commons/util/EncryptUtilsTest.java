@@ -0,0 +1,68 @@
+package com.inkblogdb.commons.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.inkblogdb.commons.util.EncryptUtils.EncryptAlgorithm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptUtilsTest {
+
+    /** 旧形式で暗号化した「legacy-token」（暗号化キー、初期化ベクトルキー指定） */
+    private static final String LEGACY_WITH_KEYS = "r3+8ecGyoYC2upW4tq63or5/qYbFx42N";
+    /** 旧形式で暗号化した「legacy-token」（暗号化キー指定） */
+    private static final String LEGACY_WITH_KEY = "sL26q7aemcGkv43DhaOggL2SwIChiZyIoYmTfcfKh5ammMnFm56crMOej6GdqqLEscSnq8+m0qnPwqCwtdHNoMO2oq+R0cLWy8+Tps+XzbmvrdyzkNqa1rrPztGu4dOasrTOnp3AwdOxl8XE3b/ar9vS5Lu12rLKp+Hmp9Op3qymtcnGpsrJ7M3exM7b2eHh6tzixPHg67LB1e3w9PT11vT01O7pxePkufPGv+Hs7fbVzfz0yOzNtureydXo8fzZ7uAAx8c=";
+    /** 旧形式で暗号化した「legacy-token」（キー指定なし） */
+    private static final String LEGACY_WITHOUT_KEY = "kKq5lKCehJeNuXulg53CnKihxYCVvrqBiqOXgp2dfqG0maCLoaukhrumw53QorCJo86ajp+owcuQtKufsZakwpCUlLWRqtXSyNHR0JGx3aq0z5fYtbfb3paqs7zWoNagwdbXsNO6wt+6u9nRtKbA2b6wp6Tbs6DV4afcyL6i1Nm5x8zMvrngrKnl6e/n3MHj3fLqs+6tzciu9K/ey+HutsvY4dfA0Ofsz8Tav+H89ejb2vnS+9fI37b12/nL1OrV4uPax8e3xMz4vAXmB7jfz+byxNjwwdYK2+gHA/XJAMTECMMO/e354MrL+v7t4g3b4tAC3OncDNIN/fbRBvPl9w3u0fMO9tANF8z1EPba7wUUCPT2//4K8R3rERvxIRQY+Bbi2SDi8BwC8SDj3gUH+ST6IPgoBCTi+SAU5gT3+Av06Bj99y4PAiogJf7vDTHuDjH8CgDrL/0u7PIfHzIl7yUuFCANFCUaMwMrOzT1JPkMAQ==";
+
+    @Test
+    void 旧形式の暗号文を復号できること() throws Exception {
+        // given
+        var expected = "legacy-token".getBytes(StandardCharsets.UTF_8);
+
+        // then
+        assertArrayEquals(expected, EncryptUtils.doDecrypt(ascii(LEGACY_WITH_KEYS), "secret", "iv"));
+        assertArrayEquals(expected, EncryptUtils.doDecrypt(ascii(LEGACY_WITH_KEY), "secret"));
+        assertArrayEquals(expected, EncryptUtils.doDecrypt(ascii(LEGACY_WITHOUT_KEY)));
+    }
+
+    @Test
+    void 新形式は旧形式より短く復号できること() throws Exception {
+        // given
+        var plain = "legacy-token".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var withKeys = EncryptUtils.doEncrypt(plain, "secret", "iv");
+        var withKey = EncryptUtils.doEncrypt(plain, "secret");
+        var withoutKey = EncryptUtils.doEncrypt(plain);
+
+        // then
+        assertTrue(withKeys.length < LEGACY_WITH_KEYS.length());
+        assertTrue(withKey.length < LEGACY_WITH_KEY.length());
+        assertTrue(withoutKey.length < LEGACY_WITHOUT_KEY.length());
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(withKeys, "secret", "iv"));
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(withKey, "secret"));
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(withoutKey));
+    }
+
+    @Test
+    void Base64に変換しない形式も復号できること() throws Exception {
+        // given
+        var plain = "token".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var binary = EncryptUtils.doEncryptBinary(EncryptAlgorithm.AES, plain, null, null);
+
+        // then
+        // 識別子(1) バージョン(1) フラグ(1) 長さ(1) 初期化ベクトルキー(16) 長さ(1) 暗号化キー(32) 暗号文(16)
+        assertEquals(3 + 1 + 16 + 1 + 32 + 16, binary.length);
+        assertArrayEquals(plain, EncryptUtils.doDecrypt(EncryptAlgorithm.AES, binary));
+    }
+
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.inkblogdb.commons.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptorTest {
+
+    @Test
+    void 暗号化した値を復号できること() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret");
+        var plain = "session-token-0001".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var first = encryptor.encrypt(plain);
+        var second = encryptor.encrypt(plain);
+
+        // then
+        assertEquals(encryptor.getOutputSize(plain.length), first.length);
+        assertFalse(Arrays.equals(first, second));
+        assertArrayEquals(plain, encryptor.decrypt(first));
+        assertArrayEquals(plain, encryptor.decrypt(second));
+    }
+
+    @Test
+    void 初期化ベクトルキー指定時は同じ暗号文になること() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret", "iv");
+        var plain = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        var first = encryptor.encrypt(plain);
+        var second = new Encryptor("secret", "iv").encrypt(plain);
+
+        // then
+        assertEquals(32, first.length);
+        assertArrayEquals(first, second);
+        assertArrayEquals(plain, encryptor.decrypt(first));
+    }
+
+    @Test
+    void ダイレクトバッファに暗号化と復号ができること() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret");
+        var plain = "token".getBytes(StandardCharsets.UTF_8);
+        var src = ByteBuffer.allocateDirect(plain.length).put(plain).flip();
+        var encrypted = ByteBuffer.allocateDirect(encryptor.getOutputSize(plain.length));
+        var decrypted = ByteBuffer.allocateDirect(encrypted.capacity());
+
+        // when
+        int encryptLength = encryptor.encrypt(src, encrypted);
+        int decryptLength = encryptor.decrypt(encrypted.flip(), decrypted);
+
+        // then
+        assertEquals(encrypted.capacity(), encryptLength);
+        assertEquals(plain.length, decryptLength);
+        var result = new byte[decryptLength];
+        decrypted.flip().get(result);
+        assertArrayEquals(plain, result);
+    }
+
+    @Test
+    void 複数スレッドから同時に使用できること() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        var tasks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 200; i++) {
+            var plain = ("token-" + i).getBytes(StandardCharsets.UTF_8);
+            tasks.add(() -> Arrays.equals(plain, encryptor.decrypt(encryptor.encrypt(plain))));
+        }
+
+        // when
+        var results = executor.invokeAll(tasks);
+        executor.shutdown();
+
+        // then
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+    }
+
+    @Test
+    void 読み込み単位を超えるストリームを暗号化と復号ができること() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret");
+        var plain = new byte[Encryptor.STREAM_BUFFER_SIZE * 3 + 5];
+        new Random(1).nextBytes(plain);
+        var encrypted = new ByteArrayOutputStream();
+        var decrypted = new ByteArrayOutputStream();
+
+        // when
+        long encryptLength = encryptor.encrypt(new ByteArrayInputStream(plain), encrypted);
+        long decryptLength = encryptor.decrypt(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+
+        // then
+        // ヘッダ6byte + 初期化ベクトル16byte + 暗号文
+        assertEquals(6 + 16 + encryptor.getOutputSize(plain.length) - 16, encryptLength);
+        assertEquals(encrypted.size(), encryptLength);
+        assertEquals(plain.length, decryptLength);
+        assertArrayEquals(plain, decrypted.toByteArray());
+    }
+
+    @Test
+    void ストリームの書き込み中に同じスレッドで暗号化しても壊れないこと() throws Exception {
+        // given
+        var encryptor = new Encryptor("secret");
+        var plain = new byte[Encryptor.STREAM_BUFFER_SIZE * 2 + 5];
+        new Random(2).nextBytes(plain);
+        var token = "token".getBytes(StandardCharsets.UTF_8);
+        var tokens = new ArrayList<byte[]>();
+        var encrypted = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(final byte[] b, final int off, final int len) {
+                super.write(b, off, len);
+                try {
+                    tokens.add(encryptor.encrypt(token));
+                    EncryptUtils.doEncrypt(EncryptUtils.EncryptAlgorithm.AES, token, "other");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        var decrypted = new ByteArrayOutputStream();
+
+        // when
+        encryptor.encrypt(new ByteArrayInputStream(plain), encrypted);
+        encryptor.decrypt(new ByteArrayInputStream(encrypted.toByteArray()), decrypted);
+
+        // then
+        assertArrayEquals(plain, decrypted.toByteArray());
+        assertFalse(tokens.isEmpty());
+        for (var encryptedToken : tokens) {
+            assertArrayEquals(token, encryptor.decrypt(encryptedToken));
+        }
+    }
+
+    @Test
+    void ファイルを暗号化と復号ができること(@TempDir final Path dir) throws Exception {
+        // given
+        var encryptor = new Encryptor("secret", "iv");
+        var plain = new byte[Encryptor.STREAM_BUFFER_SIZE + 1];
+        new Random(2).nextBytes(plain);
+        var src = Files.write(dir.resolve("plain.bin"), plain);
+        var encrypted = dir.resolve("plain.bin.enc");
+        var decrypted = dir.resolve("plain.bin.dec");
+
+        // when
+        encryptor.encrypt(src, encrypted);
+        encryptor.decrypt(encrypted, decrypted);
+
+        // then
+        assertArrayEquals(plain, Files.readAllBytes(decrypted));
+        assertThrows(IOException.class, () -> encryptor.decrypt(src, decrypted));
+    }
+
+    @Test
+    void AES以外は指定できないこと() {
+        assertThrows(IllegalArgumentException.class, () -> new Encryptor(EncryptUtils.EncryptAlgorithm.RSA, new byte[] { 1 }, null));
+        assertThrows(IllegalArgumentException.class, () -> new Encryptor(new byte[0]));
+    }
+
+}